@@ -0,0 +1,124 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+/**
+ * One operation that the {@link BenchmarkRunner} measures, much like a JMH
+ * benchmark method with its state. The runner calls {@link #setUp()} once,
+ * then repeatedly calls {@link #prepare()} and {@link #run()}, timing only
+ * {@link #run()}.
+ *
+ * Every operation processes the whole corpus once, so the throughput can be
+ * reported in bytes of original content per second.
+ */
+public abstract class Benchmark
+{
+    /** the name of what is measured, such as the phase of packing. */
+    private final String operation;
+
+    /** the content that is packed or unpacked. */
+    protected final Corpus corpus;
+
+    /** the type of StreamConverter the content is read with. */
+    protected final ConverterType converterType;
+
+    /**
+     * Constructor.
+     *
+     * @param operationName the name of what is measured
+     * @param benchCorpus the content that is packed or unpacked
+     * @param type the type of StreamConverter the content is read with
+     */
+    protected Benchmark(String operationName, Corpus benchCorpus, ConverterType type)
+    {
+        operation = operationName;
+        corpus = benchCorpus;
+        converterType = type;
+    }
+
+    /**
+     * Returns the name of the benchmark in the results.
+     *
+     * @return the operation, the corpus and the converter type
+     */
+    public String getName()
+    {
+        return operation + ":" + corpus.getName() + ":" + converterType.name();
+    }
+
+    /**
+     * Returns the number of bytes of original content processed by each
+     * operation.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesPerOperation()
+    {
+        return corpus.getSize();
+    }
+
+    /**
+     * Returns the size of the packed file, so that how well the content is
+     * packed can be reported next to how fast.
+     *
+     * @return the number of bytes, -1 if the operation does not pack a file
+     */
+    public long getPackedBytes()
+    {
+        return -1;
+    }
+
+    /**
+     * Create the state needed by every operation, before any are measured.
+     *
+     * @throws Exception if the state cannot be created
+     */
+    public void setUp() throws Exception
+    {
+    }
+
+    /**
+     * Create the state used up by one operation, before it is measured.
+     *
+     * @throws Exception if the state cannot be created
+     */
+    public void prepare() throws Exception
+    {
+    }
+
+    /**
+     * Run the operation that is measured.
+     *
+     * @return a result of the operation, so it cannot be optimized away
+     * @throws Exception if the operation fails
+     */
+    public abstract Object run() throws Exception;
+
+    /**
+     * Release the state after all the operations have been measured.
+     *
+     * @throws Exception if the state cannot be released
+     */
+    public void tearDown() throws Exception
+    {
+    }
+}
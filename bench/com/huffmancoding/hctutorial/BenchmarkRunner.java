@@ -0,0 +1,412 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * This runs the benchmarks of packing and unpacking and prints their
+ * throughput and allocation, the way JMH does with its gc profiler. Each
+ * benchmark has warmup iterations, which are not reported, followed by
+ * measured iterations. An iteration runs operations until its time is up.
+ *
+ * The results are the mean and standard deviation of the operations per
+ * second of the iterations, the throughput in MB of original content per
+ * second, the size of the packed file over the original for the benchmarks
+ * that pack a file, the bytes allocated per operation, the allocation rate,
+ * and the number of garbage collections during the measured iterations.
+ *
+ * The allocation is counted on every thread, not only the one running the
+ * operation, so the block encoders of the common pool, the verifier thread
+ * and the threads of a pipeline are included. A thread that ends during an
+ * operation is counted up to the last time it was sampled, which is done
+ * every {@link #ALLOCATION_SAMPLE_MILLIS} milliseconds on a thread of its own.
+ *
+ * Options that start with "--" may come before a regular expression that
+ * selects the benchmarks to run by name:
+ * --warmup=N warmup iterations, --iterations=N measured iterations,
+ * --time=MS milliseconds per iteration, --size=BYTES of synthetic corpora
+ * and --sample=FILE for the sample text.
+ */
+public class BenchmarkRunner
+{
+    /** the number of bytes in a megabyte. */
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    /** how often the bytes allocated by every thread are sampled, in milliseconds. */
+    private static final long ALLOCATION_SAMPLE_MILLIS = 1;
+
+    /** the result of each operation, kept so it is not optimized away. */
+    private static volatile Object sink;
+
+    /** the number of warmup iterations. */
+    private int warmupIterations = 2;
+
+    /** the number of measured iterations. */
+    private int measuredIterations = 3;
+
+    /** the time of each iteration, in milliseconds. */
+    private long iterationMillis = 1000;
+
+    /** the number of bytes of each synthetic corpus. */
+    private int corpusSize = 4 * 1024 * 1024;
+
+    /** the sample text file. */
+    private File sampleFile = new File("samples/civil10.txt");
+
+    /** the selection of benchmarks by name. */
+    private Pattern filter = Pattern.compile(".*");
+
+    /** the thread bean that counts allocated bytes. */
+    private final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    /** the bytes allocated by each live thread when it was last sampled, by thread ID. */
+    private final Map<Long, Long> threadAllocatedBytes = new HashMap<>();
+
+    /** the bytes allocated by threads that have ended since they were first sampled. */
+    private long endedThreadAllocatedBytes = 0;
+
+    /** the thread that samples the allocated bytes of threads before they end. */
+    private Thread allocationSampler;
+
+    /** the ID of the thread that runs the benchmarks. */
+    private final long benchmarkThreadId = Thread.currentThread().getId();
+
+    /** where the results are printed, since System.out is silenced while measuring. */
+    private final PrintStream results = System.out;
+
+    /**
+     * The measurements of one iteration.
+     */
+    private static class Iteration
+    {
+        /** the number of operations. */
+        private long operations = 0;
+
+        /** the time spent in the operations, in nanoseconds. */
+        private long nanos = 0;
+
+        /** the bytes allocated by the operations. */
+        private long allocatedBytes = 0;
+
+        /**
+         * Returns the number of operations per second.
+         *
+         * @return the throughput of the iteration
+         */
+        public double getOperationsPerSecond()
+        {
+            return operations / (nanos / 1e9);
+        }
+    }
+
+    /**
+     * Main function for the benchmarks.
+     *
+     * @param args options followed by a regular expression for the names of
+     *   the benchmarks to run
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.parseArguments(args);
+        runner.runAll();
+    }
+
+    /**
+     * Set the options from the command line arguments.
+     *
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if an option is not valid
+     */
+    private void parseArguments(String[] args)
+    {
+        for (String arg : args)
+        {
+            if (arg.startsWith("--warmup="))
+            {
+                warmupIterations = Integer.parseInt(arg.substring("--warmup=".length()));
+            }
+            else if (arg.startsWith("--iterations="))
+            {
+                measuredIterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            }
+            else if (arg.startsWith("--time="))
+            {
+                iterationMillis = Long.parseLong(arg.substring("--time=".length()));
+            }
+            else if (arg.startsWith("--size="))
+            {
+                corpusSize = Integer.parseInt(arg.substring("--size=".length()));
+            }
+            else if (arg.startsWith("--sample="))
+            {
+                sampleFile = new File(arg.substring("--sample=".length()));
+            }
+            else if (arg.startsWith("--"))
+            {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            else
+            {
+                filter = Pattern.compile(arg);
+            }
+        }
+    }
+
+    /**
+     * Run every selected benchmark of every corpus with each type of
+     * converter, and print the results. The single code of BYTE is compared
+     * with the context codes of CONTEXT_BYTE, the code of ADAPTIVE_BYTE that
+     * changes as it goes, and with CHARACTER. A benchmark whose corpus cannot
+     * be packed, such as random bytes as characters, is reported as failed.
+     *
+     * @throws Exception if a benchmark fails other than by reading its corpus
+     */
+    private void runAll() throws Exception
+    {
+        List<Corpus> corpora = List.of(
+            Corpus.fromFile(sampleFile),
+            Corpus.text(sampleFile, corpusSize),
+            Corpus.skewedBytes(corpusSize),
+            Corpus.randomBytes(corpusSize));
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        for (Corpus corpus : corpora)
+        {
+            for (ConverterType type : List.of(ConverterType.BYTE, ConverterType.CONTEXT_BYTE,
+                ConverterType.ADAPTIVE_BYTE, ConverterType.CHARACTER))
+            {
+                for (Benchmark benchmark : PackBenchmarks.create(corpus, type))
+                {
+                    if (filter.matcher(benchmark.getName()).find())
+                    {
+                        benchmarks.add(benchmark);
+                    }
+                }
+            }
+        }
+
+        results.printf("%-44s %6s %14s %12s %10s %7s %14s %10s %6s%n", "Benchmark", "Ops",
+            "Score ops/s", "Error", "MB/s", "Ratio", "alloc B/op", "alloc MB/s", "gc");
+        for (Benchmark benchmark : benchmarks)
+        {
+            try
+            {
+                runBenchmark(benchmark);
+            }
+            catch (IOException ex)
+            {
+                // such as random bytes, which are not valid characters
+                results.printf("%-44s failed: %s%n", benchmark.getName(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run the warmup and measured iterations of a benchmark and print its
+     * results.
+     *
+     * @param benchmark the benchmark to run
+     * @throws Exception if the benchmark fails
+     */
+    private void runBenchmark(Benchmark benchmark) throws Exception
+    {
+        // the packer and unpacker describe what they are doing on System.out
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        List<Iteration> iterations = new ArrayList<>();
+        long gcCount;
+        long packedBytes;
+        startAllocationSampler();
+        try
+        {
+            benchmark.setUp();
+            for (int i = 0; i < warmupIterations; ++i)
+            {
+                runIteration(benchmark);
+            }
+
+            long gcCountBefore = getCollectionCount();
+            for (int i = 0; i < measuredIterations; ++i)
+            {
+                iterations.add(runIteration(benchmark));
+            }
+            gcCount = getCollectionCount() - gcCountBefore;
+            packedBytes = benchmark.getPackedBytes();
+            benchmark.tearDown();
+        }
+        finally
+        {
+            stopAllocationSampler();
+            System.setOut(results);
+        }
+
+        double meanScore = iterations.stream().mapToDouble(Iteration::getOperationsPerSecond).average().orElse(0);
+        double variance = iterations.stream().mapToDouble(iteration ->
+            Math.pow(iteration.getOperationsPerSecond() - meanScore, 2)).sum() / Math.max(1, iterations.size() - 1);
+        long operations = iterations.stream().mapToLong(iteration -> iteration.operations).sum();
+        long nanos = iterations.stream().mapToLong(iteration -> iteration.nanos).sum();
+        long allocatedBytes = iterations.stream().mapToLong(iteration -> iteration.allocatedBytes).sum();
+
+        double megabytesPerSecond = meanScore * benchmark.getBytesPerOperation() / MEGABYTE;
+        double allocatedPerOperation = (double)allocatedBytes / operations;
+        double allocationRate = allocatedBytes / MEGABYTE / (nanos / 1e9);
+        String ratio = packedBytes < 0 ? "-" :
+            String.format("%.3f", (double)packedBytes / benchmark.getBytesPerOperation());
+
+        results.printf("%-44s %6d %14.3f %12.3f %10.1f %7s %14.0f %10.1f %6d%n", benchmark.getName(), operations,
+            meanScore, Math.sqrt(variance), megabytesPerSecond, ratio, allocatedPerOperation, allocationRate, gcCount);
+    }
+
+    /**
+     * Run operations of a benchmark until the iteration time is up, timing
+     * and counting the allocations of only the operations themselves.
+     *
+     * @param benchmark the benchmark to run
+     * @return the measurements of the iteration
+     * @throws Exception if the benchmark fails
+     */
+    private Iteration runIteration(Benchmark benchmark) throws Exception
+    {
+        Iteration iteration = new Iteration();
+        long endTime = System.nanoTime() + iterationMillis * 1_000_000L;
+        do
+        {
+            benchmark.prepare();
+
+            // the sampling allocates too, so this thread is counted exactly on its own
+            long allocatedBefore = sampleAllocatedBytes();
+            allocatedBefore += threadBean.getCurrentThreadAllocatedBytes();
+            long startTime = System.nanoTime();
+            sink = benchmark.run();
+            long operationNanos = System.nanoTime() - startTime;
+            long allocatedAfter = threadBean.getCurrentThreadAllocatedBytes();
+            allocatedAfter += sampleAllocatedBytes();
+
+            iteration.nanos += operationNanos;
+            iteration.allocatedBytes += allocatedAfter - allocatedBefore;
+            ++iteration.operations;
+        }
+        while (System.nanoTime() < endTime);
+
+        return iteration;
+    }
+
+    /**
+     * Start the thread that samples the allocated bytes of every thread, so
+     * that a thread that ends during an operation is still counted.
+     */
+    private void startAllocationSampler()
+    {
+        allocationSampler = new Thread(() ->
+        {
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    sampleAllocatedBytes();
+                    Thread.sleep(ALLOCATION_SAMPLE_MILLIS);
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                // the benchmark is done
+            }
+        }, "Allocation sampler");
+        allocationSampler.setDaemon(true);
+        allocationSampler.start();
+    }
+
+    /**
+     * Stop the thread that samples the allocated bytes.
+     *
+     * @throws InterruptedException if interrupted while waiting for the thread
+     */
+    private void stopAllocationSampler() throws InterruptedException
+    {
+        allocationSampler.interrupt();
+        allocationSampler.join();
+    }
+
+    /**
+     * Sample the bytes allocated by every live thread but the sampler and
+     * the one running the benchmarks, and keep the last sample of each
+     * thread that has ended since.
+     *
+     * @return the bytes allocated so far by the other threads
+     */
+    private synchronized long sampleAllocatedBytes()
+    {
+        long[] threadIds = threadBean.getAllThreadIds();
+        long[] allocatedBytes = threadBean.getThreadAllocatedBytes(threadIds);
+
+        Map<Long, Long> liveThreads = new HashMap<>();
+        for (int i = 0; i < threadIds.length; ++i)
+        {
+            // a thread that has just ended has no count
+            if (allocatedBytes[i] >= 0 && threadIds[i] != allocationSampler.getId() &&
+                threadIds[i] != benchmarkThreadId)
+            {
+                liveThreads.put(threadIds[i], allocatedBytes[i]);
+            }
+        }
+        threadAllocatedBytes.forEach((threadId, bytes) ->
+        {
+            if (!liveThreads.containsKey(threadId))
+            {
+                endedThreadAllocatedBytes += bytes;
+            }
+        });
+        threadAllocatedBytes.clear();
+        threadAllocatedBytes.putAll(liveThreads);
+
+        return endedThreadAllocatedBytes +
+            liveThreads.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Returns the number of garbage collections so far, by every collector.
+     *
+     * @return the collection count
+     */
+    private static long getCollectionCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+}
@@ -0,0 +1,207 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A file of original content that the benchmarks pack and unpack. Besides
+ * the sample files, synthetic files are generated with a fixed seed so that
+ * every run measures the same content.
+ */
+public class Corpus
+{
+    /** the seed for the synthetic content. */
+    private static final long SEED = 20260101L;
+
+    /** the name of the corpus in the results. */
+    private final String name;
+
+    /** the file with the content. */
+    private final File file;
+
+    /**
+     * Constructor.
+     *
+     * @param corpusName the name of the corpus in the results
+     * @param corpusFile the file with the content
+     */
+    private Corpus(String corpusName, File corpusFile)
+    {
+        name = corpusName;
+        file = corpusFile;
+    }
+
+    /**
+     * Returns the name of the corpus in the results.
+     *
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the file with the content.
+     *
+     * @return the file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the number of bytes of content.
+     *
+     * @return the size of the file
+     */
+    public long getSize()
+    {
+        return file.length();
+    }
+
+    /**
+     * Create a corpus of an existing file, such as a sample.
+     *
+     * @param sampleFile the file
+     * @return the corpus
+     */
+    public static Corpus fromFile(File sampleFile)
+    {
+        return new Corpus(sampleFile.getName(), sampleFile);
+    }
+
+    /**
+     * Create a corpus of text by picking random lines of a sample text file,
+     * so it has the letters and words of real text but is as large as
+     * wanted.
+     *
+     * @param sampleFile the text file to take lines from
+     * @param size the number of bytes to generate
+     * @return the corpus
+     * @throws IOException if the files cannot be read or written
+     */
+    public static Corpus text(File sampleFile, int size) throws IOException
+    {
+        List<String> lines = Files.readAllLines(sampleFile.toPath());
+        Random random = new Random(SEED);
+
+        File textFile = createTempFile("text", size);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(textFile)))
+        {
+            int written = 0;
+            while (written < size)
+            {
+                byte[] line = (lines.get(random.nextInt(lines.size())) + "\n").getBytes();
+                int length = Math.min(line.length, size - written);
+                os.write(line, 0, length);
+                written += length;
+            }
+        }
+        return new Corpus("text-" + sizeName(size), textFile);
+    }
+
+    /**
+     * Create a corpus of bytes with a skewed distribution, where each byte
+     * value is about half as likely as the one before it.
+     *
+     * @param size the number of bytes to generate
+     * @return the corpus
+     * @throws IOException if the file cannot be written
+     */
+    public static Corpus skewedBytes(int size) throws IOException
+    {
+        Random random = new Random(SEED);
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; ++i)
+        {
+            // the number of trailing zeros of a random int is geometric
+            bytes[i] = (byte)Math.min(Integer.numberOfTrailingZeros(random.nextInt()), 0xFF);
+        }
+
+        File skewedFile = createTempFile("skewed", size);
+        Files.write(skewedFile.toPath(), bytes);
+        return new Corpus("skewed-" + sizeName(size), skewedFile);
+    }
+
+    /**
+     * Create a corpus of bytes where every byte value is equally likely,
+     * which Huffman coding cannot compress.
+     *
+     * @param size the number of bytes to generate
+     * @return the corpus
+     * @throws IOException if the file cannot be written
+     */
+    public static Corpus randomBytes(int size) throws IOException
+    {
+        Random random = new Random(SEED);
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+
+        File randomFile = createTempFile("random", size);
+        Files.write(randomFile.toPath(), bytes);
+        return new Corpus("random-" + sizeName(size), randomFile);
+    }
+
+    /**
+     * Create a temporary file that is deleted when the benchmarks end.
+     *
+     * @param prefix the start of the file name
+     * @param size the size of the content, for the file name
+     * @return the file
+     * @throws IOException if the file cannot be created
+     */
+    private static File createTempFile(String prefix, int size) throws IOException
+    {
+        File tempFile = File.createTempFile(prefix + "-" + sizeName(size) + "-", ".corpus");
+        tempFile.deleteOnExit();
+        return tempFile;
+    }
+
+    /**
+     * Returns a short name for a size, such as 4M.
+     *
+     * @param size the number of bytes
+     * @return the name
+     */
+    private static String sizeName(int size)
+    {
+        if (size % (1024 * 1024) == 0)
+        {
+            return (size / (1024 * 1024)) + "M";
+        }
+        else if (size % 1024 == 0)
+        {
+            return (size / 1024) + "K";
+        }
+        return Integer.toString(size);
+    }
+}
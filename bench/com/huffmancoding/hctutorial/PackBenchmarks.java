@@ -0,0 +1,693 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The benchmarks of packing and unpacking a corpus: the whole of
+ * {@link FilePacker#packFile(File, File, PackOptions)} and
+ * {@link FileUnpacker#unpackFile(File, File)}, and each phase of packing
+ * and unpacking on its own.
+ */
+public class PackBenchmarks
+{
+    /**
+     * Private constructor, there are only static methods.
+     */
+    private PackBenchmarks()
+    {
+    }
+
+    /**
+     * Create all the benchmarks for a corpus read with a type of converter.
+     * An adaptive code is not built in phases, so only the whole of packing
+     * and unpacking is measured for it. The decoders of a single canonical
+     * code are compared for the converters that pack with one.
+     *
+     * @param corpus the content to pack and unpack
+     * @param type the type of StreamConverter to read the content with
+     * @return the benchmarks
+     */
+    public static List<Benchmark> create(Corpus corpus, ConverterType type)
+    {
+        if (type == ConverterType.ADAPTIVE_BYTE)
+        {
+            return List.of(
+                new PackFileBenchmark(corpus, type),
+                new UnpackFileBenchmark(corpus, type));
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<>(List.of(
+            new PackFileBenchmark(corpus, type),
+            new UnpackFileBenchmark(corpus, type),
+            new HistogramBenchmark(corpus, type),
+            new MergeNodesBenchmark(corpus, type),
+            new WriteTreeBenchmark(corpus, type),
+            new WriteContentBenchmark(corpus, type),
+            new DecodeBenchmark(corpus, type)));
+        if (type == ConverterType.BYTE || type == ConverterType.CHARACTER)
+        {
+            // these are packed with a single canonical code
+            benchmarks.add(new TableDecodeBenchmark(corpus, type));
+            benchmarks.add(new TreeWalkDecodeBenchmark(corpus, type));
+        }
+        return benchmarks;
+    }
+
+    /**
+     * Returns the options to pack a corpus with a type of converter.
+     *
+     * @param type the type of StreamConverter to read the content with
+     * @return the options
+     */
+    private static PackOptions createOptions(ConverterType type)
+    {
+        PackOptions options = new PackOptions();
+        options.setConverterType(type);
+        return options;
+    }
+
+    /**
+     * Create a temporary file for packed or unpacked content.
+     *
+     * @return the file
+     * @throws IOException if the file cannot be created
+     */
+    private static File createTempFile() throws IOException
+    {
+        File tempFile = File.createTempFile("bench-", ".packed");
+        tempFile.deleteOnExit();
+        return tempFile;
+    }
+
+    /**
+     * Packing a file from start to end.
+     */
+    private static class PackFileBenchmark extends Benchmark
+    {
+        /** the file to pack to. */
+        private File packedFile;
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to pack
+         * @param type the type of StreamConverter to read the content with
+         */
+        public PackFileBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("packFile", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws IOException
+        {
+            packedFile = createTempFile();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws Exception
+        {
+            return FilePacker.packFile(corpus.getFile(), packedFile, createOptions(converterType));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getPackedBytes()
+        {
+            return packedFile.length();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void tearDown()
+        {
+            packedFile.delete();
+        }
+    }
+
+    /**
+     * Unpacking a file from start to end.
+     */
+    private static class UnpackFileBenchmark extends Benchmark
+    {
+        /** the packed file to unpack. */
+        private File packedFile;
+
+        /** the file to unpack to. */
+        private File unpackedFile;
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to unpack
+         * @param type the type of StreamConverter the content was read with
+         */
+        public UnpackFileBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("unpackFile", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws Exception
+        {
+            packedFile = createTempFile();
+            unpackedFile = createTempFile();
+            FilePacker.packFile(corpus.getFile(), packedFile, createOptions(converterType));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws Exception
+        {
+            return FileUnpacker.unpackFile(packedFile, unpackedFile);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getPackedBytes()
+        {
+            return packedFile.length();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void tearDown()
+        {
+            packedFile.delete();
+            unpackedFile.delete();
+        }
+    }
+
+    /**
+     * The base of the benchmarks of the phases of a FilePacker.
+     */
+    private abstract static class PackerPhaseBenchmark extends Benchmark
+    {
+        /** the packer whose phase is measured. */
+        protected FilePacker<?> packer;
+
+        /**
+         * Constructor.
+         *
+         * @param phase the name of the phase
+         * @param corpus the content to pack
+         * @param type the type of StreamConverter to read the content with
+         */
+        protected PackerPhaseBenchmark(String phase, Corpus corpus, ConverterType type)
+        {
+            super(phase, corpus, type);
+        }
+
+        /**
+         * Create a new packer for the corpus, before any of its phases.
+         */
+        protected void createPacker()
+        {
+            PackerFactory factory = new PackerFactory();
+            packer = factory.createFilePacker(converterType, corpus.getFile(), createOptions(converterType));
+        }
+
+        /**
+         * Run the phases of the packer up to writing the Huffman tree.
+         *
+         * @param packedStream the stream to write the tree to
+         * @throws IOException if the corpus cannot be read
+         */
+        protected void createPackerWithTree(BitOutputStream packedStream) throws IOException
+        {
+            createPacker();
+            packer.createIndividualLeafNodes();
+            mergeNodesIntoTree(packer, packer.createQueuesOfLeafNodes());
+            packer.writeHuffmanTree(packedStream);
+        }
+
+        /**
+         * Merge the sorted nodes of a packer into its tree.
+         *
+         * @param <T> the type of object of the packer
+         * @param filePacker the packer
+         * @param sortedNodes the queues returned by the packer's createQueuesOfLeafNodes
+         */
+        @SuppressWarnings("unchecked")
+        protected static <T> void mergeNodesIntoTree(FilePacker<T> filePacker, FrequencyQueues<?> sortedNodes)
+        {
+            filePacker.mergeNodesIntoTree((FrequencyQueues<T>)sortedNodes);
+        }
+    }
+
+    /**
+     * Counting the objects of the corpus into leaf nodes.
+     */
+    private static class HistogramBenchmark extends PackerPhaseBenchmark
+    {
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to count
+         * @param type the type of StreamConverter to read the content with
+         */
+        public HistogramBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("histogram", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void prepare()
+        {
+            createPacker();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws IOException
+        {
+            packer.createIndividualLeafNodes();
+            return packer;
+        }
+    }
+
+    /**
+     * Merging the sorted leaf nodes into the Huffman tree.
+     */
+    private static class MergeNodesBenchmark extends PackerPhaseBenchmark
+    {
+        /** the sorted leaf nodes, used up by each merge. */
+        private FrequencyQueues<?> sortedNodes;
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to build the tree for
+         * @param type the type of StreamConverter to read the content with
+         */
+        public MergeNodesBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("mergeNodesIntoTree", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp()
+        {
+            createPacker();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void prepare() throws IOException
+        {
+            if (sortedNodes == null)
+            {
+                packer.createIndividualLeafNodes();
+            }
+            sortedNodes = packer.createQueuesOfLeafNodes();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run()
+        {
+            mergeNodesIntoTree(packer, sortedNodes);
+            return sortedNodes;
+        }
+    }
+
+    /**
+     * Writing the canonical code of the Huffman tree.
+     */
+    private static class WriteTreeBenchmark extends PackerPhaseBenchmark
+    {
+        /** the stream the tree is written to, kept for every operation. */
+        private final BitOutputStream packedStream = new BitOutputStream(new NullOutputStream());
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to write the tree for
+         * @param type the type of StreamConverter to read the content with
+         */
+        public WriteTreeBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("writeHuffmanTree", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws IOException
+        {
+            createPackerWithTree(packedStream);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws IOException
+        {
+            packer.writeHuffmanTree(packedStream);
+            return packedStream;
+        }
+    }
+
+    /**
+     * Re-reading the corpus and writing the code of every object.
+     */
+    private static class WriteContentBenchmark extends PackerPhaseBenchmark
+    {
+        /** the stream the content is written to, kept for every operation. */
+        private final BitOutputStream packedStream = new BitOutputStream(new NullOutputStream());
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to write
+         * @param type the type of StreamConverter to read the content with
+         */
+        public WriteContentBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("writePackedContent", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws IOException
+        {
+            createPackerWithTree(packedStream);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws Exception
+        {
+            return packer.writePackedContent(packedStream);
+        }
+    }
+
+    /**
+     * Decoding the packed content with the CompressedObjectIterator, from
+     * memory, without writing it anywhere.
+     */
+    private static class DecodeBenchmark extends Benchmark
+    {
+        /** the whole packed file. */
+        private byte[] packedBytes;
+
+        /** the unpacker with the decoder for the packed content. */
+        private FileUnpacker<?> unpacker;
+
+        /** the stream positioned at the packed content. */
+        private BitInputStream packedStream;
+
+        /** the number of objects in the packed content. */
+        private long totalObjects;
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to decode
+         * @param type the type of StreamConverter the content was read with
+         */
+        public DecodeBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("decode", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws Exception
+        {
+            File packedFile = createTempFile();
+            FilePacker.packFile(corpus.getFile(), packedFile, createOptions(converterType));
+            packedBytes = Files.readAllBytes(packedFile.toPath());
+            packedFile.delete();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void prepare() throws IOException
+        {
+            packedStream = new BitInputStream(new ByteArrayInputStream(packedBytes));
+            PackedHeader header = PackedHeader.read(packedStream);
+            unpacker = new PackerFactory().getFileUnpacker(header.getConverterType(), header.getCharset());
+            totalObjects = unpacker.readHuffmanCode(packedStream, header);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws IOException
+        {
+            unpacker.readPackedContent(packedStream, totalObjects, new NullOutputStream());
+            return packedStream;
+        }
+    }
+
+    /**
+     * The base of the benchmarks that decode the packed content of a single
+     * canonical code from memory, one object at a time, to compare ways of
+     * decoding the same bits.
+     */
+    private abstract static class CodeDecodeBenchmark extends PackerPhaseBenchmark
+    {
+        /** the packed content, starting with the number of objects. */
+        private byte[] packedBytes;
+
+        /** the code of the packed content. */
+        protected CanonicalCode<?> canonicalCode;
+
+        /** the stream positioned at the codes of the objects. */
+        protected BitInputStream packedStream;
+
+        /** the number of objects in the packed content. */
+        protected long totalObjects;
+
+        /**
+         * Constructor.
+         *
+         * @param decoder the name of the way of decoding
+         * @param corpus the content to decode
+         * @param type the type of StreamConverter the content was read with
+         */
+        protected CodeDecodeBenchmark(String decoder, Corpus corpus, ConverterType type)
+        {
+            super(decoder, corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws Exception
+        {
+            createPackerWithTree(new BitOutputStream(new NullOutputStream()));
+            canonicalCode = packer.getCanonicalCode();
+
+            ByteArrayOutputStream contentBytes = new ByteArrayOutputStream();
+            BitOutputStream contentStream = new BitOutputStream(contentBytes);
+            packer.writePackedContent(contentStream);
+            contentStream.flush();
+            packedBytes = contentBytes.toByteArray();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void prepare() throws IOException
+        {
+            packedStream = new BitInputStream(new ByteArrayInputStream(packedBytes));
+            totalObjects = packedStream.readLong();
+        }
+    }
+
+    /**
+     * Decoding with the lookup tables of a {@link HuffmanDecoder}, which
+     * finds each object from several bits at once.
+     */
+    private static class TableDecodeBenchmark extends CodeDecodeBenchmark
+    {
+        /** the decoder of the canonical code. */
+        private HuffmanDecoder<?> decoder;
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to decode
+         * @param type the type of StreamConverter the content was read with
+         */
+        public TableDecodeBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("decodeTable", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            decoder = canonicalCode.createDecoder();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws IOException
+        {
+            Object object = null;
+            for (long i = 0; i < totalObjects; ++i)
+            {
+                object = decoder.decode(packedStream);
+            }
+            return object;
+        }
+    }
+
+    /**
+     * Decoding by walking down the Huffman tree of the canonical code one
+     * bit at a time, which is what the table decoder replaced.
+     */
+    private static class TreeWalkDecodeBenchmark extends CodeDecodeBenchmark
+    {
+        /** the tree with a leaf for each code of the canonical code. */
+        private TreeNode<?> huffmanTree;
+
+        /**
+         * Constructor.
+         *
+         * @param corpus the content to decode
+         * @param type the type of StreamConverter the content was read with
+         */
+        public TreeWalkDecodeBenchmark(Corpus corpus, ConverterType type)
+        {
+            super("decodeTreeWalk", corpus, type);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            huffmanTree = buildSubTree(canonicalCode, 0, canonicalCode.size(), 0);
+        }
+
+        /**
+         * Build the tree of the codes of a canonical code that start with the
+         * same bits. The codes are in order, so those whose next bit is 0,
+         * which go left, come before those whose next bit is 1.
+         *
+         * @param <T> the type of object of the code
+         * @param code the canonical code
+         * @param from the index of the first code that starts with the bits
+         * @param to the index after the last code that starts with the bits
+         * @param depth the number of bits the codes start with
+         * @return the root of the sub tree
+         */
+        private static <T> TreeNode<T> buildSubTree(CanonicalCode<T> code, int from, int to, int depth)
+        {
+            if (to - from == 1 && code.getLength(from) == depth)
+            {
+                return LeafNode.create(code.getObject(from));
+            }
+
+            int middle = from;
+            while (middle < to && ((code.getCode(middle) >>> (code.getLength(middle) - depth - 1)) & 1) == 0)
+            {
+                ++middle;
+            }
+            return new NonLeafNode<>(buildSubTree(code, from, middle, depth + 1),
+                buildSubTree(code, middle, to, depth + 1));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object run() throws IOException
+        {
+            Object object = null;
+            for (long i = 0; i < totalObjects; ++i)
+            {
+                TreeNode<?> node = huffmanTree;
+                while (node instanceof NonLeafNode<?> nonLeafNode)
+                {
+                    node = packedStream.readBit() ? nonLeafNode.getRight() : nonLeafNode.getLeft();
+                }
+                object = ((LeafNode<?>)node).getObject();
+            }
+            return object;
+        }
+    }
+}
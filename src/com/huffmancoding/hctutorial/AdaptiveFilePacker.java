@@ -0,0 +1,144 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This is a FilePacker that reads the original bytes only once. The usual
+ * FilePacker reads the file twice, once to count the bytes and once to
+ * write their codes, so it cannot pack a stream that cannot be read again.
+ * This packer codes each byte with an {@link AdaptiveHuffmanCode} that is
+ * updated after every byte, so no counts or tree are written before the
+ * packed data.
+ */
+public class AdaptiveFilePacker extends FilePacker<Byte>
+{
+    /**
+     * Initialize AdaptiveFilePacker with input file.
+     *
+     * @param inputFile the file to pack.
+     * @param packOptions the choices of how to pack the file
+     */
+    protected AdaptiveFilePacker(File inputFile, PackOptions packOptions)
+    {
+        super(inputFile, new ByteStreamConverter(), packOptions);
+    }
+
+    /**
+     * The adaptive code is one stream from the first byte to the last, so
+     * the content is never split into blocks, and it has no code that could
+     * be estimated, read from a dictionary or limited in length.
+     *
+     * @return no flags
+     * @throws IllegalArgumentException if the options need a code or blocks
+     */
+    @Override
+    protected int getPackedFlags()
+    {
+        PackOptions options = getOptions();
+        if (options.getBlockSize() > 0 || options.getStreamBlockSize() > 0 ||
+            options.getSyncInterval() > 0)
+        {
+            throw new IllegalArgumentException(
+                "An adaptive code cannot be combined with blocks, stream blocks or sync points");
+        }
+        if (options.getSampleSize() > 0 || options.getDictionary() != null ||
+            options.getMaxCodeLength() < CanonicalCode.MAX_CODE_LENGTH)
+        {
+            throw new IllegalArgumentException(
+                "An adaptive code cannot be estimated, read from a dictionary or limited in length");
+        }
+        return 0;
+    }
+
+    /**
+     * The adaptive code is built as the bytes are read, so the input is
+     * only read once.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean isSinglePass()
+    {
+        return true;
+    }
+
+    /**
+     * Write the adaptive codes of the bytes of a stream in a single pass,
+     * followed by their checksum.
+     *
+     * @param is the stream with the original content, read to its end but not closed
+     * @param packedStream the stream to write the packed data to.
+     * @return the checksum of the uncompressed data
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    @Override
+    protected byte[] packSourceStream(InputStream is, BitOutputStream packedStream)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Packing in a single pass");
+
+        MessageDigest digest = createDigest();
+        long totalBytes = packAdaptively(new DigestInputStream(is, digest), packedStream);
+        System.out.println("Total bytes: " + totalBytes);
+
+        return writeChecksum(digest, packedStream);
+    }
+
+    /**
+     * Read a stream to its end, writing the adaptive code of every byte
+     * followed by the code for the end of the content.
+     *
+     * @param is the stream of original bytes, only read once
+     * @param packedStream the stream to write the codes to
+     * @return the number of bytes packed
+     * @throws IOException in case of read or write error
+     */
+    public static long packAdaptively(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        AdaptiveHuffmanCode code = new AdaptiveHuffmanCode();
+        byte[] buffer = new byte[ByteFilePacker.BUFFER_SIZE];
+        long totalBytes = 0;
+
+        int length;
+        while ((length = is.read(buffer)) > 0)
+        {
+            for (int i = 0; i < length; ++i)
+            {
+                code.encode(buffer[i] & 0xFF, packedStream);
+            }
+            totalBytes += length;
+        }
+        code.encode(AdaptiveHuffmanCode.END_OF_CONTENT, packedStream);
+
+        System.out.println("Total packed bytes: " + packedStream.getBytesWritten());
+        return totalBytes;
+    }
+}
@@ -0,0 +1,101 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This unpacks a file packed by {@link AdaptiveFilePacker}. There is no
+ * tree at the front of the packed data, the unpacker builds the same
+ * {@link AdaptiveHuffmanCode} as the packer did, one byte at a time, until
+ * it reads the code for the end of the content.
+ */
+public class AdaptiveFileUnpacker extends FileUnpacker<Byte>
+{
+    /**
+     * Constructor.
+     */
+    protected AdaptiveFileUnpacker()
+    {
+        super(new ByteStreamConverter());
+    }
+
+    /**
+     * Decode the adaptive codes that follow the header, and check the
+     * checksum that follows them.
+     *
+     * @param packedStream the stream to read from and unpack
+     * @param header the header read from the front of the packed stream
+     * @param os the stream to write the original data to, flushed but not closed
+     * @return the checksum of the uncompressed data
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    @Override
+    protected byte[] unpackToStream(BitInputStream packedStream, PackedHeader header,
+        OutputStream os) throws IOException, NoSuchAlgorithmException
+    {
+        MessageDigest digest = header.getChecksumType().createDigest();
+        DigestOutputStream digestOs = new DigestOutputStream(os, digest);
+        unpackAdaptively(packedStream, digestOs);
+        digestOs.flush();
+
+        return readChecksum(packedStream, header, digest);
+    }
+
+    /**
+     * Decode adaptive codes until the code for the end of the content,
+     * writing the original bytes.
+     *
+     * @param packedStream the stream to read the codes from
+     * @param os the stream to write the original bytes to
+     * @return the number of bytes unpacked
+     * @throws IOException in case of read or write error
+     */
+    public static long unpackAdaptively(BitInputStream packedStream, OutputStream os)
+        throws IOException
+    {
+        AdaptiveHuffmanCode code = new AdaptiveHuffmanCode();
+        byte[] buffer = new byte[ByteFilePacker.BUFFER_SIZE];
+        long totalBytes = 0;
+        int length = 0;
+
+        int symbol;
+        while ((symbol = code.decode(packedStream)) != AdaptiveHuffmanCode.END_OF_CONTENT)
+        {
+            buffer[length++] = (byte)symbol;
+            if (length == buffer.length)
+            {
+                os.write(buffer, 0, length);
+                totalBytes += length;
+                length = 0;
+            }
+        }
+
+        os.write(buffer, 0, length);
+        return totalBytes + length;
+    }
+}
@@ -0,0 +1,317 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An adaptive Huffman code (the FGK algorithm of Faller, Gallager and Knuth)
+ * for bytes. Instead of counting the whole input before building a tree,
+ * the packer and unpacker both start with an empty tree and update it the
+ * same way after every byte. The input only has to be read once, so it can
+ * come from a stream that cannot be read again.
+ *
+ * The tree starts with a single "not yet transmitted" (NYT) leaf. The first
+ * time a byte is seen, the code of the NYT leaf is written followed by the
+ * byte itself, and the NYT leaf is split into a new NYT leaf and a leaf for
+ * the byte. An extra {@link #END_OF_CONTENT} symbol marks the end of the
+ * packed content, so the number of bytes does not need to be known first.
+ *
+ * Every node has an order number, higher nearer the root, and the weights
+ * never decrease with increasing order (the sibling property). Before a
+ * node's weight is incremented, it is swapped with the highest ordered node
+ * of the same weight, which keeps the tree a Huffman tree.
+ */
+public class AdaptiveHuffmanCode
+{
+    /** the symbol that marks the end of the packed content. */
+    public static final int END_OF_CONTENT = 1 << Byte.SIZE;
+
+    /** the number of symbols, each byte value and END_OF_CONTENT. */
+    private static final int SYMBOL_COUNT = END_OF_CONTENT + 1;
+
+    /** the number of bits for a symbol written after the NYT code. */
+    private static final int SYMBOL_BITS = Byte.SIZE + 1;
+
+    /** the most nodes, a leaf and a non-leaf for every symbol plus NYT. */
+    private static final int MAX_NODES = 2 * SYMBOL_COUNT + 1;
+
+    /** the value for no node or no symbol. */
+    private static final int NONE = -1;
+
+    /** the weight of each node. */
+    private final long[] weight = new long[MAX_NODES];
+
+    /** the parent of each node. */
+    private final int[] parent = new int[MAX_NODES];
+
+    /** the left (zero) child of each node, NONE for a leaf. */
+    private final int[] left = new int[MAX_NODES];
+
+    /** the right (one) child of each node, NONE for a leaf. */
+    private final int[] right = new int[MAX_NODES];
+
+    /** the symbol of each leaf, NONE for non-leaf and NYT nodes. */
+    private final int[] symbolOfNode = new int[MAX_NODES];
+
+    /** the order number of each node. */
+    private final int[] orderOfNode = new int[MAX_NODES];
+
+    /** the node with each order number. */
+    private final int[] nodeOfOrder = new int[MAX_NODES];
+
+    /** the leaf of each symbol, NONE for symbols not seen yet. */
+    private final int[] leafOfSymbol = new int[SYMBOL_COUNT];
+
+    /** the bits from a leaf up to the root, used while writing a code. */
+    private final int[] pathBits = new int[MAX_NODES];
+
+    /** the number of nodes in use. */
+    private int nodeCount = 0;
+
+    /** the leaf for symbols not seen yet. */
+    private int notYetTransmitted;
+
+    /** the root node. */
+    private final int root;
+
+    /**
+     * Constructor for a tree with just the NYT leaf.
+     */
+    public AdaptiveHuffmanCode()
+    {
+        Arrays.fill(nodeOfOrder, NONE);
+        Arrays.fill(leafOfSymbol, NONE);
+
+        root = createNode(NONE, MAX_NODES - 1, NONE);
+        notYetTransmitted = root;
+    }
+
+    /**
+     * Add a new node to the tree.
+     *
+     * @param symbol the symbol of a leaf, NONE otherwise
+     * @param order the order number of the node
+     * @param parentNode the parent of the node, NONE for the root
+     * @return the new node
+     */
+    private int createNode(int symbol, int order, int parentNode)
+    {
+        int node = nodeCount++;
+        weight[node] = 0;
+        parent[node] = parentNode;
+        left[node] = NONE;
+        right[node] = NONE;
+        symbolOfNode[node] = symbol;
+        orderOfNode[node] = order;
+        nodeOfOrder[order] = node;
+        return node;
+    }
+
+    /**
+     * Write the code of a symbol, then update the tree for it.
+     *
+     * @param symbol a byte value from 0 to 255, or END_OF_CONTENT
+     * @param packedStream the stream to write the code to
+     * @throws IOException in case of write error
+     */
+    public void encode(int symbol, BitOutputStream packedStream) throws IOException
+    {
+        int leaf = leafOfSymbol[symbol];
+        if (leaf == NONE)
+        {
+            writePath(notYetTransmitted, packedStream);
+            packedStream.writeBits(symbol, SYMBOL_BITS);
+        }
+        else
+        {
+            writePath(leaf, packedStream);
+        }
+
+        update(symbol);
+    }
+
+    /**
+     * Read the code of a symbol, then update the tree for it.
+     *
+     * @param packedStream the stream to read the code from
+     * @return a byte value from 0 to 255, or END_OF_CONTENT
+     * @throws IOException in case of read error
+     */
+    public int decode(BitInputStream packedStream) throws IOException
+    {
+        // arbitrarily the left child is the false bit
+        int node = root;
+        while (left[node] != NONE)
+        {
+            node = packedStream.readBit() ? right[node] : left[node];
+        }
+
+        int symbol = (node == notYetTransmitted) ?
+            (int)packedStream.readBits(SYMBOL_BITS) : symbolOfNode[node];
+        if (symbol >= SYMBOL_COUNT)
+        {
+            throw new IOException("Packed data contains an unknown symbol: " + symbol);
+        }
+
+        update(symbol);
+        return symbol;
+    }
+
+    /**
+     * Write the bits of the path from the root down to a node.
+     *
+     * @param node the node to write the path to
+     * @param packedStream the stream to write to
+     * @throws IOException in case of write error
+     */
+    private void writePath(int node, BitOutputStream packedStream) throws IOException
+    {
+        int depth = 0;
+        for (int child = node; child != root; child = parent[child])
+        {
+            pathBits[depth++] = (right[parent[child]] == child) ? 1 : 0;
+        }
+
+        // write from the root down, as many bits at once as will fit
+        while (depth > 0)
+        {
+            int length = Math.min(depth, Long.SIZE);
+            long code = 0;
+            for (int i = 0; i < length; ++i)
+            {
+                code = (code << 1) | pathBits[--depth];
+            }
+            packedStream.writeBits(code, length);
+        }
+    }
+
+    /**
+     * Increment the weight of a symbol's leaf and its ancestors, swapping
+     * nodes to keep the sibling property. A symbol seen for the first time
+     * gets a new leaf split off the NYT leaf.
+     *
+     * @param symbol the symbol that was just coded
+     */
+    private void update(int symbol)
+    {
+        int node = leafOfSymbol[symbol];
+        if (node == NONE)
+        {
+            // the old NYT leaf becomes the parent of the new NYT leaf and
+            // the new leaf for the symbol
+            int oldNotYetTransmitted = notYetTransmitted;
+            int order = orderOfNode[oldNotYetTransmitted];
+            node = createNode(symbol, order - 1, oldNotYetTransmitted);
+            notYetTransmitted = createNode(NONE, order - 2, oldNotYetTransmitted);
+            left[oldNotYetTransmitted] = notYetTransmitted;
+            right[oldNotYetTransmitted] = node;
+            leafOfSymbol[symbol] = node;
+        }
+
+        while (true)
+        {
+            int leader = findBlockLeader(node);
+            if (leader != node && leader != parent[node])
+            {
+                swapNodes(node, leader);
+            }
+
+            ++weight[node];
+            if (node == root)
+            {
+                break;
+            }
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Find the node with the highest order number with the same weight.
+     *
+     * @param node the node to start from
+     * @return the leader of the node's block of equal weights
+     */
+    private int findBlockLeader(int node)
+    {
+        int order = orderOfNode[node];
+        while (order + 1 < MAX_NODES && nodeOfOrder[order + 1] != NONE &&
+            weight[nodeOfOrder[order + 1]] == weight[node])
+        {
+            ++order;
+        }
+        return nodeOfOrder[order];
+    }
+
+    /**
+     * Swap the positions of two nodes, and the subtrees below them, in the
+     * tree and in the ordering.
+     *
+     * @param node1 a node that is not the root
+     * @param node2 another node that is not the root or node1's parent
+     */
+    private void swapNodes(int node1, int node2)
+    {
+        int parent1 = parent[node1];
+        int parent2 = parent[node2];
+        if (parent1 == parent2)
+        {
+            int leftChild = left[parent1];
+            left[parent1] = right[parent1];
+            right[parent1] = leftChild;
+        }
+        else
+        {
+            replaceChild(parent1, node1, node2);
+            replaceChild(parent2, node2, node1);
+            parent[node1] = parent2;
+            parent[node2] = parent1;
+        }
+
+        int order1 = orderOfNode[node1];
+        int order2 = orderOfNode[node2];
+        orderOfNode[node1] = order2;
+        orderOfNode[node2] = order1;
+        nodeOfOrder[order1] = node2;
+        nodeOfOrder[order2] = node1;
+    }
+
+    /**
+     * Replace one child of a node with another node.
+     *
+     * @param parentNode the parent node
+     * @param oldChild the child to replace
+     * @param newChild the node to replace it with
+     */
+    private void replaceChild(int parentNode, int oldChild, int newChild)
+    {
+        if (left[parentNode] == oldChild)
+        {
+            left[parentNode] = newChild;
+        }
+        else
+        {
+            right[parentNode] = newChild;
+        }
+    }
+}
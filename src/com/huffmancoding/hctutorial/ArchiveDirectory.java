@@ -0,0 +1,382 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The central directory at the end of a {@link PackedArchive}. It records
+ * where each member of the archive is, so that one member can be unpacked
+ * by seeking to it instead of unpacking every member before it.
+ *
+ * A member either carries its own code, being a whole packed stream with a
+ * {@link PackedHeader}, or it is packed with a code that it shares with the
+ * other members of its ConverterType. The shared codes are written once,
+ * before the members, and the directory records where each of them is.
+ *
+ * The last 8 bytes of an archive are the position of the directory, so that
+ * a reader can find it without reading the members.
+ */
+public class ArchiveDirectory
+{
+    /** the code index of a member that carries its own code. */
+    public static final int OWN_CODE = -1;
+
+    /**
+     * The location and size of one member.
+     */
+    public static class Member
+    {
+        /** the name of the member, with '/' between directories. */
+        private final String name;
+
+        /** the type of StreamConverter used for the member's content. */
+        private final ConverterType converterType;
+
+        /** the index of the shared code the member is packed with, or {@link #OWN_CODE}. */
+        private final int codeIndex;
+
+        /** the position of the member in the archive. */
+        private final long packedOffset;
+
+        /** the number of bytes of the member in the archive. */
+        private final long packedLength;
+
+        /** the number of objects packed with a shared code, 0 with its own code. */
+        private final long objectCount;
+
+        /** the number of bytes of the member's original content. */
+        private final long unpackedLength;
+
+        /**
+         * Constructor.
+         *
+         * @param memberName the name of the member
+         * @param type the type of StreamConverter used for the content
+         * @param code the index of the shared code, or {@link #OWN_CODE}
+         * @param packedPosition the position of the member in the archive
+         * @param packedSize the number of bytes in the archive
+         * @param objects the number of objects packed with a shared code
+         * @param unpackedSize the number of bytes of original content
+         */
+        public Member(String memberName, ConverterType type, int code, long packedPosition,
+            long packedSize, long objects, long unpackedSize)
+        {
+            name = memberName;
+            converterType = type;
+            codeIndex = code;
+            packedOffset = packedPosition;
+            packedLength = packedSize;
+            objectCount = objects;
+            unpackedLength = unpackedSize;
+        }
+
+        /**
+         * Returns the name of the member.
+         *
+         * @return the name, with '/' between directories
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the type of StreamConverter used for the member's content.
+         *
+         * @return the ConverterType
+         */
+        public ConverterType getConverterType()
+        {
+            return converterType;
+        }
+
+        /**
+         * Returns the index of the shared code the member is packed with.
+         *
+         * @return the index in {@link ArchiveDirectory#getSharedCodes()}, or {@link #OWN_CODE}
+         */
+        public int getCodeIndex()
+        {
+            return codeIndex;
+        }
+
+        /**
+         * Returns the position of the member in the archive.
+         *
+         * @return the byte offset
+         */
+        public long getPackedOffset()
+        {
+            return packedOffset;
+        }
+
+        /**
+         * Returns the number of bytes of the member in the archive.
+         *
+         * @return the packed length
+         */
+        public long getPackedLength()
+        {
+            return packedLength;
+        }
+
+        /**
+         * Returns the number of objects of a member packed with a shared
+         * code. A member with its own code stores the count itself.
+         *
+         * @return the object count, 0 for a member with its own code
+         */
+        public long getObjectCount()
+        {
+            return objectCount;
+        }
+
+        /**
+         * Returns the number of bytes of the member's original content.
+         *
+         * @return the unpacked length
+         */
+        public long getUnpackedLength()
+        {
+            return unpackedLength;
+        }
+    }
+
+    /**
+     * The location of a code shared by the members of one ConverterType.
+     */
+    public static class SharedCode
+    {
+        /** the type of StreamConverter of the objects of the code. */
+        private final ConverterType converterType;
+
+        /** the charset of the characters of the code, null if not characters. */
+        private final Charset charset;
+
+        /** the position of the code in the archive. */
+        private final long packedOffset;
+
+        /**
+         * Constructor.
+         *
+         * @param type the type of StreamConverter of the objects of the code
+         * @param codeCharset the charset of the characters of the code, null if not characters
+         * @param packedPosition the position of the code in the archive
+         */
+        public SharedCode(ConverterType type, Charset codeCharset, long packedPosition)
+        {
+            converterType = type;
+            charset = codeCharset;
+            packedOffset = packedPosition;
+        }
+
+        /**
+         * Returns the type of StreamConverter of the objects of the code.
+         *
+         * @return the ConverterType
+         */
+        public ConverterType getConverterType()
+        {
+            return converterType;
+        }
+
+        /**
+         * Returns the charset of the characters of the code.
+         *
+         * @return the charset, null if not characters or not recorded
+         */
+        public Charset getCharset()
+        {
+            return charset;
+        }
+
+        /**
+         * Returns the position of the code in the archive.
+         *
+         * @return the byte offset
+         */
+        public long getPackedOffset()
+        {
+            return packedOffset;
+        }
+    }
+
+    /** the codes shared by members, in the order they are in the archive. */
+    private final List<SharedCode> sharedCodes = new ArrayList<>();
+
+    /** the members in the order they are in the archive. */
+    private final List<Member> members = new ArrayList<>();
+
+    /**
+     * Add a shared code to the directory.
+     *
+     * @param sharedCode the location of the code
+     * @return the index of the code, for the members packed with it
+     */
+    public int addSharedCode(SharedCode sharedCode)
+    {
+        sharedCodes.add(sharedCode);
+        return sharedCodes.size() - 1;
+    }
+
+    /**
+     * Add the next member to the directory.
+     *
+     * @param member the location and size of the member
+     */
+    public void addMember(Member member)
+    {
+        members.add(member);
+    }
+
+    /**
+     * Returns the codes shared by members.
+     *
+     * @return the shared codes by index
+     */
+    public List<SharedCode> getSharedCodes()
+    {
+        return sharedCodes;
+    }
+
+    /**
+     * Returns the members in the order they are in the archive.
+     *
+     * @return the entry for each member
+     */
+    public List<Member> getMembers()
+    {
+        return members;
+    }
+
+    /**
+     * Returns the member with a name.
+     *
+     * @param name the name of the member
+     * @return the member, null if the archive has none with the name
+     */
+    public Member findMember(String name)
+    {
+        return members.stream().filter(member -> member.name.equals(name)).findFirst().orElse(null);
+    }
+
+    /**
+     * Write the directory after the last member, followed by its position.
+     *
+     * @param packedStream the stream to write the directory to
+     * @throws IOException in case of write error
+     */
+    public void write(BitOutputStream packedStream) throws IOException
+    {
+        long directoryPosition = packedStream.getBytesWritten();
+
+        packedStream.writeVarLong(sharedCodes.size());
+        for (SharedCode sharedCode : sharedCodes)
+        {
+            packedStream.writeByte(sharedCode.converterType.toSignifier());
+            packedStream.writeUTF(sharedCode.charset == null ? "" : sharedCode.charset.name());
+            packedStream.writeVarLong(sharedCode.packedOffset);
+        }
+
+        packedStream.writeVarLong(members.size());
+        for (Member member : members)
+        {
+            packedStream.writeUTF(member.name);
+            packedStream.writeByte(member.converterType.toSignifier());
+            // shifted by one so that a member's own code is written as 0
+            packedStream.writeVarLong(member.codeIndex + 1);
+            packedStream.writeVarLong(member.packedOffset);
+            packedStream.writeVarLong(member.packedLength);
+            packedStream.writeVarLong(member.objectCount);
+            packedStream.writeVarLong(member.unpackedLength);
+        }
+
+        packedStream.writeLong(directoryPosition);
+    }
+
+    /**
+     * Read the directory from the end of an archive.
+     *
+     * @param packedChannel the channel of the archive
+     * @param version the version of the archive format
+     * @return the directory of the members
+     * @throws IOException in case of read error or a corrupt directory
+     */
+    public static ArchiveDirectory read(FileChannel packedChannel, int version) throws IOException
+    {
+        long directoryEnd = packedChannel.size() - Long.BYTES;
+        if (directoryEnd < 0)
+        {
+            throw new IOException("Archive is too short to have a directory");
+        }
+
+        long directoryPosition = ByteBuffer.wrap(
+            BlockIndex.readBytes(packedChannel, directoryEnd, Long.BYTES)).getLong();
+        if (directoryPosition < 0 || directoryPosition > directoryEnd)
+        {
+            throw new IOException("Corrupt archive directory position: " + directoryPosition);
+        }
+
+        byte[] directoryBytes = BlockIndex.readBytes(packedChannel, directoryPosition,
+            (int)(directoryEnd - directoryPosition));
+        try (BitInputStream is = new BitInputStream(new ByteArrayInputStream(directoryBytes)))
+        {
+            ArchiveDirectory directory = new ArchiveDirectory();
+            long codeCount = is.readVarLong();
+            for (long i = 0; i < codeCount; ++i)
+            {
+                ConverterType type = ConverterType.fromSignifier(is.readByte());
+                Charset charset = null;
+                if (version >= PackedArchive.CHARSET_VERSION)
+                {
+                    String charsetName = is.readUTF();
+                    charset = charsetName.isEmpty() ? null : Charset.forName(charsetName);
+                }
+                directory.addSharedCode(new SharedCode(type, charset, is.readVarLong()));
+            }
+
+            long memberCount = is.readVarLong();
+            for (long i = 0; i < memberCount; ++i)
+            {
+                String name = is.readUTF();
+                ConverterType type = ConverterType.fromSignifier(is.readByte());
+                int codeIndex = (int)is.readVarLong() - 1;
+                if (codeIndex >= codeCount)
+                {
+                    throw new IOException("Archive member " + name + " has an unknown code: " + codeIndex);
+                }
+
+                directory.addMember(new Member(name, type, codeIndex, is.readVarLong(),
+                    is.readVarLong(), is.readVarLong(), is.readVarLong()));
+            }
+            return directory;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * This packs many files into one {@link PackedArchive}, followed by an
+ * {@link ArchiveDirectory} of where each member is.
+ *
+ * Each member normally carries its own code: it is written just like a
+ * packed file, with its own {@link PackedHeader}, so it can be any
+ * ConverterType and packed with any single pass options. Small files pay
+ * a lot for their own code though, so the members can instead share one
+ * code for each ConverterType. The objects of every member of the type are
+ * counted together for the shared code, which is written once before the
+ * members, and each member is then just its packed bits and its checksum.
+ */
+public class ArchivePacker
+{
+    /** the choices of how to pack the members. */
+    private final PackOptions options;
+
+    /** whether members of the same ConverterType share one code. */
+    private final boolean sharingCodes;
+
+    /** the file of each member, by the name of the member. */
+    private final Map<String, File> memberFiles = new LinkedHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param packOptions the choices of how to pack the members
+     * @param shareCodes true to pack the members of each ConverterType with one code
+     */
+    public ArchivePacker(PackOptions packOptions, boolean shareCodes)
+    {
+        if (packOptions.getBlockSize() > 0 || packOptions.getSyncInterval() > 0)
+        {
+            // the indexes are found from the end of a file, not of a member
+            throw new IllegalArgumentException("Members of an archive cannot be packed in blocks or with sync points");
+        }
+
+        if (shareCodes && packOptions.getDictionary() != null)
+        {
+            throw new IllegalArgumentException("Members packed with a dictionary already share its code");
+        }
+
+        options = packOptions;
+        sharingCodes = shareCodes;
+    }
+
+    /**
+     * Returns the name of the member for a file: its path without any root
+     * or leading "..", with '/' between directories.
+     *
+     * @param file the path of the file
+     * @return the member name
+     */
+    public static String getMemberName(Path file)
+    {
+        Path normalized = file.normalize();
+        if (normalized.getRoot() != null)
+        {
+            normalized = normalized.getRoot().relativize(normalized);
+        }
+
+        StringJoiner name = new StringJoiner("/");
+        for (Path part : normalized)
+        {
+            // a normalized path only has ".." at its start
+            if (!part.toString().equals(".."))
+            {
+                name.add(part.toString());
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Add a file to be packed as a member of the archive.
+     *
+     * @param file the file to pack
+     * @throws IllegalArgumentException if the archive already has a member of the same name
+     */
+    public void addMember(Path file)
+    {
+        String name = getMemberName(file);
+        if (memberFiles.putIfAbsent(name, file.toFile()) != null)
+        {
+            throw new IllegalArgumentException("Archive already has a member named " + name);
+        }
+    }
+
+    /**
+     * Pack every member into an archive, and verify the archive with the
+     * {@link PackOptions#getVerifyMode()}. Any mode but NONE unpacks each
+     * member from the archive once it is written.
+     *
+     * @param archiveFile the archive to write
+     * @return the directory of the members in the archive
+     * @throws IOException in case of File error, or an archive that does not verify
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public ArchiveDirectory packArchive(File archiveFile)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Packing archive: " + archiveFile);
+
+        PackerFactory factory = new PackerFactory();
+        Map<String, ConverterType> memberTypes = new HashMap<>();
+        for (Map.Entry<String, File> memberFile : memberFiles.entrySet())
+        {
+            ConverterType type = options.getConverterType();
+            if (type == null)
+            {
+                type = factory.probeConverterType(memberFile.getValue().toPath(), options.getCharset());
+            }
+            memberTypes.put(memberFile.getKey(), type);
+        }
+
+        ArchiveDirectory directory = new ArchiveDirectory();
+        Map<String, byte[]> originalDigests = new HashMap<>();
+        try (BitOutputStream os = new BitOutputStream(new FileOutputStream(archiveFile)))
+        {
+            PackedArchive.writeHeader(os, options.getChecksumType());
+
+            List<FilePacker<?>> sharedPackers = new ArrayList<>();
+            Map<ConverterType, Integer> codeIndexes = new HashMap<>();
+            if (sharingCodes)
+            {
+                writeSharedCodes(memberTypes, directory, sharedPackers, codeIndexes, os);
+            }
+
+            for (Map.Entry<String, File> memberFile : memberFiles.entrySet())
+            {
+                String name = memberFile.getKey();
+                ConverterType type = memberTypes.get(name);
+                Integer codeIndex = codeIndexes.get(type);
+                byte[] digest = codeIndex != null ?
+                    packSharedMember(name, memberFile.getValue(), type, codeIndex,
+                        sharedPackers.get(codeIndex), directory, os) :
+                    packOwnMember(name, memberFile.getValue(), type, directory, os);
+                originalDigests.put(name, digest);
+            }
+
+            // the directory goes at the very end, so it can be found from there
+            directory.write(os);
+        }
+
+        long unpackedBytes = directory.getMembers().stream()
+            .mapToLong(ArchiveDirectory.Member::getUnpackedLength).sum();
+        System.out.println("Archive members: " + directory.getMembers().size() +
+            ", shared codes: " + directory.getSharedCodes().size() +
+            ", original bytes: " + unpackedBytes + ", archive bytes: " + archiveFile.length());
+
+        if (options.getVerifyMode() != VerifyMode.NONE)
+        {
+            verifyArchive(archiveFile, originalDigests);
+        }
+        return directory;
+    }
+
+    /**
+     * Count the objects of all the members of each ConverterType that can
+     * share a code, and write the code for each type.
+     *
+     * @param memberTypes the ConverterType of each member, by name
+     * @param directory the directory to add the shared codes to
+     * @param sharedPackers the packers of the shared codes, filled by code index
+     * @param codeIndexes the index of the shared code of each type, filled
+     * @param os the stream of the archive
+     * @throws IOException in case of read or write error
+     */
+    private void writeSharedCodes(Map<String, ConverterType> memberTypes, ArchiveDirectory directory,
+        List<FilePacker<?>> sharedPackers, Map<ConverterType, Integer> codeIndexes,
+        BitOutputStream os) throws IOException
+    {
+        PackerFactory factory = new PackerFactory();
+        Map<ConverterType, FilePacker<?>> packersByType = new LinkedHashMap<>();
+        for (Map.Entry<String, File> memberFile : memberFiles.entrySet())
+        {
+            ConverterType type = memberTypes.get(memberFile.getKey());
+            if (type == ConverterType.ADAPTIVE_BYTE)
+            {
+                // an adaptive code is never written, so it cannot be shared
+                continue;
+            }
+
+            FilePacker<?> packer = packersByType.computeIfAbsent(type,
+                t -> factory.createFilePacker(t, null, options));
+            try (InputStream is = new FileInputStream(memberFile.getValue()))
+            {
+                packer.countObjects(is);
+            }
+        }
+
+        for (Map.Entry<ConverterType, FilePacker<?>> typePacker : packersByType.entrySet())
+        {
+            FilePacker<?> packer = typePacker.getValue();
+            buildHuffmanTree(packer);
+
+            int codeIndex = directory.addSharedCode(
+                new ArchiveDirectory.SharedCode(typePacker.getKey(), packer.getCharset(), os.getBytesWritten()));
+            packer.writeHuffmanTree(os);
+            sharedPackers.add(packer);
+            codeIndexes.put(typePacker.getKey(), codeIndex);
+        }
+    }
+
+    /**
+     * Build the Huffman tree from the objects a packer has counted.
+     *
+     * @param packer the packer that counted the objects
+     */
+    private static <T> void buildHuffmanTree(FilePacker<T> packer)
+    {
+        packer.mergeNodesIntoTree(packer.createQueuesOfLeafNodes());
+    }
+
+    /**
+     * Pack a member with the code it shares with the other members of its
+     * type: just its packed bits followed by its checksum.
+     *
+     * @param name the name of the member
+     * @param file the file of the member
+     * @param type the type of StreamConverter of the member
+     * @param codeIndex the index of the shared code
+     * @param packer the packer that wrote the shared code
+     * @param directory the directory to add the member to
+     * @param os the stream of the archive
+     * @return the checksum of the member's original content
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private byte[] packSharedMember(String name, File file, ConverterType type, int codeIndex,
+        FilePacker<?> packer, ArchiveDirectory directory, BitOutputStream os)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Packing member: " + name + " with shared code " + codeIndex);
+
+        long packedOffset = os.getBytesWritten();
+        MessageDigest digest = packer.createDigest();
+        long objectCount;
+        try (InputStream is = new DigestInputStream(new FileInputStream(file), digest))
+        {
+            objectCount = packer.writeObjects(is, os);
+        }
+        byte[] checksum = packer.writeChecksum(digest, os);
+
+        directory.addMember(new ArchiveDirectory.Member(name, type, codeIndex, packedOffset,
+            os.getBytesWritten() - packedOffset, objectCount, file.length()));
+        return checksum;
+    }
+
+    /**
+     * Pack a member with its own code, just like a packed file.
+     *
+     * @param name the name of the member
+     * @param file the file of the member
+     * @param type the type of StreamConverter of the member
+     * @param directory the directory to add the member to
+     * @param os the stream of the archive
+     * @return the checksum of the member's original content
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private byte[] packOwnMember(String name, File file, ConverterType type,
+        ArchiveDirectory directory, BitOutputStream os)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Packing member: " + name);
+
+        long packedOffset = os.getBytesWritten();
+        FilePacker<?> packer = new PackerFactory().createFilePacker(type, file, options);
+        packer.createPackedHeader(type).write(os);
+        byte[] checksum = packer.packStream(os);
+
+        directory.addMember(new ArchiveDirectory.Member(name, type, ArchiveDirectory.OWN_CODE,
+            packedOffset, os.getBytesWritten() - packedOffset, 0, file.length()));
+        return checksum;
+    }
+
+    /**
+     * Check that every member of the archive unpacks to its original content.
+     *
+     * @param archiveFile the archive that was written
+     * @param originalDigests the checksum of each member's original content, by name
+     * @throws IOException if a member does not unpack to its original content
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private static void verifyArchive(File archiveFile, Map<String, byte[]> originalDigests)
+        throws IOException, NoSuchAlgorithmException
+    {
+        try (PackedArchive archive = new PackedArchive(archiveFile))
+        {
+            for (ArchiveDirectory.Member member : archive.getMembers())
+            {
+                byte[] unpackedDigest = archive.unpackMember(member, new NullOutputStream());
+                if (!MessageDigest.isEqual(originalDigests.get(member.getName()), unpackedDigest))
+                {
+                    throw new IOException("Archive member " + member.getName() +
+                        " does not unpack to its original content");
+                }
+            }
+            System.out.println("Archive verified: " + archive.getMembers().size() + " members");
+        }
+    }
+}
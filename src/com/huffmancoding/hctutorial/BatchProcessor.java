@@ -0,0 +1,300 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This packs or unpacks many files in one run, so the cost of starting the
+ * JVM and warming up its compiler is paid once instead of once per file.
+ *
+ * The files are given as paths of files, directories that are searched for
+ * files, or glob patterns such as "docs/**.txt". The files are packed or
+ * unpacked concurrently by a fixed number of threads. Packing is mostly
+ * CPU work, so by default there is a thread for each processor. Each file
+ * is reported as it finishes, then a summary of the throughput and errors.
+ */
+public class BatchProcessor
+{
+    /** the number of bytes in a megabyte, for the throughput. */
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    /** the number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The outcome of packing or unpacking one file.
+     */
+    private static class FileResult
+    {
+        /** the file that was packed or unpacked. */
+        private final Path file;
+
+        /** the number of bytes read from the file. */
+        private long inputBytes = 0;
+
+        /** the number of bytes written to the packed or unpacked file. */
+        private long outputBytes = 0;
+
+        /** the time it took, in nanoseconds. */
+        private long elapsedNanos = 0;
+
+        /** the reason the file could not be packed or unpacked, null if it was. */
+        private Exception error = null;
+
+        /**
+         * Constructor.
+         *
+         * @param resultFile the file that was packed or unpacked
+         */
+        public FileResult(Path resultFile)
+        {
+            file = resultFile;
+        }
+    }
+
+    /** the choices of how to pack the files. */
+    private final PackOptions options;
+
+    /** whether the files are unpacked instead of packed. */
+    private final boolean unpacking;
+
+    /** the number of files packed or unpacked at the same time. */
+    private final int threadCount;
+
+    /** the stream the results are reported to. */
+    private final PrintStream report;
+
+    /** the files to pack or unpack. */
+    private final FileSelection selection;
+
+    /**
+     * Constructor.
+     *
+     * @param packOptions the choices of how to pack the files
+     * @param unpack true to unpack packed files instead of packing files
+     * @param threads the number of files packed or unpacked at the same time
+     * @param reportStream the stream to report the results to
+     */
+    public BatchProcessor(PackOptions packOptions, boolean unpack, int threads,
+        PrintStream reportStream)
+    {
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+
+        options = packOptions;
+        unpacking = unpack;
+        threadCount = threads;
+        report = reportStream;
+        selection = new FileSelection(unpack);
+    }
+
+    /**
+     * Returns the number of threads to use when none is chosen.
+     *
+     * @return a thread for each processor
+     */
+    public static int getDefaultThreadCount()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Add the files of a path to the batch. A directory adds all the files
+     * under it that are to be packed, or unpacked, and a glob pattern adds
+     * them from the directory at the start of the pattern. A file is added
+     * as it is.
+     *
+     * @param pathOrPattern the path of a file or directory, or a glob pattern
+     * @throws IOException if a directory could not be searched
+     */
+    public void addFiles(String pathOrPattern) throws IOException
+    {
+        selection.addFiles(pathOrPattern);
+    }
+
+    /**
+     * Returns the number of files in the batch.
+     *
+     * @return the number of files to pack or unpack
+     */
+    public int getFileCount()
+    {
+        return selection.getFiles().size();
+    }
+
+    /**
+     * Pack, or unpack, all the files of the batch concurrently. Each file is
+     * reported when it is done, followed by a summary of them all.
+     *
+     * @return true if every file was packed or unpacked
+     * @throws InterruptedException if interrupted while waiting for the files
+     */
+    public boolean run() throws InterruptedException
+    {
+        Set<Path> files = selection.getFiles();
+        report.println((unpacking ? "Unpacking " : "Packing ") + files.size() +
+            " files with " + threadCount + " threads");
+
+        long startNanos = System.nanoTime();
+        List<FileResult> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try
+        {
+            CompletionService<FileResult> completion = new ExecutorCompletionService<>(executor);
+            for (Path file : files)
+            {
+                completion.submit(() -> processFile(file));
+            }
+
+            for (int i = 0; i < files.size(); ++i)
+            {
+                FileResult result = completion.take().get();
+                reportFile(result);
+                results.add(result);
+            }
+        }
+        catch (ExecutionException ex)
+        {
+            // processFile catches the exceptions of a file, so this is a bug
+            throw new IllegalStateException("Batch task failed", ex.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return reportSummary(results, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Pack or unpack one file, on one of the threads.
+     *
+     * @param file the file to pack or unpack
+     * @return the outcome
+     */
+    private FileResult processFile(Path file)
+    {
+        FileResult result = new FileResult(file);
+        long startNanos = System.nanoTime();
+        try
+        {
+            File inputFile = file.toFile();
+            File outputFile;
+            if (unpacking)
+            {
+                outputFile = HuffmanTutorial.getUnpackedFile(inputFile);
+                FileUnpacker.unpackFile(inputFile, outputFile);
+            }
+            else
+            {
+                outputFile = HuffmanTutorial.getPackedFile(inputFile);
+                FilePacker.packFile(inputFile, outputFile, options);
+            }
+
+            result.inputBytes = inputFile.length();
+            result.outputBytes = outputFile.length();
+        }
+        catch (Exception ex)
+        {
+            result.error = ex;
+        }
+        result.elapsedNanos = System.nanoTime() - startNanos;
+        return result;
+    }
+
+    /**
+     * Report the outcome of one file.
+     *
+     * @param result the outcome
+     */
+    private void reportFile(FileResult result)
+    {
+        if (result.error == null)
+        {
+            report.println("ok   " + result.file + " " + result.inputBytes + " -> " +
+                result.outputBytes + " bytes in " + result.elapsedNanos / 1000000 + " ms");
+        }
+        else
+        {
+            report.println("FAIL " + result.file + ": " + result.error);
+        }
+    }
+
+    /**
+     * Report the totals and the throughput of the batch, and every error.
+     *
+     * @param results the outcome of each file
+     * @param elapsedNanos the time the whole batch took
+     * @return true if there were no errors
+     */
+    private boolean reportSummary(List<FileResult> results, long elapsedNanos)
+    {
+        long inputBytes = 0;
+        long outputBytes = 0;
+        List<FileResult> failures = new ArrayList<>();
+        for (FileResult result : results)
+        {
+            if (result.error == null)
+            {
+                inputBytes += result.inputBytes;
+                outputBytes += result.outputBytes;
+            }
+            else
+            {
+                failures.add(result);
+            }
+        }
+
+        // throughput is measured in original bytes, whichever way they went
+        long originalBytes = unpacking ? outputBytes : inputBytes;
+        long packedBytes = unpacking ? inputBytes : outputBytes;
+        double seconds = elapsedNanos / NANOS_PER_SECOND;
+
+        report.println((unpacking ? "Unpacked " : "Packed ") + (results.size() - failures.size()) +
+            " of " + results.size() + " files in " + String.format("%.2f", seconds) + " s");
+        report.println("Original bytes: " + originalBytes + ", packed bytes: " + packedBytes +
+            (originalBytes == 0 ? "" : String.format(" (%.1f%%)", 100.0 * packedBytes / originalBytes)));
+        report.println(String.format("Throughput: %.1f files/s, %.2f MB/s",
+            results.size() / seconds, originalBytes / BYTES_PER_MB / seconds));
+        report.println("Errors: " + failures.size());
+        for (FileResult failure : failures)
+        {
+            report.println("  " + failure.file + ": " + failure.error);
+        }
+
+        return failures.isEmpty();
+    }
+}
@@ -23,13 +23,24 @@ package com.huffmancoding.hctutorial;
 ******************************************************************************/
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * A DataInputStream that allows individual bits to be read.
- * The underlying stream is read a byte at a time into the unreadByte
- * and the bits are returned from the highest bit to the lowest.
+ * The underlying stream is read in large blocks into a buffer, and bytes
+ * from the buffer are moved into a 64-bit register as bits are needed. The
+ * bits are returned from the highest bit to the lowest.
+ *
+ * Several bits can be looked at without consuming them with
+ * {@link #peekBits(int)}, which lets a decoder look up a whole code in a
+ * table and then {@link #skipBits(int)} only the bits that the code used.
+ *
+ * The byte-oriented read methods of DataInputStream read through the same
+ * register and buffer. They skip the rest of a partially read byte, so
+ * bytes always start on a byte boundary, and they return the whole bytes
+ * that were moved into the register before they read from the buffer.
  *
  * @author Ken Huffman
  */
@@ -38,12 +49,205 @@ public class BitInputStream extends DataInputStream
     /** the highest order bit of a serialized byte. */
     private static final int HIGH_BIT_OF_BYTE = Byte.MAX_VALUE+1;
 
-    /** the byte currently being parsed. */
-    int unreadByte = 0;
+    /** the number of bytes read from the wrapped stream at a time. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** the most bits that can be peeked at once. */
+    public static final int MAX_PEEK_BITS = Long.SIZE - Byte.SIZE + 1;
+
+    /**
+     * This sits between the DataInputStream and the wrapped InputStream,
+     * buffering the bytes read and the bits that have not been consumed.
+     */
+    private static class BitSource extends InputStream
+    {
+        /** the wrapped InputStream. */
+        private final InputStream in;
+
+        /** the bytes read from the wrapped stream. */
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /** the position of the next byte in the buffer. */
+        private int position = 0;
+
+        /** the number of bytes in the buffer. */
+        private int limit = 0;
+
+        /** the bits read but not yet consumed, aligned to the highest bit. */
+        private long bitRegister = 0;
+
+        /** the number of bits in the bitRegister that came from the stream. */
+        private int bitCount = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param wrapped the InputStream to read from
+         */
+        public BitSource(InputStream wrapped)
+        {
+            in = wrapped;
+        }
+
+        /**
+         * Refill the buffer from the wrapped stream once it is used up.
+         *
+         * @return true if there are bytes in the buffer, false at end of stream
+         * @throws IOException in case of read error.
+         */
+        private boolean fillBuffer() throws IOException
+        {
+            while (position == limit)
+            {
+                int bytesRead = in.read(buffer);
+                if (bytesRead < 0)
+                {
+                    return false;
+                }
+
+                position = 0;
+                limit = bytesRead;
+            }
+            return true;
+        }
+
+        /**
+         * Move whole bytes from the buffer into the register until it is
+         * full or the stream ends.
+         *
+         * @throws IOException in case of read error.
+         */
+        private void fillRegister() throws IOException
+        {
+            while (bitCount <= Long.SIZE - Byte.SIZE)
+            {
+                if (position == limit && !fillBuffer())
+                {
+                    // the register is already zero beyond the bits read
+                    break;
+                }
+
+                bitRegister |= (buffer[position++] & 0xFFL) << (Long.SIZE - Byte.SIZE - bitCount);
+                bitCount += Byte.SIZE;
+            }
+        }
+
+        /**
+         * Return the next bits without consuming them.
+         *
+         * @param numberOfBits the number of bits to look at
+         * @return the bits in the low end of the value
+         * @throws IOException in case of read error.
+         */
+        public long peekBits(int numberOfBits) throws IOException
+        {
+            if (bitCount < numberOfBits)
+            {
+                fillRegister();
+            }
+
+            return numberOfBits == 0 ? 0 : bitRegister >>> (Long.SIZE - numberOfBits);
+        }
+
+        /**
+         * Consume bits that have been looked at.
+         *
+         * @param numberOfBits the number of bits to consume
+         * @throws IOException if the stream ended before that many bits.
+         */
+        public void skipBits(int numberOfBits) throws IOException
+        {
+            if (numberOfBits > bitCount)
+            {
+                throw new EOFException("Attempt to read past the end of the bits");
+            }
+
+            bitRegister = numberOfBits == Long.SIZE ? 0 : bitRegister << numberOfBits;
+            bitCount -= numberOfBits;
+        }
+
+        /**
+         * Skip the rest of a partially consumed byte.
+         */
+        private void alignToByte()
+        {
+            int partialBits = bitCount % Byte.SIZE;
+            bitRegister <<= partialBits;
+            bitCount -= partialBits;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            alignToByte();
+            if (bitCount > 0)
+            {
+                int b = (int)(bitRegister >>> (Long.SIZE - Byte.SIZE));
+                skipBits(Byte.SIZE);
+                return b;
+            }
+
+            if (!fillBuffer())
+            {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+
+            alignToByte();
+            int bytesRead = 0;
+            while (bitCount > 0 && bytesRead < length)
+            {
+                bytes[offset + bytesRead++] = (byte)(bitRegister >>> (Long.SIZE - Byte.SIZE));
+                skipBits(Byte.SIZE);
+            }
+
+            if (bytesRead < length && (bytesRead == 0 ? fillBuffer() : position < limit))
+            {
+                int fromBuffer = Math.min(length - bytesRead, limit - position);
+                System.arraycopy(buffer, position, bytes, offset + bytesRead, fromBuffer);
+                position += fromBuffer;
+                bytesRead += fromBuffer;
+            }
 
-    /** the position within the unread byte to read next.
-        0 means the next byte should be read into unreadByte first. */
-    int bitPosition = 0;
+            return bytesRead == 0 ? -1 : bytesRead;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int available() throws IOException
+        {
+            return bitCount / Byte.SIZE + (limit - position) + in.available();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    /** the buffer for bytes and bits, which is also the DataInputStream's stream. */
+    private final BitSource bitSource;
 
     /**
      * Constructor.
@@ -52,7 +256,38 @@ public class BitInputStream extends DataInputStream
      */
     protected BitInputStream(InputStream in)
     {
-        super(in);
+        super(new BitSource(in));
+        bitSource = (BitSource)this.in;
+    }
+
+    /**
+     * Read a number written with {@link BitOutputStream#writeVarLong(long)}.
+     *
+     * @return the number read
+     * @throws IOException in case of read error.
+     */
+    public long readVarLong() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7)
+        {
+            int nextByte = readUnsignedByte();
+            value |= (long)(nextByte & 0x7F) << shift;
+            if ((nextByte & HIGH_BIT_OF_BYTE) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    /**
+     * Skip the rest of a partially read byte, the padding written by
+     * {@link BitOutputStream#alignToByte()}.
+     */
+    public void alignToByte()
+    {
+        bitSource.alignToByte();
     }
 
     /**
@@ -63,15 +298,44 @@ public class BitInputStream extends DataInputStream
      */
     public boolean readBit() throws IOException
     {
-        if (bitPosition == 0)
-        {
-            unreadByte = super.readByte();
-            bitPosition = HIGH_BIT_OF_BYTE;
-        }
+        return readBits(1) != 0;
+    }
 
-        boolean bit = ((unreadByte & bitPosition) != 0);
-        bitPosition >>= 1;
+    /**
+     * Read several bits at once, the first bit being the highest.
+     *
+     * @param numberOfBits the number of bits to read, up to {@link #MAX_PEEK_BITS}
+     * @return the bits in the low end of the value
+     * @throws IOException in case of read error or end of stream.
+     */
+    public long readBits(int numberOfBits) throws IOException
+    {
+        long bits = bitSource.peekBits(numberOfBits);
+        bitSource.skipBits(numberOfBits);
+        return bits;
+    }
 
-        return bit;
+    /**
+     * Return the next bits of the stream without consuming them. If the
+     * stream ends before that many bits, the missing low bits are zero.
+     *
+     * @param numberOfBits the number of bits to look at, up to {@link #MAX_PEEK_BITS}
+     * @return the bits in the low end of the value, the first bit being the highest
+     * @throws IOException in case of read error.
+     */
+    public long peekBits(int numberOfBits) throws IOException
+    {
+        return bitSource.peekBits(numberOfBits);
+    }
+
+    /**
+     * Consume bits that have been looked at with {@link #peekBits(int)}.
+     *
+     * @param numberOfBits the number of bits to consume
+     * @throws IOException if the stream ended before that many bits.
+     */
+    public void skipBits(int numberOfBits) throws IOException
+    {
+        bitSource.skipBits(numberOfBits);
     }
 }
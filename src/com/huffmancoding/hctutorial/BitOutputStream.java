@@ -29,8 +29,13 @@ import java.io.OutputStream;
 /**
  * This is a DataOutputStream that allows individual bits to be written to
  * an OutputStream. Bits are accumulated from the highest to lowest bits of
- * a byte (128, 64, 32, 16, 8, 4, 2, 1). After 8 bits are written the byte
- * is flushed as a byte.
+ * a 64-bit register. When the register is full it is spilled as 8 bytes into
+ * a buffer, and the buffer is written to the wrapped OutputStream when it is
+ * full or flushed.
+ *
+ * The byte-oriented write methods of DataOutputStream go through the same
+ * buffer. Any bits that have not filled a byte are written first, padded
+ * with zero bits, so bytes always start on a byte boundary.
  *
  * @author Ken Huffman
  */
@@ -39,11 +44,220 @@ public class BitOutputStream extends DataOutputStream
     /** the highest order bit of a serialized byte. */
     private static final int HIGH_BIT_OF_BYTE = Byte.MAX_VALUE+1;
 
-    /** the byte as it accumulates before being written. */
-    int unwrittenByte = 0;
+    /** the number of bytes buffered before they are written. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * This sits between the DataOutputStream and the wrapped OutputStream,
+     * buffering both the accumulated bits and the bytes written to it.
+     */
+    private static class BitBuffer extends OutputStream
+    {
+        /** the wrapped OutputStream. */
+        private final OutputStream out;
+
+        /** the bytes that have not been written to the wrapped stream. */
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /** the number of bytes in the buffer. */
+        private int byteCount = 0;
+
+        /** the number of bytes already written to the wrapped stream. */
+        private long bytesFlushed = 0;
+
+        /** the accumulated bits that have not been spilled, in the low bits. */
+        private long bitRegister = 0;
+
+        /** the number of bits in the bitRegister. */
+        private int bitCount = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param wrapped the OutputStream to write to
+         */
+        public BitBuffer(OutputStream wrapped)
+        {
+            out = wrapped;
+        }
+
+        /**
+         * Add bits to the register, spilling it to the buffer when it fills.
+         *
+         * @param code the bits to write, in the low bits
+         * @param length the number of bits to write
+         * @throws IOException in case of write errors.
+         */
+        public void writeBits(long code, int length) throws IOException
+        {
+            int freeBits = Long.SIZE - bitCount;
+            if (length < freeBits)
+            {
+                bitRegister = (bitRegister << length) | code;
+                bitCount += length;
+            }
+            else
+            {
+                // fill the register with the high bits of the code, spill it
+                // and keep the remaining low bits of the code
+                int remainingBits = length - freeBits;
+                spillLong((bitRegister << freeBits) | (code >>> remainingBits));
+                bitRegister = code & ((1L << remainingBits) - 1);
+                bitCount = remainingBits;
+            }
+        }
+
+        /**
+         * Write the 8 bytes of a long to the buffer, highest byte first.
+         *
+         * @param word the bits to write
+         * @throws IOException in case of write errors.
+         */
+        private void spillLong(long word) throws IOException
+        {
+            if (byteCount + Long.BYTES > buffer.length)
+            {
+                flushBuffer();
+            }
+
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE)
+            {
+                buffer[byteCount++] = (byte)(word >>> shift);
+            }
+        }
+
+        /**
+         * Move the bits in the register to the buffer, padding the last
+         * byte with zero bits, so that the next write is on a byte boundary.
+         *
+         * @throws IOException in case of write errors.
+         */
+        private void alignToByte() throws IOException
+        {
+            if (bitCount > 0)
+            {
+                long word = bitRegister << (Long.SIZE - bitCount);
+                for (int bitsLeft = bitCount; bitsLeft > 0; bitsLeft -= Byte.SIZE)
+                {
+                    if (byteCount == buffer.length)
+                    {
+                        flushBuffer();
+                    }
+                    buffer[byteCount++] = (byte)(word >>> (Long.SIZE - Byte.SIZE));
+                    word <<= Byte.SIZE;
+                }
+
+                bitRegister = 0;
+                bitCount = 0;
+            }
+        }
+
+        /**
+         * Write the buffered bytes to the wrapped stream.
+         *
+         * @throws IOException in case of write errors.
+         */
+        private void flushBuffer() throws IOException
+        {
+            if (byteCount > 0)
+            {
+                out.write(buffer, 0, byteCount);
+                bytesFlushed += byteCount;
+                byteCount = 0;
+            }
+        }
+
+        /**
+         * Returns the number of bytes written, counting accumulated bits
+         * as the whole bytes they will be padded to.
+         *
+         * @return the number of bytes
+         */
+        public long getBytesWritten()
+        {
+            return bytesFlushed + byteCount + (bitCount + Byte.SIZE - 1) / Byte.SIZE;
+        }
+
+        /**
+         * Returns the number of bits written, including the accumulated
+         * bits that are not yet a whole byte.
+         *
+         * @return the number of bits
+         */
+        public long getBitsWritten()
+        {
+            return (bytesFlushed + byteCount) * Byte.SIZE + bitCount;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(int b) throws IOException
+        {
+            alignToByte();
+            if (byteCount == buffer.length)
+            {
+                flushBuffer();
+            }
+            buffer[byteCount++] = (byte)b;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            alignToByte();
+            if (length >= buffer.length)
+            {
+                // too big to buffer, don't bother copying it
+                flushBuffer();
+                out.write(bytes, offset, length);
+                bytesFlushed += length;
+            }
+            else
+            {
+                if (byteCount + length > buffer.length)
+                {
+                    flushBuffer();
+                }
+                System.arraycopy(bytes, offset, buffer, byteCount, length);
+                byteCount += length;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void flush() throws IOException
+        {
+            alignToByte();
+            flushBuffer();
+            out.flush();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
 
-    /** the bit mask to be written to next. */
-    int bitPosition = HIGH_BIT_OF_BYTE;
+    /** the buffer for bits and bytes, which is also the DataOutputStream's stream. */
+    private final BitBuffer bitBuffer;
 
     /**
      * Constructor.
@@ -52,7 +266,8 @@ public class BitOutputStream extends DataOutputStream
      */
     public BitOutputStream(OutputStream out)
     {
-        super(out);
+        super(new BitBuffer(out));
+        bitBuffer = (BitBuffer)this.out;
     }
 
     /**
@@ -63,31 +278,71 @@ public class BitOutputStream extends DataOutputStream
      */
     public void writeBit(boolean bit) throws IOException
     {
-        if (bit)
-        {
-            unwrittenByte += bitPosition;
-        }
+        bitBuffer.writeBits(bit ? 1 : 0, 1);
+    }
 
-        bitPosition >>= 1;
-        if (bitPosition == 0)
-        {
-            flush();
-        }
+    /**
+     * Write several bits at once, such as the whole code of an object.
+     * The highest of the bits is written first.
+     *
+     * @param code the bits to write, in the low bits with all higher bits zero
+     * @param length the number of bits to write, up to 64
+     * @throws IOException in case of write errors.
+     */
+    public void writeBits(long code, int length) throws IOException
+    {
+        bitBuffer.writeBits(code, length);
     }
 
     /**
-     * Write the accumulated bits to the underlying stream
+     * Pad the bits written so far with zero bits to a whole byte, so that
+     * what follows starts on a byte boundary.
+     *
+     * @throws IOException in case of write errors.
      */
-    @Override
-    public void flush() throws IOException
+    public void alignToByte() throws IOException
     {
-        if (bitPosition != HIGH_BIT_OF_BYTE)
+        bitBuffer.alignToByte();
+    }
+
+    /**
+     * Returns the number of bytes written to this stream so far. Unlike
+     * {@link #size()} this includes the bits, counting accumulated bits as
+     * the whole bytes they will be padded to.
+     *
+     * @return the position in the stream of the next byte
+     */
+    public long getBytesWritten()
+    {
+        return bitBuffer.getBytesWritten();
+    }
+
+    /**
+     * Returns the number of bits written to this stream so far, so that the
+     * position of a code in the middle of a byte can be recorded.
+     *
+     * @return the position in the stream of the next bit
+     */
+    public long getBitsWritten()
+    {
+        return bitBuffer.getBitsWritten();
+    }
+
+    /**
+     * Write a non-negative number in as few bytes as it needs. Each byte
+     * holds 7 bits of the number, lowest first, and the high bit of the
+     * byte is set if more bytes follow.
+     *
+     * @param value the number to write
+     * @throws IOException in case of write errors.
+     */
+    public void writeVarLong(long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
         {
-            super.writeByte(unwrittenByte);
-            unwrittenByte = 0;
-            bitPosition = HIGH_BIT_OF_BYTE;
+            writeByte((int)(value & 0x7F) | HIGH_BIT_OF_BYTE);
+            value >>>= 7;
         }
-
-        super.flush();
+        writeByte((int)value);
     }
 }
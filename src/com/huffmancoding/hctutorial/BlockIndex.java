@@ -0,0 +1,305 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * When a file is packed in blocks, each block of the original file is
+ * encoded on its own, starting on a byte boundary. This index, written
+ * after the last block, records where each block is in the packed file,
+ * how many objects it has and how many bytes it unpacks to. With it, the
+ * blocks can be found and decoded independently of each other. Each entry
+ * also has the checksum of the block's original content, so a block can be
+ * checked on its own.
+ *
+ * The last 8 bytes of a packed file with blocks are the position of the
+ * index, so that a reader can find it without decoding the blocks.
+ */
+public class BlockIndex
+{
+    /**
+     * The location and size of one block.
+     */
+    public static class Entry
+    {
+        /** the position of the block in the packed file. */
+        private final long packedOffset;
+
+        /** the number of bytes of the block in the packed file. */
+        private final int packedLength;
+
+        /** the number of objects in the block. */
+        private final long objectCount;
+
+        /** the position of the block's first byte in the original file. */
+        private final long unpackedOffset;
+
+        /** the number of bytes of the block in the original file. */
+        private final int unpackedLength;
+
+        /** the checksum of the block's original content, empty if none. */
+        private final byte[] checksum;
+
+        /**
+         * Constructor.
+         *
+         * @param packedPosition the position of the block in the packed file
+         * @param packedSize the number of bytes in the packed file
+         * @param objects the number of objects in the block
+         * @param unpackedPosition the position of the block in the original file
+         * @param unpackedSize the number of bytes in the original file
+         * @param blockChecksum the checksum of the original content
+         */
+        private Entry(long packedPosition, int packedSize, long objects,
+            long unpackedPosition, int unpackedSize, byte[] blockChecksum)
+        {
+            packedOffset = packedPosition;
+            packedLength = packedSize;
+            objectCount = objects;
+            unpackedOffset = unpackedPosition;
+            unpackedLength = unpackedSize;
+            checksum = blockChecksum;
+        }
+
+        /**
+         * Returns the position of the block in the packed file.
+         *
+         * @return the byte offset
+         */
+        public long getPackedOffset()
+        {
+            return packedOffset;
+        }
+
+        /**
+         * Returns the number of bytes of the block in the packed file.
+         *
+         * @return the packed length
+         */
+        public int getPackedLength()
+        {
+            return packedLength;
+        }
+
+        /**
+         * Returns the number of objects in the block.
+         *
+         * @return the object count
+         */
+        public long getObjectCount()
+        {
+            return objectCount;
+        }
+
+        /**
+         * Returns the position of the block's first byte in the original file.
+         *
+         * @return the byte offset
+         */
+        public long getUnpackedOffset()
+        {
+            return unpackedOffset;
+        }
+
+        /**
+         * Returns the number of bytes of the block in the original file.
+         *
+         * @return the unpacked length
+         */
+        public int getUnpackedLength()
+        {
+            return unpackedLength;
+        }
+
+        /**
+         * Returns the checksum of the block's original content.
+         *
+         * @return the checksum, empty if the block has none
+         */
+        public byte[] getChecksum()
+        {
+            return checksum;
+        }
+    }
+
+    /** the position of the first block in the packed file. */
+    private final long firstBlockOffset;
+
+    /** the blocks in the order they are in both files. */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param firstBlockPosition the position of the first block in the packed file
+     */
+    public BlockIndex(long firstBlockPosition)
+    {
+        firstBlockOffset = firstBlockPosition;
+    }
+
+    /**
+     * Add the next block to the index.
+     *
+     * @param packedLength the number of bytes of the block in the packed file
+     * @param objectCount the number of objects in the block
+     * @param unpackedLength the number of bytes of the block in the original file
+     * @param checksum the checksum of the block's original content, empty if none
+     */
+    public void addBlock(int packedLength, long objectCount, int unpackedLength, byte[] checksum)
+    {
+        long packedOffset = firstBlockOffset;
+        long unpackedOffset = 0;
+        if (!entries.isEmpty())
+        {
+            Entry last = entries.get(entries.size()-1);
+            packedOffset = last.packedOffset + last.packedLength;
+            unpackedOffset = last.unpackedOffset + last.unpackedLength;
+        }
+
+        entries.add(new Entry(packedOffset, packedLength, objectCount,
+            unpackedOffset, unpackedLength, checksum));
+    }
+
+    /**
+     * Returns the blocks in the order they are in both files.
+     *
+     * @return the entry for each block
+     */
+    public List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Returns the position in the packed file just after the last block.
+     *
+     * @return the byte offset of the end of the blocks
+     */
+    public long getPackedEnd()
+    {
+        if (entries.isEmpty())
+        {
+            return firstBlockOffset;
+        }
+
+        Entry last = entries.get(entries.size()-1);
+        return last.packedOffset + last.packedLength;
+    }
+
+    /**
+     * Returns the number of bytes in the original file.
+     *
+     * @return the sum of the unpacked length of each block
+     */
+    public long getUnpackedSize()
+    {
+        return entries.stream().mapToLong(Entry::getUnpackedLength).sum();
+    }
+
+    /**
+     * Write the index after the last block, followed by its position.
+     *
+     * @param packedStream the stream to write the index to
+     * @throws IOException in case of write error
+     */
+    public void write(BitOutputStream packedStream) throws IOException
+    {
+        long indexPosition = packedStream.getBytesWritten();
+
+        packedStream.writeVarLong(firstBlockOffset);
+        packedStream.writeVarLong(entries.size());
+        for (Entry entry : entries)
+        {
+            packedStream.writeVarLong(entry.packedLength);
+            packedStream.writeVarLong(entry.objectCount);
+            packedStream.writeVarLong(entry.unpackedLength);
+            packedStream.write(entry.checksum);
+        }
+
+        packedStream.writeLong(indexPosition);
+    }
+
+    /**
+     * Read the index from the end of a packed file.
+     *
+     * @param packedChannel the channel of the packed file
+     * @param checksumLength the number of bytes of each block's checksum
+     * @return the index of the blocks
+     * @throws IOException in case of read error
+     */
+    public static BlockIndex read(FileChannel packedChannel, int checksumLength) throws IOException
+    {
+        long indexEnd = packedChannel.size() - Long.BYTES;
+        long indexPosition = ByteBuffer.wrap(readBytes(packedChannel, indexEnd, Long.BYTES)).getLong();
+        if (indexPosition < 0 || indexPosition > indexEnd)
+        {
+            throw new IOException("Corrupt block index position: " + indexPosition);
+        }
+
+        byte[] indexBytes = readBytes(packedChannel, indexPosition, (int)(indexEnd - indexPosition));
+        try (BitInputStream is = new BitInputStream(new ByteArrayInputStream(indexBytes)))
+        {
+            BlockIndex index = new BlockIndex(is.readVarLong());
+            long blockCount = is.readVarLong();
+            for (long i = 0; i < blockCount; ++i)
+            {
+                int packedLength = (int)is.readVarLong();
+                long objectCount = is.readVarLong();
+                int unpackedLength = (int)is.readVarLong();
+                byte[] checksum = new byte[checksumLength];
+                is.readFully(checksum);
+                index.addBlock(packedLength, objectCount, unpackedLength, checksum);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Read bytes from a position of a file.
+     *
+     * @param channel the channel to read from
+     * @param position the position of the first byte
+     * @param length the number of bytes to read
+     * @return the bytes read
+     * @throws IOException in case of read error or end of file
+     */
+    static byte[] readBytes(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new EOFException("Packed file ends before " + (position + length));
+            }
+        }
+        return buffer.array();
+    }
+}
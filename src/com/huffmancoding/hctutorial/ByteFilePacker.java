@@ -0,0 +1,292 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * This is a FilePacker for files of bytes. There are only 256 different
+ * bytes, so instead of looking up a LeafNode for every byte read, the bytes
+ * are read in large buffers and counted in a simple array. The LeafNodes are
+ * only created once, after the whole file has been counted.
+ */
+public class ByteFilePacker extends FilePacker<Byte>
+{
+    /** the number of different byte values. */
+    static final int BYTE_VALUES = 1 << Byte.SIZE;
+
+    /** the number of bytes read from the file at a time. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Initialize ByteFilePacker with input file.
+     *
+     * @param inputFile the file to pack.
+     * @param packOptions the choices of how to pack the file
+     */
+    protected ByteFilePacker(File inputFile, PackOptions packOptions)
+    {
+        super(inputFile, new ByteStreamConverter(), packOptions);
+    }
+
+    /**
+     * Counts the bytes in the input and adds a LeafNode for each unique byte.
+     *
+     * @throws IOException when the input is not readable
+     */
+    @Override
+    protected void createIndividualLeafNodes() throws IOException
+    {
+        System.out.println("Analyzing file: " + getSourceFile());
+
+        long[] byteCounts = new long[BYTE_VALUES];
+        byte[] buffer = new byte[BUFFER_SIZE];
+        if (getMappedFile() != null)
+        {
+            // count from the mapping, without any read calls
+            for (ByteBuffer window : getMappedFile().getWindows())
+            {
+                while (window.hasRemaining())
+                {
+                    int bytesRead = Math.min(buffer.length, window.remaining());
+                    window.get(buffer, 0, bytesRead);
+                    countBytes(buffer, bytesRead, byteCounts);
+                }
+            }
+        }
+        else
+        {
+            try (InputStream is = new FileInputStream(getSourceFile()))
+            {
+                countBytes(is, buffer, byteCounts);
+            }
+        }
+
+        addCountedLeafNodes(byteCounts);
+    }
+
+    /**
+     * Counts the bytes in a stream and adds a LeafNode for each unique byte.
+     *
+     * @param is the stream of original content to count
+     * @throws IOException when the input is not readable
+     */
+    @Override
+    protected void countObjects(InputStream is) throws IOException
+    {
+        long[] byteCounts = new long[BYTE_VALUES];
+        countBytes(is, new byte[BUFFER_SIZE], byteCounts);
+        addCountedLeafNodes(byteCounts);
+    }
+
+    /**
+     * Add every byte value that was not counted, so a dictionary can code any byte.
+     */
+    @Override
+    protected void addUnseenObjects()
+    {
+        for (int value = 0; value < BYTE_VALUES; ++value)
+        {
+            addUnseenObject((byte)value);
+        }
+    }
+
+    /**
+     * Add a LeafNode for each byte value that was counted.
+     *
+     * @param byteCounts the counts indexed by unsigned byte value
+     */
+    private void addCountedLeafNodes(long[] byteCounts)
+    {
+        for (int value = 0; value < BYTE_VALUES; ++value)
+        {
+            if (byteCounts[value] != 0)
+            {
+                addCountedLeafNode((byte)value, byteCounts[value]);
+            }
+        }
+    }
+
+    /**
+     * Add the bytes of a stream to the count of each byte value.
+     *
+     * @param is the stream to count
+     * @param buffer the buffer to read the stream into
+     * @param byteCounts the counts indexed by unsigned byte value
+     * @throws IOException when the input is not readable
+     */
+    private static void countBytes(InputStream is, byte[] buffer, long[] byteCounts)
+        throws IOException
+    {
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) >= 0)
+        {
+            countBytes(buffer, bytesRead, byteCounts);
+        }
+    }
+
+    /**
+     * Add the bytes of a buffer to the count of each byte value.
+     *
+     * @param buffer the bytes to count
+     * @param length the number of bytes in the buffer
+     * @param byteCounts the counts indexed by unsigned byte value
+     */
+    private static void countBytes(byte[] buffer, int length, long[] byteCounts)
+    {
+        for (int i = 0; i < length; ++i)
+        {
+            ++byteCounts[buffer[i] & 0xFF];
+        }
+    }
+
+    /**
+     * Read the bytes of an input stream in large buffers, and write each
+     * byte's code with a single lookup in tables indexed by the byte.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to the compress bits for the bytes.
+     * @return the number of bytes written
+     * @throws IOException in case of read or write error
+     */
+    @Override
+    protected long writeObjects(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        long[] codeByByte = new long[BYTE_VALUES];
+        int[] lengthByByte = new int[BYTE_VALUES];
+        fillCodeTables(codeByByte, lengthByByte);
+
+        long objectCount = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) >= 0)
+        {
+            writeBuffer(buffer, bytesRead, objectCount, codeByByte, lengthByByte, packedStream);
+            objectCount += bytesRead;
+        }
+        return objectCount;
+    }
+
+    /**
+     * Encode the bytes from the memory mapping, a buffer's worth at a time,
+     * updating the digest from the buffer just before it is encoded.
+     *
+     * @param mapped the memory mapped original file
+     * @param digest the digest to update with the original content
+     * @param packedStream the stream to the compress bits for the bytes.
+     * @return the number of bytes written
+     * @throws IOException in case of write error
+     */
+    @Override
+    protected long writeMappedObjects(MappedFile mapped, MessageDigest digest,
+        BitOutputStream packedStream) throws IOException
+    {
+        long[] codeByByte = new long[BYTE_VALUES];
+        int[] lengthByByte = new int[BYTE_VALUES];
+        fillCodeTables(codeByByte, lengthByByte);
+
+        long objectCount = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (ByteBuffer window : mapped.getWindows())
+        {
+            while (window.hasRemaining())
+            {
+                int bytesRead = Math.min(buffer.length, window.remaining());
+                window.get(buffer, 0, bytesRead);
+                digest.update(buffer, 0, bytesRead);
+                writeBuffer(buffer, bytesRead, objectCount, codeByByte, lengthByByte, packedStream);
+                objectCount += bytesRead;
+            }
+        }
+        return objectCount;
+    }
+
+    /**
+     * Encode a buffer of bytes, stopping to record a sync point before any
+     * byte that has one.
+     *
+     * @param buffer the bytes to encode
+     * @param length the number of bytes in the buffer
+     * @param firstObject the index in the file of the first byte of the buffer
+     * @param codeByByte the code of each byte
+     * @param lengthByByte the number of bits in the code of each byte
+     * @param packedStream the stream to the compress bits for the bytes.
+     * @throws IOException in case of write error or a byte that was not counted
+     */
+    private void writeBuffer(byte[] buffer, int length, long firstObject, long[] codeByByte,
+        int[] lengthByByte, BitOutputStream packedStream) throws IOException
+    {
+        int i = 0;
+        while (i < length)
+        {
+            long untilSync = getNextSyncObject() - (firstObject + i);
+            if (untilSync == 0)
+            {
+                addSyncPoint(packedStream);
+                continue;
+            }
+
+            int end = i + (int)Math.min(untilSync, length - i);
+            for (; i < end; ++i)
+            {
+                int value = buffer[i] & 0xFF;
+                int codeLength = lengthByByte[value];
+                if (codeLength < 0)
+                {
+                    // such as a byte added after the file was counted
+                    writeEscapedObject((byte)value, packedStream);
+                }
+                else
+                {
+                    packedStream.writeBits(codeByByte[value], codeLength);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fill tables, indexed by the unsigned byte, with the canonical code and
+     * its length for each byte.
+     *
+     * @param codeByByte the code of each byte
+     * @param lengthByByte the number of bits in the code of each byte, -1 for a byte without a code
+     */
+    private void fillCodeTables(long[] codeByByte, int[] lengthByByte)
+    {
+        // a code can have no bits when there is only one byte
+        Arrays.fill(lengthByByte, -1);
+        CanonicalCode<Byte> canonicalCode = getCanonicalCode();
+        for (int i = 0; i < canonicalCode.size(); ++i)
+        {
+            int value = canonicalCode.getObject(i) & 0xFF;
+            codeByByte[value] = canonicalCode.getCode(i);
+            lengthByByte[value] = canonicalCode.getLength(i);
+        }
+    }
+}
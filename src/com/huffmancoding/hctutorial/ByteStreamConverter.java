@@ -76,7 +76,9 @@ public class ByteStreamConverter implements StreamConverter<Byte>
         @Override
         public Byte next()
         {
-            return (byte)(nextByte > Byte.MAX_VALUE ? nextByte - 256 : nextByte); // -128 to 127
+            byte value = (byte)nextByte; // -128 to 127
+            nextByte = readNextByte();
+            return value;
         }
 
         /**
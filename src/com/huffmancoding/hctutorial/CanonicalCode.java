@@ -0,0 +1,323 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A canonical Huffman code only depends on how long the code of each object
+ * is, not on the exact shape of the Huffman tree. The objects are ordered
+ * by their code length, then by the object comparator, and the codes are
+ * handed out by counting upward in that order, adding a zero bit whenever
+ * the length increases.
+ *
+ * This means the packed file only needs to say how many objects have each
+ * code length followed by the objects in order. Both the packer and
+ * unpacker rebuild exactly the same codes, and the unpacker never needs
+ * to create TreeNodes.
+ *
+ * @param <T> The type of Object in the file.
+ */
+public class CanonicalCode<T>
+{
+    /** the longest code that fits in the long of each code. */
+    public static final int MAX_CODE_LENGTH = Long.SIZE;
+
+    /** the objects ordered by their code length then by their comparator. */
+    private final List<T> objects;
+
+    /** the number of bits in the code for each object. */
+    private final int[] lengths;
+
+    /** the code for each object, in the low bits. */
+    private final long[] codes;
+
+    /**
+     * Constructor.
+     *
+     * @param orderedObjects the objects ordered by code length then comparator
+     * @param codeLengths the number of bits in the code for each object
+     */
+    private CanonicalCode(List<T> orderedObjects, int[] codeLengths)
+    {
+        objects = orderedObjects;
+        lengths = codeLengths;
+        codes = new long[lengths.length];
+
+        long code = 0;
+        for (int i = 1; i < lengths.length; ++i)
+        {
+            // count upward, and add zero bits when the code gets longer
+            code = (code + 1) << (lengths[i] - lengths[i-1]);
+            codes[i] = code;
+        }
+    }
+
+    /**
+     * Create the canonical code with the same code lengths as the leaf nodes
+     * of a Huffman tree.
+     *
+     * @param huffmanTree the tree built from the original data, can be null
+     * @param objectComparator the comparator for objects with the same length
+     * @return the canonical code
+     */
+    public static <T> CanonicalCode<T> fromTree(TreeNode<T> huffmanTree,
+        Comparator<T> objectComparator)
+    {
+        List<LeafNode<T>> leafNodes = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        if (huffmanTree != null)
+        {
+            addSubTreeDepths(huffmanTree, 0, leafNodes, depths);
+        }
+
+        return fromLengths(leafNodes, depths, objectComparator);
+    }
+
+    /**
+     * Create the canonical code with the fewest total bits for the
+     * frequencies of the leaf nodes, where no code is longer than a
+     * maximum. The lengths are found with {@link PackageMerge}.
+     *
+     * @param leafNodes the leaf node of each object with its frequency
+     * @param maxLength the longest code length allowed
+     * @param objectComparator the comparator for objects with the same frequency or length
+     * @return the canonical code
+     * @throws IllegalArgumentException if there are too many objects for the maximum length
+     */
+    public static <T> CanonicalCode<T> fromFrequencies(Collection<LeafNode<T>> leafNodes,
+        int maxLength, Comparator<T> objectComparator)
+    {
+        List<LeafNode<T>> sortedNodes = new ArrayList<>(leafNodes);
+        sortedNodes.sort(Comparator.comparingLong(LeafNode<T>::getFrequency)
+            .thenComparing(LeafNode::getObject, objectComparator));
+
+        long[] frequencies = sortedNodes.stream().mapToLong(LeafNode::getFrequency).toArray();
+        int[] lengths = PackageMerge.computeLengths(frequencies, maxLength);
+
+        List<Integer> lengthList = new ArrayList<>(lengths.length);
+        for (int length : lengths)
+        {
+            lengthList.add(length);
+        }
+        return fromLengths(sortedNodes, lengthList, objectComparator);
+    }
+
+    /**
+     * Create the canonical code for leaf nodes with known code lengths.
+     *
+     * @param leafNodes the leaf node of each object
+     * @param depths the code length of each leaf node
+     * @param objectComparator the comparator for objects with the same length
+     * @return the canonical code
+     */
+    static <T> CanonicalCode<T> fromLengths(List<LeafNode<T>> leafNodes,
+        List<Integer> depths, Comparator<T> objectComparator)
+    {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < leafNodes.size(); ++i)
+        {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(depths::get)
+            .thenComparing(i -> leafNodes.get(i).getObject(), objectComparator));
+
+        List<T> orderedObjects = new ArrayList<>(order.size());
+        int[] codeLengths = new int[order.size()];
+        for (int i = 0; i < order.size(); ++i)
+        {
+            orderedObjects.add(leafNodes.get(order.get(i)).getObject());
+            codeLengths[i] = depths.get(order.get(i));
+        }
+
+        return new CanonicalCode<>(orderedObjects, codeLengths);
+    }
+
+    /**
+     * Recursively walk a TreeNode adding the depth of each leaf node.
+     *
+     * @param node the node to continue walking down
+     * @param depth the number of branches down to the node
+     * @param leafNodes the leaf nodes found so far
+     * @param depths the depths of the leaf nodes found so far
+     */
+    private static <T> void addSubTreeDepths(TreeNode<T> node, int depth,
+        List<LeafNode<T>> leafNodes, List<Integer> depths)
+    {
+        if (node instanceof NonLeafNode<T> nonLeafNode)
+        {
+            addSubTreeDepths(nonLeafNode.getLeft(), depth + 1, leafNodes, depths);
+            addSubTreeDepths(nonLeafNode.getRight(), depth + 1, leafNodes, depths);
+        }
+        else if (node instanceof LeafNode<T> leafNode)
+        {
+            leafNodes.add(leafNode);
+            depths.add(depth);
+        }
+        else
+        {
+            // if we got here, the node is corrupt
+            throw new RuntimeException("Unknown TreeNode type: " + node.getClass().getName());
+        }
+    }
+
+    /**
+     * Returns the number of objects with a code.
+     *
+     * @return the number of objects
+     */
+    public int size()
+    {
+        return objects.size();
+    }
+
+    /**
+     * Returns an object by its index in the canonical order.
+     *
+     * @param index the index of the object
+     * @return the object
+     */
+    public T getObject(int index)
+    {
+        return objects.get(index);
+    }
+
+    /**
+     * Returns the code for an object.
+     *
+     * @param index the index of the object
+     * @return the code in the low bits
+     */
+    public long getCode(int index)
+    {
+        return codes[index];
+    }
+
+    /**
+     * Returns the number of bits in the code for an object.
+     *
+     * @param index the index of the object
+     * @return the code length
+     */
+    public int getLength(int index)
+    {
+        return lengths[index];
+    }
+
+    /**
+     * Returns the number of bits in the longest code.
+     *
+     * @return the longest code length, 0 if there are no codes
+     */
+    public int getMaxLength()
+    {
+        return lengths.length == 0 ? 0 : lengths[lengths.length-1];
+    }
+
+    /**
+     * Returns the code for an object as a string of zeros and ones.
+     *
+     * @param index the index of the object
+     * @return the bits of the code, highest first
+     */
+    public String getCodeString(int index)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int bit = lengths[index] - 1; bit >= 0; --bit)
+        {
+            builder.append(((codes[index] >>> bit) & 1) != 0 ? '1' : '0');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Create a table-driven decoder for the codes.
+     *
+     * @return the decoder
+     */
+    public HuffmanDecoder<T> createDecoder()
+    {
+        return new HuffmanDecoder<>(objects, codes, lengths);
+    }
+
+    /**
+     * Serialize the code so a reader will be able to decode the packed bits
+     * that follow. The longest code length is written first, then the number
+     * of objects with each length (starting at zero, which is only used when
+     * there is just one object), then the objects in canonical order.
+     *
+     * @param packedStream the stream to serialize the code to
+     * @param converter the converter that knows how to write the objects
+     * @throws IOException in case of write error.
+     */
+    public void write(BitOutputStream packedStream, StreamConverter<T> converter)
+        throws IOException
+    {
+        int maxLength = getMaxLength();
+        packedStream.writeByte(maxLength);
+
+        int[] countByLength = new int[maxLength+1];
+        for (int length : lengths)
+        {
+            ++countByLength[length];
+        }
+        for (int count : countByLength)
+        {
+            packedStream.writeVarLong(count);
+        }
+
+        converter.writeHuffmanTreeObjects(packedStream, objects);
+    }
+
+    /**
+     * De-serialize a code written with {@link #write(BitOutputStream, StreamConverter)}.
+     *
+     * @param packedStream the stream to read the code from
+     * @param converter the converter that knows how to read the objects
+     * @return the code from the file
+     * @throws IOException in case of read error.
+     */
+    public static <T> CanonicalCode<T> read(BitInputStream packedStream,
+        StreamConverter<T> converter) throws IOException
+    {
+        int maxLength = packedStream.readUnsignedByte();
+
+        List<Integer> lengthList = new ArrayList<>();
+        for (int length = 0; length <= maxLength; ++length)
+        {
+            long count = packedStream.readVarLong();
+            for (long i = 0; i < count; ++i)
+            {
+                lengthList.add(length);
+            }
+        }
+
+        List<T> orderedObjects = converter.readHuffmanTreeObjects(packedStream, lengthList.size());
+
+        return new CanonicalCode<>(orderedObjects,
+            lengthList.stream().mapToInt(Integer::intValue).toArray());
+    }
+}
@@ -0,0 +1,189 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * This is a FilePacker for files of characters. A char has only 65536
+ * values, so like the {@link ByteFilePacker} the characters are counted in
+ * an array and encoded with tables indexed by the character, instead of a
+ * map lookup for every character. The characters are decoded a large buffer
+ * at a time by a {@link CharacterStreamConverter.ChunkDecoder}.
+ */
+public class CharacterFilePacker extends FilePacker<Character>
+{
+    /** the number of different char values. */
+    static final int CHAR_VALUES = 1 << Character.SIZE;
+
+    /** the charset of the original file. */
+    private final Charset charset;
+
+    /** the code of each character, filled when the Huffman tree is written. */
+    private long[] codeByChar;
+
+    /** the number of bits in the code of each character, -1 if it has none. */
+    private int[] lengthByChar;
+
+    /**
+     * Initialize CharacterFilePacker with input file.
+     *
+     * @param inputFile the file to pack.
+     * @param packOptions the choices of how to pack the file
+     */
+    protected CharacterFilePacker(File inputFile, PackOptions packOptions)
+    {
+        super(inputFile, new CharacterStreamConverter(packOptions.getCharset()), packOptions);
+        charset = packOptions.getCharset();
+    }
+
+    /**
+     * Counts the characters in a stream and adds a LeafNode for each unique
+     * character.
+     *
+     * @param is the stream of original content to count
+     * @throws IOException when the input is not readable
+     */
+    @Override
+    protected void countObjects(InputStream is) throws IOException
+    {
+        long[] charCounts = new long[CHAR_VALUES];
+        CharacterStreamConverter.ChunkDecoder decoder = new CharacterStreamConverter.ChunkDecoder(is, charset);
+        CharBuffer chars;
+        while ((chars = decoder.readChunk()).hasRemaining())
+        {
+            char[] array = chars.array();
+            int length = chars.limit();
+            for (int i = 0; i < length; ++i)
+            {
+                ++charCounts[array[i]];
+            }
+        }
+
+        for (int value = 0; value < CHAR_VALUES; ++value)
+        {
+            if (charCounts[value] != 0)
+            {
+                addCountedLeafNode((char)value, charCounts[value]);
+            }
+        }
+    }
+
+    /**
+     * Fill the tables indexed by the character with the code and its length
+     * for each character.
+     */
+    @Override
+    void fillCodeTables()
+    {
+        super.fillCodeTables();
+
+        codeByChar = new long[CHAR_VALUES];
+        lengthByChar = new int[CHAR_VALUES];
+        // a code can have no bits when there is only one character
+        Arrays.fill(lengthByChar, -1);
+        CanonicalCode<Character> canonicalCode = getCanonicalCode();
+        for (int i = 0; i < canonicalCode.size(); ++i)
+        {
+            char value = canonicalCode.getObject(i);
+            codeByChar[value] = canonicalCode.getCode(i);
+            lengthByChar[value] = canonicalCode.getLength(i);
+        }
+
+        Character escapeChar = getEscapeObject();
+        if (escapeChar != null)
+        {
+            // the escape character is written escaped, like one without a code
+            lengthByChar[escapeChar] = -1;
+        }
+    }
+
+    /**
+     * Decode the characters of an input stream in large buffers, and write
+     * each character's code with a single lookup in tables indexed by the
+     * character.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to the compress bits for the characters.
+     * @return the number of characters written
+     * @throws IOException in case of read or write error
+     */
+    @Override
+    protected long writeObjects(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        long objectCount = 0;
+        CharacterStreamConverter.ChunkDecoder decoder = new CharacterStreamConverter.ChunkDecoder(is, charset);
+        CharBuffer chars;
+        while ((chars = decoder.readChunk()).hasRemaining())
+        {
+            writeBuffer(chars.array(), chars.limit(), objectCount, packedStream);
+            objectCount += chars.limit();
+        }
+        return objectCount;
+    }
+
+    /**
+     * Encode a buffer of characters, stopping to record a sync point before
+     * any character that has one.
+     *
+     * @param buffer the characters to encode
+     * @param length the number of characters in the buffer
+     * @param firstObject the index in the file of the first character of the buffer
+     * @param packedStream the stream to the compress bits for the characters.
+     * @throws IOException in case of write error or a character that cannot be escaped
+     */
+    private void writeBuffer(char[] buffer, int length, long firstObject,
+        BitOutputStream packedStream) throws IOException
+    {
+        int i = 0;
+        while (i < length)
+        {
+            long untilSync = getNextSyncObject() - (firstObject + i);
+            if (untilSync == 0)
+            {
+                addSyncPoint(packedStream);
+                continue;
+            }
+
+            int end = i + (int)Math.min(untilSync, length - i);
+            for (; i < end; ++i)
+            {
+                char value = buffer[i];
+                int codeLength = lengthByChar[value];
+                if (codeLength < 0)
+                {
+                    writeEscapedObject(value, packedStream);
+                }
+                else
+                {
+                    packedStream.writeBits(codeByChar[value], codeLength);
+                }
+            }
+        }
+    }
+}
@@ -22,47 +22,172 @@ package com.huffmancoding.hctutorial;
 
 ******************************************************************************/
 
+import java.io.CharConversionException;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.Writer;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
- * This reads/writes an unpacked files containing characters with a Reader.
+ * This reads/writes an unpacked files containing characters of a charset.
  * It also knows how to read/write characters that are part of the serialized
  * Huffman Tree.
  *
+ * The characters are decoded, and encoded, a large buffer at a time with a
+ * CharsetDecoder and CharsetEncoder of the charset, instead of one call of a
+ * Reader or Writer for each character. The charset is recorded in the
+ * packed file, so the file unpacks the same on any machine.
+ *
  * @author Ken Huffman
  */
 public class CharacterStreamConverter implements StreamConverter<Character>
 {
+    /** the number of bytes decoded, or characters encoded, at a time. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** the most bytes in the UTF-8 encoding of one code point. */
+    private static final int MAX_UTF8_BYTES = 4;
+
+    /** the high bits of a byte that tell if it continues a UTF-8 character. */
+    private static final int UTF8_CONTINUATION_MASK = 0xC0;
+
+    /** the high bits of a byte that continues a UTF-8 character. */
+    private static final int UTF8_CONTINUATION = 0x80;
+
+    /** the high bits of the high byte of a UTF-16 high surrogate. */
+    private static final int HIGH_SURROGATE_MASK = 0xFC;
+
+    /** the high byte of the first UTF-16 high surrogate. */
+    private static final int HIGH_SURROGATE_START = 0xD8;
+
+    /** the high byte of the first UTF-16 low surrogate. */
+    private static final int LOW_SURROGATE_START = 0xDC;
+
+    /** the character whose code escapes a character without a code, a noncharacter that text seldom has. */
+    static final char ESCAPE_CHAR = '\uFFFF';
+
+    /** the charset of the original file. */
+    private final Charset charset;
+
+    /**
+     * This decodes the characters of a stream a buffer at a time into a
+     * CharBuffer that is reused for every buffer. Unlike a Reader, bytes that
+     * are not valid in the charset are not replaced, since the replacement
+     * would not unpack to the original bytes.
+     */
+    static class ChunkDecoder
+    {
+        /** the stream of bytes to decode. */
+        private final InputStream is;
+
+        /** the decoder of the charset. */
+        private final CharsetDecoder decoder;
+
+        /** the bytes read but not yet decoded. */
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /** the characters decoded from the bytes. */
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+        /** whether the end of the stream has been read. */
+        private boolean endOfInput = false;
+
+        /** whether the decoder has been flushed after the end of the stream. */
+        private boolean flushed = false;
+
+        /**
+         * Constructor.
+         *
+         * @param decodeIs the stream of bytes to decode
+         * @param charset the charset of the bytes
+         */
+        public ChunkDecoder(InputStream decodeIs, Charset charset)
+        {
+            is = decodeIs;
+            decoder = newDecoder(charset);
+            bytes.flip();
+        }
+
+        /**
+         * Decode the next buffer of characters. The buffer is reused by the
+         * next call.
+         *
+         * @return the characters, from the start of the buffer's array up to
+         *   its limit, with none remaining at the end of the stream
+         * @throws CharConversionException if the bytes are not valid in the charset
+         * @throws IOException in case of read error
+         */
+        public CharBuffer readChunk() throws IOException
+        {
+            chars.clear();
+            while (chars.position() == 0 && !flushed)
+            {
+                if (!endOfInput)
+                {
+                    // keep the bytes of a character that was split by the last read
+                    bytes.compact();
+                    int bytesRead = is.read(bytes.array(), bytes.position(), bytes.remaining());
+                    if (bytesRead < 0)
+                    {
+                        endOfInput = true;
+                    }
+                    else
+                    {
+                        bytes.position(bytes.position() + bytesRead);
+                    }
+                    bytes.flip();
+                }
+
+                CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                if (result.isError())
+                {
+                    throw new CharConversionException("Content is not valid " + decoder.charset().name());
+                }
+                else if (result.isUnderflow() && endOfInput)
+                {
+                    flushed = decoder.flush(chars).isUnderflow();
+                }
+            }
+
+            chars.flip();
+            return chars;
+        }
+    }
+
     /**
      * This is an iterator for all the Characters in an original file.
      */
     private static class CharacterIterator implements Iterator<Character>
     {
-        /** The reader to read for characters. */
-        private final Reader reader;
+        /** the decoder of the characters of the file. */
+        private final ChunkDecoder decoder;
 
-        /** the char to return with the {@link #next()} call. */
-        private int nextChar;
+        /** the characters decoded but not yet returned. */
+        private CharBuffer chunk;
 
         /**
          * Constructor.
          *
          * @param is the input stream to read chars from
+         * @param charset the charset of the stream
          */
-        public CharacterIterator(InputStream is)
+        public CharacterIterator(InputStream is, Charset charset)
         {
-            reader = new InputStreamReader(is);
-            nextChar = readNextChar();
+            decoder = new ChunkDecoder(is, charset);
+            chunk = CharBuffer.allocate(0);
         }
 
         /**
@@ -71,7 +196,18 @@ public class CharacterStreamConverter implements StreamConverter<Character>
         @Override
         public boolean hasNext()
         {
-            return nextChar >= 0;
+            if (!chunk.hasRemaining())
+            {
+                try
+                {
+                    chunk = decoder.readChunk();
+                }
+                catch (IOException ex)
+                {
+                    throw new UncheckedIOException("Could not read characters", ex);
+                }
+            }
+            return chunk.hasRemaining();
         }
 
         /**
@@ -80,59 +216,223 @@ public class CharacterStreamConverter implements StreamConverter<Character>
         @Override
         public Character next()
         {
-            char value = (char)nextChar;
-            nextChar = readNextChar();
-            return value;
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return chunk.get();
         }
+    }
 
-        /**
-         * Read the next char to be returned next time.
-         *
-         * @return the char that was read, -1 if end of reader.
-         */
-        private int readNextChar()
+    /**
+     * Create a decoder of a charset that reports bytes that are not valid,
+     * instead of replacing them with characters that would not encode back
+     * to the same bytes.
+     *
+     * @param charset the charset of the bytes
+     * @return the decoder
+     */
+    static CharsetDecoder newDecoder(Charset charset)
+    {
+        return charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * Create an encoder of a charset that reports characters that cannot
+     * be encoded, instead of replacing them.
+     *
+     * @param charset the charset of the bytes
+     * @return the encoder
+     */
+    static CharsetEncoder newEncoder(Charset charset)
+    {
+        return charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fileCharset the charset of the original file
+     */
+    public CharacterStreamConverter(Charset fileCharset)
+    {
+        charset = fileCharset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Reserving a code for every one of the 65536 chars would add more to
+     * the code than a sample saves, so a char without a code is escaped.
+     */
+    @Override
+    public Character getEscapeObject()
+    {
+        return ESCAPE_CHAR;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<Character> getObjectComparator()
+    {
+        return Character::compare;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Character> inputStreamIterator(InputStream is)
+    {
+        return new CharacterIterator(is, charset);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A charset with one byte per character can be split anywhere, and one
+     * with a fixed number of bytes per character between them. UTF-16 is
+     * not split between the two surrogates of a code point. UTF-8 is split
+     * before the last character if the bytes end partway through it.
+     *
+     * @throws UnsupportedOperationException if the charset cannot be split
+     */
+    @Override
+    public int findBlockBoundary(byte[] bytes, int length)
+    {
+        int charWidth = getFixedCharWidth();
+        if (charWidth == 1)
+        {
+            return length;
+        }
+        else if (charWidth > 1)
         {
-            int i;
-            try
+            int boundary = length - length % charWidth;
+            if (charWidth == Character.BYTES && boundary >= charWidth)
             {
-                i = reader.read();
+                // the high byte of the last char is first in big endian
+                int highByte = bytes[charset.equals(StandardCharsets.UTF_16BE) ? boundary - 2 : boundary - 1];
+                if ((highByte & HIGH_SURROGATE_MASK) == HIGH_SURROGATE_START)
+                {
+                    boundary -= charWidth;
+                }
             }
-            catch (IOException ex)
+            return boundary == 0 ? length : boundary;
+        }
+        else if (charset.equals(StandardCharsets.UTF_8))
+        {
+            // find the first byte of the last character
+            int lastStart = length - 1;
+            while (lastStart > 0 && lastStart > length - MAX_UTF8_BYTES &&
+                (bytes[lastStart] & UTF8_CONTINUATION_MASK) == UTF8_CONTINUATION)
             {
-                i = -1;
+                --lastStart;
             }
 
-            if (i < 0)
+            // the number of leading one bits of the first byte is the
+            // number of bytes in the character
+            int characterLength = Integer.numberOfLeadingZeros(~(bytes[lastStart] << 24));
+            boolean isComplete = characterLength <= 1 ||
+                lastStart + characterLength <= length;
+            return isComplete || lastStart == 0 ? length : lastStart;
+        }
+        else
+        {
+            throw new UnsupportedOperationException(
+                "Blocks cannot be split for charset: " + charset.name());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A charset with a fixed number of bytes per character starts at the
+     * next multiple of that number in the file, and UTF-16 after a low
+     * surrogate. UTF-8 starts after any bytes that continue a character.
+     */
+    @Override
+    public int findBlockStart(byte[] bytes, long position, int length)
+    {
+        int charWidth = getFixedCharWidth();
+        if (charWidth > 1)
+        {
+            int start = (int)((charWidth - position % charWidth) % charWidth);
+            if (charWidth == Character.BYTES && start + charWidth <= length)
             {
-                try
-                {
-                    reader.close();
-                }
-                catch (IOException ex)
+                // the high byte of the first char is first in big endian
+                int highByte = bytes[charset.equals(StandardCharsets.UTF_16BE) ? start : start + 1];
+                if ((highByte & HIGH_SURROGATE_MASK) == LOW_SURROGATE_START)
                 {
-                    throw new RuntimeException(ex);
+                    start += charWidth;
                 }
             }
-            return i;
+            return Math.min(start, length);
+        }
+        else if (charset.equals(StandardCharsets.UTF_8))
+        {
+            int start = 0;
+            while (start < length && start < MAX_UTF8_BYTES - 1 &&
+                (bytes[start] & UTF8_CONTINUATION_MASK) == UTF8_CONTINUATION)
+            {
+                ++start;
+            }
+            return start;
         }
+        return 0;
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Only UTF-8 and charsets of a fixed number of bytes per character can be
+     * split. Others, such as Shift_JIS, or UTF-16 with a byte order mark,
+     * can only be told apart by decoding from the start.
      */
     @Override
-    public Comparator<Character> getObjectComparator()
+    public boolean canSplitBlocks()
     {
-        return Character::compare;
+        return getFixedCharWidth() > 0 || charset.equals(StandardCharsets.UTF_8);
     }
 
     /**
-     * {@inheritDoc}
+     * Returns the number of bytes of every character of the charset, if
+     * they are all the same size.
+     *
+     * @return the bytes per character, 0 if characters vary in size
      */
-    @Override
-    public Iterator<Character> inputStreamIterator(InputStream is)
+    private int getFixedCharWidth()
     {
-        return new CharacterIterator(is);
+        if (charset.newEncoder().maxBytesPerChar() == 1.0f)
+        {
+            return 1;
+        }
+
+        switch (charset.name())
+        {
+            case "UTF-16BE":
+            case "UTF-16LE":
+                return Character.BYTES;
+            case "UTF-32BE":
+            case "UTF-32LE":
+                return Integer.BYTES;
+            default:
+                return 0;
+        }
     }
 
     /**
@@ -155,18 +455,56 @@ public class CharacterStreamConverter implements StreamConverter<Character>
 
     /**
      * {@inheritDoc}
+     *
+     * The characters are collected in a buffer that is encoded whenever it
+     * fills.
      */
     @Override
     public void writeAllToOutput(Iterator<Character> iterator, OutputStream os)
         throws IOException
     {
-        try (Writer writer = new OutputStreamWriter(os))
+        CharsetEncoder encoder = newEncoder(charset);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer bytes = ByteBuffer.allocate((int)Math.ceil(BUFFER_SIZE * encoder.maxBytesPerChar()));
+        while (iterator.hasNext())
         {
-            while (iterator.hasNext())
+            chars.put(iterator.next().charValue());
+            if (!chars.hasRemaining())
             {
-                Character ch = iterator.next();
-                writer.write(ch.charValue());
+                encodeChunk(encoder, chars, bytes, false, os);
             }
         }
+        encodeChunk(encoder, chars, bytes, true, os);
+
+        encoder.flush(bytes);
+        os.write(bytes.array(), 0, bytes.position());
+        os.flush();
+    }
+
+    /**
+     * Encode the characters in a buffer and write the bytes to a stream.
+     * A high surrogate at the end of the buffer is kept for the next buffer,
+     * unless this is the end of the characters.
+     *
+     * @param encoder the encoder of the charset
+     * @param chars the buffer of characters, ready for more to be put after this
+     * @param bytes the buffer for the encoded bytes, big enough for all the characters
+     * @param endOfInput true if there are no more characters
+     * @param os the stream to write the bytes to
+     * @throws CharConversionException if a character cannot be encoded
+     * @throws IOException in case of write error
+     */
+    static void encodeChunk(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes,
+        boolean endOfInput, OutputStream os) throws IOException
+    {
+        chars.flip();
+        if (encoder.encode(chars, bytes, endOfInput).isError())
+        {
+            throw new CharConversionException("Content cannot be encoded as " + encoder.charset().name());
+        }
+        chars.compact();
+
+        os.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
     }
 }
@@ -0,0 +1,192 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+/**
+ * This enum corresponds to the checksums that can be stored in a packed
+ * file, so that unpacking can tell whether it got back the original content.
+ *
+ * CRC32C is the cheapest, the JVM computes it with hardware instructions
+ * where it can. MD5 and SHA-256 cost much more, as much as the Huffman
+ * coding itself, but are much harder to fool.
+ */
+public enum ChecksumType
+{
+    /** the CRC-32C (Castagnoli) checksum. */
+    CRC32C((byte)0x01, null),
+
+    /** the MD5 message digest. */
+    MD5((byte)0x02, "MD5"),
+
+    /** the SHA-256 message digest. */
+    SHA256((byte)0x03, "SHA-256");
+
+    /**
+     * A MessageDigest that computes a CRC-32C, so that it can be used
+     * everywhere the other checksums are, such as a DigestInputStream.
+     */
+    private static class Crc32cDigest extends MessageDigest
+    {
+        /** the number of bytes in the checksum. */
+        private static final int LENGTH = Integer.BYTES;
+
+        /** the checksum of the bytes so far. */
+        private final CRC32C crc = new CRC32C();
+
+        /**
+         * Constructor.
+         */
+        public Crc32cDigest()
+        {
+            super("CRC32C");
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void engineUpdate(byte input)
+        {
+            crc.update(input);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int length)
+        {
+            crc.update(input, offset, length);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void engineUpdate(ByteBuffer input)
+        {
+            crc.update(input);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected int engineGetDigestLength()
+        {
+            return LENGTH;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected byte[] engineDigest()
+        {
+            byte[] checksum = ByteBuffer.allocate(LENGTH).putInt((int)crc.getValue()).array();
+            crc.reset();
+            return checksum;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void engineReset()
+        {
+            crc.reset();
+        }
+    }
+
+    /** the byte that appears in the header of the packed file. */
+    private final byte signifier;
+
+    /** the name of the MessageDigest algorithm, null for CRC32C. */
+    private final String algorithm;
+
+    /**
+     * Private constructor.
+     *
+     * @param signifier the byte for the packed file
+     * @param algorithm the name of the MessageDigest algorithm
+     */
+    private ChecksumType(byte signifier, String algorithm)
+    {
+        this.signifier = signifier;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Create a digest that computes this checksum.
+     *
+     * @return a new digest
+     * @throws NoSuchAlgorithmException if the algorithm is not available
+     */
+    public MessageDigest createDigest() throws NoSuchAlgorithmException
+    {
+        return algorithm == null ? new Crc32cDigest() : MessageDigest.getInstance(algorithm);
+    }
+
+    /**
+     * Returns the number of bytes in the checksum.
+     *
+     * @return the length of the digest
+     * @throws NoSuchAlgorithmException if the algorithm is not available
+     */
+    public int getLength() throws NoSuchAlgorithmException
+    {
+        return createDigest().getDigestLength();
+    }
+
+    /**
+     * Returns the byte to put in the packed file indicating the checksum.
+     *
+     * @return the byte
+     */
+    public byte toSignifier()
+    {
+        return signifier;
+    }
+
+    /**
+     * Returns the enum from the byte found in the file.
+     *
+     * @param signifier the byte from the header of the packed file
+     * @return the checksum type
+     */
+    public static ChecksumType fromSignifier(byte signifier)
+    {
+        for (ChecksumType value : values())
+        {
+            if (value.signifier == signifier)
+            {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unknown checksum signifier: " + signifier);
+    }
+}
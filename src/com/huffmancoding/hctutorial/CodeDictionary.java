@@ -0,0 +1,442 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Huffman code trained on a sample of similar files, such as many small
+ * JSON events, and saved so each of those files can be packed in a single
+ * pass without counting it or writing a code of its own. The header of a
+ * file packed with a dictionary just has the ID of the dictionary, and the
+ * unpacker finds the dictionary by that ID in the dictionary directory.
+ *
+ * The code must encode whatever later files hold, not just the objects of
+ * the sample, so every object the packer can give a code gets one. The
+ * objects the sample did not have get the longest codes, which cost
+ * nothing until a file has them. Types whose objects cannot all be listed,
+ * such as code points, cannot be trained.
+ *
+ * A dictionary file starts with the {@link PackedHeader#MAGIC} byte and a
+ * {@link #DICTIONARY_MARK}, then the version, the signifier of the
+ * ConverterType, the name of the charset (empty for none), the ID, and the
+ * length and bytes of the code as the packer writes it in front of a packed
+ * file. The ID is the front of a SHA-256 digest of the type, charset and
+ * code, so training on the same sample always gives the same ID.
+ *
+ * Reading a code of many objects, and building the tables to encode or
+ * decode with it, can take longer than packing a small file. So each
+ * dictionary keeps one packer and one unpacker with its code, made the
+ * first time they are needed, and every file of a run is encoded or
+ * decoded by them. Their tables are only read once they are filled, so
+ * they can be shared by the threads of a batch.
+ */
+public class CodeDictionary
+{
+    /** the byte after {@link PackedHeader#MAGIC} that marks a dictionary. */
+    public static final byte DICTIONARY_MARK = (byte)'D';
+
+    /** the first version of the dictionary format. */
+    public static final int FIRST_VERSION = 1;
+
+    /** the version written for new dictionaries. */
+    public static final int CURRENT_VERSION = FIRST_VERSION;
+
+    /** the filename extension of dictionaries, after the ID. */
+    public static final String DICTIONARY_EXTENSION = ".dict";
+
+    /** the digest of the type, charset and code that the ID is taken from. */
+    private static final String ID_ALGORITHM = "SHA-256";
+
+    /** the directory that dictionaries are found in by their ID. */
+    private static volatile File directory =
+        new File(System.getProperty("user.home"), ".hctutorial" + File.separator + "dictionaries");
+
+    /** the dictionaries read so far, by ID, so a batch only reads each one once. */
+    private static final Map<Long, CodeDictionary> dictionariesById = new ConcurrentHashMap<>();
+
+    /** the type of StreamConverter the code is for. */
+    private final ConverterType converterType;
+
+    /** the charset of the characters the code is for, null if not characters. */
+    private final Charset charset;
+
+    /** the code, as written in front of a packed file. */
+    private final byte[] codeBytes;
+
+    /** the ID of the dictionary, from the digest of everything else. */
+    private final long id;
+
+    /** the packer that encodes with the code, null until it is first needed. */
+    private FilePacker<?> packer;
+
+    /** the unpacker that decodes with the code, null until it is first needed. */
+    private FileUnpacker<?> unpacker;
+
+    /**
+     * Constructor.
+     *
+     * @param type the type of StreamConverter the code is for
+     * @param codeCharset the charset of the characters, null if not characters
+     * @param code the code, as written in front of a packed file
+     */
+    private CodeDictionary(ConverterType type, Charset codeCharset, byte[] code)
+    {
+        converterType = type;
+        charset = codeCharset;
+        codeBytes = code;
+        id = computeId();
+    }
+
+    /**
+     * Train a dictionary on sample files. The converter type and the other
+     * choices of how to count and code the objects come from the options,
+     * without a type the first sample is probed for one.
+     *
+     * @param samples the files of the sample, similar to the files to be packed
+     * @param options the choices of how to pack the files
+     * @return the trained dictionary
+     * @throws IOException if a sample cannot be read
+     * @throws IllegalArgumentException if there are no samples, or the type cannot be trained
+     */
+    public static CodeDictionary train(Collection<Path> samples, PackOptions options) throws IOException
+    {
+        if (samples.isEmpty())
+        {
+            throw new IllegalArgumentException("There are no files to train the dictionary on");
+        }
+
+        PackerFactory factory = new PackerFactory();
+        ConverterType type = options.getConverterType();
+        if (type == null)
+        {
+            type = factory.probeConverterType(samples.iterator().next(), options.getCharset());
+        }
+
+        FilePacker<?> packer = factory.createFilePacker(type, null, options);
+        byte[] code = trainCode(packer, samples);
+        return new CodeDictionary(type, packer.getCharset(), code);
+    }
+
+    /**
+     * Count the objects of every sample with a packer, and write the code
+     * built from the counts.
+     *
+     * @param packer the packer to count the objects with
+     * @param samples the files of the sample
+     * @return the code, as written in front of a packed file
+     * @throws IOException if a sample cannot be read
+     */
+    private static <T> byte[] trainCode(FilePacker<T> packer, Collection<Path> samples) throws IOException
+    {
+        for (Path sample : samples)
+        {
+            System.out.println("Analyzing file: " + sample);
+            try (InputStream is = Files.newInputStream(sample))
+            {
+                packer.countObjects(is);
+            }
+        }
+
+        packer.reserveUnseenCodes();
+        packer.mergeNodesIntoTree(packer.createQueuesOfLeafNodes());
+
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        try (BitOutputStream os = new BitOutputStream(code))
+        {
+            packer.writeHuffmanTree(os);
+        }
+        return code.toByteArray();
+    }
+
+    /**
+     * Compute the ID from the digest of the type, the charset and the code.
+     *
+     * @return the first bytes of the digest
+     */
+    private long computeId()
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(ID_ALGORITHM);
+            digest.update(converterType.toSignifier());
+            digest.update((charset == null ? "" : charset.name()).getBytes(StandardCharsets.UTF_8));
+            digest.update(codeBytes);
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(ID_ALGORITHM + " not available", ex);
+        }
+    }
+
+    /**
+     * Returns the directory that dictionaries are saved to and found in.
+     *
+     * @return the dictionary directory
+     */
+    public static File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Choose the directory that dictionaries are saved to and found in,
+     * instead of the one in the user's home directory.
+     *
+     * @param dictionaryDirectory the dictionary directory
+     */
+    public static void setDirectory(File dictionaryDirectory)
+    {
+        directory = dictionaryDirectory;
+    }
+
+    /**
+     * Returns the ID as it is shown, and used in the name of the dictionary file.
+     *
+     * @param dictionaryId the ID of a dictionary
+     * @return the ID in hexadecimal
+     */
+    public static String toIdString(long dictionaryId)
+    {
+        return String.format("%016x", dictionaryId);
+    }
+
+    /**
+     * Returns the ID that packed files refer to the dictionary by.
+     *
+     * @return the ID
+     */
+    public long getId()
+    {
+        return id;
+    }
+
+    /**
+     * Returns the type of StreamConverter the code is for.
+     *
+     * @return the ConverterType
+     */
+    public ConverterType getConverterType()
+    {
+        return converterType;
+    }
+
+    /**
+     * Returns the charset of the characters the code is for.
+     *
+     * @return the charset, null if the code is not for characters
+     */
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * Open a stream of the code, to read it as if it were in front of a packed file.
+     *
+     * @return the stream of the code
+     */
+    public BitInputStream openCode()
+    {
+        return new BitInputStream(new ByteArrayInputStream(codeBytes));
+    }
+
+    /**
+     * Returns the packer that encodes with the code, reading the code the
+     * first time it is needed.
+     *
+     * @return the packer, which is only used to write objects
+     * @throws IOException in case of read error
+     */
+    synchronized FilePacker<?> getPacker() throws IOException
+    {
+        if (packer == null)
+        {
+            PackOptions codeOptions = new PackOptions();
+            if (charset != null)
+            {
+                codeOptions.setCharset(charset);
+            }
+            FilePacker<?> codePacker = new PackerFactory().createFilePacker(converterType, null, codeOptions);
+            codePacker.readDictionaryCode(openCode());
+            packer = codePacker;
+        }
+        return packer;
+    }
+
+    /**
+     * Returns the unpacker that decodes with the code, reading the code the
+     * first time it is needed.
+     *
+     * @return the unpacker, which is only used to read objects
+     * @throws IOException in case of read error
+     */
+    synchronized FileUnpacker<?> getUnpacker() throws IOException
+    {
+        if (unpacker == null)
+        {
+            FileUnpacker<?> codeUnpacker = new PackerFactory().getFileUnpacker(converterType, charset);
+            codeUnpacker.readCanonicalCode(openCode());
+            codeUnpacker.readEscapedObjects();
+            unpacker = codeUnpacker;
+        }
+        return unpacker;
+    }
+
+    /**
+     * Returns the file in the dictionary directory for the dictionary with an ID.
+     *
+     * @param dictionaryId the ID of the dictionary
+     * @return the file named by the ID
+     */
+    public static File getDictionaryFile(long dictionaryId)
+    {
+        return new File(directory, toIdString(dictionaryId) + DICTIONARY_EXTENSION);
+    }
+
+    /**
+     * Save the dictionary to the dictionary directory, in the file named by its ID.
+     *
+     * @return the file the dictionary was saved to
+     * @throws IOException in case of write error
+     */
+    public File save() throws IOException
+    {
+        File dictionaryFile = getDictionaryFile(id);
+        Files.createDirectories(directory.toPath());
+        write(dictionaryFile);
+        return dictionaryFile;
+    }
+
+    /**
+     * Write the dictionary to a file.
+     *
+     * @param dictionaryFile the file to write
+     * @throws IOException in case of write error
+     */
+    public void write(File dictionaryFile) throws IOException
+    {
+        try (DataOutputStream os = new DataOutputStream(new FileOutputStream(dictionaryFile)))
+        {
+            os.writeByte(PackedHeader.MAGIC);
+            os.writeByte(DICTIONARY_MARK);
+            os.writeByte(CURRENT_VERSION);
+            os.writeByte(converterType.toSignifier());
+            os.writeUTF(charset == null ? "" : charset.name());
+            os.writeLong(id);
+            os.writeInt(codeBytes.length);
+            os.write(codeBytes);
+        }
+    }
+
+    /**
+     * Read a dictionary file, and remember the dictionary so that files
+     * packed with it can be unpacked, wherever the file is.
+     *
+     * @param dictionaryFile the file to read
+     * @return the dictionary
+     * @throws IOException in case of read error, or a file that is not a dictionary
+     */
+    public static CodeDictionary read(File dictionaryFile) throws IOException
+    {
+        CodeDictionary dictionary;
+        try (DataInputStream is = new DataInputStream(new FileInputStream(dictionaryFile)))
+        {
+            if (is.readByte() != PackedHeader.MAGIC || is.readByte() != DICTIONARY_MARK)
+            {
+                throw new IOException("Not a dictionary: " + dictionaryFile);
+            }
+
+            int version = is.readUnsignedByte();
+            if (version < FIRST_VERSION || version > CURRENT_VERSION)
+            {
+                throw new IOException("Unknown dictionary version: " + version);
+            }
+
+            ConverterType type = ConverterType.fromSignifier(is.readByte());
+            String charsetName = is.readUTF();
+            long storedId = is.readLong();
+            byte[] code = new byte[is.readInt()];
+            is.readFully(code);
+
+            dictionary = new CodeDictionary(type, charsetName.isEmpty() ? null : Charset.forName(charsetName), code);
+            if (dictionary.getId() != storedId)
+            {
+                throw new IOException("Dictionary does not match its ID: " + dictionaryFile);
+            }
+        }
+
+        dictionariesById.putIfAbsent(dictionary.getId(), dictionary);
+        return dictionary;
+    }
+
+    /**
+     * Find the dictionary with an ID, either one already read or the one
+     * in the dictionary directory.
+     *
+     * @param dictionaryId the ID of the dictionary
+     * @return the dictionary
+     * @throws IOException if the dictionary cannot be found or read
+     */
+    public static CodeDictionary find(long dictionaryId) throws IOException
+    {
+        CodeDictionary dictionary = dictionariesById.get(dictionaryId);
+        if (dictionary == null)
+        {
+            File dictionaryFile = getDictionaryFile(dictionaryId);
+            if (!dictionaryFile.isFile())
+            {
+                throw new FileNotFoundException("Dictionary " + toIdString(dictionaryId) +
+                    " is not in " + directory);
+            }
+
+            dictionary = read(dictionaryFile);
+            if (dictionary.getId() != dictionaryId)
+            {
+                throw new IOException("Dictionary file has another ID: " + dictionaryFile);
+            }
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,190 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This is a FilePacker for text files of Unicode code points. A chat log
+ * with emoji or CJK text can have tens of thousands of different code
+ * points, too many for a table indexed by every value. They are counted in
+ * an {@link IntLongHashMap} instead of the map of LeafNodes, and each code
+ * point is encoded by finding its index in the canonical code in another
+ * IntLongHashMap, so no code point is boxed until the LeafNodes are created
+ * for the distinct ones.
+ */
+public class CodePointFilePacker extends FilePacker<Integer>
+{
+    /** the number of distinct code points expected in a text file. */
+    private static final int EXPECTED_CODE_POINTS = 256;
+
+    /** the index in the canonical code of each code point. */
+    private IntLongHashMap indexByCodePoint;
+
+    /** the code at each index of the canonical code. */
+    private long[] codes;
+
+    /** the number of bits of the code at each index of the canonical code. */
+    private int[] lengths;
+
+    /**
+     * Initialize CodePointFilePacker with input file.
+     *
+     * @param inputFile the file to pack.
+     * @param packOptions the choices of how to pack the file
+     */
+    protected CodePointFilePacker(File inputFile, PackOptions packOptions)
+    {
+        super(inputFile, new CodePointStreamConverter(packOptions.getCharset()), packOptions);
+    }
+
+    /**
+     * There are far too many code points to reserve a code for every one
+     * that a sample might miss, so the code cannot be estimated.
+     *
+     * @return the {@link PackedHeader} flags
+     */
+    @Override
+    protected int getPackedFlags()
+    {
+        int flags = super.getPackedFlags();
+        if ((flags & PackedHeader.ESTIMATED_FLAG) != 0)
+        {
+            throw new IllegalArgumentException("Code points cannot be estimated from a sample");
+        }
+        return flags;
+    }
+
+    /**
+     * Counts the code points in a stream and adds a LeafNode for each unique
+     * code point.
+     *
+     * @param is the stream of original content to count
+     * @throws IOException when the input is not readable
+     */
+    @Override
+    protected void countObjects(InputStream is) throws IOException
+    {
+        IntLongHashMap codePointCounts = new IntLongHashMap(EXPECTED_CODE_POINTS);
+        CodePointStreamConverter.CodePointReader reader =
+            new CodePointStreamConverter.CodePointReader(is, getCharset());
+        int[] codePoints = reader.getCodePoints();
+        int count;
+        while ((count = reader.readCodePoints()) > 0)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                codePointCounts.add(codePoints[i], 1);
+            }
+        }
+
+        for (int codePoint : codePointCounts.keys())
+        {
+            addCountedLeafNode(codePoint, codePointCounts.get(codePoint, 0));
+        }
+    }
+
+    /**
+     * Fill the tables for encoding the code points, with the index of each
+     * code point in the canonical code.
+     */
+    @Override
+    void fillCodeTables()
+    {
+        super.fillCodeTables();
+
+        CanonicalCode<Integer> canonicalCode = getCanonicalCode();
+        indexByCodePoint = new IntLongHashMap(canonicalCode.size());
+        codes = new long[canonicalCode.size()];
+        lengths = new int[canonicalCode.size()];
+        for (int i = 0; i < canonicalCode.size(); ++i)
+        {
+            indexByCodePoint.put(canonicalCode.getObject(i), i);
+            codes[i] = canonicalCode.getCode(i);
+            lengths[i] = canonicalCode.getLength(i);
+        }
+    }
+
+    /**
+     * Decode the code points of an input stream in large buffers, and write
+     * each code point's code found through its index in the canonical code.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to the compress bits for the code points.
+     * @return the number of code points written
+     * @throws IOException in case of read or write error
+     */
+    @Override
+    protected long writeObjects(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        long objectCount = 0;
+        CodePointStreamConverter.CodePointReader reader =
+            new CodePointStreamConverter.CodePointReader(is, getCharset());
+        int[] codePoints = reader.getCodePoints();
+        int count;
+        while ((count = reader.readCodePoints()) > 0)
+        {
+            writeBuffer(codePoints, count, objectCount, packedStream);
+            objectCount += count;
+        }
+        return objectCount;
+    }
+
+    /**
+     * Encode a buffer of code points, stopping to record a sync point before
+     * any code point that has one.
+     *
+     * @param buffer the code points to encode
+     * @param length the number of code points in the buffer
+     * @param firstObject the index in the file of the first code point of the buffer
+     * @param packedStream the stream to the compress bits for the code points.
+     * @throws IOException in case of write error or a code point without a code
+     */
+    private void writeBuffer(int[] buffer, int length, long firstObject,
+        BitOutputStream packedStream) throws IOException
+    {
+        int i = 0;
+        while (i < length)
+        {
+            long untilSync = getNextSyncObject() - (firstObject + i);
+            if (untilSync == 0)
+            {
+                addSyncPoint(packedStream);
+                continue;
+            }
+
+            int end = i + (int)Math.min(untilSync, length - i);
+            for (; i < end; ++i)
+            {
+                int index = (int)indexByCodePoint.get(buffer[i], -1);
+                if (index < 0)
+                {
+                    throw new IOException("Code point " + buffer[i] + " was not counted");
+                }
+                packedStream.writeBits(codes[index], lengths[index]);
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This reads/writes an unpacked file of text as Unicode code points, instead
+ * of the UTF-16 chars of the {@link CharacterStreamConverter}. A character
+ * outside the Basic Multilingual Plane, such as an emoji, is one object
+ * instead of a surrogate pair of chars, so its code is not split between
+ * two objects that are each shared with many other characters.
+ */
+public class CodePointStreamConverter implements StreamConverter<Integer>
+{
+    /** the number of bytes of a code point in the serialized Huffman Tree. */
+    private static final int CODE_POINT_BYTES = 3;
+
+    /** the charset of the original file. */
+    private final Charset charset;
+
+    /**
+     * This decodes the code points of a stream a buffer at a time into an
+     * array that is reused for every buffer. A surrogate pair that is split
+     * between two buffers of chars is joined into one code point.
+     */
+    static class CodePointReader
+    {
+        /** the decoder of the chars of the stream. */
+        private final CharacterStreamConverter.ChunkDecoder decoder;
+
+        /** the code points decoded from a buffer of chars and a pending high surrogate. */
+        private final int[] codePoints = new int[CharacterStreamConverter.BUFFER_SIZE + 1];
+
+        /** the high surrogate at the end of the last buffer of chars, 0 if none. */
+        private char pendingHighSurrogate = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param is the stream of bytes to decode
+         * @param charset the charset of the bytes
+         */
+        public CodePointReader(InputStream is, Charset charset)
+        {
+            decoder = new CharacterStreamConverter.ChunkDecoder(is, charset);
+        }
+
+        /**
+         * Returns the array the code points are decoded into.
+         *
+         * @return the array, reused by each call of {@link #readCodePoints()}
+         */
+        public int[] getCodePoints()
+        {
+            return codePoints;
+        }
+
+        /**
+         * Decode the next buffer of code points into the array.
+         *
+         * @return the number of code points decoded, 0 at the end of the stream
+         * @throws IOException in case of read error
+         */
+        public int readCodePoints() throws IOException
+        {
+            int count = 0;
+            while (count == 0)
+            {
+                CharBuffer chars = decoder.readChunk();
+                char[] array = chars.array();
+                int length = chars.limit();
+                if (length == 0)
+                {
+                    // a high surrogate at the very end stays a char on its own
+                    if (pendingHighSurrogate != 0)
+                    {
+                        codePoints[count++] = pendingHighSurrogate;
+                        pendingHighSurrogate = 0;
+                    }
+                    return count;
+                }
+
+                int i = 0;
+                if (pendingHighSurrogate != 0)
+                {
+                    if (Character.isLowSurrogate(array[0]))
+                    {
+                        codePoints[count++] = Character.toCodePoint(pendingHighSurrogate, array[0]);
+                        i = 1;
+                    }
+                    else
+                    {
+                        codePoints[count++] = pendingHighSurrogate;
+                    }
+                    pendingHighSurrogate = 0;
+                }
+
+                while (i < length)
+                {
+                    char ch = array[i++];
+                    if (Character.isHighSurrogate(ch))
+                    {
+                        if (i == length)
+                        {
+                            // its low surrogate is at the front of the next buffer
+                            pendingHighSurrogate = ch;
+                        }
+                        else if (Character.isLowSurrogate(array[i]))
+                        {
+                            codePoints[count++] = Character.toCodePoint(ch, array[i++]);
+                        }
+                        else
+                        {
+                            codePoints[count++] = ch;
+                        }
+                    }
+                    else
+                    {
+                        codePoints[count++] = ch;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * This is an iterator for all the code points in an original file.
+     */
+    private static class CodePointIterator implements Iterator<Integer>
+    {
+        /** the reader of the code points of the file. */
+        private final CodePointReader reader;
+
+        /** the number of code points in the reader's array. */
+        private int count = 0;
+
+        /** the index of the next code point to return. */
+        private int index = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param is the input stream to read code points from
+         * @param charset the charset of the stream
+         */
+        public CodePointIterator(InputStream is, Charset charset)
+        {
+            reader = new CodePointReader(is, charset);
+        }
+
+        /**
+         * {@inheritDoc}}
+         */
+        @Override
+        public boolean hasNext()
+        {
+            if (index == count)
+            {
+                try
+                {
+                    count = reader.readCodePoints();
+                    index = 0;
+                }
+                catch (IOException ex)
+                {
+                    throw new UncheckedIOException("Could not read code points", ex);
+                }
+            }
+            return index < count;
+        }
+
+        /**
+         * {@inheritDoc}}
+         */
+        @Override
+        public Integer next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return reader.getCodePoints()[index++];
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fileCharset the charset of the original file
+     */
+    public CodePointStreamConverter(Charset fileCharset)
+    {
+        charset = fileCharset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<Integer> getObjectComparator()
+    {
+        return Integer::compare;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Integer> inputStreamIterator(InputStream is)
+    {
+        return new CodePointIterator(is, charset);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks are split the same way as blocks of chars. In UTF-8 a code
+     * point is whole when the bytes of its last char are.
+     */
+    @Override
+    public int findBlockBoundary(byte[] bytes, int length)
+    {
+        return new CharacterStreamConverter(charset).findBlockBoundary(bytes, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findBlockStart(byte[] bytes, long position, int length)
+    {
+        return new CharacterStreamConverter(charset).findBlockStart(bytes, position, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canSplitBlocks()
+    {
+        return new CharacterStreamConverter(charset).canSplitBlocks();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A code point is at most 21 bits, so it is written in three bytes.
+     */
+    @Override
+    public void writeHuffmanTreeObject(DataOutputStream os, Integer codePoint) throws IOException
+    {
+        int value = codePoint.intValue();
+        for (int i = CODE_POINT_BYTES - 1; i >= 0; --i)
+        {
+            os.writeByte(value >>> (i * Byte.SIZE));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer readHuffmanTreeObject(DataInputStream is) throws IOException
+    {
+        int value = 0;
+        for (int i = 0; i < CODE_POINT_BYTES; ++i)
+        {
+            value = (value << Byte.SIZE) | is.readUnsignedByte();
+        }
+
+        if (!Character.isValidCodePoint(value))
+        {
+            throw new IOException("Invalid code point in Huffman tree: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The chars of the code points are collected in a buffer that is encoded
+     * whenever it fills.
+     */
+    @Override
+    public void writeAllToOutput(Iterator<Integer> iterator, OutputStream os)
+        throws IOException
+    {
+        CharsetEncoder encoder = CharacterStreamConverter.newEncoder(charset);
+        CharBuffer chars = CharBuffer.allocate(CharacterStreamConverter.BUFFER_SIZE);
+        ByteBuffer bytes = ByteBuffer.allocate(
+            (int)Math.ceil(CharacterStreamConverter.BUFFER_SIZE * encoder.maxBytesPerChar()));
+        char[] array = chars.array();
+        while (iterator.hasNext())
+        {
+            // leave room for the two chars of a surrogate pair
+            if (chars.remaining() < 2)
+            {
+                CharacterStreamConverter.encodeChunk(encoder, chars, bytes, false, os);
+            }
+            chars.position(chars.position() + Character.toChars(iterator.next(), array, chars.position()));
+        }
+        CharacterStreamConverter.encodeChunk(encoder, chars, bytes, true, os);
+
+        encoder.flush(bytes);
+        os.write(bytes.array(), 0, bytes.position());
+        os.flush();
+    }
+}
@@ -0,0 +1,400 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An order-1 context code has a canonical Huffman code for each value of
+ * the preceding byte. In text, and in most structured binary data, the byte
+ * before predicts the next one well: after a 'q' nearly always comes a 'u',
+ * so in that context the 'u' needs hardly a bit.
+ *
+ * Each context only gets its own code when the bits it saves pay for
+ * writing it. The other contexts, such as the rare ones, fall back to the
+ * order-0 code of all the bytes, which has a code for every byte in the
+ * file. So does the context of the first byte, which has no byte before it.
+ *
+ * The fallback code is written as usual by the FilePacker. Only the
+ * contexts are written here, each as the code lengths of the bytes it has
+ * seen out of the bytes of the fallback code.
+ */
+public class ContextCode
+{
+    /** the number of contexts that are a preceding byte. */
+    public static final int BYTE_CONTEXTS = ByteFilePacker.BYTE_VALUES;
+
+    /** the context of the first byte of a stream, which has no preceding byte. */
+    public static final int START_CONTEXT = BYTE_CONTEXTS;
+
+    /** the number of contexts, including the {@link #START_CONTEXT}. */
+    public static final int CONTEXTS = BYTE_CONTEXTS + 1;
+
+    /** the number of bits that hold how many bits each code length of a context takes. */
+    private static final int WIDTH_BITS = 3;
+
+    /** the code of every byte, used by any context without its own code. */
+    private final CanonicalCode<Byte> fallbackCode;
+
+    /** the code of each context, null if the context uses the fallback code. */
+    private final List<CanonicalCode<Byte>> contextCodes;
+
+    /**
+     * Constructor.
+     *
+     * @param orderZeroCode the code of every byte, for contexts without their own
+     * @param codesByContext the code of each preceding byte, null for the fallback
+     */
+    private ContextCode(CanonicalCode<Byte> orderZeroCode, List<CanonicalCode<Byte>> codesByContext)
+    {
+        fallbackCode = orderZeroCode;
+        contextCodes = codesByContext;
+    }
+
+    /**
+     * Returns the index of the count of a byte in a context.
+     *
+     * @param context the preceding byte, or {@link #START_CONTEXT}
+     * @param value the unsigned byte
+     * @return the index in the counts, and in the code tables, of the pair
+     */
+    public static int pairIndex(int context, int value)
+    {
+        return (context << Byte.SIZE) | value;
+    }
+
+    /**
+     * Create the code of each context from the counts of each byte after
+     * each preceding byte. A context gets its own code, from the Huffman
+     * tree of its bytes, only if its bytes and its code lengths take
+     * fewer bits than its bytes would with the fallback code.
+     *
+     * @param pairCounts the count of each {@link #pairIndex(int, int)}
+     * @param orderZeroCode the code of every byte in the counts
+     * @param maxLength the longest code length allowed
+     * @return the context code
+     */
+    public static ContextCode fromCounts(long[] pairCounts, CanonicalCode<Byte> orderZeroCode,
+        int maxLength)
+    {
+        int[] fallbackLengths = getLengthByByte(orderZeroCode);
+
+        List<CanonicalCode<Byte>> codesByContext = new ArrayList<>(BYTE_CONTEXTS);
+        for (int context = 0; context < BYTE_CONTEXTS; ++context)
+        {
+            List<LeafNode<Byte>> leafNodes = new ArrayList<>();
+            long fallbackBits = 0;
+            for (int value = 0; value < ByteFilePacker.BYTE_VALUES; ++value)
+            {
+                long count = pairCounts[pairIndex(context, value)];
+                if (count != 0)
+                {
+                    leafNodes.add(LeafNode.create((byte)value, count));
+                    fallbackBits += count * fallbackLengths[value];
+                }
+            }
+
+            CanonicalCode<Byte> contextCode = null;
+            if (!leafNodes.isEmpty())
+            {
+                contextCode = createCode(leafNodes, maxLength);
+                long contextBits = countCodeBits(orderZeroCode, contextCode);
+                for (int i = 0; i < contextCode.size(); ++i)
+                {
+                    int value = contextCode.getObject(i) & 0xFF;
+                    contextBits += contextCode.getLength(i) * pairCounts[pairIndex(context, value)];
+                }
+
+                if (contextBits >= fallbackBits)
+                {
+                    // too few bytes follow this one to pay for its own code
+                    contextCode = null;
+                }
+            }
+            codesByContext.add(contextCode);
+        }
+
+        return new ContextCode(orderZeroCode, codesByContext);
+    }
+
+    /**
+     * Create the code of one context from the Huffman tree of its bytes, the
+     * same way as the fallback code, limiting the code lengths only if the
+     * tree has codes that are too long.
+     *
+     * @param leafNodes the leaf node of each byte in the context with its count
+     * @param maxLength the longest code length allowed
+     * @return the code of the context
+     */
+    private static CanonicalCode<Byte> createCode(List<LeafNode<Byte>> leafNodes, int maxLength)
+    {
+        FrequencyQueues<Byte> sortedNodes = new FrequencyQueues<>(leafNodes, Byte::compare);
+        while (sortedNodes.size() > 1)
+        {
+            sortedNodes.mergeFirstTwo();
+        }
+
+        CanonicalCode<Byte> code = CanonicalCode.fromTree(sortedNodes.pollFirst(), Byte::compare);
+        if (code.getMaxLength() > maxLength)
+        {
+            code = CanonicalCode.fromFrequencies(leafNodes, maxLength, Byte::compare);
+        }
+        return code;
+    }
+
+    /**
+     * Returns the number of bits that a context's code takes in the packed
+     * file, not counting the bit that says it has its own code.
+     *
+     * @param orderZeroCode the fallback code that the context's bytes come from
+     * @param contextCode the code of the context
+     * @return the number of bits
+     */
+    private static long countCodeBits(CanonicalCode<Byte> orderZeroCode, CanonicalCode<Byte> contextCode)
+    {
+        return orderZeroCode.size() + WIDTH_BITS +
+            (long)contextCode.size() * getLengthWidth(contextCode.getMaxLength());
+    }
+
+    /**
+     * Returns how many bits are needed to write code lengths up to a maximum.
+     *
+     * @param maxLength the longest code length
+     * @return the number of bits for each length
+     */
+    private static int getLengthWidth(int maxLength)
+    {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(maxLength);
+    }
+
+    /**
+     * Returns the code length of every byte of a code.
+     *
+     * @param code the code of some bytes
+     * @return the lengths indexed by unsigned byte, -1 for bytes without a code
+     */
+    private static int[] getLengthByByte(CanonicalCode<Byte> code)
+    {
+        // a lone byte has a code of length 0, so -1 marks a byte without a code
+        int[] lengthByByte = new int[ByteFilePacker.BYTE_VALUES];
+        Arrays.fill(lengthByByte, -1);
+        for (int i = 0; i < code.size(); ++i)
+        {
+            lengthByByte[code.getObject(i) & 0xFF] = code.getLength(i);
+        }
+        return lengthByByte;
+    }
+
+    /**
+     * Returns the code of every byte, used by contexts without their own.
+     *
+     * @return the order-0 code
+     */
+    public CanonicalCode<Byte> getFallbackCode()
+    {
+        return fallbackCode;
+    }
+
+    /**
+     * Returns the code that bytes are written with in a context.
+     *
+     * @param context the preceding byte, or {@link #START_CONTEXT}
+     * @return the context's own code, or the fallback code
+     */
+    public CanonicalCode<Byte> getCode(int context)
+    {
+        CanonicalCode<Byte> contextCode = context == START_CONTEXT ? null : contextCodes.get(context);
+        return contextCode != null ? contextCode : fallbackCode;
+    }
+
+    /**
+     * Returns whether a context has its own code.
+     *
+     * @param context the preceding byte
+     * @return true if it does not use the fallback code
+     */
+    public boolean hasOwnCode(int context)
+    {
+        return context != START_CONTEXT && contextCodes.get(context) != null;
+    }
+
+    /**
+     * Returns the number of contexts with their own code.
+     *
+     * @return the number of contexts
+     */
+    public int getOwnCodeCount()
+    {
+        int count = 0;
+        for (CanonicalCode<Byte> contextCode : contextCodes)
+        {
+            if (contextCode != null)
+            {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fill tables, indexed by {@link #pairIndex(int, int)}, with the code
+     * and its length for each byte in each context.
+     *
+     * @param codeByPair the code of each byte in each context
+     * @param lengthByPair the number of bits in the code of each byte in each context
+     */
+    public void fillCodeTables(long[] codeByPair, int[] lengthByPair)
+    {
+        for (int context = 0; context < CONTEXTS; ++context)
+        {
+            CanonicalCode<Byte> code = getCode(context);
+            for (int i = 0; i < code.size(); ++i)
+            {
+                int pair = pairIndex(context, code.getObject(i) & 0xFF);
+                codeByPair[pair] = code.getCode(i);
+                lengthByPair[pair] = code.getLength(i);
+            }
+        }
+    }
+
+    /**
+     * Serialize the codes of the contexts, after the fallback code. Only
+     * the bytes of the fallback code can follow in a context, so for each
+     * of those bytes, in the fallback code's order, there is a bit that
+     * says whether the byte has its own code as a context. A context's code
+     * has a bit for each of those bytes that says whether it follows in the
+     * context, then the code lengths of the bytes that do follow, each in
+     * just enough bits for the longest length. The bits are padded to a
+     * whole byte at the end.
+     *
+     * @param packedStream the stream to serialize the codes to
+     * @throws IOException in case of write error.
+     */
+    public void write(BitOutputStream packedStream) throws IOException
+    {
+        for (int i = 0; i < fallbackCode.size(); ++i)
+        {
+            CanonicalCode<Byte> contextCode = contextCodes.get(fallbackCode.getObject(i) & 0xFF);
+            packedStream.writeBit(contextCode != null);
+            if (contextCode != null)
+            {
+                writeContextCode(packedStream, contextCode);
+            }
+        }
+
+        // like the fallback code, the codes end on a byte boundary
+        packedStream.alignToByte();
+    }
+
+    /**
+     * Serialize the code lengths of one context.
+     *
+     * @param packedStream the stream to serialize the code to
+     * @param contextCode the code of the context
+     * @throws IOException in case of write error.
+     */
+    private void writeContextCode(BitOutputStream packedStream, CanonicalCode<Byte> contextCode)
+        throws IOException
+    {
+        int[] lengthByByte = getLengthByByte(contextCode);
+        for (int i = 0; i < fallbackCode.size(); ++i)
+        {
+            packedStream.writeBit(lengthByByte[fallbackCode.getObject(i) & 0xFF] >= 0);
+        }
+
+        int width = getLengthWidth(contextCode.getMaxLength());
+        packedStream.writeBits(width, WIDTH_BITS);
+        for (int i = 0; i < fallbackCode.size(); ++i)
+        {
+            int length = lengthByByte[fallbackCode.getObject(i) & 0xFF];
+            if (length >= 0)
+            {
+                packedStream.writeBits(length, width);
+            }
+        }
+    }
+
+    /**
+     * De-serialize the codes of the contexts written with
+     * {@link #write(BitOutputStream)}.
+     *
+     * @param packedStream the stream to read the codes from, just after the fallback code
+     * @param orderZeroCode the fallback code read from the file
+     * @return the context code from the file
+     * @throws IOException in case of read error.
+     */
+    public static ContextCode read(BitInputStream packedStream, CanonicalCode<Byte> orderZeroCode)
+        throws IOException
+    {
+        List<CanonicalCode<Byte>> codesByContext = new ArrayList<>(BYTE_CONTEXTS);
+        for (int context = 0; context < BYTE_CONTEXTS; ++context)
+        {
+            codesByContext.add(null);
+        }
+
+        for (int i = 0; i < orderZeroCode.size(); ++i)
+        {
+            if (packedStream.readBit())
+            {
+                codesByContext.set(orderZeroCode.getObject(i) & 0xFF,
+                    readContextCode(packedStream, orderZeroCode));
+            }
+        }
+        packedStream.alignToByte();
+
+        return new ContextCode(orderZeroCode, codesByContext);
+    }
+
+    /**
+     * De-serialize the code lengths of one context.
+     *
+     * @param packedStream the stream to read the code from
+     * @param orderZeroCode the fallback code, in whose order the bytes are written
+     * @return the code of the context
+     * @throws IOException in case of read error.
+     */
+    private static CanonicalCode<Byte> readContextCode(BitInputStream packedStream,
+        CanonicalCode<Byte> orderZeroCode) throws IOException
+    {
+        List<LeafNode<Byte>> leafNodes = new ArrayList<>();
+        for (int i = 0; i < orderZeroCode.size(); ++i)
+        {
+            if (packedStream.readBit())
+            {
+                leafNodes.add(LeafNode.create(orderZeroCode.getObject(i)));
+            }
+        }
+
+        int width = (int)packedStream.readBits(WIDTH_BITS);
+        List<Integer> lengths = new ArrayList<>(leafNodes.size());
+        for (int i = 0; i < leafNodes.size(); ++i)
+        {
+            lengths.add((int)packedStream.readBits(width));
+        }
+
+        return CanonicalCode.fromLengths(leafNodes, lengths, Byte::compare);
+    }
+}
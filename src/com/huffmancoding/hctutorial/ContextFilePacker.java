@@ -0,0 +1,261 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * This is a FilePacker for bytes that codes each byte with the code of the
+ * byte before it, a {@link ContextCode}. The bytes are counted in pairs,
+ * so the count of each byte after each preceding byte is known, and the
+ * usual Huffman tree of all the bytes becomes the fallback code for the
+ * contexts that do not get their own code.
+ *
+ * The first byte of every stream that is encoded on its own, such as a
+ * block, has no byte before it and is coded with the fallback code, so the
+ * blocks can still be encoded and decoded independently.
+ */
+public class ContextFilePacker extends FilePacker<Byte>
+{
+    /** the number of pairs of a context and a byte. */
+    private static final int PAIRS = ContextCode.CONTEXTS * ByteFilePacker.BYTE_VALUES;
+
+    /** the count of each byte after each preceding byte, by {@link ContextCode#pairIndex(int, int)}. */
+    private final long[] pairCounts = new long[PAIRS];
+
+    /** the code of each byte in each context, once the codes are written. */
+    private final long[] codeByPair = new long[PAIRS];
+
+    /** the number of bits in the code of each byte in each context. */
+    private final int[] lengthByPair = new int[PAIRS];
+
+    /** the codes of the contexts, null until they are written. */
+    private ContextCode contextCode;
+
+    /**
+     * Initialize ContextFilePacker with input file.
+     *
+     * @param inputFile the file to pack.
+     * @param packOptions the choices of how to pack the file
+     */
+    protected ContextFilePacker(File inputFile, PackOptions packOptions)
+    {
+        super(inputFile, new ByteStreamConverter(), packOptions);
+    }
+
+    /**
+     * A sync point would need the byte before it to decode the next one, so
+     * context codes cannot be combined with sync points.
+     *
+     * @return the {@link PackedHeader} flags
+     */
+    @Override
+    protected int getPackedFlags()
+    {
+        int flags = super.getPackedFlags();
+        if ((flags & PackedHeader.SYNC_FLAG) != 0)
+        {
+            throw new IllegalArgumentException("Sync points cannot be combined with context codes");
+        }
+        return flags;
+    }
+
+    /**
+     * Counts the bytes in a stream, both on their own for the fallback code
+     * and in pairs with the byte before each one for the context codes.
+     *
+     * @param is the stream of original content to count
+     * @throws IOException when the input is not readable
+     */
+    @Override
+    protected void countObjects(InputStream is) throws IOException
+    {
+        long[] byteCounts = new long[ByteFilePacker.BYTE_VALUES];
+        byte[] buffer = new byte[ByteFilePacker.BUFFER_SIZE];
+        int context = ContextCode.START_CONTEXT;
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) >= 0)
+        {
+            for (int i = 0; i < bytesRead; ++i)
+            {
+                int value = buffer[i] & 0xFF;
+                ++pairCounts[ContextCode.pairIndex(context, value)];
+                ++byteCounts[value];
+                context = value;
+            }
+        }
+
+        for (int value = 0; value < ByteFilePacker.BYTE_VALUES; ++value)
+        {
+            if (byteCounts[value] != 0)
+            {
+                addCountedLeafNode((byte)value, byteCounts[value]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void clearCounts()
+    {
+        super.clearCounts();
+        Arrays.fill(pairCounts, 0);
+    }
+
+    /**
+     * Add every byte that was not counted to the fallback code, and count
+     * once each byte that never followed a context that was seen, so that
+     * a context with its own code in a dictionary can still code any byte.
+     * A context seen only a few times is then cheaper with the fallback code.
+     */
+    @Override
+    protected void addUnseenObjects()
+    {
+        for (int value = 0; value < ByteFilePacker.BYTE_VALUES; ++value)
+        {
+            addUnseenObject((byte)value);
+        }
+
+        for (int context = 0; context < ContextCode.CONTEXTS; ++context)
+        {
+            int firstPair = ContextCode.pairIndex(context, 0);
+            int endPair = firstPair + ByteFilePacker.BYTE_VALUES;
+            if (Arrays.stream(pairCounts, firstPair, endPair).anyMatch(count -> count != 0))
+            {
+                for (int pair = firstPair; pair < endPair; ++pair)
+                {
+                    pairCounts[pair] = Math.max(pairCounts[pair], 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the fallback code of all the bytes, as any FilePacker would,
+     * followed by the codes of the contexts that pay for their own code.
+     *
+     * @param packedStream the stream to serialize the codes to
+     * @throws IOException in case of write error.
+     */
+    @Override
+    void writeHuffmanTree(BitOutputStream packedStream) throws IOException
+    {
+        super.writeHuffmanTree(packedStream);
+
+        long codesStart = packedStream.getBitsWritten();
+        contextCode = ContextCode.fromCounts(pairCounts, getCanonicalCode(), getOptions().getMaxCodeLength());
+        contextCode.write(packedStream);
+        long codesBits = packedStream.getBitsWritten() - codesStart;
+        fillPairTables();
+
+        long totalObjects = 0;
+        long contextBits = 0;
+        for (int pair = 0; pair < PAIRS; ++pair)
+        {
+            totalObjects += pairCounts[pair];
+            contextBits += pairCounts[pair] * lengthByPair[pair];
+        }
+
+        System.out.println("Context codes: " + contextCode.getOwnCodeCount() + " of " +
+            getCanonicalCode().size() + " contexts, in " + codesBits + " bits");
+        System.out.println("Total bits with context codes: " + contextBits);
+        System.out.println("Average bits per object with context codes: " +
+            (totalObjects == 0 ? Float.NaN : (float)contextBits / (float)totalObjects));
+    }
+
+    /**
+     * Use the fallback code of a dictionary, then the codes of its contexts
+     * that follow it.
+     *
+     * @param codeStream the stream of the dictionary's codes
+     * @throws IOException in case of read error
+     */
+    @Override
+    void readDictionaryCode(BitInputStream codeStream) throws IOException
+    {
+        super.readDictionaryCode(codeStream);
+        contextCode = ContextCode.read(codeStream, getCanonicalCode());
+        fillPairTables();
+    }
+
+    /**
+     * Fill the tables indexed by the pair of a context and a byte with the
+     * code of the byte in the context and its length.
+     */
+    private void fillPairTables()
+    {
+        Arrays.fill(lengthByPair, 0);
+        contextCode.fillCodeTables(codeByPair, lengthByPair);
+    }
+
+    /**
+     * Read the bytes of an input stream in large buffers, and write each
+     * byte's code with a single lookup in tables indexed by the byte and
+     * the byte before it.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to the compress bits for the bytes.
+     * @return the number of bytes written
+     * @throws IOException in case of read or write error
+     */
+    @Override
+    protected long writeObjects(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        long objectCount = 0;
+        byte[] buffer = new byte[ByteFilePacker.BUFFER_SIZE];
+        int context = ContextCode.START_CONTEXT;
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) >= 0)
+        {
+            for (int i = 0; i < bytesRead; ++i)
+            {
+                int value = buffer[i] & 0xFF;
+                int pair = ContextCode.pairIndex(context, value);
+                packedStream.writeBits(codeByPair[pair], lengthByPair[pair]);
+                context = value;
+            }
+            objectCount += bytesRead;
+        }
+        return objectCount;
+    }
+
+    /**
+     * Create the unpacker that decodes blocks as they are encoded, with the
+     * context codes that were already written.
+     *
+     * @return the unpacker for the context codes of the blocks
+     */
+    @Override
+    FileUnpacker<Byte> createBlockVerifier()
+    {
+        ContextFileUnpacker verifier = new ContextFileUnpacker();
+        verifier.setContextCode(contextCode);
+        return verifier;
+    }
+}
@@ -0,0 +1,252 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * This unpacks a file packed by {@link ContextFilePacker}. The fallback
+ * code is read as usual, followed by the codes of the contexts. The byte
+ * just decoded chooses the context of the next one.
+ *
+ * Following a {@link HuffmanDecoder} for every byte would cost a few
+ * lookups more than decoding with a single code, so the first table of each
+ * context is flattened into one array of entries that hold the decoded byte
+ * itself and the length of its code. A byte is decoded with one lookup,
+ * unless its code is longer than the table, which is rare enough to leave
+ * to the context's HuffmanDecoder.
+ */
+public class ContextFileUnpacker extends FileUnpacker<Byte>
+{
+    /** the most bits of a code that are looked up in the table of a context. */
+    private static final int MAX_TABLE_BITS = 10;
+
+    /** the number of low bits of a context's table position that hold its number of bits. */
+    private static final int TABLE_BITS_BITS = 4;
+
+    /** the entry for bits that start a code longer than the table, or no code. */
+    private static final int LONG_CODE_ENTRY = -1;
+
+    /** the decoder of each context, including the {@link ContextCode#START_CONTEXT}. */
+    private HuffmanDecoder<?>[] decoderByContext;
+
+    /** the unsigned byte of each decoded index, for each context. */
+    private int[][] valuesByContext;
+
+    /** the offset of each context's table in the {@link #entries}, above its number of bits. */
+    private int[] tableByContext;
+
+    /** the code length above the unsigned byte, for every combination of the next bits, for every table. */
+    private int[] entries;
+
+    /**
+     * Constructor.
+     */
+    protected ContextFileUnpacker()
+    {
+        super(new ByteStreamConverter());
+    }
+
+    /**
+     * Read the fallback code followed by the codes of the contexts.
+     *
+     * @param packedStream the stream to read the codes from
+     * @throws IOException in case of read error
+     */
+    @Override
+    void readCanonicalCode(BitInputStream packedStream) throws IOException
+    {
+        CanonicalCode<Byte> fallbackCode = CanonicalCode.read(packedStream, new ByteStreamConverter());
+        setContextCode(ContextCode.read(packedStream, fallbackCode));
+    }
+
+    /**
+     * Use context codes that are already known, instead of ones read from a
+     * packed file, such as to verify blocks as they are packed.
+     *
+     * @param contextCode the codes the bytes were packed with
+     */
+    void setContextCode(ContextCode contextCode)
+    {
+        CanonicalCode<Byte> fallbackCode = contextCode.getFallbackCode();
+        HuffmanDecoder<Byte> fallbackDecoder = fallbackCode.createDecoder();
+        int[] fallbackValues = getValues(fallbackCode);
+
+        // the fallback table comes first, and is shared by every context without its own
+        int tableSize = 1 << getTableBits(fallbackCode);
+        for (int context = 0; context < ContextCode.CONTEXTS; ++context)
+        {
+            if (contextCode.hasOwnCode(context))
+            {
+                tableSize += 1 << getTableBits(contextCode.getCode(context));
+            }
+        }
+
+        decoderByContext = new HuffmanDecoder<?>[ContextCode.CONTEXTS];
+        valuesByContext = new int[ContextCode.CONTEXTS][];
+        tableByContext = new int[ContextCode.CONTEXTS];
+        entries = new int[tableSize];
+        int fallbackTable = fillTable(fallbackCode, 0);
+        int tableOffset = 1 << getTableBits(fallbackCode);
+        for (int context = 0; context < ContextCode.CONTEXTS; ++context)
+        {
+            if (contextCode.hasOwnCode(context))
+            {
+                CanonicalCode<Byte> code = contextCode.getCode(context);
+                decoderByContext[context] = code.createDecoder();
+                valuesByContext[context] = getValues(code);
+                tableByContext[context] = fillTable(code, tableOffset);
+                tableOffset += 1 << getTableBits(code);
+            }
+            else
+            {
+                decoderByContext[context] = fallbackDecoder;
+                valuesByContext[context] = fallbackValues;
+                tableByContext[context] = fallbackTable;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bits looked up in the table of a code.
+     *
+     * @param code the code of a context
+     * @return the number of bits, no more than {@link #MAX_TABLE_BITS}
+     */
+    private static int getTableBits(CanonicalCode<Byte> code)
+    {
+        return Math.min(code.getMaxLength(), MAX_TABLE_BITS);
+    }
+
+    /**
+     * Fill the entries of the table of a code. Every entry that starts with
+     * a code that fits in the table holds the code length above the byte,
+     * the other entries are {@link #LONG_CODE_ENTRY}.
+     *
+     * @param code the code of a context
+     * @param tableOffset the position of the table in the {@link #entries}
+     * @return the position of the table above its number of bits
+     */
+    private int fillTable(CanonicalCode<Byte> code, int tableOffset)
+    {
+        int tableBits = getTableBits(code);
+        Arrays.fill(entries, tableOffset, tableOffset + (1 << tableBits), LONG_CODE_ENTRY);
+        for (int i = 0; i < code.size(); ++i)
+        {
+            int length = code.getLength(i);
+            if (length <= tableBits)
+            {
+                int unusedBits = tableBits - length;
+                int firstEntry = tableOffset + (int)(code.getCode(i) << unusedBits);
+                Arrays.fill(entries, firstEntry, firstEntry + (1 << unusedBits),
+                    (length << Byte.SIZE) | (code.getObject(i) & 0xFF));
+            }
+        }
+        return (tableOffset << TABLE_BITS_BITS) | tableBits;
+    }
+
+    /**
+     * Returns the unsigned bytes of a code, by their index in the code.
+     *
+     * @param code the code of some bytes
+     * @return the unsigned byte of each index
+     */
+    private static int[] getValues(CanonicalCode<Byte> code)
+    {
+        int[] values = new int[code.size()];
+        for (int i = 0; i < values.length; ++i)
+        {
+            values[i] = code.getObject(i) & 0xFF;
+        }
+        return values;
+    }
+
+    /**
+     * Decode the bytes of the packed bits, each with the table of the byte
+     * before it, into a buffer that is written whenever it fills.
+     *
+     * @param packedStream the stream to read the bits from
+     * @param totalObjects the number of bytes in the original content
+     * @param os the stream to write the unpacked (original) content to
+     * @throws IOException in case of read or write error
+     */
+    @Override
+    void readPackedContent(BitInputStream packedStream, long totalObjects,
+        OutputStream os) throws IOException
+    {
+        byte[] buffer = new byte[ByteFilePacker.BUFFER_SIZE];
+        int context = ContextCode.START_CONTEXT;
+        long bytesRemaining = totalObjects;
+        while (bytesRemaining > 0)
+        {
+            int length = (int)Math.min(buffer.length, bytesRemaining);
+            for (int i = 0; i < length; ++i)
+            {
+                int table = tableByContext[context];
+                int tableBits = table & ((1 << TABLE_BITS_BITS) - 1);
+                int entry = entries[(table >>> TABLE_BITS_BITS) + (int)packedStream.peekBits(tableBits)];
+                int value;
+                if (entry != LONG_CODE_ENTRY)
+                {
+                    packedStream.skipBits(entry >>> Byte.SIZE);
+                    value = entry & 0xFF;
+                }
+                else
+                {
+                    // the context's decoder follows the longer code to its byte
+                    value = valuesByContext[context][decoderByContext[context].decodeIndex(packedStream)];
+                }
+                buffer[i] = (byte)value;
+                context = value;
+            }
+            os.write(buffer, 0, length);
+            bytesRemaining -= length;
+        }
+    }
+
+    /**
+     * Decode the bytes of a block, starting in the context of the first byte
+     * of a stream, as the block was encoded.
+     *
+     * @param packedBytes the packed bits of the block
+     * @param objectCount the number of bytes to decode
+     * @param expectedLength the number of original bytes expected
+     * @return the original content
+     * @throws IOException in case of bits that are not a code
+     */
+    @Override
+    byte[] decodeBytes(byte[] packedBytes, long objectCount, int expectedLength)
+        throws IOException
+    {
+        ByteArrayOutputStream unpackedBytes = new ByteArrayOutputStream(expectedLength);
+        try (BitInputStream blockStream = new BitInputStream(new ByteArrayInputStream(packedBytes)))
+        {
+            readPackedContent(blockStream, objectCount, unpackedBytes);
+        }
+        return unpackedBytes.toByteArray();
+    }
+}
@@ -33,11 +33,23 @@ package com.huffmancoding.hctutorial;
  */
 public enum ConverterType
 {
-    /** file data that should use a Reader and Writer. */
+    /** file data of UTF-16 chars, decoded with a charset. */
     CHARACTER((byte)0x01),
 
     /** file data that should use readByte and writeByte. */
-    BYTE((byte)0x02);
+    BYTE((byte)0x02),
+
+    /** file data of bytes coded in a single pass with an adaptive code. */
+    ADAPTIVE_BYTE((byte)0x03),
+
+    /** file data of Unicode code points, decoded with a charset. */
+    CODE_POINT((byte)0x04),
+
+    /** file data of word and separator tokens, decoded with a charset. */
+    WORD((byte)0x05),
+
+    /** file data of bytes, each coded with the code of the byte before it. */
+    CONTEXT_BYTE((byte)0x06);
 
     /** the character that will appear at the head of the packed file. */
     byte signifier;
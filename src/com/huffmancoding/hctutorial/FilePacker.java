@@ -22,22 +22,37 @@ package com.huffmancoding.hctutorial;
 
 ******************************************************************************/
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.NavigableSet;
+import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * This class uses Huffman Coding to convert a file into a compressed one.
@@ -53,37 +68,120 @@ import java.util.TreeSet;
  */
 public class FilePacker<T>
 {
+    /** the number of blocks for each one decoded by {@link VerifyMode#SAMPLED}. */
+    private static final int SAMPLED_BLOCK_INTERVAL = 16;
+
+    /** the most unique objects whose counts and codes are printed. */
+    private static final int MAX_DESCRIBED_OBJECTS = 4096;
+
+    /** the extension of the temporary file that a file is packed to before it is verified. */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /** the number of original bytes in each counted block, without a stream block size. */
+    private static final int COUNTED_BLOCK_SIZE = 1024 * 1024;
+
+    /** the most original bytes in each block sampled to estimate the code. */
+    private static final int SAMPLE_BLOCK_SIZE = 64 * 1024;
+
+    /** how many times larger than the sample size a file must be to be sampled. */
+    private static final int MIN_SAMPLED_FILE_FACTOR = 2;
+
+    /**
+     * The packed bits of one block of the original content.
+     */
+    private static class EncodedBlock
+    {
+        /** the packed bits of the block, padded to a whole byte. */
+        private final byte[] packedBytes;
+
+        /** the number of objects in the block. */
+        private final long objectCount;
+
+        /** the number of original bytes in the block. */
+        private final int unpackedLength;
+
+        /** the checksum of the original bytes in the block. */
+        private final byte[] checksum;
+
+        /**
+         * Constructor.
+         *
+         * @param packed the packed bits of the block
+         * @param objects the number of objects in the block
+         * @param unpacked the number of original bytes in the block
+         * @param blockChecksum the checksum of the original bytes
+         */
+        public EncodedBlock(byte[] packed, long objects, int unpacked, byte[] blockChecksum)
+        {
+            packedBytes = packed;
+            objectCount = objects;
+            unpackedLength = unpacked;
+            checksum = blockChecksum;
+        }
+    }
+
     /** the file with the original content. */
     private final File sourceFile;
 
     /** the class that knows how to read the objects from the #sourceFile. */
     private final StreamConverter<T> converter;
 
-    /** the individual leaf nodes with counds by comparable objects. */
-    private final Map<T, LeafNode<T>> objectCounts = new TreeMap<>();
+    /** the choices of how to pack the file. */
+    private final PackOptions options;
+
+    /** the memory mapping of the #sourceFile, null if it is read with streams. */
+    private MappedFile mappedFile;
+
+    /**
+     * The individual leaf nodes with counts by object. The nodes are sorted
+     * when the tree is built, so a hash map is enough, and it is much faster
+     * than a sorted map for a dictionary of many words.
+     */
+    private final Map<T, LeafNode<T>> objectCounts = new HashMap<>();
+
+    /** the objects given a code without being counted, left out of the statistics. */
+    private final Set<T> reservedObjects = new HashSet<>();
+
+    /** the object whose code escapes an object without a code, null if there is none. */
+    private T escapeObject;
 
     /** The number of objects (characters?) in the file. */
-    private int totalObjects = 0;
+    private long totalObjects = 0;
 
     /** the total number of bits in the compressed file. */
-    private int totalBits = 0;
+    private long totalBits = 0;
 
     /** the huffman tree built from the original data. */
     private TreeNode<T> huffmanTree;
 
-    /** the "inverted" tree with the bits for each leaf node. */
-    private Map<T, BitArray> codeByObject;
+    /** the canonical code for each object, from the code lengths of the tree. */
+    private CanonicalCode<T> canonicalCode;
+
+    /** the "inverted" tree with the index of each object in the canonical code. */
+    private Map<T, Integer> indexByObject;
+
+    /** whether the count and code of every object is printed. */
+    private boolean describingCode = true;
+
+    /** the unpacker that decodes blocks as they are encoded, null if not verifying. */
+    private FileUnpacker<T> blockVerifier;
+
+    /** the sync points recorded as the objects are written, null if none. */
+    private SyncIndex syncIndex;
 
     /**
      * Initialize FilePacker with input file.
      *
      * @param inputFile the file to pack.
      * @param toPackedConverter the converter than knows how to read T objects
+     * @param packOptions the choices of how to pack the file
      */
-    protected FilePacker(File inputFile, StreamConverter<T> toPackedConverter)
+    protected FilePacker(File inputFile, StreamConverter<T> toPackedConverter,
+        PackOptions packOptions)
     {
         sourceFile = inputFile;
         converter = toPackedConverter;
+        options = packOptions;
     }
 
     /**
@@ -93,60 +191,349 @@ public class FilePacker<T>
      *
      * @param inputFile the original unpacked file
      * @param packedFile the packed file with serialized Huffman tree at the front
-     * @return the MD5 checksum of the sourceFile
+     * @return the checksum of the sourceFile
      * @throws IOException in case of File error
-     * @throws NoSuchAlgorithmException if MD5 not available
+     * @throws NoSuchAlgorithmException if the checksum is not available
      */
     public static byte[] packFile(File inputFile, File packedFile)
         throws IOException, NoSuchAlgorithmException
+    {
+        return packFile(inputFile, packedFile, new PackOptions());
+    }
+
+    /**
+     * Pack a file with choices about how it is packed, and verify the packed
+     * file with the {@link PackOptions#getVerifyMode()}. The file is packed
+     * to a temporary file beside the packed file, which is only renamed to
+     * it once verified, so a failure leaves no partial packed file behind.
+     *
+     * @param inputFile the original unpacked file
+     * @param packedFile the packed file with serialized Huffman tree at the front
+     * @param options the choices of how to pack the file
+     * @return the checksum of the sourceFile
+     * @throws IOException in case of File error, or a packed file that does not verify
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public static byte[] packFile(File inputFile, File packedFile, PackOptions options)
+        throws IOException, NoSuchAlgorithmException
     {
         System.out.println("Packing file: " + inputFile);
 
         PackerFactory factory = new PackerFactory();
-        ConverterType type = factory.probeConverterType(inputFile.toPath());
-        FilePacker<?> packer = factory.createFilePacker(type, inputFile);
+        ConverterType type = options.getConverterType();
+        if (type == null)
+        {
+            type = factory.probeConverterType(inputFile.toPath(), options.getCharset());
+        }
+        FilePacker<?> packer = factory.createFilePacker(type, inputFile, options);
+        int packedFlags = packer.getPackedFlags();
 
-        try (FileOutputStream fos = new FileOutputStream(packedFile);
-             BitOutputStream os = new BitOutputStream(fos))
+        // blocks are verified by the packer as they are encoded, anything
+        // else is unpacked by a verifier as it is written
+        VerifyMode verifyMode = options.getVerifyMode();
+        if (verifyMode == VerifyMode.SAMPLED && (packedFlags & PackedHeader.BLOCKS_FLAG) == 0)
         {
-            // write breadcrumb so we know which unpacker to use
-            writeConverterType(type, os);
+            System.out.println("Only blocks can be sampled, verifying as the file is packed");
+            verifyMode = VerifyMode.FUSED;
+        }
+
+        File absoluteFile = packedFile.getAbsoluteFile();
+        File tempFile = File.createTempFile(absoluteFile.getName() + "-", TEMP_EXTENSION,
+            absoluteFile.getParentFile());
+        try
+        {
+            OutputStream packedOs = new FileOutputStream(tempFile);
+            VerifyingOutputStream verifier = null;
+            if (verifyMode == VerifyMode.FUSED && (packedFlags & PackedHeader.BLOCKS_FLAG) == 0)
+            {
+                verifier = new VerifyingOutputStream(packedOs);
+                packedOs = verifier;
+            }
+
+            byte[] originalDigest;
+            try (BitOutputStream os = new BitOutputStream(packedOs))
+            {
+                // write breadcrumb so we know which unpacker to use
+                packer.createPackedHeader(type).write(os);
 
-            return packer.packStream(os);
+                originalDigest = packer.packStream(os);
+            }
+            System.out.println("Original digest: " + HuffmanTutorial.byteArrayToHex(originalDigest));
+
+            switch (verifyMode)
+            {
+                case FULL:
+                    checkUnpackedDigest(originalDigest, FileUnpacker.unpackFile(tempFile, null));
+                    break;
+                case FUSED:
+                    if (verifier != null)
+                    {
+                        checkUnpackedDigest(originalDigest, verifier.getUnpackedChecksum());
+                    }
+                    else
+                    {
+                        System.out.println("Blocks verified as they were encoded");
+                    }
+                    break;
+                case SAMPLED:
+                    FileUnpacker.verifySampledBlocks(tempFile, SAMPLED_BLOCK_INTERVAL);
+                    break;
+                default:
+                    break;
+            }
+
+            Files.move(tempFile.toPath(), absoluteFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return originalDigest;
+        }
+        finally
+        {
+            // only left if the file could not be packed
+            Files.deleteIfExists(tempFile.toPath());
         }
     }
 
     /**
-     * Write a byte at the front of the file that indicates the type of
-     * StreamConverter was used, so it knows how to unpack it.
+     * Check that the packed file unpacked to the original content.
      *
-     * @param type the type of StreamConverter that will be used for packing
-     * @param packedStream the output stream for the packed content
-     * @throws IOException is case of write error
+     * @param originalDigest the checksum of the original content
+     * @param unpackedDigest the checksum of the unpacked content
+     * @throws IOException if the checksums are different
      */
-    private static void writeConverterType(ConverterType type, BitOutputStream packedStream)
+    private static void checkUnpackedDigest(byte[] originalDigest, byte[] unpackedDigest)
         throws IOException
     {
-        packedStream.writeByte(type.toSignifier());
+        System.out.println("Unpacked digest: " + HuffmanTutorial.byteArrayToHex(unpackedDigest));
+        if (!MessageDigest.isEqual(originalDigest, unpackedDigest))
+        {
+            throw new IOException("Packed file does not unpack to the original content");
+        }
     }
 
     /**
-     * Write the HuffmanTree followed by the compressed data.
+     * Pack a stream that can only be read once, such as standard input. The
+     * {@link PackOptions} must choose a single pass way of packing, either
+     * a stream block size, a dictionary or the {@link ConverterType#ADAPTIVE_BYTE} type.
+     * Without a type, the input is packed as bytes.
+     *
+     * @param is the original unpacked stream, read to its end but not closed
+     * @param os the stream to write the packed data to, flushed but not closed
+     * @param options the choices of how to pack the stream
+     * @return the checksum of the original stream
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public static byte[] packInputStream(InputStream is, OutputStream os, PackOptions options)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Packing stream");
+
+        ConverterType type = options.getConverterType();
+        if (type == null)
+        {
+            type = ConverterType.BYTE;
+        }
+
+        PackerFactory factory = new PackerFactory();
+        FilePacker<?> packer = factory.createFilePacker(type, null, options);
+        if (!packer.isSinglePass())
+        {
+            throw new IllegalArgumentException(
+                "A stream can only be packed with a stream block size, a dictionary or adaptively");
+        }
+
+        BitOutputStream packedStream = new BitOutputStream(os);
+        packer.createPackedHeader(type).write(packedStream);
+        byte[] digest = packer.packSourceStream(is, packedStream);
+        packedStream.flush();
+        return digest;
+    }
+
+    /**
+     * Create the header for the front of the packed file.
+     *
+     * @param type the type of StreamConverter of this packer
+     * @return the header with the flags, the checksum type and any charset
+     */
+    protected PackedHeader createPackedHeader(ConverterType type)
+    {
+        CodeDictionary dictionary = options.getDictionary();
+        return new PackedHeader(type, getPackedFlags(), options.getChecksumType(), getCharset(),
+            dictionary == null ? 0 : dictionary.getId());
+    }
+
+    /**
+     * Returns the charset that the objects are read with.
+     *
+     * @return the charset, null if the objects are not characters
+     */
+    protected Charset getCharset()
+    {
+        return converter.getCharset();
+    }
+
+    /**
+     * Returns the flags for the header of the packed file, describing how the
+     * content after the header is laid out.
+     *
+     * @return the {@link PackedHeader} flags
+     */
+    protected int getPackedFlags()
+    {
+        if ((options.getBlockSize() > 0 || options.getStreamBlockSize() > 0 ||
+            options.getSampleSize() > 0 || options.getDictionary() != null) && !converter.canSplitBlocks())
+        {
+            throw new IllegalArgumentException(
+                "Blocks, stream blocks, an estimate or a dictionary cannot be used with charset: " +
+                getCharset().name());
+        }
+        if (options.getBlockSize() > 0 && options.getStreamBlockSize() > 0)
+        {
+            throw new IllegalArgumentException("Blocks and stream blocks cannot be combined");
+        }
+        if (options.getSampleSize() > 0)
+        {
+            if (options.getBlockSize() > 0 || options.getStreamBlockSize() > 0 ||
+                options.getSyncInterval() > 0 || options.getDictionary() != null)
+            {
+                throw new IllegalArgumentException(
+                    "An estimated code cannot be combined with blocks, stream blocks, sync points or a dictionary");
+            }
+            return isEstimating() ? PackedHeader.ESTIMATED_FLAG : 0;
+        }
+        if (options.getDictionary() != null)
+        {
+            if (options.getBlockSize() > 0 || options.getSyncInterval() > 0)
+            {
+                throw new IllegalArgumentException("A dictionary cannot be combined with blocks or sync points");
+            }
+            // any stream block size is just the size of the dictionary blocks
+            return PackedHeader.DICTIONARY_FLAG;
+        }
+
+        int flags = 0;
+        if (options.getBlockSize() > 0)
+        {
+            flags |= PackedHeader.BLOCKS_FLAG;
+        }
+        if (options.getStreamBlockSize() > 0)
+        {
+            flags |= PackedHeader.STREAM_FLAG;
+        }
+        if (options.getSyncInterval() > 0)
+        {
+            if (flags != 0)
+            {
+                throw new IllegalArgumentException("Sync points cannot be combined with blocks or stream blocks");
+            }
+            flags |= PackedHeader.SYNC_FLAG;
+        }
+        return flags;
+    }
+
+    /**
+     * Returns whether the original content is packed as it is read, without
+     * counting all of it first.
+     *
+     * @return true if the original content is only read once
+     */
+    protected boolean isSinglePass()
+    {
+        return options.getStreamBlockSize() > 0 || options.getDictionary() != null;
+    }
+
+    /**
+     * Returns whether the code is estimated from a sample of the original
+     * content, which is only worth it for a file much larger than the sample.
+     *
+     * @return true if the source file is sampled instead of counted
+     */
+    protected boolean isEstimating()
+    {
+        return options.getSampleSize() > 0 && sourceFile != null &&
+            sourceFile.length() > (long)MIN_SAMPLED_FILE_FACTOR * options.getSampleSize();
+    }
+
+    /**
+     * Write the HuffmanTree followed by the compressed data and the checksum
+     * of the original content.
      *
      * @param packedStream the stream to write the packed data to.
-     * @return the MD5 digest of the uncompressed data
+     * @return the checksum of the uncompressed data
      * @throws IOException in case of write error
-     * @throws NoSuchAlgorithmException if MD5 not available
+     * @throws NoSuchAlgorithmException if the checksum is not available
      */
-    private byte[] packStream(BitOutputStream packedStream)
+    protected byte[] packStream(BitOutputStream packedStream)
         throws IOException, NoSuchAlgorithmException
     {
-        createIndividualLeafNodes();
-        NavigableSet<TreeNode<T>> sortedNodes = createSortedSetOfLeafNodes();
+        if (options.isMemoryMapped())
+        {
+            mappedFile = new MappedFile(sourceFile);
+        }
+
+        if (isSinglePass())
+        {
+            try (InputStream is = openSourceFile())
+            {
+                return packSourceStream(is, packedStream);
+            }
+        }
+
+        if (isEstimating())
+        {
+            createSampledLeafNodes();
+            reserveUnseenCodes();
+        }
+        else
+        {
+            createIndividualLeafNodes();
+        }
+        FrequencyQueues<T> sortedNodes = createQueuesOfLeafNodes();
         mergeNodesIntoTree(sortedNodes);
 
         writeHuffmanTree(packedStream);
-        return writePackedContent(packedStream);
+        return isEstimating() ? writeEstimatedContent(packedStream) : writePackedContent(packedStream);
+    }
+
+    /**
+     * Returns the choices of how the file is packed.
+     *
+     * @return the options
+     */
+    protected PackOptions getOptions()
+    {
+        return options;
+    }
+
+    /**
+     * Returns the file with the original content.
+     *
+     * @return the file being packed
+     */
+    protected File getSourceFile()
+    {
+        return sourceFile;
+    }
+
+    /**
+     * Returns the memory mapping of the file with the original content.
+     *
+     * @return the mapping, null if the file is not memory mapped
+     */
+    protected MappedFile getMappedFile()
+    {
+        return mappedFile;
+    }
+
+    /**
+     * Open the file with the original content, from its memory mapping if
+     * it has one.
+     *
+     * @return the stream to read the original content
+     * @throws IOException if the file cannot be opened
+     */
+    protected InputStream openSourceFile() throws IOException
+    {
+        return mappedFile != null ? mappedFile.newInputStream() : new FileInputStream(sourceFile);
     }
 
     /**
@@ -155,16 +542,97 @@ public class FilePacker<T>
      *
      * @throws IOException when the input is not readable
      */
-    private void createIndividualLeafNodes()
+    protected void createIndividualLeafNodes()
         throws IOException
     {
         System.out.println("Analyzing file: " + sourceFile);
 
-        try (InputStream is = new FileInputStream(sourceFile))
+        try (InputStream is = openSourceFile())
+        {
+            countObjects(is);
+        }
+    }
+
+    /**
+     * Counts the objects of blocks sampled from across the source file, the
+     * {@link PackOptions#getSampleSize()} in all, to estimate the code
+     * without reading the whole file. The file is split into equal strides
+     * and one block is read from a random place in each stride, through
+     * the memory mapping or with positioned reads. The places come from a
+     * generator seeded with the file length, so the same file always packs
+     * the same. A block starts after, and ends before, any object it splits.
+     *
+     * @throws IOException when the input is not readable
+     */
+    protected void createSampledLeafNodes() throws IOException
+    {
+        System.out.println("Sampling file: " + sourceFile);
+
+        long fileLength = sourceFile.length();
+        int sampleSize = options.getSampleSize();
+        int blockSize = Math.min(sampleSize, SAMPLE_BLOCK_SIZE);
+        int blockCount = sampleSize / blockSize;
+        long stride = fileLength / blockCount;
+
+        Random random = new Random(fileLength);
+        byte[] block = new byte[blockSize];
+        long sampledBytes = 0;
+        try (FileChannel channel = mappedFile != null ? null :
+                FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ))
+        {
+            for (int i = 0; i < blockCount; ++i)
+            {
+                long position = i * stride + (long)(random.nextDouble() * (stride - blockSize));
+                int length = mappedFile != null ?
+                    mappedFile.read(position, block, blockSize) : readSample(channel, position, block);
+                // the boundary is found from the start of the first whole object
+                int start = converter.findBlockStart(block, position, length);
+                System.arraycopy(block, start, block, 0, length - start);
+                length -= start;
+                if (length > 0)
+                {
+                    int boundary = converter.findBlockBoundary(block, length);
+                    countObjects(new ByteArrayInputStream(block, 0, boundary));
+                    sampledBytes += boundary;
+                }
+            }
+        }
+
+        System.out.println("Sampled bytes: " + sampledBytes + " in " + blockCount + " blocks of " +
+            fileLength + " bytes");
+    }
+
+    /**
+     * Read a block of the source file from a position, without moving the
+     * position of the channel.
+     *
+     * @param channel the channel of the source file
+     * @param position the position of the first byte of the block
+     * @param block the array to read the block into, filled unless the file ends
+     * @return the number of bytes read
+     * @throws IOException when the input is not readable
+     */
+    private static int readSample(FileChannel channel, long position, byte[] block) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0)
         {
-            Iterator<T> iterator = converter.inputStreamIterator(is);
-            iterator.forEachRemaining(this::addObjecToIndividualLeafNodes);
+            // keep reading until the block is full or the file ends
         }
+        return buffer.position();
+    }
+
+    /**
+     * Counts the objects in a stream, adding a leaf node for each unique
+     * object.
+     *
+     * @param is the stream of original content to count
+     * @throws IOException when the input is not readable
+     */
+    protected void countObjects(InputStream is) throws IOException
+    {
+        Iterator<T> iterator = converter.inputStreamIterator(is);
+        iterator.forEachRemaining(this::addObjecToIndividualLeafNodes);
     }
 
     /**
@@ -181,35 +649,122 @@ public class FilePacker<T>
     }
 
     /**
-     * Converts a map of objects and their counts to a set of individual
-     * LeafNodes that sorts by their frequency.
+     * Add a leaf node for an object that a subclass has already counted.
+     * This is for subclasses that can count their objects faster than
+     * looking up each one in {@link #objectCounts}.
+     *
+     * @param object the object from input file
+     * @param frequency the number of times the object is in the input, added
+     *   to any count of the object from before
+     */
+    protected void addCountedLeafNode(T object, long frequency)
+    {
+        // the object may have been counted in another stream already
+        LeafNode<T> counted = objectCounts.get(object);
+        long previousFrequency = counted == null ? 0 : counted.getFrequency();
+        objectCounts.put(object, LeafNode.create(object, previousFrequency + frequency));
+        totalObjects += frequency;
+    }
+
+    /**
+     * Reserve codes for the objects that the counted content did not have,
+     * so a code from a sample, for a dictionary or an estimate, can encode
+     * any content. If the converter has an escape object, only it gets a
+     * code, which every object without a code of its own is written after.
+     * Otherwise, such as for the 256 bytes, every object gets a code.
+     *
+     * A reserved object is counted once, since a count of zero would make
+     * a chain of the longest codes instead of a tree. It is left out of the
+     * number of objects and bits printed.
+     *
+     * @throws IllegalArgumentException if the objects cannot all be given a code
+     */
+    void reserveUnseenCodes()
+    {
+        escapeObject = converter.getEscapeObject();
+        if (escapeObject != null)
+        {
+            addUnseenObject(escapeObject);
+        }
+        else
+        {
+            addUnseenObjects();
+        }
+    }
+
+    /**
+     * Add every object that was not counted with {@link #addUnseenObject(Object)}.
+     * Only a packer whose objects can all be listed can do this.
      *
-     * Note: This function returns a NavigableSet because it has a handy
-     * function for removing the first entry (with the lowest frequency)
-     * which is a frequent operation in building the Huffman Tree.
+     * @throws IllegalArgumentException if the objects cannot all be given a code
+     */
+    protected void addUnseenObjects()
+    {
+        throw new IllegalArgumentException("Codes cannot be reserved for every object of " +
+            converter.getClass().getSimpleName());
+    }
+
+    /**
+     * Count an object once, unless it has already been counted.
      *
-     * @return a Set TreeNodes containing T objects.
+     * @param object the object that may not have been seen
      */
-    private NavigableSet<TreeNode<T>> createSortedSetOfLeafNodes()
+    protected void addUnseenObject(T object)
+    {
+        if (!objectCounts.containsKey(object))
+        {
+            objectCounts.put(object, LeafNode.create(object, 1));
+            reservedObjects.add(object);
+        }
+    }
+
+    /**
+     * Forget the objects counted so far, before counting the next stream
+     * block.
+     */
+    protected void clearCounts()
+    {
+        objectCounts.clear();
+        reservedObjects.clear();
+        totalObjects = 0;
+        totalBits = 0;
+    }
+
+    /**
+     * Converts a map of objects and their counts to queues of individual
+     * LeafNodes that are sorted by their frequency.
+     *
+     * Note: This function returns FrequencyQueues because they quickly remove
+     * the first entry (with the lowest frequency) which is a frequent
+     * operation in building the Huffman Tree.
+     *
+     * @return the queues of TreeNodes containing T objects.
+     */
+    FrequencyQueues<T> createQueuesOfLeafNodes()
     {
         Collection<LeafNode<T>> leafNodes = objectCounts.values();
 
-        leafNodes.forEach(LeafNode::dump);
+        if (leafNodes.size() > MAX_DESCRIBED_OBJECTS)
+        {
+            // a dictionary of words is too big to print
+            describingCode = false;
+        }
+
+        if (describingCode)
+        {
+            new TreeMap<>(objectCounts).values().forEach(LeafNode::dump);
+        }
 
         // The Huffman algorithm repeatedly looks for the two least frequent
         // TreeNodes and merges them into a single NonLeafNode that is "taller".
         // In order to quickly determine which TreeNodes are least frequent, we
-        // will use a set with a comparator that sorts by frequency.
-        Comparator<TreeNode<T>> sortByFrequency =
-            Comparator.comparingInt(TreeNode<T>::getFrequency)
-                .thenComparing(this::getTieBreakerComparator);
-
-        // Don't be fooled, the sortedNodes TreeSet created here is NOT a
-        // Huffman Tree. A TreeSet is used here because it takes a comparator.
-        // As we remove and add TreeNodes from the set, the comparator will do
-        // the heavy lifting of keeping everything sorted by frequency.
-        NavigableSet<TreeNode<T>> sortedNodes = new TreeSet<>(sortByFrequency);
-        sortedNodes.addAll(leafNodes);
+        // sort the leaf nodes by frequency once. Merged nodes are created in
+        // frequency order, so they just go in a second queue. TreeNodes with
+        // the same frequency are sorted by their leftmost object, so the tree
+        // is always the same for the same input.
+        //
+        // Don't be fooled, the queues created here are NOT a Huffman Tree.
+        FrequencyQueues<T> sortedNodes = new FrequencyQueues<>(leafNodes, converter.getObjectComparator());
 
         System.out.println("Total objects: " + totalObjects);
         System.out.println("Unique objects: " + sortedNodes.size());
@@ -217,83 +772,93 @@ public class FilePacker<T>
         return sortedNodes;
     }
 
-    /**
-     * The simplest way to order TreeNodes, after their frequency, is by
-     * comparing the objects in the nodes.
-     *
-     * @param treeNode1 the TreeNode to compare
-     * @param treeNodes the TreeNode to compare against
-     * @return the comparison value
-     */
-    private int getTieBreakerComparator(TreeNode<T> treeNode1, TreeNode<T> treeNode2)
-    {
-        Comparator<T> objectComparator = converter.getObjectComparator();
-        T obj1 = treeNode1.getLeftmodeObject();
-        T obj2 = treeNode2.getLeftmodeObject();
-        return objectComparator.compare(obj1, obj2);
-    }
-
     /**
      * Build the Huffman tree.
      *
-     * At the start of this function, the collection passed in has LeafNodes
+     * At the start of this function, the queues passed in have LeafNodes
      * for every unique T encountered. This function will take the two least
-     * prevalent frequencies out of the collection and join them into a
+     * prevalent frequencies out of the queues and join them into a
      * NonLeafNode that has a combined frequency, then puts the new node back
-     * into the set.
+     * into the queues.
      *
-     * Because sorting is always maintained thanks to the set's comparator,
-     * it is easy for this function to always quick to find the least frequent
-     * TreeNodes.
+     * Because sorting is always maintained by the queues, it is easy for this
+     * function to always quick to find the least frequent TreeNodes.
      *
      * The swapping of two smaller TreeNodes for one combined TreeNode continues
-     * until there is only one TreeNode remaining in the collection that has
+     * until there is only one TreeNode remaining in the queues that has
      * everything. After the first few replacements, this code will starting
      * merging NonLeafNodes instead of just merging LeafNodes. It all depends on
      * the distribution of input objects.
      *
-     * Unless the input is empty, the final entry in the Set will be a
+     * Unless the input is empty, the final entry in the queues will be a
      * NonLeafNode that has NonLeafNodes underneath it. The Huffman Tree!
      *
      * @param sortedNodes LeafNodes for the input source; this function
-     *        depletes the collection upon return.
+     *        depletes the queues upon return.
      */
-    private void mergeNodesIntoTree(NavigableSet<TreeNode<T>> sortedNodes)
+    void mergeNodesIntoTree(FrequencyQueues<T> sortedNodes)
     {
         while (sortedNodes.size() > 1)
         {
-            // remove the two least frequent elements in the collection
-            TreeNode<T> first = sortedNodes.pollFirst();
-            TreeNode<T> second = sortedNodes.pollFirst();
-
-            // put a single combined element back into the set.
-            TreeNode<T> parentNode = new NonLeafNode<T>(first, second);
-            sortedNodes.add(parentNode);
+            // replace the two least frequent elements in the queues with a
+            // single combined element
+            sortedNodes.mergeFirstTwo();
         }
 
-        // now there is only one left in the set, return it as the top of the tree
+        // now there is only one left in the queues, return it as the top of the tree
         huffmanTree = sortedNodes.pollFirst();
     }
 
     /**
-     * Serialize a Huffman Tree to the front of {@link #packedStream} so a reader
-     * will be able decode the packed bits that follow. For simplicity the tree
-     * is written on byte boundaries, so it doesn't have to be a BitOutputStream.
+     * Serialize the code lengths of the Huffman Tree to the front of
+     * {@link #packedStream} so a reader will be able decode the packed bits
+     * that follow. Only the length of each code is needed because both sides
+     * use the same canonical codes of those lengths. For simplicity the code
+     * is written on byte boundaries.
      *
-     * As the leaf nodes are written, the encoding map is built which helps
-     * writing the packed objects laster.
+     * Once the code is written, the tables for encoding the objects are
+     * filled by {@link #fillCodeTables()}.
      *
-     * @param packedStream the stream to serialize the Huffman Tree to
+     * If the tree has codes longer than {@link PackOptions#getMaxCodeLength()}
+     * the lengths are limited, costing some bits, and the cost is reported.
+     *
+     * @param packedStream the stream to serialize the code to
      * @throws IOException in case of write error.
      */
-    private void writeHuffmanTree(BitOutputStream packedStream) throws IOException
+    void writeHuffmanTree(BitOutputStream packedStream) throws IOException
     {
-        // this is filled during the write of the tree
-        codeByObject = new HashMap<>();
+        canonicalCode = CanonicalCode.fromTree(huffmanTree, converter.getObjectComparator());
 
-        if (huffmanTree != null)
+        int maxCodeLength = options.getMaxCodeLength();
+        if (canonicalCode.getMaxLength() > maxCodeLength)
         {
-            writeSubTree(new BitArray(), huffmanTree, packedStream);
+            int treeLength = canonicalCode.getMaxLength();
+            long treeBits = countTotalBits(canonicalCode);
+            canonicalCode = CanonicalCode.fromFrequencies(objectCounts.values(),
+                maxCodeLength, converter.getObjectComparator());
+            long extraBits = countTotalBits(canonicalCode) - treeBits;
+            System.out.println("Code lengths limited from " + treeLength + " to " + maxCodeLength +
+                " bits, costing " + extraBits + " bits (" +
+                String.format("%.3f", 100.0 * extraBits / treeBits) + "%)");
+        }
+
+        canonicalCode.write(packedStream, converter);
+        fillCodeTables();
+
+        for (int i = 0; i < canonicalCode.size(); ++i)
+        {
+            LeafNode<T> leafNode = objectCounts.get(canonicalCode.getObject(i));
+            if (describingCode)
+            {
+                System.out.println(leafNode.getDescription() + " has code=" + canonicalCode.getCodeString(i));
+            }
+
+            // calculate total bits for every one of these T objects
+            if (!reservedObjects.contains(leafNode.getObject()))
+            {
+                long bitsForTheseObjects = canonicalCode.getLength(i) * leafNode.getFrequency();
+                totalBits += bitsForTheseObjects;
+            }
         }
 
         System.out.println("Total bits in compressed file: " + totalBits);
@@ -307,108 +872,592 @@ public class FilePacker<T>
     }
 
     /**
-     * This serializes a TreeNode to {@link #packedStream}, recursing if the
-     * TreeNode is not a leaf node. If it is a leaf node, an entry is added to
-     * the map with the BitArray path from the top node.
-     *
-     * @param pathToObject a String bits down to the node
-     * @param node the node to continue walking down
-     * @param packedStream the stream to serialize a TreeNode to.
-     * @throws IOException in case the Huffman Tree could not be serialized
+     * Fill the tables for encoding the objects from the {@link #canonicalCode},
+     * once it is written or read from a dictionary. The tables are filled
+     * once, because blocks can be encoded concurrently.
      */
-    private void writeSubTree(BitArray pathToObject, TreeNode<T> node,
-        BitOutputStream packedStream) throws IOException
+    void fillCodeTables()
     {
-        // When serializing each tree node, we need to preface the node's
-        // data with a flag to indicate, for later reading, what type of tree
-        // node and the kind of data that follows.
-        // Arbitrarily we chose a true flag for a non-leaf and false for a leaf.
-        if (node instanceof NonLeafNode<T> nonLeafNode)
+        indexByObject = new HashMap<>();
+        for (int i = 0; i < canonicalCode.size(); ++i)
         {
-            packedStream.writeBoolean(true);
-
-            // for a non-leaf node, write the left (0) and right (1) bits,
-            // and recurse (arbitrarily we'll make left child the false bit)
-            writeSubTree(new BitArray(pathToObject, false),
-                nonLeafNode.getLeft(), packedStream);
-            writeSubTree(new BitArray(pathToObject, true),
-                nonLeafNode.getRight(), packedStream);
+            indexByObject.put(canonicalCode.getObject(i), i);
         }
-        else if (node instanceof LeafNode<T> leafNode)
-        {
-            packedStream.writeBoolean(false);
-
-            // for a leaf node, write the object that follows.
-            T object = leafNode.getObject();
-            converter.writeHuffmanTreeObject(packedStream, object);
+    }
 
-            System.out.println(leafNode.getDescription() + " has code=" + pathToObject.toString());
-            codeByObject.put(object, pathToObject);
+    /**
+     * Use the code of a dictionary, as it was written by {@link #writeHuffmanTree(BitOutputStream)}
+     * when the dictionary was trained, instead of counting the objects.
+     *
+     * @param codeStream the stream of the dictionary's code
+     * @throws IOException in case of read error
+     */
+    void readDictionaryCode(BitInputStream codeStream) throws IOException
+    {
+        escapeObject = converter.getEscapeObject();
+        canonicalCode = CanonicalCode.read(codeStream, converter);
+        fillCodeTables();
+    }
 
-            // calculate total bits for every one of these T objects
-            long bitsForTheseObjects = pathToObject.length() * leafNode.getFrequency();
-            totalBits += bitsForTheseObjects;
-        }
-        else {
-            // if we got here, the node is corrupt
-            throw new RuntimeException("Unknown TreeNode type: " + node.getClass().getName());
+    /**
+     * Count the bits of the packed objects if they were written with a code.
+     *
+     * @param code the code of each object
+     * @return the total number of bits
+     */
+    private long countTotalBits(CanonicalCode<T> code)
+    {
+        long bits = 0;
+        for (int i = 0; i < code.size(); ++i)
+        {
+            bits += code.getLength(i) * objectCounts.get(code.getObject(i)).getFrequency();
         }
+        return bits;
     }
 
     /**
      * Re-read the source file and write the packed bits to {@link #packedStream}.
-     * The digest is updated from the input as it is read.
+     * The digest is updated from the input as it is read, and written after
+     * the packed bits as the checksum of the original content. Any index of
+     * the blocks or the sync points follows the checksum.
      *
      * @param packedStream the stream to the bits for each object in the original file.
-     * @return the MD5 digest of the unpacked data as it was read
+     * @return the checksum of the unpacked data as it was read
      * @throws IOException in case of write error
-     * @throws NoSuchAlgorithmException if MD5 not available
+     * @throws NoSuchAlgorithmException if the checksum is not available
      */
-    private byte[] writePackedContent(BitOutputStream packedStream)
+    byte[] writePackedContent(BitOutputStream packedStream)
         throws IOException, NoSuchAlgorithmException
     {
         // because the remainder of the file is a stream of bits that may end
         // in the middle of a byte, we write the number characters in the
         // original file before the bit stream
-        packedStream.writeInt(totalObjects);
+        packedStream.writeLong(totalObjects);
+        if (options.getSyncInterval() > 0)
+        {
+            syncIndex = new SyncIndex(packedStream.getBytesWritten(), options.getSyncInterval());
+        }
 
-        MessageDigest digest = MessageDigest.getInstance("MD5");
+        MessageDigest digest = createDigest();
 
-        // we use an MD5 DigestInputStream when reading the sourceFile to
-        // generate a checksum of the input. We'll compare it when the packed
-        // data is re-read.
-        try (FileInputStream fIs = new FileInputStream(sourceFile);
+        // we use a DigestInputStream when reading the sourceFile to
+        // generate a checksum of the input. The unpacker compares it with
+        // the checksum of what it unpacks.
+        BlockIndex blockIndex = null;
+        if (mappedFile != null && options.getBlockSize() == 0)
+        {
+            writeMappedObjects(mappedFile, digest, packedStream);
+        }
+        else if (options.isPipelined() && options.getBlockSize() == 0 && syncIndex == null)
+        {
+            writePipelinedObjects(digest, packedStream);
+        }
+        else
+        {
+            try (InputStream fIs = openSourceFile();
+                 DigestInputStream digestIs = new DigestInputStream(fIs, digest))
+            {
+                if (options.getBlockSize() > 0)
+                {
+                    blockIndex = writeBlocks(digestIs, packedStream);
+                }
+                else
+                {
+                    writeObjects(digestIs, packedStream);
+                }
+            }
+        }
+
+        byte[] checksum = writeChecksum(digest, packedStream);
+        if (blockIndex != null)
+        {
+            // the index goes at the very end, so it can be found from there
+            blockIndex.write(packedStream);
+        }
+        if (syncIndex != null)
+        {
+            System.out.println("Sync points: " + syncIndex.getSyncPointCount());
+            syncIndex.write(packedStream);
+        }
+        return checksum;
+    }
+
+    /**
+     * Re-read the source file and write the bits of all its objects through
+     * a {@link PackingPipeline}, so the file is read ahead on one thread and
+     * the packed bytes are written and the digest updated on another while
+     * this thread encodes. The packed bytes are the same as when written
+     * directly, since the content starts on a byte boundary.
+     *
+     * @param digest the digest to update from the original content
+     * @param packedStream the stream to write the packed bits to
+     * @throws IOException in case of read or write error
+     */
+    private void writePipelinedObjects(MessageDigest digest, BitOutputStream packedStream)
+        throws IOException
+    {
+        try (InputStream fIs = openSourceFile();
+             PackingPipeline pipeline = new PackingPipeline(fIs, packedStream, digest))
+        {
+            BitOutputStream encodedStream = new BitOutputStream(pipeline.getEncodedStream());
+            writeObjects(pipeline.getOriginalStream(), encodedStream);
+            encodedStream.flush();
+            pipeline.finish();
+        }
+    }
+
+    /**
+     * Create a digest for the checksum of the original content.
+     *
+     * @return a new digest of the {@link PackOptions#getChecksumType()}
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    protected MessageDigest createDigest() throws NoSuchAlgorithmException
+    {
+        return options.getChecksumType().createDigest();
+    }
+
+    /**
+     * Write the checksum of the original content after the packed content,
+     * starting on a byte boundary.
+     *
+     * @param digest the digest updated with all the original content
+     * @param packedStream the stream to write the checksum to
+     * @return the checksum
+     * @throws IOException in case of write error
+     */
+    protected byte[] writeChecksum(MessageDigest digest, BitOutputStream packedStream)
+        throws IOException
+    {
+        byte[] checksum = digest.digest();
+        packedStream.write(checksum);
+        return checksum;
+    }
+
+    /**
+     * Pack the original content in a single pass as it is read from a
+     * stream, updating a digest from the content.
+     *
+     * @param is the stream with the original content, read to its end but not closed
+     * @param packedStream the stream to write the packed data to
+     * @return the checksum of the original content
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    protected byte[] packSourceStream(InputStream is, BitOutputStream packedStream)
+        throws IOException, NoSuchAlgorithmException
+    {
+        MessageDigest digest = createDigest();
+        CodeDictionary dictionary = options.getDictionary();
+        if (dictionary != null)
+        {
+            System.out.println("Packing with dictionary: " + CodeDictionary.toIdString(dictionary.getId()));
+            writeCountedBlocks(new DigestInputStream(is, digest), dictionary.getPacker(), packedStream);
+        }
+        else
+        {
+            writeStreamBlocks(new DigestInputStream(is, digest), packedStream);
+        }
+        return writeChecksum(digest, packedStream);
+    }
+
+    /**
+     * Split the input into blocks of the {@link PackOptions#getStreamBlockSize()}
+     * and pack each block with its own Huffman code before the next block
+     * is read. Each block starts with its number of objects and its code, so
+     * only one block of the input is ever in memory, and ends with the
+     * checksum of its original content. An empty block, of zero objects,
+     * ends the stream.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to write the blocks to
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private void writeStreamBlocks(InputStream is, BitOutputStream packedStream)
+        throws IOException, NoSuchAlgorithmException
+    {
+        // the codes of every block are too many to print
+        describingCode = false;
+
+        int blockSize = options.getStreamBlockSize();
+        byte[] readBuffer = new byte[blockSize];
+        MessageDigest blockDigest = createDigest();
+        int carriedBytes = 0;
+        int blockCount = 0;
+        boolean endOfInput = false;
+        while (!endOfInput)
+        {
+            int bytesRead = carriedBytes + is.readNBytes(readBuffer, carriedBytes, blockSize - carriedBytes);
+            endOfInput = (bytesRead < blockSize);
+            if (bytesRead == 0)
+            {
+                break;
+            }
+
+            // don't split an object between blocks, carry its bytes to the next block
+            int boundary = endOfInput ? bytesRead : converter.findBlockBoundary(readBuffer, bytesRead);
+
+            clearCounts();
+            countObjects(new ByteArrayInputStream(readBuffer, 0, boundary));
+            mergeNodesIntoTree(createQueuesOfLeafNodes());
+
+            packedStream.writeVarLong(totalObjects);
+            writeHuffmanTree(packedStream);
+            writeObjects(new ByteArrayInputStream(readBuffer, 0, boundary), packedStream);
+            blockDigest.update(readBuffer, 0, boundary);
+            packedStream.write(blockDigest.digest());
+
+            // pass the block on before waiting for more input
+            packedStream.flush();
+            ++blockCount;
+
+            carriedBytes = bytesRead - boundary;
+            System.arraycopy(readBuffer, boundary, readBuffer, 0, carriedBytes);
+        }
+
+        packedStream.writeVarLong(0);
+        System.out.println("Stream blocks: " + blockCount);
+    }
+
+    /**
+     * Read the source file, updating the digest from it, and write its
+     * objects with the estimated code, followed by the checksum. This is
+     * the only time the whole file is read.
+     *
+     * @param packedStream the stream to write the packed data to
+     * @return the checksum of the original content
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private byte[] writeEstimatedContent(BitOutputStream packedStream)
+        throws IOException, NoSuchAlgorithmException
+    {
+        MessageDigest digest = createDigest();
+        try (InputStream fIs = openSourceFile();
              DigestInputStream digestIs = new DigestInputStream(fIs, digest))
         {
-            Iterator<T> iterator = converter.inputStreamIterator(digestIs);
-            while (iterator.hasNext())
+            writeCountedBlocks(digestIs, this, packedStream);
+        }
+        return writeChecksum(digest, packedStream);
+    }
+
+    /**
+     * Write the objects of content that was not counted, with a code from a
+     * dictionary or estimated from a sample. The number of objects goes in
+     * front of their bits but is not known until they are encoded, so the
+     * input is encoded in blocks of the {@link PackOptions#getStreamBlockSize()},
+     * or of {@link #COUNTED_BLOCK_SIZE} without one, that are each held in
+     * memory until their number of objects is written. An empty block, of
+     * zero objects, ends the content. A small file is a single block, so
+     * all it adds to its bits is its number of objects and the empty block.
+     *
+     * @param is the stream with the original content
+     * @param encoder the packer with the code to write the objects with
+     * @param packedStream the stream to write the blocks to
+     * @throws IOException in case of read or write error
+     */
+    private void writeCountedBlocks(InputStream is, FilePacker<?> encoder, BitOutputStream packedStream)
+        throws IOException
+    {
+        int blockSize = options.getStreamBlockSize() > 0 ? options.getStreamBlockSize() : COUNTED_BLOCK_SIZE;
+        byte[] readBuffer = new byte[blockSize];
+        ByteArrayOutputStream packedBytes = new ByteArrayOutputStream();
+        int carriedBytes = 0;
+        int blockCount = 0;
+        long objectTotal = 0;
+        boolean endOfInput = false;
+        while (!endOfInput)
+        {
+            int bytesRead = carriedBytes + is.readNBytes(readBuffer, carriedBytes, blockSize - carriedBytes);
+            endOfInput = (bytesRead < blockSize);
+            if (bytesRead == 0)
             {
-                writeObjectBits(iterator.next(), packedStream);
+                break;
             }
+
+            // don't split an object between blocks, carry its bytes to the next block
+            int boundary = endOfInput ? bytesRead : converter.findBlockBoundary(readBuffer, bytesRead);
+
+            packedBytes.reset();
+            BitOutputStream blockStream = new BitOutputStream(packedBytes);
+            long objectCount = encoder.writeObjects(new ByteArrayInputStream(readBuffer, 0, boundary), blockStream);
+            blockStream.flush();
+
+            packedStream.writeVarLong(objectCount);
+            packedBytes.writeTo(packedStream);
+            objectTotal += objectCount;
+
+            // pass the block on before waiting for more input
+            packedStream.flush();
+            ++blockCount;
+
+            carriedBytes = bytesRead - boundary;
+            System.arraycopy(readBuffer, boundary, readBuffer, 0, carriedBytes);
         }
 
-        return digest.digest();
+        packedStream.writeVarLong(0);
+        System.out.println("Counted blocks: " + blockCount);
+        System.out.println("Total objects: " + objectTotal);
     }
 
     /**
-     * Write the bits for an object to encoded portion of the packed file.
+     * Write the bits of all the objects of a memory mapped file, and update
+     * the digest from its content.
      *
-     * @param object the object to write bits for.
-     * @param packedStream the stream to the compress bits for an ojbect.
+     * @param mapped the memory mapped original file
+     * @param digest the digest to update with the original content
+     * @param packedStream the stream to the compress bits for the objects.
+     * @return the number of objects written
+     * @throws IOException in case of write error
      */
-    private void writeObjectBits(T object, BitOutputStream packedStream)
+    protected long writeMappedObjects(MappedFile mapped, MessageDigest digest,
+        BitOutputStream packedStream) throws IOException
+    {
+        try (DigestInputStream digestIs = new DigestInputStream(mapped.newInputStream(), digest))
+        {
+            return writeObjects(digestIs, packedStream);
+        }
+    }
+
+    /**
+     * Split the input into blocks of the {@link PackOptions#getBlockSize()}
+     * and encode the blocks concurrently, with the same Huffman code. The
+     * blocks are written in order, followed by the {@link BlockIndex}, so
+     * the packed file is the same no matter how many threads encode it.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to write the encoded blocks to
+     * @return the index of the blocks, to be written after the checksum
+     * @throws IOException in case of read or write error
+     */
+    private BlockIndex writeBlocks(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        BlockIndex blockIndex = new BlockIndex(packedStream.getBytesWritten());
+        if (options.getVerifyMode() == VerifyMode.FUSED)
+        {
+            blockVerifier = createBlockVerifier();
+        }
+
+        // the blocks are encoded on the pool, but no more than a few blocks
+        // per thread are kept in memory waiting to be written
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int maxPendingBlocks = 2 * pool.getParallelism();
+        Deque<ForkJoinTask<EncodedBlock>> pendingBlocks = new ArrayDeque<>();
+
+        int blockSize = options.getBlockSize();
+        byte[] readBuffer = new byte[blockSize];
+        int carriedBytes = 0;
+        boolean endOfInput = false;
+        while (!endOfInput)
+        {
+            int bytesRead = carriedBytes + is.readNBytes(readBuffer, carriedBytes, blockSize - carriedBytes);
+            endOfInput = (bytesRead < blockSize);
+            if (bytesRead == 0)
+            {
+                break;
+            }
+
+            // don't split an object between blocks, carry its bytes to the next block
+            int boundary = endOfInput ? bytesRead : converter.findBlockBoundary(readBuffer, bytesRead);
+            byte[] blockBytes = Arrays.copyOf(readBuffer, boundary);
+            carriedBytes = bytesRead - boundary;
+            System.arraycopy(readBuffer, boundary, readBuffer, 0, carriedBytes);
+
+            pendingBlocks.add(pool.submit(() -> encodeBlock(blockBytes)));
+            if (pendingBlocks.size() >= maxPendingBlocks)
+            {
+                writeBlock(pendingBlocks.poll().join(), blockIndex, packedStream);
+            }
+        }
+
+        while (!pendingBlocks.isEmpty())
+        {
+            writeBlock(pendingBlocks.poll().join(), blockIndex, packedStream);
+        }
+
+        System.out.println("Blocks: " + blockIndex.getEntries().size());
+        return blockIndex;
+    }
+
+    /**
+     * Create the unpacker that decodes blocks as they are encoded, with the
+     * code that was already written instead of one read from the file.
+     *
+     * @return the unpacker for the code of the blocks
+     */
+    FileUnpacker<T> createBlockVerifier()
     {
-        BitArray ba = codeByObject.get(object);
-        for (boolean bit : ba.getBits())
+        FileUnpacker<T> verifier = new FileUnpacker<>(converter);
+        verifier.setDecoder(canonicalCode.createDecoder());
+        return verifier;
+    }
+
+    /**
+     * Encode the objects of one block into their own bytes, and compute the
+     * checksum of the block. When verifying blocks, the encoded block is
+     * decoded again and compared with the original.
+     *
+     * @param blockBytes the original content of the block
+     * @return the encoded block
+     */
+    private EncodedBlock encodeBlock(byte[] blockBytes)
+    {
+        ByteArrayOutputStream packedBytes = new ByteArrayOutputStream(blockBytes.length);
+        try (BitOutputStream blockStream = new BitOutputStream(packedBytes))
         {
-            try
+            long objectCount = writeObjects(new ByteArrayInputStream(blockBytes), blockStream);
+            blockStream.flush();
+            EncodedBlock block = new EncodedBlock(packedBytes.toByteArray(), objectCount,
+                blockBytes.length, createDigest().digest(blockBytes));
+
+            if (blockVerifier != null)
             {
-                packedStream.writeBit(bit);
+                byte[] decodedBytes = blockVerifier.decodeBytes(block.packedBytes, objectCount, blockBytes.length);
+                if (!Arrays.equals(blockBytes, decodedBytes))
+                {
+                    throw new IOException("Encoded block does not decode to its original content");
+                }
             }
-            catch (IOException ex)
+            return block;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Could not encode block", ex);
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            // the same checksum was already created for the whole file
+            throw new IllegalStateException("Checksum not available", ex);
+        }
+    }
+
+    /**
+     * Write an encoded block after the previous one, and add it to the index.
+     *
+     * @param block the encoded block
+     * @param blockIndex the index of the blocks written so far
+     * @param packedStream the stream to write the block to
+     * @throws IOException in case of write error
+     */
+    private void writeBlock(EncodedBlock block, BlockIndex blockIndex,
+        BitOutputStream packedStream) throws IOException
+    {
+        packedStream.write(block.packedBytes);
+        blockIndex.addBlock(block.packedBytes.length, block.objectCount, block.unpackedLength,
+            block.checksum);
+    }
+
+    /**
+     * Returns the canonical code for the objects, once the Huffman tree
+     * has been written.
+     *
+     * @return the code of each object
+     */
+    protected CanonicalCode<T> getCanonicalCode()
+    {
+        return canonicalCode;
+    }
+
+    /**
+     * Read all the objects of an input stream and write their bits to the
+     * encoded portion of the packed file.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to the compress bits for the objects.
+     * @return the number of objects written
+     * @throws IOException in case of read or write error
+     */
+    protected long writeObjects(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        long objectCount = 0;
+        long nextSyncObject = getNextSyncObject();
+        Iterator<T> iterator = converter.inputStreamIterator(is);
+        while (iterator.hasNext())
+        {
+            if (objectCount == nextSyncObject)
             {
-                throw new RuntimeException("Could not write packed bits", ex);
+                addSyncPoint(packedStream);
+                nextSyncObject = getNextSyncObject();
             }
+            writeObjectBits(iterator.next(), packedStream);
+            ++objectCount;
+        }
+        return objectCount;
+    }
+
+    /**
+     * Returns the index of the object at which the next sync point is to be
+     * recorded, as the objects are written.
+     *
+     * @return the object index, or Long.MAX_VALUE if no sync points are recorded
+     */
+    protected long getNextSyncObject()
+    {
+        return syncIndex == null ? Long.MAX_VALUE : syncIndex.getNextSyncObject();
+    }
+
+    /**
+     * Record a sync point at the current position of the packed bits, just
+     * before the code of the object returned by {@link #getNextSyncObject()}
+     * is written.
+     *
+     * @param packedStream the stream the packed bits are written to
+     */
+    protected void addSyncPoint(BitOutputStream packedStream)
+    {
+        syncIndex.addSyncPoint(packedStream.getBitsWritten() - syncIndex.getContentOffset() * Byte.SIZE);
+    }
+
+    /**
+     * Write the bits for an object to encoded portion of the packed file.
+     *
+     * @param object the object to write bits for.
+     * @param packedStream the stream to the compress bits for an ojbect.
+     * @throws IOException in case of write error
+     */
+    private void writeObjectBits(T object, BitOutputStream packedStream)
+        throws IOException
+    {
+        Integer index = indexByObject.get(object);
+        if (index == null || object.equals(escapeObject))
+        {
+            writeEscapedObject(object, packedStream);
+            return;
+        }
+        packedStream.writeBits(canonicalCode.getCode(index), canonicalCode.getLength(index));
+    }
+
+    /**
+     * Returns the object whose code escapes an object without a code, once
+     * the code has been reserved or read from a dictionary.
+     *
+     * @return the escape object, null if objects cannot be escaped
+     */
+    protected T getEscapeObject()
+    {
+        return escapeObject;
+    }
+
+    /**
+     * Write an object that has no code of its own, or is the escape object
+     * itself, as the code of the escape object followed by the object.
+     *
+     * @param object the object to write bits for.
+     * @param packedStream the stream to the compress bits for an ojbect.
+     * @throws IOException in case of write error, or if objects cannot be escaped
+     */
+    protected void writeEscapedObject(T object, BitOutputStream packedStream)
+        throws IOException
+    {
+        Integer index = escapeObject == null ? null : indexByObject.get(escapeObject);
+        if (index == null)
+        {
+            throw new IOException("Object was not counted: " + object);
         }
+        packedStream.writeBits(canonicalCode.getCode(index), canonicalCode.getLength(index));
+        converter.writeHuffmanTreeObject(packedStream, object);
     }
 }
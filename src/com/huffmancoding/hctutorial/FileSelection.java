@@ -0,0 +1,166 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The files chosen on the command line to be packed or unpacked together.
+ * They are given as paths of files, directories that are searched for
+ * files, or glob patterns such as "docs/**.txt".
+ */
+public class FileSelection
+{
+    /** the characters that make a path a glob pattern. */
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /** whether packed files are selected instead of files to pack. */
+    private final boolean selectingPacked;
+
+    /** the files selected, in the order they were found. */
+    private final Set<Path> files = new LinkedHashSet<>();
+
+    /**
+     * Constructor.
+     *
+     * @param packedFiles true to select packed files from directories, false
+     *   to select the files that are not packed
+     */
+    public FileSelection(boolean packedFiles)
+    {
+        selectingPacked = packedFiles;
+    }
+
+    /**
+     * Add the files of a path to the selection. A directory adds all the
+     * files under it that are to be packed, or unpacked, and a glob pattern
+     * adds them from the directory at the start of the pattern. A file is
+     * added as it is.
+     *
+     * @param pathOrPattern the path of a file or directory, or a glob pattern
+     * @throws IOException if a directory could not be searched
+     */
+    public void addFiles(String pathOrPattern) throws IOException
+    {
+        if (isGlobPattern(pathOrPattern))
+        {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pathOrPattern);
+            addMatchingFiles(getPatternDirectory(pathOrPattern), matcher);
+        }
+        else
+        {
+            Path path = Paths.get(pathOrPattern);
+            if (Files.isDirectory(path))
+            {
+                addMatchingFiles(path, null);
+            }
+            else
+            {
+                files.add(path);
+            }
+        }
+    }
+
+    /**
+     * Returns the files selected so far.
+     *
+     * @return the files in the order they were found
+     */
+    public Set<Path> getFiles()
+    {
+        return files;
+    }
+
+    /**
+     * Returns whether a path has any of the characters of a glob pattern.
+     *
+     * @param pathOrPattern the path or pattern
+     * @return true if it is a pattern
+     */
+    private static boolean isGlobPattern(String pathOrPattern)
+    {
+        return pathOrPattern.chars().anyMatch(ch -> GLOB_CHARACTERS.indexOf(ch) >= 0);
+    }
+
+    /**
+     * Returns the directory at the start of a glob pattern, before the first
+     * name that has a glob character in it.
+     *
+     * @param pattern the glob pattern
+     * @return the directory to search for matching files
+     */
+    private static Path getPatternDirectory(String pattern)
+    {
+        int firstGlob = 0;
+        while (GLOB_CHARACTERS.indexOf(pattern.charAt(firstGlob)) < 0)
+        {
+            ++firstGlob;
+        }
+
+        int lastSeparator = pattern.lastIndexOf(File.separatorChar, firstGlob);
+        if (File.separatorChar != '/')
+        {
+            lastSeparator = Math.max(lastSeparator, pattern.lastIndexOf('/', firstGlob));
+        }
+        return Paths.get(lastSeparator < 0 ? "" : pattern.substring(0, lastSeparator + 1));
+    }
+
+    /**
+     * Add the files under a directory that are to be packed, or unpacked.
+     *
+     * @param directory the directory to search
+     * @param matcher the pattern the paths must match, null for all of them
+     * @throws IOException if the directory could not be searched
+     */
+    private void addMatchingFiles(Path directory, PathMatcher matcher) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory))
+        {
+            paths.filter(Files::isRegularFile)
+                .filter(path -> isPackedFile(path) == selectingPacked)
+                .filter(path -> matcher == null || matcher.matches(path))
+                .sorted()
+                .forEach(files::add);
+        }
+    }
+
+    /**
+     * Returns whether a file has the extension of a packed file.
+     *
+     * @param path the file
+     * @return true if the file is packed
+     */
+    private static boolean isPackedFile(Path path)
+    {
+        return path.getFileName().toString().endsWith(HuffmanTutorial.PACKED_EXTENSION);
+    }
+}
@@ -22,16 +22,31 @@ package com.huffmancoding.hctutorial;
 
 ******************************************************************************/
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * This reads a Huffman Coding compressed file created with FilePacker and
@@ -51,8 +66,11 @@ public class FileUnpacker<T>
     /** the converter that can read and write objects. */
     private final StreamConverter<T> converter;
 
-    /** the huffman tree de-serialized from the packed file. */
-    private TreeNode<T> huffmanTree;
+    /** the table-driven decoder built from the serialized huffman code. */
+    private HuffmanDecoder<T> decoder;
+
+    /** the object whose code escapes an object without a code, null if there is none. */
+    private T escapeObject;
 
     /**
      * Constructor.
@@ -75,7 +93,7 @@ public class FileUnpacker<T>
         private final BitInputStream packedStream;
 
         /** the number of objects left in the iterator. */
-        private int objectsRemaining;
+        private long objectsRemaining;
 
         /**
          * Constructor.
@@ -83,7 +101,7 @@ public class FileUnpacker<T>
          * @param totalObjects the number of objects that should be read
          * @param bitIs the
          */
-        public CompressedObjectIterator(int totalObjects, BitInputStream bitIs)
+        public CompressedObjectIterator(long totalObjects, BitInputStream bitIs)
         {
             packedStream = bitIs;
             objectsRemaining = totalObjects;
@@ -106,24 +124,15 @@ public class FileUnpacker<T>
         {
             try
             {
-                // read bits and walk the huffmanTree until we reach a leaf node
-                TreeNode<T> currentNode = huffmanTree;
-                while (currentNode instanceof NonLeafNode<T> nonLeafNode)
+                // look up the next bits of the stream in the decoder's tables
+                T object = decoder.decode(packedStream);
+                if (escapeObject != null && escapeObject.equals(object))
                 {
-                    // arbitrarily we'll make left child the false bit
-                    currentNode = ! packedStream.readBit() ?
-                        nonLeafNode.getLeft() : nonLeafNode.getRight();
+                    // the escaped object follows the code
+                    object = converter.readHuffmanTreeObject(packedStream);
                 }
-
                 --objectsRemaining;
-                // after reaching a leaf node, return its object.
-                if (currentNode instanceof LeafNode<T> leafNode)
-                {
-                    return leafNode.getObject();
-                }
-
-                // if we got here, the huffmanTree contains strangeness
-                throw new RuntimeException("Unknown TreeNode type: " + currentNode.getClass().getName());
+                return object;
             }
             catch (IOException ex)
             {
@@ -140,9 +149,9 @@ public class FileUnpacker<T>
      *
      * @param packedFile the compressed file
      * @param destFile the file to unpack to
-     * @return the MD5 checksum of the uncompressed file
+     * @return the checksum of the uncompressed file
      * @throws IOException in case of read error
-     * @throws NoSuchAlgorithmException if MD5 not available
+     * @throws NoSuchAlgorithmException if the checksum is not available
      */
     public static byte[] unpackFile(File packedFile, File destFile)
         throws IOException, NoSuchAlgorithmException
@@ -152,47 +161,329 @@ public class FileUnpacker<T>
         try (FileInputStream fis = new FileInputStream(packedFile);
              BitInputStream is = new BitInputStream(fis))
         {
-            ConverterType type = readConverterType(is);
+            PackedHeader header = readPackedHeader(is);
 
             PackerFactory factory = new PackerFactory();
-            FileUnpacker<?> unpacker = factory.getFileUnpacker(type);
-            return unpacker.unpackStream(is, destFile);
+            FileUnpacker<?> unpacker = factory.getFileUnpacker(header.getConverterType(), header.getCharset());
+            return unpacker.unpackStream(is, fis.getChannel(), header, destFile);
         }
     }
 
     /**
-     * Read the byte at the front of the file that indicates the type of
-     * StreamConverter used to pack the original file.
+     * Unpack a stream that can only be read once, such as standard input.
+     * Files packed with blocks and a {@link BlockIndex} need to be read
+     * from a file instead.
+     *
+     * @param packedIs the packed stream, not closed
+     * @param os the stream to write the original content to, flushed but not closed
+     * @return the checksum of the original content
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public static byte[] unpackInputStream(InputStream packedIs, OutputStream os)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Unpacking stream");
+
+        BitInputStream is = new BitInputStream(packedIs);
+        PackedHeader header = readPackedHeader(is);
+
+        PackerFactory factory = new PackerFactory();
+        FileUnpacker<?> unpacker = factory.getFileUnpacker(header.getConverterType(), header.getCharset());
+        return unpacker.unpackToStream(is, header, os);
+    }
+
+    /**
+     * Unpack a range of the objects of a packed file, such as the tail of a
+     * log. A file packed with a {@link SyncIndex} is decoded from the last
+     * sync point at or before the range, any other file from the start of
+     * its packed bits. Only the whole content has a checksum, so the range
+     * is not checked against it.
+     *
+     * @param packedFile the file packed as a single stream of bits
+     * @param fromObject the index of the first object, or if negative the
+     *   number of objects before the end of the file
+     * @param toObject the index after the last object, limited to the end of the file,
+     *   or if negative the number of objects before the end of the file
+     * @param os the stream to write the objects to, flushed but not closed
+     * @return the number of objects unpacked
+     * @throws IOException in case of read or write error
+     * @throws IllegalArgumentException if the file is not packed as a single stream of bits,
+     *   or the range has no objects of the file
+     */
+    public static long unpackRange(File packedFile, long fromObject, long toObject, OutputStream os)
+        throws IOException
+    {
+        System.out.println("Unpacking range of file: " + packedFile);
+
+        try (FileInputStream fis = new FileInputStream(packedFile);
+             BitInputStream is = new BitInputStream(fis))
+        {
+            PackedHeader header = readPackedHeader(is);
+            if (header.hasFlag(PackedHeader.BLOCKS_FLAG) || header.hasFlag(PackedHeader.STREAM_FLAG) ||
+                header.hasFlag(PackedHeader.DICTIONARY_FLAG) || header.hasFlag(PackedHeader.ESTIMATED_FLAG) ||
+                header.getConverterType() == ConverterType.ADAPTIVE_BYTE)
+            {
+                throw new IllegalArgumentException("Only files packed as a single stream of bits can be unpacked by range");
+            }
+            if (header.getConverterType() == ConverterType.CONTEXT_BYTE)
+            {
+                throw new IllegalArgumentException("Files packed with context codes cannot be unpacked by range");
+            }
+
+            PackerFactory factory = new PackerFactory();
+            FileUnpacker<?> unpacker = factory.getFileUnpacker(header.getConverterType(), header.getCharset());
+            return unpacker.readRange(is, fis.getChannel(), header, fromObject, toObject, os);
+        }
+    }
+
+    /**
+     * Verify a file packed in blocks by decoding a sample of its blocks,
+     * checking each against the checksum stored for it, instead of
+     * unpacking the whole file.
+     *
+     * @param packedFile the file packed in blocks
+     * @param interval the number of blocks for each one that is verified
+     * @return the number of blocks verified
+     * @throws IOException in case of read error or a block that does not match
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public static int verifySampledBlocks(File packedFile, int interval)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Verifying blocks of file: " + packedFile);
+
+        try (FileInputStream fis = new FileInputStream(packedFile);
+             BitInputStream is = new BitInputStream(fis))
+        {
+            PackedHeader header = readPackedHeader(is);
+            if (!header.hasFlag(PackedHeader.BLOCKS_FLAG))
+            {
+                throw new IOException("Only files packed in blocks can be verified by sampling");
+            }
+
+            PackerFactory factory = new PackerFactory();
+            FileUnpacker<?> unpacker = factory.getFileUnpacker(header.getConverterType(), header.getCharset());
+            unpacker.readHuffmanCode(is, header);
+            return unpacker.verifyBlocks(fis.getChannel(), header, interval);
+        }
+    }
+
+    /**
+     * Read the header at the front of the file that indicates the format
+     * and the type of StreamConverter used to pack the original file.
      *
      * @param packedStream the begining of the stream of packed file
      */
-    private static ConverterType readConverterType(BitInputStream packedStream)
+    private static PackedHeader readPackedHeader(BitInputStream packedStream)
         throws IOException
     {
-        ConverterType type = ConverterType.fromSignifier(packedStream.readByte());
-        System.out.println("PackerType: " + type.name());
-        return type;
+        PackedHeader header = PackedHeader.read(packedStream);
+        System.out.println("PackerType: " + header.getConverterType().name());
+        System.out.println("Format version: " + header.getVersion());
+        if (header.isChecksumStored())
+        {
+            System.out.println("Checksum: " + header.getChecksumType().name());
+        }
+        return header;
     }
 
     /**
      * Read the persisted HuffmanTree then unpack the compress data that follows.
+     * If the packed file has a checksum, it is checked against the unpacked data.
      *
      * @param packedStream the stream to read from and unpack
+     * @param packedChannel the channel of the packed file, to read blocks from
+     * @param header the header read from the front of the packed stream
      * @param destFile the file to write the original data to, can be null
-     * @return the MD5 digest of the uncompressed data
+     * @return the checksum of the uncompressed data
      * @throws IOException in case of read error
-     * @throws NoSuchAlgorithmException if MD5 not available
+     * @throws NoSuchAlgorithmException if the checksum is not available
      */
-    private byte[] unpackStream(BitInputStream packedStream, File destFile)
-        throws IOException, NoSuchAlgorithmException
+    protected byte[] unpackStream(BitInputStream packedStream, FileChannel packedChannel,
+        PackedHeader header, File destFile) throws IOException, NoSuchAlgorithmException
+    {
+        if (header.hasFlag(PackedHeader.BLOCKS_FLAG))
+        {
+            readHuffmanCode(packedStream, header);
+            return readPackedBlocks(packedChannel, header, destFile);
+        }
+
+        // The os could be a FileOutputStream if we wanted to save the original content.
+        try (OutputStream os = destFile == null ?
+                new NullOutputStream() : new BufferedOutputStream(new FileOutputStream(destFile)))
+        {
+            return unpackToStream(packedStream, header, os);
+        }
+    }
+
+    /**
+     * Unpack the data that follows the header in order, writing it to a
+     * stream.
+     *
+     * @param packedStream the stream to read from and unpack
+     * @param header the header read from the front of the packed stream
+     * @param os the stream to write the original data to, flushed but not closed
+     * @return the checksum of the uncompressed data
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    protected byte[] unpackToStream(BitInputStream packedStream, PackedHeader header,
+        OutputStream os) throws IOException, NoSuchAlgorithmException
+    {
+        if (header.hasFlag(PackedHeader.BLOCKS_FLAG))
+        {
+            throw new IOException("Packed blocks can only be unpacked from a file");
+        }
+
+        MessageDigest digest = header.getChecksumType().createDigest();
+        DigestOutputStream digestOs = new DigestOutputStream(os, digest);
+        if (header.hasFlag(PackedHeader.STREAM_FLAG))
+        {
+            readStreamBlocks(packedStream, header, digestOs);
+        }
+        else if (header.hasFlag(PackedHeader.DICTIONARY_FLAG))
+        {
+            getDictionaryUnpacker(header).readCountedBlocks(packedStream, digestOs);
+        }
+        else if (header.hasFlag(PackedHeader.ESTIMATED_FLAG))
+        {
+            readCanonicalCode(packedStream);
+            readEscapedObjects();
+            readCountedBlocks(packedStream, digestOs);
+        }
+        else
+        {
+            long totalObjects = readHuffmanCode(packedStream, header);
+            readPackedContent(packedStream, totalObjects, digestOs);
+        }
+        digestOs.flush();
+
+        return readChecksum(packedStream, header, digest);
+    }
+
+    /**
+     * Read the checksum stored after the packed content, if the file has
+     * one, and check that it matches the unpacked data.
+     *
+     * @param packedStream the stream to read the checksum from
+     * @param header the header read from the front of the packed stream
+     * @param digest the digest updated with all the unpacked data
+     * @return the checksum of the unpacked data
+     * @throws IOException in case of read error or a checksum that does not match
+     */
+    protected static byte[] readChecksum(BitInputStream packedStream, PackedHeader header,
+        MessageDigest digest) throws IOException
+    {
+        byte[] checksum = digest.digest();
+        if (header.isChecksumStored())
+        {
+            byte[] storedChecksum = new byte[checksum.length];
+            packedStream.readFully(storedChecksum);
+            verifyChecksum(storedChecksum, checksum, "Unpacked content");
+        }
+        return checksum;
+    }
+
+    /**
+     * Check that a checksum matches the one stored in the packed file.
+     *
+     * @param storedChecksum the checksum from the packed file
+     * @param checksum the checksum of the unpacked data
+     * @param description what was unpacked, for the exception message
+     * @throws IOException if the checksums do not match
+     */
+    static void verifyChecksum(byte[] storedChecksum, byte[] checksum, String description)
+        throws IOException
+    {
+        if (!MessageDigest.isEqual(storedChecksum, checksum))
+        {
+            throw new IOException(description + " does not match its checksum: expected " +
+                HuffmanTutorial.byteArrayToHex(storedChecksum) + " but was " +
+                HuffmanTutorial.byteArrayToHex(checksum));
+        }
+    }
+
+    /**
+     * Use the decoder for a code that is already known, instead of one read
+     * from a packed file, such as to verify blocks as they are packed.
+     *
+     * @param huffmanDecoder the decoder for the code the objects were packed with
+     */
+    void setDecoder(HuffmanDecoder<T> huffmanDecoder)
+    {
+        decoder = huffmanDecoder;
+    }
+
+    /**
+     * Read the Huffman code, and the number of objects packed with it, to
+     * create the {@link #decoder}.
+     *
+     * @param packedStream the stream to read the code from
+     * @param header the header read from the front of the packed stream
+     * @return the number of objects in the original file
+     * @throws IOException in case of read error
+     */
+    long readHuffmanCode(BitInputStream packedStream, PackedHeader header)
+        throws IOException
+    {
+        if (header.getVersion() == PackedHeader.TREE_VERSION)
+        {
+            decoder = HuffmanDecoder.fromTree(readHuffmanTree(packedStream));
+            return packedStream.readInt();
+        }
+        else
+        {
+            readCanonicalCode(packedStream);
+            return packedStream.readLong();
+        }
+    }
+
+    /**
+     * Read a canonical Huffman code on its own to create the {@link #decoder},
+     * such as the code that the members of an archive share.
+     *
+     * @param packedStream the stream to read the code from
+     * @throws IOException in case of read error
+     */
+    void readCanonicalCode(BitInputStream packedStream) throws IOException
     {
-        huffmanTree = readHuffmanTree(packedStream);
-        return readPackedContent(packedStream, destFile);
+        decoder = CanonicalCode.read(packedStream, converter).createDecoder();
+    }
+
+    /**
+     * Read the objects after the code of the {@link StreamConverter#getEscapeObject()},
+     * as they are written for a code from a sample, for a dictionary or an
+     * estimate.
+     */
+    void readEscapedObjects()
+    {
+        escapeObject = converter.getEscapeObject();
+    }
+
+    /**
+     * Find the dictionary that the content was packed with, by the ID in
+     * the header, and return the unpacker that decodes with its code.
+     *
+     * @param header the header read from the front of the packed stream
+     * @return the dictionary's unpacker
+     * @throws IOException if the dictionary cannot be found or read
+     */
+    private static FileUnpacker<?> getDictionaryUnpacker(PackedHeader header) throws IOException
+    {
+        CodeDictionary dictionary = CodeDictionary.find(header.getDictionaryId());
+        if (dictionary.getConverterType() != header.getConverterType())
+        {
+            throw new IOException("Dictionary " + CodeDictionary.toIdString(dictionary.getId()) +
+                " is for " + dictionary.getConverterType() + " not " + header.getConverterType());
+        }
+        return dictionary.getUnpacker();
     }
 
     /**
      * Recursively de-serialize the front of {@link #packedStream} to a Huffman
-     * Tree.
+     * Tree. This is how files of the {@link PackedHeader#TREE_VERSION} stored
+     * the tree.
      *
      * @param packedStream the stream to read the Huffman Tree from
      * @return the Huffman Tree from the file
@@ -215,32 +506,316 @@ public class FileUnpacker<T>
     }
 
     /**
-     * Read the encoded data portion of {@link #packedStream}. The unpacked
-     * data is written to the destFile if it is not nill. The digest is updated
-     * from the unpacked data.
+     * Read the encoded data portion of {@link #packedStream} and write the
+     * unpacked data to a stream.
      *
      * @param packedStream the stream to read the bits from
+     * @param totalObjects the number of objects in the original file
+     * @param os the stream to write the unpacked (original) content to
+     * @throws IOException in case of read or write error
+     */
+    void readPackedContent(BitInputStream packedStream, long totalObjects,
+        OutputStream os) throws IOException
+    {
+        CompressedObjectIterator iterator = new CompressedObjectIterator(totalObjects, packedStream);
+        converter.writeAllToOutput(iterator, os);
+    }
+
+    /**
+     * Read the Huffman code and then decode a range of the objects after
+     * it, starting from the nearest sync point if the file has them.
+     *
+     * @param packedStream the stream just after the header
+     * @param packedChannel the channel of the packed file, to seek in
+     * @param header the header read from the front of the packed file
+     * @param fromObject the index of the first object, or if negative the
+     *   number of objects before the end of the file
+     * @param toObject the index after the last object, limited to the end of the file,
+     *   or if negative the number of objects before the end of the file
+     * @param os the stream to write the objects to
+     * @return the number of objects unpacked
+     * @throws IOException in case of read or write error
+     * @throws IllegalArgumentException if the range has no objects of the file
+     */
+    private long readRange(BitInputStream packedStream, FileChannel packedChannel,
+        PackedHeader header, long fromObject, long toObject, OutputStream os) throws IOException
+    {
+        long totalObjects = readHuffmanCode(packedStream, header);
+        long firstObject = fromObject < 0 ?
+            Math.max(0, totalObjects + fromObject) : Math.min(fromObject, totalObjects);
+        long endObject = toObject < 0 ?
+            Math.max(0, totalObjects + toObject) : Math.min(toObject, totalObjects);
+        if (firstObject >= endObject)
+        {
+            throw new IllegalArgumentException("The range from " + firstObject + " to " + endObject +
+                " has none of the " + totalObjects + " objects of the file");
+        }
+
+        BitInputStream rangeStream = packedStream;
+        long objectIndex = 0;
+        if (header.hasFlag(PackedHeader.SYNC_FLAG))
+        {
+            SyncIndex syncIndex = SyncIndex.read(packedChannel);
+            if (syncIndex.getSyncPointCount() > 0)
+            {
+                int syncPoint = syncIndex.findSyncPoint(firstObject);
+                long bitPosition = syncIndex.getContentOffset() * Byte.SIZE + syncIndex.getBitOffset(syncPoint);
+                objectIndex = syncIndex.getObjectIndex(syncPoint);
+                System.out.println("Sync point " + syncPoint + " of " + syncIndex.getSyncPointCount() +
+                    " is at object " + objectIndex);
+
+                // the stream is closed with the channel of the packed file
+                packedChannel.position(bitPosition / Byte.SIZE);
+                rangeStream = new BitInputStream(Channels.newInputStream(packedChannel));
+                rangeStream.readBits((int)(bitPosition % Byte.SIZE));
+            }
+        }
+
+        // the objects between the sync point and the range are decoded but not written
+        for (; objectIndex < firstObject; ++objectIndex)
+        {
+            decoder.decodeIndex(rangeStream);
+        }
+
+        readPackedContent(rangeStream, endObject - firstObject, os);
+        os.flush();
+        return endObject - firstObject;
+    }
+
+    /**
+     * Read the blocks of a stream, each with its own Huffman code, until the
+     * empty block at the end of the stream. The checksum after each block is
+     * checked as soon as the block is unpacked.
+     *
+     * @param packedStream the stream to read the blocks from
+     * @param header the header read from the front of the packed stream
+     * @param os the stream to write the unpacked (original) content to
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private void readStreamBlocks(BitInputStream packedStream, PackedHeader header,
+        OutputStream os) throws IOException, NoSuchAlgorithmException
+    {
+        MessageDigest blockDigest = header.getChecksumType().createDigest();
+        DigestOutputStream blockOs = new DigestOutputStream(os, blockDigest);
+        blockOs.on(header.isChecksumStored());
+
+        int blockCount = 0;
+        long objectCount;
+        while ((objectCount = packedStream.readVarLong()) != 0)
+        {
+            readCanonicalCode(packedStream);
+            readPackedContent(packedStream, objectCount, blockOs);
+            if (header.isChecksumStored())
+            {
+                byte[] storedChecksum = new byte[blockDigest.getDigestLength()];
+                packedStream.readFully(storedChecksum);
+                verifyChecksum(storedChecksum, blockDigest.digest(), "Stream block " + blockCount);
+            }
+            ++blockCount;
+        }
+        System.out.println("Stream blocks: " + blockCount);
+    }
+
+    /**
+     * Read the blocks of content packed with the code of a dictionary or a
+     * code estimated from a sample, each just a number of objects and their
+     * bits, until the empty block at the end of the content.
+     *
+     * @param packedStream the stream to read the blocks from
+     * @param os the stream to write the unpacked (original) content to
+     * @throws IOException in case of read or write error
+     */
+    private void readCountedBlocks(BitInputStream packedStream, OutputStream os)
+        throws IOException
+    {
+        int blockCount = 0;
+        long objectCount;
+        while ((objectCount = packedStream.readVarLong()) != 0)
+        {
+            readPackedContent(packedStream, objectCount, os);
+            ++blockCount;
+        }
+        System.out.println("Counted blocks: " + blockCount);
+    }
+
+    /**
+     * Read the encoded blocks of a packed file, using the {@link BlockIndex}
+     * at the end of the file to find them. The blocks are decoded
+     * concurrently, and each block is written to its own position in the
+     * destFile as soon as it is decoded. Each block is checked against its own
+     * checksum as it is decoded, and the digest is updated from the blocks in
+     * order to check the whole file against the checksum after the blocks.
+     *
+     * @param packedChannel the channel of the packed file
+     * @param header the header read from the front of the packed file
      * @param destFile the file to write the unpacked (original) content to,
      *   can be null if no file write is desired
-     * @return the MD5 digest of the uncompressed data
+     * @return the checksum of the uncompressed data
      * @throws IOException in case of read error
-     * @throws NoSuchAlgorithmException if MD5 not available
+     * @throws NoSuchAlgorithmException if the checksum is not available
      */
-    private byte[] readPackedContent(BitInputStream packedStream, File destFile) throws IOException, NoSuchAlgorithmException
+    private byte[] readPackedBlocks(FileChannel packedChannel, PackedHeader header, File destFile)
+        throws IOException, NoSuchAlgorithmException
     {
-        int totalObjects = packedStream.readInt();
+        ChecksumType checksumType = header.getChecksumType();
+        int checksumLength = header.isChecksumStored() ? checksumType.getLength() : 0;
+        BlockIndex blockIndex = BlockIndex.read(packedChannel, checksumLength);
+        System.out.println("Blocks: " + blockIndex.getEntries().size());
 
-        MessageDigest digest = MessageDigest.getInstance("MD5");
+        MessageDigest digest = checksumType.createDigest();
 
-        // The os could be a FileOutputStream if we wanted to save the original content.
-        try (OutputStream os = destFile == null ?
-                new NullOutputStream() : new FileOutputStream(destFile);
-            DigestOutputStream digestOs = new DigestOutputStream(os, digest))
+        // the blocks are decoded on the pool, but no more than a few blocks
+        // per thread are kept in memory waiting to be digested
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int maxPendingBlocks = 2 * pool.getParallelism();
+        Deque<ForkJoinTask<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+        try (FileChannel destChannel = destFile == null ? null :
+                FileChannel.open(destFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
         {
-            CompressedObjectIterator iterator = new CompressedObjectIterator(totalObjects, packedStream);
-            converter.writeAllToOutput(iterator, digestOs);
+            for (BlockIndex.Entry entry : blockIndex.getEntries())
+            {
+                pendingBlocks.add(pool.submit(() -> unpackBlock(packedChannel, entry, checksumType, destChannel)));
+                if (pendingBlocks.size() >= maxPendingBlocks)
+                {
+                    digest.update(pendingBlocks.poll().join());
+                }
+            }
+
+            while (!pendingBlocks.isEmpty())
+            {
+                digest.update(pendingBlocks.poll().join());
+            }
+        }
+
+        byte[] checksum = digest.digest();
+        if (header.isChecksumStored())
+        {
+            byte[] storedChecksum = BlockIndex.readBytes(packedChannel,
+                blockIndex.getPackedEnd(), checksumLength);
+            verifyChecksum(storedChecksum, checksum, "Unpacked content");
+        }
+        return checksum;
+    }
+
+    /**
+     * Decode one block out of every interval concurrently, checking each
+     * against its checksum, without writing them anywhere.
+     *
+     * @param packedChannel the channel of the packed file
+     * @param header the header read from the front of the packed file
+     * @param interval the number of blocks for each one that is verified
+     * @return the number of blocks verified
+     * @throws IOException in case of read error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private int verifyBlocks(FileChannel packedChannel, PackedHeader header, int interval)
+        throws IOException, NoSuchAlgorithmException
+    {
+        ChecksumType checksumType = header.getChecksumType();
+        int checksumLength = header.isChecksumStored() ? checksumType.getLength() : 0;
+        List<BlockIndex.Entry> entries = BlockIndex.read(packedChannel, checksumLength).getEntries();
+
+        List<ForkJoinTask<byte[]>> verifiedBlocks = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i += interval)
+        {
+            BlockIndex.Entry entry = entries.get(i);
+            verifiedBlocks.add(ForkJoinPool.commonPool().submit(
+                () -> unpackBlock(packedChannel, entry, checksumType, null)));
+        }
+        verifiedBlocks.forEach(ForkJoinTask::join);
+
+        System.out.println("Verified blocks: " + verifiedBlocks.size() + " of " + entries.size());
+        return verifiedBlocks.size();
+    }
+
+    /**
+     * Decode one block, check it against its checksum, and write it to its
+     * position in the destination.
+     *
+     * @param packedChannel the channel of the packed file
+     * @param entry the location and size of the block
+     * @param checksumType the type of the block's checksum
+     * @param destChannel the channel to write the block to, can be null
+     * @return the original content of the block
+     */
+    private byte[] unpackBlock(FileChannel packedChannel, BlockIndex.Entry entry,
+        ChecksumType checksumType, FileChannel destChannel)
+    {
+        try
+        {
+            byte[] unpackedBytes = decodeBlock(packedChannel, entry);
+            if (entry.getChecksum().length > 0)
+            {
+                verifyChecksum(entry.getChecksum(), checksumType.createDigest().digest(unpackedBytes),
+                    "Block at " + entry.getPackedOffset());
+            }
+
+            if (destChannel != null)
+            {
+                ByteBuffer buffer = ByteBuffer.wrap(unpackedBytes);
+                while (buffer.hasRemaining())
+                {
+                    destChannel.write(buffer, entry.getUnpackedOffset() + buffer.position());
+                }
+            }
+            return unpackedBytes;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Could not unpack block at " + entry.getPackedOffset(), ex);
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            // the same checksum was already created for the whole file
+            throw new IllegalStateException("Checksum not available", ex);
+        }
+    }
+
+    /**
+     * Read one encoded block and decode it into its original bytes.
+     *
+     * @param packedChannel the channel of the packed file
+     * @param entry the location and size of the block
+     * @return the original content of the block
+     * @throws IOException in case of read error
+     */
+    private byte[] decodeBlock(FileChannel packedChannel, BlockIndex.Entry entry)
+        throws IOException
+    {
+        byte[] packedBytes = BlockIndex.readBytes(packedChannel,
+            entry.getPackedOffset(), entry.getPackedLength());
+
+        byte[] unpackedBytes = decodeBytes(packedBytes, entry.getObjectCount(), entry.getUnpackedLength());
+        if (unpackedBytes.length != entry.getUnpackedLength())
+        {
+            throw new IOException("Block at " + entry.getPackedOffset() + " unpacked to " +
+                unpackedBytes.length + " bytes instead of " + entry.getUnpackedLength());
         }
+        return unpackedBytes;
+    }
 
-        return digest.digest();
+    /**
+     * Decode the objects of packed bytes, that start on a byte boundary,
+     * into their original bytes.
+     *
+     * @param packedBytes the packed bits of the objects
+     * @param objectCount the number of objects to decode
+     * @param expectedLength the number of original bytes expected
+     * @return the original content
+     * @throws IOException in case of bits that are not a code
+     */
+    byte[] decodeBytes(byte[] packedBytes, long objectCount, int expectedLength)
+        throws IOException
+    {
+        ByteArrayOutputStream unpackedBytes = new ByteArrayOutputStream(expectedLength);
+        try (BitInputStream blockStream = new BitInputStream(new ByteArrayInputStream(packedBytes)))
+        {
+            CompressedObjectIterator iterator = new CompressedObjectIterator(objectCount, blockStream);
+            converter.writeAllToOutput(iterator, unpackedBytes);
+        }
+        return unpackedBytes.toByteArray();
     }
 }
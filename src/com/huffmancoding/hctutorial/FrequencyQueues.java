@@ -0,0 +1,219 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The TreeNodes waiting to be merged into the Huffman tree, kept in two
+ * queues ordered by frequency so the least frequent node is always at the
+ * front of one of them.
+ *
+ * The leaf nodes are sorted once into the first queue. Every merged node
+ * is added to the back of the second queue. Merged nodes are created in
+ * order of frequency, since each merges the two least frequent nodes left,
+ * so the second queue stays sorted without any more sorting. Finding the
+ * least frequent node is just comparing the fronts of the two queues.
+ *
+ * TreeNodes with the same frequency are ordered by their leftmost object.
+ * Rather than walking down to that object every time, each leaf node is given
+ * the rank of its object in the object comparator's order. A merged node
+ * takes the rank of its left child, which is always the rank of its leftmost
+ * object. Two merged nodes of the same frequency are always created in order
+ * of rank, so the second queue is sorted by rank too, and the tree is the
+ * same as when all the nodes are kept in one sorted set.
+ *
+ * @param <T> The type of objects from the source in the tree
+ */
+public class FrequencyQueues<T>
+{
+    /** the leaf nodes, by frequency then rank. */
+    private final List<LeafNode<T>> leafNodes;
+
+    /** the frequency of each leaf node. */
+    private final long[] leafFrequencies;
+
+    /** the rank of the object of each leaf node. */
+    private final int[] leafRanks;
+
+    /** the position of the next leaf node in the first queue. */
+    private int leafFront = 0;
+
+    /** the merged nodes, in the order they were created. */
+    private final List<NonLeafNode<T>> mergedNodes;
+
+    /** the frequency of each merged node. */
+    private final long[] mergedFrequencies;
+
+    /** the rank of the leftmost object of each merged node. */
+    private final int[] mergedRanks;
+
+    /** the position of the next merged node in the second queue. */
+    private int mergedFront = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param unsortedNodes the leaf node for every unique object
+     * @param objectComparator the comparator for objects with the same frequency
+     */
+    public FrequencyQueues(Collection<LeafNode<T>> unsortedNodes, Comparator<T> objectComparator)
+    {
+        List<LeafNode<T>> rankedNodes = new ArrayList<>(unsortedNodes);
+        rankedNodes.sort(Comparator.comparing(LeafNode::getObject, objectComparator));
+
+        leafNodes = new ArrayList<>(rankedNodes.size());
+        leafFrequencies = new long[rankedNodes.size()];
+        leafRanks = new int[rankedNodes.size()];
+        for (int rank : sortRanksByFrequency(rankedNodes))
+        {
+            LeafNode<T> leafNode = rankedNodes.get(rank);
+            leafFrequencies[leafNodes.size()] = leafNode.getFrequency();
+            leafRanks[leafNodes.size()] = rank;
+            leafNodes.add(leafNode);
+        }
+
+        // each merge adds one node, until there is just the root
+        int maxMerges = Math.max(0, rankedNodes.size() - 1);
+        mergedNodes = new ArrayList<>(maxMerges);
+        mergedFrequencies = new long[maxMerges];
+        mergedRanks = new int[maxMerges];
+    }
+
+    /**
+     * Sort the ranks of the leaf nodes by frequency, keeping nodes of the
+     * same frequency in rank order.
+     *
+     * The frequency and rank are usually small enough to share one long, with
+     * the rank in the low bits, so a single sort of primitives does both.
+     *
+     * @param rankedNodes the leaf nodes in rank order
+     * @return the ranks of the leaf nodes, by frequency then rank
+     */
+    private static <T> int[] sortRanksByFrequency(List<LeafNode<T>> rankedNodes)
+    {
+        int size = rankedNodes.size();
+        int rankBits = Integer.SIZE - Integer.numberOfLeadingZeros(size);
+        long maxFrequency = 0;
+        for (LeafNode<T> leafNode : rankedNodes)
+        {
+            maxFrequency = Math.max(maxFrequency, leafNode.getFrequency());
+        }
+
+        if (Long.numberOfLeadingZeros(maxFrequency) <= rankBits)
+        {
+            // the sort is stable, so nodes of the same frequency stay in rank order
+            return IntStream.range(0, size).boxed()
+                .sorted(Comparator.comparingLong(rank -> rankedNodes.get(rank).getFrequency()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        }
+
+        long[] keys = new long[size];
+        for (int rank = 0; rank < size; ++rank)
+        {
+            keys[rank] = (rankedNodes.get(rank).getFrequency() << rankBits) | rank;
+        }
+        Arrays.sort(keys);
+
+        int rankMask = (1 << rankBits) - 1;
+        int[] ranks = new int[size];
+        for (int i = 0; i < size; ++i)
+        {
+            ranks[i] = (int)(keys[i] & rankMask);
+        }
+        return ranks;
+    }
+
+    /**
+     * Returns the number of TreeNodes in the queues.
+     *
+     * @return the number of TreeNodes not merged yet
+     */
+    public int size()
+    {
+        return (leafNodes.size() - leafFront) + (mergedNodes.size() - mergedFront);
+    }
+
+    /**
+     * Remove the least frequent TreeNode from the queues.
+     *
+     * @return the least frequent TreeNode, null if the queues are empty
+     */
+    public TreeNode<T> pollFirst()
+    {
+        if (size() == 0)
+        {
+            return null;
+        }
+        return isLeafFirst() ? leafNodes.get(leafFront++) : mergedNodes.get(mergedFront++);
+    }
+
+    /**
+     * Remove the two least frequent TreeNodes and add a NonLeafNode that has
+     * them as its children, the least frequent on the left.
+     *
+     * @return the new NonLeafNode
+     */
+    public NonLeafNode<T> mergeFirstTwo()
+    {
+        int rank = isLeafFirst() ? leafRanks[leafFront] : mergedRanks[mergedFront];
+        TreeNode<T> left = pollFirst();
+        TreeNode<T> right = pollFirst();
+
+        NonLeafNode<T> parentNode = new NonLeafNode<T>(left, right);
+        mergedFrequencies[mergedNodes.size()] = parentNode.getFrequency();
+        mergedRanks[mergedNodes.size()] = rank;
+        mergedNodes.add(parentNode);
+
+        return parentNode;
+    }
+
+    /**
+     * Returns whether the front of the leaf node queue comes before the
+     * front of the merged node queue, by frequency then by the rank of the
+     * leftmost object.
+     *
+     * @return true if the next node is a leaf node
+     */
+    private boolean isLeafFirst()
+    {
+        if (mergedFront == mergedNodes.size())
+        {
+            return true;
+        }
+        if (leafFront == leafNodes.size())
+        {
+            return false;
+        }
+
+        long leafFrequency = leafFrequencies[leafFront];
+        long mergedFrequency = mergedFrequencies[mergedFront];
+        return leafFrequency < mergedFrequency ||
+            (leafFrequency == mergedFrequency && leafRanks[leafFront] < mergedRanks[mergedFront]);
+    }
+}
@@ -0,0 +1,273 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Walking the Huffman tree one bit at a time is the easiest way to understand
+ * decoding, but it costs a branch down the tree for every bit. This decoder
+ * instead looks at several bits at once and finds the object in a table.
+ *
+ * Each table is indexed by the next few bits of the packed stream. If a code
+ * fits within those bits, every entry starting with the code holds the
+ * object and the length of its code, so a single lookup decodes the object.
+ * Codes longer than the table leave an entry that refers to a smaller table
+ * for the remaining bits.
+ *
+ * @param <T> The type of Object in the file.
+ */
+public class HuffmanDecoder<T>
+{
+    /** the most bits that are looked up in a single table. */
+    private static final int MAX_TABLE_BITS = 10;
+
+    /** the number of low bits of a table entry that hold the code length. */
+    private static final int LENGTH_BITS = 4;
+
+    /** the mask for the code length of a table entry. */
+    private static final int LENGTH_MASK = (1 << LENGTH_BITS) - 1;
+
+    /** the table entry for bits that do not start any code. */
+    private static final int INVALID_ENTRY = Integer.MIN_VALUE;
+
+    /**
+     * A table of entries for every combination of the next few bits.
+     *
+     * A positive entry has the index of the object shifted above the number
+     * of bits of the code used by this table. A negative entry is the
+     * complement of the index of the child table for longer codes.
+     */
+    private static class DecodeTable
+    {
+        /** the number of bits used to index the entries. */
+        private final int bits;
+
+        /** the entries for each combination of bits. */
+        private final int[] entries;
+
+        /** the tables for codes longer than the bits of this table. */
+        private DecodeTable[] children;
+
+        /**
+         * Constructor.
+         *
+         * @param tableBits the number of bits used to index the entries
+         */
+        public DecodeTable(int tableBits)
+        {
+            bits = tableBits;
+            entries = new int[1 << tableBits];
+            Arrays.fill(entries, INVALID_ENTRY);
+        }
+    }
+
+    /** the objects that can be decoded, by index. */
+    private final List<T> objects;
+
+    /** the code for each object, in the low bits. */
+    private final long[] codes;
+
+    /** the number of bits in the code for each object. */
+    private final int[] lengths;
+
+    /** the table for the first bits of every code, null if nothing to decode. */
+    private final DecodeTable rootTable;
+
+    /**
+     * Constructor.
+     *
+     * @param codeObjects the objects that can be decoded
+     * @param objectCodes the code of each object, in the low bits
+     * @param codeLengths the number of bits in each code
+     */
+    public HuffmanDecoder(List<T> codeObjects, long[] objectCodes, int[] codeLengths)
+    {
+        objects = codeObjects;
+        codes = objectCodes;
+        lengths = codeLengths;
+
+        List<Integer> allIndexes = new ArrayList<>();
+        for (int i = 0; i < objects.size(); ++i)
+        {
+            allIndexes.add(i);
+        }
+
+        rootTable = allIndexes.isEmpty() ? null : buildTable(allIndexes, 0);
+    }
+
+    /**
+     * Create a decoder with the codes found by walking down a Huffman tree.
+     *
+     * @param huffmanTree the tree de-serialized from the packed file, can be null
+     * @return the decoder for the tree
+     */
+    public static <T> HuffmanDecoder<T> fromTree(TreeNode<T> huffmanTree)
+    {
+        List<T> objects = new ArrayList<>();
+        List<Long> codes = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        if (huffmanTree != null)
+        {
+            addSubTreeCodes(huffmanTree, 0L, 0, objects, codes, lengths);
+        }
+
+        return new HuffmanDecoder<>(objects,
+            codes.stream().mapToLong(Long::longValue).toArray(),
+            lengths.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Recursively walk a TreeNode adding the code of each leaf node.
+     *
+     * @param node the node to continue walking down
+     * @param code the bits down to the node
+     * @param length the number of bits down to the node
+     * @param objects the objects of the leaf nodes found so far
+     * @param codes the codes of the leaf nodes found so far
+     * @param lengths the code lengths of the leaf nodes found so far
+     */
+    private static <T> void addSubTreeCodes(TreeNode<T> node, long code, int length,
+        List<T> objects, List<Long> codes, List<Integer> lengths)
+    {
+        if (node instanceof NonLeafNode<T> nonLeafNode)
+        {
+            // arbitrarily we'll make left child the false bit
+            addSubTreeCodes(nonLeafNode.getLeft(), code << 1, length + 1, objects, codes, lengths);
+            addSubTreeCodes(nonLeafNode.getRight(), (code << 1) | 1, length + 1, objects, codes, lengths);
+        }
+        else if (node instanceof LeafNode<T> leafNode)
+        {
+            objects.add(leafNode.getObject());
+            codes.add(code);
+            lengths.add(length);
+        }
+        else
+        {
+            // if we got here, the node is corrupt
+            throw new RuntimeException("Unknown TreeNode type: " + node.getClass().getName());
+        }
+    }
+
+    /**
+     * Build a table for the codes of some objects, after the bits of the codes
+     * that are handled by the parent tables.
+     *
+     * @param indexes the objects with codes that have the same leading bits
+     * @param usedBits the number of leading bits handled by parent tables
+     * @return the table for the next bits of the codes
+     */
+    private DecodeTable buildTable(List<Integer> indexes, int usedBits)
+    {
+        int maxRemainingBits = 0;
+        for (int index : indexes)
+        {
+            maxRemainingBits = Math.max(maxRemainingBits, lengths[index] - usedBits);
+        }
+
+        DecodeTable table = new DecodeTable(Math.min(maxRemainingBits, MAX_TABLE_BITS));
+
+        // codes too long for this table are grouped by the bits that this
+        // table does handle, each group gets a child table
+        Map<Integer, List<Integer>> longerCodes = new TreeMap<>();
+        for (int index : indexes)
+        {
+            int remainingBits = lengths[index] - usedBits;
+            long remainingCode = codes[index] & ((1L << remainingBits) - 1);
+            if (remainingBits <= table.bits)
+            {
+                // every entry that starts with the code decodes to the object
+                int unusedBits = table.bits - remainingBits;
+                int firstEntry = (int)(remainingCode << unusedBits);
+                Arrays.fill(table.entries, firstEntry, firstEntry + (1 << unusedBits),
+                    (index << LENGTH_BITS) | remainingBits);
+            }
+            else
+            {
+                int tableBits = (int)(remainingCode >>> (remainingBits - table.bits));
+                longerCodes.computeIfAbsent(tableBits, k -> new ArrayList<>()).add(index);
+            }
+        }
+
+        List<DecodeTable> children = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : longerCodes.entrySet())
+        {
+            table.entries[entry.getKey()] = ~children.size();
+            children.add(buildTable(entry.getValue(), usedBits + table.bits));
+        }
+        table.children = children.toArray(new DecodeTable[children.size()]);
+
+        return table;
+    }
+
+    /**
+     * Read the bits of one code from the packed stream and return the index
+     * of its object.
+     *
+     * @param packedStream the stream to read the bits from
+     * @return the index of the decoded object
+     * @throws IOException in case of read error or bits that are not a code
+     */
+    public int decodeIndex(BitInputStream packedStream) throws IOException
+    {
+        if (rootTable == null)
+        {
+            throw new IOException("There are no codes to decode");
+        }
+
+        DecodeTable table = rootTable;
+        while (true)
+        {
+            int entry = table.entries[(int)packedStream.peekBits(table.bits)];
+            if (entry >= 0)
+            {
+                packedStream.skipBits(entry & LENGTH_MASK);
+                return entry >>> LENGTH_BITS;
+            }
+            else if (entry == INVALID_ENTRY)
+            {
+                throw new IOException("Packed data contains an unknown code");
+            }
+
+            // the code is longer than this table, continue with the next bits
+            packedStream.skipBits(table.bits);
+            table = table.children[~entry];
+        }
+    }
+
+    /**
+     * Read the bits of one code from the packed stream and return its object.
+     *
+     * @param packedStream the stream to read the bits from
+     * @return the decoded object
+     * @throws IOException in case of read error or bits that are not a code
+     */
+    public T decode(BitInputStream packedStream) throws IOException
+    {
+        return objects.get(decodeIndex(packedStream));
+    }
+}
@@ -1,136 +1,812 @@
-package com.huffmancoding.hctutorial;
-
-/******************************************************************************
-
-    HuffmanTutorial: The Huffman Coding sample code.
-    Copyright (C) 2002-2022 Kenneth D. Huffman.
-
-    This program is free software; you can redistribute it and/or modify
-    it under the terms of the GNU General Public License as published by
-    the Free Software Foundation; either version 2 of the License, or
-    (at your option) any later version.
-
-    This program is distributed in the hope that it will be useful,
-    but WITHOUT ANY WARRANTY; without even the implied warranty of
-    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
-    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
-
-    The author can be reached at huffmancoding.com.
-
-    Although this is meant to explain Huffman coding, do not pass this code off
-    as your own if given a homework assignment.
-
-******************************************************************************/
-
-import java.io.File;
-import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
-
-/**
- * This program computes the Huffman coding tree for a file.
- *
- * It expects the name of the file as a sole argument. It will create a
- * ".packed" file when compressing the file. It will uncompress the file on the
- * command line if it ends with ".packed".
- *
- * When packing, it will then re-read the packed file to verify file that it
- * matches by comparing MD5 checksums.
- *
- * @author Ken Huffman
- */
-public class HuffmanTutorial
-{
-    /** the filename extension for packed files. */
-    private static final String PACKED_EXTENSION = ".packed";
-
-    /**
-     * Main function for the application. The file to be compressed should be
-     * a command line argument.
-     *
-     * @param args the first entry in the array should be a file name.
-     */
-    public static void main(String[] args)
-    {
-        int exitCode = 0;
-        if (args.length < 1 || args[0].isEmpty())
-        {
-            System.err.println("Program requires a filename as a command line argument");
-            exitCode = 1;
-        }
-        else
-        {
-            String filename = args[0];
-
-            try
-            {
-                if (filename.endsWith(PACKED_EXTENSION))
-                {
-                    unpackFile(filename);
-                }
-                else
-                {
-                    packFile(filename);
-                }
-            }
-            catch (Exception ex)
-            {
-                // could not read the file?
-                ex.printStackTrace();
-                exitCode = 1;
-            }
-        }
-        System.exit(exitCode);
-    }
-
-    /**
-     * Pack a file.
-     *
-     * @param filename the name of the file to pack
-     * @throws IOException in case of File error
-     * @throws NoSuchAlgorithmException MD5 check sum not available
-     */
-    private static void packFile(String filename) throws IOException, NoSuchAlgorithmException
-    {
-        File originalFile = new File(filename).getCanonicalFile();
-        File packedFile = new File(originalFile.getParentFile(), originalFile.getName() + PACKED_EXTENSION);
-
-        byte[] originalDigest = FilePacker.packFile(originalFile, packedFile);
-        System.out.println("Original digest: " + byteArrayToHex(originalDigest));
-
-        byte[] unpackedDigest = FileUnpacker.unpackFile(packedFile, null);
-        System.out.println("Unpacked digest: " + byteArrayToHex(unpackedDigest));
-    }
-
-    /**
-     * Unpack a packed file.
-     *
-     * @param filename the name of the file to unpack
-     * @throws IOException in case of File error
-     * @throws NoSuchAlgorithmException MD5 check sum not available
-     */
-    private static void unpackFile(String filename) throws IOException, NoSuchAlgorithmException
-    {
-        File packedFile = new File(filename).getCanonicalFile();
-        String packedName = packedFile.getName();
-        String unpackedName = packedName.substring(0, packedName.length()-PACKED_EXTENSION.length());
-        File originalFile = new File(packedFile.getParentFile(), unpackedName);
-
-        FileUnpacker.unpackFile(packedFile, originalFile);
-    }
-
-    /**
-     * Convert a byte digest to a string.
-     *
-     * @param bytes the array of bytes for the digest.
-     * @return String representation of the bytes
-     */
-    public static String byteArrayToHex(byte[] bytes)
-    {
-        StringBuilder sb = new StringBuilder(bytes.length * 2);
-        for (byte b : bytes)
-        {
-           sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-     }
-}
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+    Copyright (C) 2002-2022 Kenneth D. Huffman.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This program computes the Huffman coding tree for a file.
+ *
+ * It expects the name of the file as a sole argument. It will create a
+ * ".packed" file when compressing the file. It will uncompress the file on the
+ * command line if it ends with ".packed".
+ *
+ * When packing, it will verify that the packed file unpacks to the original
+ * by comparing checksums. By default the packed bytes are unpacked on another
+ * thread while they are written, --verify=MODE chooses another VerifyMode:
+ * FULL unpacks the whole file again after it is written, SAMPLED only decodes
+ * some of the blocks of a file packed in blocks, and NONE skips it. The
+ * checksum is also stored in the packed file, so unpacking checks it too.
+ *
+ * Options that start with "--" may come before the file name:
+ * --block-size=SIZE packs the file in blocks of SIZE bytes (with an optional
+ * K or M suffix) that are encoded concurrently. --mmap reads the file through
+ * a memory mapping instead of streams. --pipeline reads, encodes and writes
+ * the file on separate threads. --type=TYPE packs with a ConverterType,
+ * such as ADAPTIVE_BYTE, CODE_POINT, WORD or CONTEXT_BYTE, instead of the
+ * one probed from the file's content. --max-words=N limits the dictionary of
+ * WORD tokens.
+ * --stream-block-size=SIZE packs the file in blocks that each have their own
+ * Huffman code, reading the file only once. --max-code-length=BITS limits the
+ * length of the codes. --checksum=TYPE stores a ChecksumType other than the
+ * default CRC32C, such as MD5 or SHA256. --sync-interval=N records a sync
+ * point every N objects, so that --range=FROM:TO can unpack the objects of
+ * a packed file from FROM up to TO to standard output without decoding the
+ * objects before them. A negative FROM or TO counts back from the end, so
+ * --range=-1000: unpacks the last 1000 objects. --charset=NAME decodes text
+ * files with a charset other than UTF-8, which is recorded in the packed file.
+ * --estimate=SIZE builds the code from SIZE bytes of blocks sampled from
+ * across a large file, instead of counting the whole file first.
+ *
+ * With --batch, every file, directory or glob pattern on the command line
+ * is packed, or with --unpack every packed file is unpacked, several at a
+ * time. --threads=N chooses how many at a time, by default one for each
+ * processor. Each file and then a summary is reported instead of the usual
+ * messages.
+ *
+ * With --archive=FILE, every file, directory or glob pattern on the
+ * command line is packed into one PackedArchive with a directory of its
+ * members. --shared-code packs the members of each ConverterType with one
+ * shared code instead of a code for each member. --list lists the members
+ * of the archive, and --extract unpacks the members named on the command
+ * line, or all of them, into the current directory.
+ *
+ * With --train, every file, directory or glob pattern on the command line
+ * is counted to train a CodeDictionary, which is saved in the dictionary
+ * directory in a file named by its ID. --dict=FILE packs with the code of
+ * a dictionary file, or of the dictionary with an ID, in a single pass and
+ * without a code of its own, which suits many small similar files. A file
+ * packed with a dictionary is unpacked with the one of its ID in the
+ * dictionary directory, which --dict-dir=DIR chooses instead of the one in
+ * the user's home directory.
+ *
+ * A file name of "-" packs standard input to standard output, in stream
+ * blocks unless another single pass way is chosen. With --unpack it unpacks
+ * standard input to standard output instead. The messages are written to
+ * standard error.
+ *
+ * @author Ken Huffman
+ */
+public class HuffmanTutorial
+{
+    /** the filename extension for packed files. */
+    static final String PACKED_EXTENSION = ".packed";
+
+    /** the prefix of every command line option. */
+    private static final String OPTION_PREFIX = "--";
+
+    /** the option for packing in blocks of a size. */
+    private static final String BLOCK_SIZE_OPTION = "--block-size=";
+
+    /** the option for reading the original file through a memory mapping. */
+    private static final String MMAP_OPTION = "--mmap";
+
+    /** the option for reading, encoding and writing on separate threads. */
+    private static final String PIPELINE_OPTION = "--pipeline";
+
+    /** the option for choosing the converter instead of probing the file. */
+    private static final String TYPE_OPTION = "--type=";
+
+    /** the option for packing in blocks that each have their own code. */
+    private static final String STREAM_BLOCK_SIZE_OPTION = "--stream-block-size=";
+
+    /** the option for limiting the length of the codes. */
+    private static final String MAX_CODE_LENGTH_OPTION = "--max-code-length=";
+
+    /** the option for choosing the checksum stored in the packed file. */
+    private static final String CHECKSUM_OPTION = "--checksum=";
+
+    /** the option for choosing the charset of text files. */
+    private static final String CHARSET_OPTION = "--charset=";
+
+    /** the option for limiting the dictionary of a file packed as words. */
+    private static final String MAX_WORDS_OPTION = "--max-words=";
+
+    /** the option for recording a sync point every so many objects. */
+    private static final String SYNC_INTERVAL_OPTION = "--sync-interval=";
+
+    /** the option for estimating the code from a sample of a large file. */
+    private static final String ESTIMATE_OPTION = "--estimate=";
+
+    /** the option for unpacking a range of the objects of a packed file. */
+    private static final String RANGE_OPTION = "--range=";
+
+    /** the separator of the first and end objects of a range. */
+    private static final String RANGE_SEPARATOR = ":";
+
+    /** the option for choosing how the packed file is verified. */
+    private static final String VERIFY_OPTION = "--verify=";
+
+    /** the option for unpacking standard input, or every file of a batch. */
+    private static final String UNPACK_OPTION = "--unpack";
+
+    /** the option for packing or unpacking many files in one run. */
+    private static final String BATCH_OPTION = "--batch";
+
+    /** the option for the number of files of a batch handled at the same time. */
+    private static final String THREADS_OPTION = "--threads=";
+
+    /** the option for packing files into, or reading them from, an archive. */
+    private static final String ARCHIVE_OPTION = "--archive=";
+
+    /** the option for the members of an archive sharing a code for each type. */
+    private static final String SHARED_CODE_OPTION = "--shared-code";
+
+    /** the option for listing the members of an archive. */
+    private static final String LIST_OPTION = "--list";
+
+    /** the option for unpacking the members of an archive. */
+    private static final String EXTRACT_OPTION = "--extract";
+
+    /** the option for training a dictionary on files. */
+    private static final String TRAIN_OPTION = "--train";
+
+    /** the option for packing with the code of a dictionary. */
+    private static final String DICT_OPTION = "--dict=";
+
+    /** the option for the directory of dictionaries. */
+    private static final String DICT_DIR_OPTION = "--dict-dir=";
+
+    /** the file name for standard input and output. */
+    private static final String STANDARD_STREAMS_FILENAME = "-";
+
+    /** the stream block size when packing standard input without one. */
+    private static final int DEFAULT_STREAM_BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * Main function for the application. The file to be compressed should be
+     * a command line argument.
+     *
+     * @param args options followed by a file name, or several with --batch.
+     */
+    public static void main(String[] args)
+    {
+        int exitCode = 0;
+        PackOptions options = new PackOptions();
+        options.setVerifyMode(VerifyMode.FUSED);
+        boolean unpack = Arrays.asList(args).contains(UNPACK_OPTION);
+        boolean batch = Arrays.asList(args).contains(BATCH_OPTION);
+        boolean train = Arrays.asList(args).contains(TRAIN_OPTION);
+        int threads = BatchProcessor.getDefaultThreadCount();
+        String archiveName = null;
+        String range = null;
+        List<String> filenames;
+        boolean argumentError = false;
+        try
+        {
+            filenames = parseArguments(args, options);
+            for (String arg : args)
+            {
+                if (arg.startsWith(THREADS_OPTION))
+                {
+                    threads = Integer.parseInt(arg.substring(THREADS_OPTION.length()));
+                }
+                else if (arg.startsWith(ARCHIVE_OPTION))
+                {
+                    archiveName = arg.substring(ARCHIVE_OPTION.length());
+                }
+                else if (arg.startsWith(RANGE_OPTION))
+                {
+                    range = arg.substring(RANGE_OPTION.length());
+                }
+            }
+            if (threads < 1)
+            {
+                throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+            }
+
+            if (!batch && !train && archiveName == null && filenames.size() > 1)
+            {
+                throw new IllegalArgumentException("Only one file can be given without " + BATCH_OPTION);
+            }
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // the file names were not parsed, so they are not reported missing too
+            System.err.println(ex.getMessage());
+            printUsage();
+            argumentError = true;
+            filenames = List.of();
+        }
+
+        if (argumentError)
+        {
+            exitCode = 1;
+        }
+        else if (train)
+        {
+            try
+            {
+                trainDictionary(filenames, options);
+            }
+            catch (Exception ex)
+            {
+                ex.printStackTrace();
+                exitCode = 1;
+            }
+        }
+        else if (archiveName != null)
+        {
+            try
+            {
+                processArchive(archiveName, filenames, options, Arrays.asList(args));
+            }
+            catch (Exception ex)
+            {
+                ex.printStackTrace();
+                exitCode = 1;
+            }
+        }
+        else if (filenames.isEmpty())
+        {
+            System.err.println("Program requires a filename as a command line argument");
+            printUsage();
+            exitCode = 1;
+        }
+        else
+        {
+            String filename = filenames.get(0);
+            try
+            {
+                if (batch)
+                {
+                    exitCode = processBatch(filenames, options, unpack, threads) ? 0 : 1;
+                }
+                else if (filename.equals(STANDARD_STREAMS_FILENAME))
+                {
+                    // standard output is for the data, the messages go to standard error
+                    PrintStream dataOut = System.out;
+                    System.setOut(System.err);
+                    if (unpack)
+                    {
+                        unpackStandardStreams(dataOut);
+                    }
+                    else
+                    {
+                        packStandardStreams(dataOut, options);
+                    }
+                }
+                else if (range != null)
+                {
+                    // standard output is for the data, the messages go to standard error
+                    PrintStream dataOut = System.out;
+                    System.setOut(System.err);
+                    unpackRange(filename, range, dataOut);
+                }
+                else if (filename.endsWith(PACKED_EXTENSION))
+                {
+                    unpackFile(filename);
+                }
+                else
+                {
+                    packFile(filename, options);
+                }
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // options that do not suit the file, such as a range of a file packed in blocks
+                System.err.println(ex.getMessage());
+                exitCode = 1;
+            }
+            catch (Exception ex)
+            {
+                // could not read the file?
+                ex.printStackTrace();
+                exitCode = 1;
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Print the ways the program can be run, and its options, to standard
+     * error.
+     */
+    private static void printUsage()
+    {
+        String program = "java -jar hctutorial.jar";
+        System.err.println("Usage: " + program + " [options] FILE");
+        System.err.println("       " + program + " FILE" + PACKED_EXTENSION);
+        System.err.println("       " + program + " " + RANGE_OPTION + "FROM" + RANGE_SEPARATOR + "TO FILE" +
+            PACKED_EXTENSION);
+        System.err.println("       " + program + " [" + UNPACK_OPTION + "] [options] " + STANDARD_STREAMS_FILENAME);
+        System.err.println("       " + program + " " + BATCH_OPTION + " [" + UNPACK_OPTION + "] [" +
+            THREADS_OPTION + "N] [options] PATH...");
+        System.err.println("       " + program + " " + ARCHIVE_OPTION + "FILE [" + SHARED_CODE_OPTION + " | " +
+            LIST_OPTION + " | " + EXTRACT_OPTION + "] [options] PATH...");
+        System.err.println("       " + program + " " + TRAIN_OPTION + " [options] PATH...");
+        System.err.println("Options: " + TYPE_OPTION + "TYPE " + CHARSET_OPTION + "NAME " + BLOCK_SIZE_OPTION +
+            "SIZE " + STREAM_BLOCK_SIZE_OPTION + "SIZE " + ESTIMATE_OPTION + "SIZE");
+        System.err.println("         " + SYNC_INTERVAL_OPTION + "N " + MAX_CODE_LENGTH_OPTION + "BITS " +
+            MAX_WORDS_OPTION + "N " + CHECKSUM_OPTION + "TYPE " + VERIFY_OPTION + "MODE");
+        System.err.println("         " + MMAP_OPTION + " " + PIPELINE_OPTION + " " + DICT_OPTION + "FILE " +
+            DICT_DIR_OPTION + "DIR");
+    }
+
+    /**
+     * Fill the options from the command line arguments.
+     *
+     * @param args the command line arguments
+     * @param options the options to fill
+     * @return the file name arguments, empty if there aren't any
+     * @throws IllegalArgumentException if an option is not valid
+     */
+    private static List<String> parseArguments(String[] args, PackOptions options)
+    {
+        List<String> filenames = new ArrayList<>();
+        String dictionaryName = null;
+        for (String arg : args)
+        {
+            if (arg.startsWith(BLOCK_SIZE_OPTION))
+            {
+                options.setBlockSize(parseSize(arg.substring(BLOCK_SIZE_OPTION.length())));
+            }
+            else if (arg.equals(MMAP_OPTION))
+            {
+                options.setMemoryMapped(true);
+            }
+            else if (arg.equals(PIPELINE_OPTION))
+            {
+                options.setPipelined(true);
+            }
+            else if (arg.startsWith(STREAM_BLOCK_SIZE_OPTION))
+            {
+                options.setStreamBlockSize(parseSize(arg.substring(STREAM_BLOCK_SIZE_OPTION.length())));
+            }
+            else if (arg.startsWith(MAX_WORDS_OPTION))
+            {
+                options.setMaxWords(parseSize(arg.substring(MAX_WORDS_OPTION.length())));
+            }
+            else if (arg.startsWith(SYNC_INTERVAL_OPTION))
+            {
+                options.setSyncInterval(parseSize(arg.substring(SYNC_INTERVAL_OPTION.length())));
+            }
+            else if (arg.startsWith(ESTIMATE_OPTION))
+            {
+                options.setSampleSize(parseSize(arg.substring(ESTIMATE_OPTION.length())));
+            }
+            else if (arg.startsWith(MAX_CODE_LENGTH_OPTION))
+            {
+                options.setMaxCodeLength(Integer.parseInt(arg.substring(MAX_CODE_LENGTH_OPTION.length())));
+            }
+            else if (arg.startsWith(CHECKSUM_OPTION))
+            {
+                String checksumName = arg.substring(CHECKSUM_OPTION.length());
+                options.setChecksumType(ChecksumType.valueOf(checksumName.toUpperCase()));
+            }
+            else if (arg.startsWith(CHARSET_OPTION))
+            {
+                options.setCharset(parseCharset(arg.substring(CHARSET_OPTION.length())));
+            }
+            else if (arg.startsWith(DICT_OPTION))
+            {
+                dictionaryName = arg.substring(DICT_OPTION.length());
+            }
+            else if (arg.startsWith(DICT_DIR_OPTION))
+            {
+                CodeDictionary.setDirectory(new File(arg.substring(DICT_DIR_OPTION.length())));
+            }
+            else if (arg.startsWith(VERIFY_OPTION))
+            {
+                String modeName = arg.substring(VERIFY_OPTION.length());
+                options.setVerifyMode(VerifyMode.valueOf(modeName.toUpperCase()));
+            }
+            else if (arg.equals(UNPACK_OPTION) || arg.equals(BATCH_OPTION) ||
+                arg.startsWith(THREADS_OPTION) || arg.startsWith(ARCHIVE_OPTION) ||
+                arg.equals(SHARED_CODE_OPTION) || arg.equals(LIST_OPTION) ||
+                arg.equals(EXTRACT_OPTION) || arg.startsWith(RANGE_OPTION) ||
+                arg.equals(TRAIN_OPTION))
+            {
+                // handled by main
+            }
+            else if (arg.startsWith(TYPE_OPTION))
+            {
+                String typeName = arg.substring(TYPE_OPTION.length());
+                options.setConverterType(ConverterType.valueOf(typeName.toUpperCase()));
+            }
+            else if (arg.startsWith(OPTION_PREFIX))
+            {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            else if (!arg.isEmpty())
+            {
+                filenames.add(arg);
+            }
+        }
+
+        if (dictionaryName != null)
+        {
+            // after the loop, so the dictionary directory is known
+            options.setDictionary(loadDictionary(dictionaryName));
+        }
+        return filenames;
+    }
+
+    /**
+     * Read the dictionary to pack with.
+     *
+     * @param dictionaryName the name of a dictionary file, or the ID of a
+     *   dictionary in the dictionary directory
+     * @return the dictionary
+     * @throws IllegalArgumentException if the dictionary cannot be read
+     */
+    private static CodeDictionary loadDictionary(String dictionaryName)
+    {
+        try
+        {
+            File dictionaryFile = new File(dictionaryName);
+            if (dictionaryFile.isFile())
+            {
+                return CodeDictionary.read(dictionaryFile);
+            }
+            return CodeDictionary.find(Long.parseUnsignedLong(dictionaryName, 16));
+        }
+        catch (IOException | NumberFormatException ex)
+        {
+            throw new IllegalArgumentException("Cannot read dictionary " + dictionaryName + ": " +
+                ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Find the charset that text files are decoded with.
+     *
+     * @param charsetName the name of the charset, such as UTF-16LE
+     * @return the charset
+     * @throws IllegalArgumentException if there is no such charset
+     */
+    private static Charset parseCharset(String charsetName)
+    {
+        try
+        {
+            return Charset.forName(charsetName);
+        }
+        catch (IllegalCharsetNameException | UnsupportedCharsetException ex)
+        {
+            throw new IllegalArgumentException("Unknown charset: " + charsetName, ex);
+        }
+    }
+
+    /**
+     * Convert a size with an optional K or M suffix to a number of bytes.
+     *
+     * @param size the size such as 512K
+     * @return the number of bytes
+     * @throws IllegalArgumentException if the size is not a number
+     */
+    private static int parseSize(String size)
+    {
+        int multiplier = 1;
+        String digits = size.toUpperCase();
+        if (digits.endsWith("K"))
+        {
+            multiplier = 1024;
+        }
+        else if (digits.endsWith("M"))
+        {
+            multiplier = 1024 * 1024;
+        }
+
+        if (multiplier != 1)
+        {
+            digits = digits.substring(0, digits.length()-1);
+        }
+        return Math.multiplyExact(Integer.parseInt(digits), multiplier);
+    }
+
+    /**
+     * Pack a file, and verify it as the options choose.
+     *
+     * @param filename the name of the file to pack
+     * @param options the choices of how to pack the file
+     * @throws IOException in case of File error, or a packed file that does not verify
+     * @throws NoSuchAlgorithmException check sum not available
+     */
+    private static void packFile(String filename, PackOptions options)
+        throws IOException, NoSuchAlgorithmException
+    {
+        File originalFile = new File(filename).getCanonicalFile();
+        FilePacker.packFile(originalFile, getPackedFile(originalFile), options);
+    }
+
+    /**
+     * Unpack a packed file.
+     *
+     * @param filename the name of the file to unpack
+     * @throws IOException in case of File error
+     * @throws NoSuchAlgorithmException check sum not available
+     */
+    private static void unpackFile(String filename) throws IOException, NoSuchAlgorithmException
+    {
+        File packedFile = new File(filename).getCanonicalFile();
+        FileUnpacker.unpackFile(packedFile, getUnpackedFile(packedFile));
+    }
+
+    /**
+     * Unpack a range of the objects of a packed file to standard output.
+     *
+     * @param filename the name of the packed file
+     * @param range the first and end objects, such as "1000:2000" or "-1000:"
+     * @param dataOut the standard output stream
+     * @throws IOException in case of read or write error
+     * @throws IllegalArgumentException if the range is not valid
+     */
+    private static void unpackRange(String filename, String range, PrintStream dataOut)
+        throws IOException
+    {
+        int separator = range.indexOf(RANGE_SEPARATOR);
+        if (separator < 0)
+        {
+            throw new IllegalArgumentException("A range must be FROM" + RANGE_SEPARATOR + "TO: " + range);
+        }
+
+        String from = range.substring(0, separator);
+        String to = range.substring(separator + RANGE_SEPARATOR.length());
+        long fromObject = from.isEmpty() ? 0 : Long.parseLong(from);
+        long toObject = to.isEmpty() ? Long.MAX_VALUE : Long.parseLong(to);
+        if ((fromObject < 0) == (toObject < 0) && fromObject >= toObject)
+        {
+            throw new IllegalArgumentException("A range must start before it ends: " + range);
+        }
+
+        File packedFile = new File(filename).getCanonicalFile();
+        long objectCount = FileUnpacker.unpackRange(packedFile, fromObject, toObject, dataOut);
+        checkStandardOutput(dataOut);
+        System.out.println("Unpacked objects: " + objectCount);
+    }
+
+    /**
+     * Returns the packed file for an original file, in the same directory.
+     *
+     * @param originalFile the file to pack
+     * @return the file with the packed extension added
+     */
+    static File getPackedFile(File originalFile)
+    {
+        return new File(originalFile.getParentFile(), originalFile.getName() + PACKED_EXTENSION);
+    }
+
+    /**
+     * Returns the original file for a packed file, in the same directory.
+     *
+     * @param packedFile the file to unpack
+     * @return the file without the packed extension
+     * @throws IllegalArgumentException if the file does not have the packed extension
+     */
+    static File getUnpackedFile(File packedFile)
+    {
+        String packedName = packedFile.getName();
+        if (!packedName.endsWith(PACKED_EXTENSION))
+        {
+            throw new IllegalArgumentException("Not a packed file: " + packedFile);
+        }
+
+        String unpackedName = packedName.substring(0, packedName.length()-PACKED_EXTENSION.length());
+        return new File(packedFile.getParentFile(), unpackedName);
+    }
+
+    /**
+     * Pack, or unpack, a batch of files concurrently.
+     *
+     * @param paths the files, directories and glob patterns of the batch
+     * @param options the choices of how to pack the files
+     * @param unpack true to unpack the packed files instead
+     * @param threads the number of files handled at the same time
+     * @return true if every file was packed or unpacked
+     * @throws IOException if a directory could not be searched
+     * @throws InterruptedException if interrupted while waiting for the files
+     */
+    private static boolean processBatch(List<String> paths, PackOptions options, boolean unpack,
+        int threads) throws IOException, InterruptedException
+    {
+        // the messages of the files would be mixed together, so only the
+        // results of the batch are reported
+        PrintStream reportOut = System.out;
+        System.setOut(new PrintStream(new NullOutputStream()));
+
+        BatchProcessor batch = new BatchProcessor(options, unpack, threads, reportOut);
+        for (String path : paths)
+        {
+            batch.addFiles(path);
+        }
+        return batch.run();
+    }
+
+    /**
+     * Pack files into an archive, or list or extract the members of one.
+     *
+     * @param archiveName the name of the archive
+     * @param names the files, directories and glob patterns to pack, or the
+     *   members to extract
+     * @param options the choices of how to pack the members
+     * @param args the command line arguments, for the archive options
+     * @throws IOException in case of File error, or an archive that does not verify
+     * @throws NoSuchAlgorithmException check sum not available
+     */
+    private static void processArchive(String archiveName, List<String> names,
+        PackOptions options, List<String> args) throws IOException, NoSuchAlgorithmException
+    {
+        File archiveFile = new File(archiveName).getCanonicalFile();
+        if (args.contains(LIST_OPTION))
+        {
+            try (PackedArchive archive = new PackedArchive(archiveFile))
+            {
+                for (ArchiveDirectory.Member member : archive.getMembers())
+                {
+                    String code = member.getCodeIndex() == ArchiveDirectory.OWN_CODE ?
+                        "own code" : "shared code " + member.getCodeIndex();
+                    System.out.println(member.getName() + " " + member.getConverterType().name() +
+                        " " + code + " " + member.getUnpackedLength() + " -> " +
+                        member.getPackedLength() + " bytes");
+                }
+            }
+        }
+        else if (args.contains(EXTRACT_OPTION))
+        {
+            File destDirectory = new File("").getAbsoluteFile();
+            try (PackedArchive archive = new PackedArchive(archiveFile))
+            {
+                List<ArchiveDirectory.Member> members = new ArrayList<>();
+                for (String name : names)
+                {
+                    members.add(archive.getMember(name));
+                }
+                if (members.isEmpty())
+                {
+                    members.addAll(archive.getMembers());
+                }
+
+                for (ArchiveDirectory.Member member : members)
+                {
+                    archive.extractMember(member, destDirectory);
+                }
+            }
+        }
+        else
+        {
+            FileSelection selection = new FileSelection(false);
+            for (String name : names)
+            {
+                selection.addFiles(name);
+            }
+            if (selection.getFiles().isEmpty())
+            {
+                throw new IllegalArgumentException("There are no files to pack into the archive");
+            }
+
+            ArchivePacker packer = new ArchivePacker(options, args.contains(SHARED_CODE_OPTION));
+            for (Path file : selection.getFiles())
+            {
+                // a new archive of a directory must not pack an old one
+                if (!file.toFile().getCanonicalFile().equals(archiveFile))
+                {
+                    packer.addMember(file);
+                }
+            }
+            packer.packArchive(archiveFile);
+        }
+    }
+
+    /**
+     * Train a dictionary on files and save it in the dictionary directory.
+     *
+     * @param names the files, directories and glob patterns to train on
+     * @param options the choices of how to count and code the files
+     * @throws IOException if a file cannot be read, or the dictionary cannot be saved
+     */
+    private static void trainDictionary(List<String> names, PackOptions options) throws IOException
+    {
+        FileSelection selection = new FileSelection(false);
+        for (String name : names)
+        {
+            selection.addFiles(name);
+        }
+
+        CodeDictionary dictionary = CodeDictionary.train(selection.getFiles(), options);
+        File dictionaryFile = dictionary.save();
+        System.out.println("Dictionary " + CodeDictionary.toIdString(dictionary.getId()) + " of " +
+            dictionary.getConverterType().name() + " saved to " + dictionaryFile);
+    }
+
+    /**
+     * Pack standard input to standard output.
+     *
+     * @param dataOut the standard output stream
+     * @param options the choices of how to pack the input
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException check sum not available
+     */
+    private static void packStandardStreams(PrintStream dataOut, PackOptions options)
+        throws IOException, NoSuchAlgorithmException
+    {
+        if (options.getSampleSize() > 0)
+        {
+            throw new IllegalArgumentException("Standard input cannot be sampled to estimate a code");
+        }
+        if (options.getStreamBlockSize() == 0 && options.getDictionary() == null &&
+            options.getConverterType() != ConverterType.ADAPTIVE_BYTE)
+        {
+            options.setStreamBlockSize(DEFAULT_STREAM_BLOCK_SIZE);
+        }
+
+        byte[] originalDigest = FilePacker.packInputStream(System.in, dataOut, options);
+        checkStandardOutput(dataOut);
+        System.out.println("Original digest: " + byteArrayToHex(originalDigest));
+    }
+
+    /**
+     * Unpack standard input to standard output.
+     *
+     * @param dataOut the standard output stream
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException check sum not available
+     */
+    private static void unpackStandardStreams(PrintStream dataOut)
+        throws IOException, NoSuchAlgorithmException
+    {
+        byte[] unpackedDigest = FileUnpacker.unpackInputStream(System.in, dataOut);
+        checkStandardOutput(dataOut);
+        System.out.println("Unpacked digest: " + byteArrayToHex(unpackedDigest));
+    }
+
+    /**
+     * A PrintStream does not throw exceptions, so check whether writing to
+     * standard output failed.
+     *
+     * @param dataOut the standard output stream
+     * @throws IOException if the data could not be written
+     */
+    private static void checkStandardOutput(PrintStream dataOut) throws IOException
+    {
+        if (dataOut.checkError())
+        {
+            throw new IOException("Could not write to standard output");
+        }
+    }
+
+    /**
+     * Convert a byte digest to a string.
+     *
+     * @param bytes the array of bytes for the digest.
+     * @return String representation of the bytes
+     */
+    public static String byteArrayToHex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+        {
+           sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+     }
+}
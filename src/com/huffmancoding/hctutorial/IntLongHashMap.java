@@ -0,0 +1,222 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to long values, for counting or looking up many
+ * primitive symbols without boxing them. The keys are kept in one array and
+ * the values in another, and a key is found by open addressing: it is hashed
+ * to a slot and the slots after it are probed, in order, until the key or an
+ * empty slot is found. The arrays are doubled whenever they become half full,
+ * so the probes stay short.
+ *
+ * Keys cannot be negative, so that -1 can mark an empty slot.
+ */
+public class IntLongHashMap
+{
+    /** the key of a slot that is empty. */
+    private static final int EMPTY_KEY = -1;
+
+    /** the smallest number of slots. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** the multiplier that spreads the bits of a key, from the golden ratio. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /** the key in each slot, {@link #EMPTY_KEY} if none. */
+    private int[] keys;
+
+    /** the value of the key in each slot. */
+    private long[] values;
+
+    /** the number of slots minus one, the slots being a power of two. */
+    private int mask;
+
+    /** the shift of a spread key that leaves the bits of its first slot. */
+    private int shift;
+
+    /** the number of keys in the map. */
+    private int size = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize the number of keys expected, so the arrays need not grow
+     */
+    public IntLongHashMap(int expectedSize)
+    {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expectedSize)
+        {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Allocate empty arrays of slots.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        values = new long[capacity];
+        mask = capacity - 1;
+        shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Returns the slot of a key, or of the empty slot where it would be added.
+     *
+     * @param key the key to find
+     * @return the index of the slot
+     */
+    private int findSlot(int key)
+    {
+        // the high bits of the product depend on all the bits of the key
+        int slot = (key * HASH_MULTIPLIER) >>> shift;
+        int slotKey;
+        while ((slotKey = keys[slot]) != key && slotKey != EMPTY_KEY)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     *
+     * @return the count of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key the key to look up
+     * @param missingValue the value to return if the key is not in the map
+     * @return the value of the key, or missingValue
+     */
+    public long get(int key, long missingValue)
+    {
+        int slot = findSlot(key);
+        return keys[slot] == key ? values[slot] : missingValue;
+    }
+
+    /**
+     * Set the value of a key, adding the key if it is not in the map.
+     *
+     * @param key the key, not negative
+     * @param value the value of the key
+     */
+    public void put(int key, long value)
+    {
+        // the slot is found first, adding the key may grow the arrays
+        int slot = addSlot(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Add to the value of a key, adding the key with a value of zero first
+     * if it is not in the map.
+     *
+     * @param key the key, not negative
+     * @param amount the amount to add to the value
+     */
+    public void add(int key, long amount)
+    {
+        int slot = addSlot(key);
+        values[slot] += amount;
+    }
+
+    /**
+     * Returns the slot of a key, adding the key if it is not in the map.
+     *
+     * @param key the key, not negative
+     * @return the index of the slot of the key
+     */
+    private int addSlot(int key)
+    {
+        if (key < 0)
+        {
+            throw new IllegalArgumentException("Key cannot be negative: " + key);
+        }
+
+        int slot = findSlot(key);
+        if (keys[slot] == EMPTY_KEY)
+        {
+            if (2 * (size + 1) > keys.length)
+            {
+                grow();
+                slot = findSlot(key);
+            }
+            keys[slot] = key;
+            ++size;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the number of slots, adding every key again.
+     */
+    private void grow()
+    {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; ++i)
+        {
+            if (oldKeys[i] != EMPTY_KEY)
+            {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the keys in the map, in no particular order.
+     *
+     * @return a new array of the keys
+     */
+    public int[] keys()
+    {
+        int[] mapKeys = new int[size];
+        int count = 0;
+        for (int key : keys)
+        {
+            if (key != EMPTY_KEY)
+            {
+                mapKeys[count++] = key;
+            }
+        }
+        return mapKeys;
+    }
+}
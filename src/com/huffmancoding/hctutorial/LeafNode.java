@@ -46,13 +46,25 @@ public class LeafNode<T> extends TreeNode<T>
         return new LeafNode<>(object, 0);
     }
 
+    /**
+     * Create a leaf node for an object that has already been counted.
+     *
+     * @param object the object to wrap
+     * @param frequency the number of times it appears in the input.
+     * @return a new LeafNode
+     */
+    public static <T> LeafNode<T> create(T object, long frequency)
+    {
+        return new LeafNode<>(object, frequency);
+    }
+
     /**
      * Constructor.
      *
      * @param obj the object of the input.
      * @param frequency the number of times it appears in the input.
      */
-    private LeafNode(T obj, int frequency)
+    private LeafNode(T obj, long frequency)
     {
         super(frequency);
 
@@ -0,0 +1,194 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file mapped into memory with FileChannel.map, so it can be read more
+ * than once without read calls or copying it through buffers. A single
+ * mapping cannot be larger than 2 GB, so large files are mapped in several
+ * windows.
+ */
+public class MappedFile
+{
+    /** the most bytes mapped in a single window. */
+    static final int WINDOW_SIZE = 1 << 30;
+
+    /**
+     * An InputStream that reads the windows in order.
+     */
+    private class MappedInputStream extends InputStream
+    {
+        /** the index of the window being read. */
+        private int windowIndex = 0;
+
+        /** the window being read, null at end of file. */
+        private ByteBuffer window = nextWindow();
+
+        /**
+         * Move to the next window that has bytes remaining.
+         *
+         * @return the window, null if there are no more
+         */
+        private ByteBuffer nextWindow()
+        {
+            while (windowIndex < windows.size())
+            {
+                ByteBuffer next = windows.get(windowIndex++).duplicate();
+                if (next.hasRemaining())
+                {
+                    return next;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read()
+        {
+            if (window != null && !window.hasRemaining())
+            {
+                window = nextWindow();
+            }
+            return window == null ? -1 : window.get() & 0xFF;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+
+            if (window != null && !window.hasRemaining())
+            {
+                window = nextWindow();
+            }
+            if (window == null)
+            {
+                return -1;
+            }
+
+            int bytesRead = Math.min(length, window.remaining());
+            window.get(bytes, offset, bytesRead);
+            return bytesRead;
+        }
+    }
+
+    /** the mapped windows of the file, in order. */
+    private final List<ByteBuffer> windows = new ArrayList<>();
+
+    /**
+     * Map a whole file into memory.
+     *
+     * @param file the file to map
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedFile(File file) throws IOException
+    {
+        // the mappings remain valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            for (long position = 0; position < size; position += WINDOW_SIZE)
+            {
+                long windowSize = Math.min(WINDOW_SIZE, size - position);
+                windows.add(channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize));
+            }
+        }
+    }
+
+    /**
+     * Returns the windows of the file in order. Each call returns new
+     * buffers, so their positions can be changed independently.
+     *
+     * @return the windows, each a read only buffer
+     */
+    public List<ByteBuffer> getWindows()
+    {
+        List<ByteBuffer> duplicates = new ArrayList<>(windows.size());
+        for (ByteBuffer window : windows)
+        {
+            duplicates.add(window.duplicate());
+        }
+        return duplicates;
+    }
+
+    /**
+     * Copy the bytes at a position of the file, which may span two windows.
+     * The windows are read with absolute positions, so several threads can
+     * read at once.
+     *
+     * @param position the position in the file of the first byte
+     * @param bytes the array to copy the bytes to
+     * @param length the number of bytes to copy
+     * @return the number of bytes copied, fewer than length at the end of the file
+     */
+    public int read(long position, byte[] bytes, int length)
+    {
+        int copied = 0;
+        while (copied < length)
+        {
+            int windowIndex = (int)((position + copied) / WINDOW_SIZE);
+            if (windowIndex >= windows.size())
+            {
+                break;
+            }
+
+            ByteBuffer window = windows.get(windowIndex);
+            int windowPosition = (int)((position + copied) % WINDOW_SIZE);
+            int count = Math.min(length - copied, window.limit() - windowPosition);
+            if (count <= 0)
+            {
+                break;
+            }
+            window.get(windowPosition, bytes, copied, count);
+            copied += count;
+        }
+        return copied;
+    }
+
+    /**
+     * Returns a stream that reads the whole file from the mapped windows.
+     *
+     * @return a new stream positioned at the start of the file
+     */
+    public InputStream newInputStream()
+    {
+        return new MappedInputStream();
+    }
+}
@@ -40,4 +40,13 @@ public class NullOutputStream extends OutputStream
     {
         // ignore data
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        // ignore data, without writing it a byte at a time
+    }
 }
@@ -0,0 +1,410 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The choices that can be made about how a file is packed. The defaults
+ * pack the whole file as a single stream of bits.
+ */
+public class PackOptions
+{
+    /** the smallest block size, so a block can hold at least one object. */
+    public static final int MIN_BLOCK_SIZE = 1024;
+
+    /** the most distinct tokens in the dictionary of words, unless chosen otherwise. */
+    public static final int DEFAULT_MAX_WORDS = 1 << 16;
+
+    /** the number of original bytes in each block, 0 for no blocks. */
+    private int blockSize = 0;
+
+    /** the number of original bytes in each block with its own code, 0 for none. */
+    private int streamBlockSize = 0;
+
+    /** the number of objects between sync points, 0 for no sync points. */
+    private int syncInterval = 0;
+
+    /** the number of original bytes sampled to estimate the code, 0 to count them all. */
+    private int sampleSize = 0;
+
+    /** whether the original file is read through a memory mapping. */
+    private boolean memoryMapped = false;
+
+    /** whether the original file is read, encoded and written on separate threads. */
+    private boolean pipelined = false;
+
+    /** the longest code length allowed. */
+    private int maxCodeLength = CanonicalCode.MAX_CODE_LENGTH;
+
+    /** the converter to pack with, null to probe the file for one. */
+    private ConverterType converterType = null;
+
+    /** the charset of files packed as characters. */
+    private Charset charset = StandardCharsets.UTF_8;
+
+    /** the most distinct tokens in the dictionary of a file packed as words. */
+    private int maxWords = DEFAULT_MAX_WORDS;
+
+    /** the checksum stored for the original content. */
+    private ChecksumType checksumType = ChecksumType.CRC32C;
+
+    /** how the packed file is checked after or while it is packed. */
+    private VerifyMode verifyMode = VerifyMode.NONE;
+
+    /** the dictionary whose code the file is packed with, null to count the file. */
+    private CodeDictionary dictionary = null;
+
+    /**
+     * Returns the number of original bytes encoded in each block.
+     *
+     * @return the block size, 0 if the file is not split into blocks
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Split the original file into blocks of this many bytes that are
+     * encoded concurrently.
+     *
+     * @param size the block size, 0 to not split the file into blocks
+     */
+    public void setBlockSize(int size)
+    {
+        if (size != 0 && size < MIN_BLOCK_SIZE)
+        {
+            throw new IllegalArgumentException("Block size must be at least " + MIN_BLOCK_SIZE + ": " + size);
+        }
+        blockSize = size;
+    }
+
+    /**
+     * Returns the number of original bytes in each block of a stream that
+     * has its own Huffman code.
+     *
+     * @return the stream block size, 0 if the input is not packed as a stream
+     */
+    public int getStreamBlockSize()
+    {
+        return streamBlockSize;
+    }
+
+    /**
+     * Pack the input as a stream of blocks of this many bytes. Each block
+     * is counted, given its own Huffman code and written before the next
+     * block is read, so the input only needs to be read once.
+     *
+     * @param size the stream block size, 0 to not pack the input as a stream
+     */
+    public void setStreamBlockSize(int size)
+    {
+        if (size != 0 && size < MIN_BLOCK_SIZE)
+        {
+            throw new IllegalArgumentException("Stream block size must be at least " + MIN_BLOCK_SIZE + ": " + size);
+        }
+        streamBlockSize = size;
+    }
+
+    /**
+     * Returns the number of objects between the sync points recorded in
+     * the packed file.
+     *
+     * @return the sync interval, 0 if no sync points are recorded
+     */
+    public int getSyncInterval()
+    {
+        return syncInterval;
+    }
+
+    /**
+     * Record a {@link SyncIndex} of where every so many objects start in
+     * the packed bits, so that a range of objects can be unpacked without
+     * decoding everything before it.
+     *
+     * @param interval the number of objects between sync points, 0 for none
+     */
+    public void setSyncInterval(int interval)
+    {
+        if (interval < 0)
+        {
+            throw new IllegalArgumentException("Sync interval cannot be negative: " + interval);
+        }
+        syncInterval = interval;
+    }
+
+    /**
+     * Returns the number of original bytes sampled from across a large file
+     * to estimate its code.
+     *
+     * @return the sample size, 0 if every object of the file is counted
+     */
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    /**
+     * Estimate the code of a file from blocks sampled from across it,
+     * this many bytes in all, instead of reading the whole file to count
+     * it before reading it again to pack it. Objects the sample missed are
+     * still given codes. A file not much larger than the sample is counted.
+     *
+     * @param size the sample size, 0 to count every object
+     */
+    public void setSampleSize(int size)
+    {
+        if (size != 0 && size < MIN_BLOCK_SIZE)
+        {
+            throw new IllegalArgumentException("Sample size must be at least " + MIN_BLOCK_SIZE + ": " + size);
+        }
+        sampleSize = size;
+    }
+
+    /**
+     * Returns the most distinct tokens that the dictionary of a file packed
+     * as words may hold.
+     *
+     * @return the number of tokens
+     */
+    public int getMaxWords()
+    {
+        return maxWords;
+    }
+
+    /**
+     * Limit the dictionary of a file packed as words, which bounds the memory
+     * used to count and code them. The rarest tokens are spelled out as
+     * single chars once the dictionary is full.
+     *
+     * @param words the most distinct tokens in the dictionary
+     */
+    public void setMaxWords(int words)
+    {
+        if (words < 1)
+        {
+            throw new IllegalArgumentException("Max words must be positive: " + words);
+        }
+        maxWords = words;
+    }
+
+    /**
+     * Returns whether the original file is memory mapped instead of read.
+     *
+     * @return true if the file is memory mapped
+     */
+    public boolean isMemoryMapped()
+    {
+        return memoryMapped;
+    }
+
+    /**
+     * Choose to map the original file into memory once and read both the
+     * counting and the encoding passes from the mapping.
+     *
+     * @param mapped true to memory map the original file
+     */
+    public void setMemoryMapped(boolean mapped)
+    {
+        memoryMapped = mapped;
+    }
+
+    /**
+     * Returns whether the encoding pass reads, encodes and writes on
+     * separate threads.
+     *
+     * @return true if the encoding pass is pipelined
+     */
+    public boolean isPipelined()
+    {
+        return pipelined;
+    }
+
+    /**
+     * Choose to read the original file ahead on one thread, encode it on
+     * another and write the packed bytes and digest on a third, so reading
+     * overlaps encoding. It only applies to a file packed as a single
+     * stream of bits that is not memory mapped and has no sync points.
+     *
+     * @param pipeline true to pipeline the encoding pass
+     */
+    public void setPipelined(boolean pipeline)
+    {
+        pipelined = pipeline;
+    }
+
+    /**
+     * Returns the longest code length allowed.
+     *
+     * @return the number of bits
+     */
+    public int getMaxCodeLength()
+    {
+        return maxCodeLength;
+    }
+
+    /**
+     * Limit the length of the codes, at some cost in packed size, so that
+     * decoding tables stay small.
+     *
+     * @param length the longest code length allowed, up to {@link CanonicalCode#MAX_CODE_LENGTH}
+     */
+    public void setMaxCodeLength(int length)
+    {
+        if (length < 1 || length > CanonicalCode.MAX_CODE_LENGTH)
+        {
+            throw new IllegalArgumentException("Max code length must be from 1 to " +
+                CanonicalCode.MAX_CODE_LENGTH + ": " + length);
+        }
+        maxCodeLength = length;
+    }
+
+    /**
+     * Returns the converter chosen to pack the file with.
+     *
+     * @return the converter type, null if the file is probed for one
+     */
+    public ConverterType getConverterType()
+    {
+        return converterType;
+    }
+
+    /**
+     * Choose the converter to pack the file with, instead of probing the
+     * content type of the file.
+     *
+     * @param type the converter type, null to probe the file
+     */
+    public void setConverterType(ConverterType type)
+    {
+        converterType = type;
+    }
+
+    /**
+     * Returns the charset of files packed as characters.
+     *
+     * @return the charset, UTF-8 unless another is chosen
+     */
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * Choose the charset that files packed as characters are decoded with.
+     * It is recorded in the packed file, so that unpacking does not depend
+     * on the default charset of the machine.
+     *
+     * @param fileCharset the charset of the original files
+     */
+    public void setCharset(Charset fileCharset)
+    {
+        if (fileCharset == null)
+        {
+            throw new IllegalArgumentException("Charset cannot be null");
+        }
+        charset = fileCharset;
+    }
+
+    /**
+     * Returns the type of checksum stored for the original content.
+     *
+     * @return the checksum type
+     */
+    public ChecksumType getChecksumType()
+    {
+        return checksumType;
+    }
+
+    /**
+     * Choose the checksum stored in the packed file, and in each of its
+     * blocks, which is checked when the file is unpacked.
+     *
+     * @param type the checksum type
+     */
+    public void setChecksumType(ChecksumType type)
+    {
+        if (type == null)
+        {
+            throw new IllegalArgumentException("A checksum type is required");
+        }
+        checksumType = type;
+    }
+
+    /**
+     * Returns how the packed file is checked to unpack to the original.
+     *
+     * @return the verify mode
+     */
+    public VerifyMode getVerifyMode()
+    {
+        return verifyMode;
+    }
+
+    /**
+     * Choose how the packed file is checked to unpack to the original,
+     * either after it is packed or while it is being packed.
+     *
+     * @param mode the verify mode
+     */
+    public void setVerifyMode(VerifyMode mode)
+    {
+        if (mode == null)
+        {
+            throw new IllegalArgumentException("A verify mode is required");
+        }
+        verifyMode = mode;
+    }
+
+    /**
+     * Returns the dictionary whose code the file is packed with.
+     *
+     * @return the dictionary, null if the file is counted for its own code
+     */
+    public CodeDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+    /**
+     * Pack with the code of a dictionary trained on similar files, instead
+     * of counting the file for a code of its own. The dictionary also
+     * chooses the converter type and the charset, which must be the ones it
+     * was trained with.
+     *
+     * @param codeDictionary the dictionary, null to count the file
+     */
+    public void setDictionary(CodeDictionary codeDictionary)
+    {
+        dictionary = codeDictionary;
+        if (codeDictionary != null)
+        {
+            converterType = codeDictionary.getConverterType();
+            if (codeDictionary.getCharset() != null)
+            {
+                charset = codeDictionary.getCharset();
+            }
+        }
+    }
+}
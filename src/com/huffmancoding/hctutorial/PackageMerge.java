@@ -0,0 +1,133 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.util.Arrays;
+
+/**
+ * The package-merge algorithm of Larmore and Hirschberg finds the code
+ * lengths with the fewest total bits when no code may be longer than a
+ * maximum. A Huffman tree has the fewest total bits of all, but a skewed
+ * input can make some of its codes very long.
+ *
+ * Think of each object as a coin for each code length from 1 to the
+ * maximum, worth its frequency. Starting at the longest length, the coins
+ * are paired off cheapest first into packages, and the packages are merged
+ * with the coins of the next shorter length. After doing that down to a
+ * length of 1, the cheapest 2n-2 coins and packages are chosen. The length
+ * of an object's code is the number of its coins that end up chosen, either
+ * directly or inside a chosen package.
+ *
+ * Since the coins of every length are in the same order, the coins chosen at
+ * each length are always those of the least frequent objects, so only the
+ * number of coins and packages chosen at each length needs to be tracked.
+ */
+public class PackageMerge
+{
+    /**
+     * Private constructor, there is only a static method.
+     */
+    private PackageMerge()
+    {
+    }
+
+    /**
+     * Compute the code lengths, none longer than a maximum, with the fewest
+     * total bits.
+     *
+     * @param frequencies the frequency of each object, from least to most frequent
+     * @param maxLength the longest code length allowed
+     * @return the code length of each object, in the same order
+     * @throws IllegalArgumentException if there are more objects than codes of the maximum length
+     */
+    public static int[] computeLengths(long[] frequencies, int maxLength)
+    {
+        int objectCount = frequencies.length;
+        int[] lengths = new int[objectCount];
+        if (objectCount <= 1)
+        {
+            // a lone object doesn't need any bits
+            return lengths;
+        }
+
+        if (maxLength < Long.SIZE - 1 && (1L << maxLength) < objectCount)
+        {
+            throw new IllegalArgumentException("Codes of " + maxLength +
+                " bits are too short for " + objectCount + " objects");
+        }
+
+        // whether each item, cheapest first, is a coin rather than a package,
+        // for each code length; the longest length only has coins
+        boolean[][] isCoin = new boolean[maxLength][];
+        isCoin[maxLength-1] = new boolean[objectCount];
+        Arrays.fill(isCoin[maxLength-1], true);
+
+        long[] items = frequencies;
+        for (int length = maxLength - 1; length >= 1; --length)
+        {
+            long[] packages = new long[items.length / 2];
+            for (int i = 0; i < packages.length; ++i)
+            {
+                packages[i] = items[2*i] + items[2*i + 1];
+            }
+
+            // merge the coins with the packages, coins first when they are worth the same
+            long[] merged = new long[objectCount + packages.length];
+            boolean[] mergedIsCoin = new boolean[merged.length];
+            int coin = 0;
+            int pkg = 0;
+            for (int i = 0; i < merged.length; ++i)
+            {
+                if (pkg == packages.length || (coin < objectCount && frequencies[coin] <= packages[pkg]))
+                {
+                    merged[i] = frequencies[coin++];
+                    mergedIsCoin[i] = true;
+                }
+                else
+                {
+                    merged[i] = packages[pkg++];
+                }
+            }
+
+            isCoin[length-1] = mergedIsCoin;
+            items = merged;
+        }
+
+        // choose the cheapest items at length 1, then the contents of the
+        // chosen packages at each longer length
+        int chosen = 2 * objectCount - 2;
+        for (int length = 1; length <= maxLength && chosen > 0; ++length)
+        {
+            int coins = 0;
+            for (int i = 0; i < chosen; ++i)
+            {
+                if (isCoin[length-1][i])
+                {
+                    ++lengths[coins++];
+                }
+            }
+            chosen = 2 * (chosen - coins);
+        }
+
+        return lengths;
+    }
+}
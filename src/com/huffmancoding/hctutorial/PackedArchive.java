@@ -0,0 +1,280 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An archive of many files packed into one, written by the {@link ArchivePacker}.
+ * The {@link ArchiveDirectory} at the end of the archive records where each
+ * member is, so a member is unpacked by seeking straight to it.
+ *
+ * An archive starts with the {@link PackedHeader#MAGIC} byte followed by
+ * {@link #ARCHIVE_MARK}, which is not a version of a packed file, then the
+ * version of the archive format and the {@link ChecksumType} of the members
+ * that share a code. Members with their own code have a PackedHeader of
+ * their own.
+ */
+public class PackedArchive implements Closeable
+{
+    /** the byte after {@link PackedHeader#MAGIC} that marks an archive. */
+    public static final byte ARCHIVE_MARK = (byte)'A';
+
+    /** the first version of the archive format. */
+    public static final int FIRST_VERSION = 1;
+
+    /** the version that records the charset of each shared code of characters. */
+    public static final int CHARSET_VERSION = 2;
+
+    /** the version written for new archives. */
+    public static final int CURRENT_VERSION = CHARSET_VERSION;
+
+    /** the number of bytes at the front of an archive. */
+    private static final int HEADER_LENGTH = 4;
+
+    /** the stream of the archive, which owns the channel. */
+    private final FileInputStream archiveIs;
+
+    /** the channel to read the members from. */
+    private final FileChannel archiveChannel;
+
+    /** the type of checksum of the members that share a code. */
+    private final ChecksumType checksumType;
+
+    /** the location of every member. */
+    private final ArchiveDirectory directory;
+
+    /** the unpackers for the shared codes read so far, by code index. */
+    private final Map<Integer, FileUnpacker<?>> sharedUnpackers = new HashMap<>();
+
+    /**
+     * Open an archive and read its directory.
+     *
+     * @param archiveFile the archive
+     * @throws IOException in case of read error, or a file that is not an archive
+     */
+    public PackedArchive(File archiveFile) throws IOException
+    {
+        archiveIs = new FileInputStream(archiveFile);
+        archiveChannel = archiveIs.getChannel();
+        try
+        {
+            DataInputStream headerIs = new DataInputStream(new ByteArrayInputStream(
+                BlockIndex.readBytes(archiveChannel, 0, HEADER_LENGTH)));
+            if (headerIs.readByte() != PackedHeader.MAGIC || headerIs.readByte() != ARCHIVE_MARK)
+            {
+                throw new IOException("Not a packed archive: " + archiveFile);
+            }
+
+            int version = headerIs.readUnsignedByte();
+            if (version < FIRST_VERSION || version > CURRENT_VERSION)
+            {
+                throw new IOException("Unknown archive version: " + version);
+            }
+
+            checksumType = ChecksumType.fromSignifier(headerIs.readByte());
+            directory = ArchiveDirectory.read(archiveChannel, version);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            archiveIs.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Write the header at the front of a new archive.
+     *
+     * @param archiveStream the output stream for the archive
+     * @param checksum the type of checksum of the members that share a code
+     * @throws IOException in case of write error
+     */
+    static void writeHeader(DataOutputStream archiveStream, ChecksumType checksum)
+        throws IOException
+    {
+        archiveStream.writeByte(PackedHeader.MAGIC);
+        archiveStream.writeByte(ARCHIVE_MARK);
+        archiveStream.writeByte(CURRENT_VERSION);
+        archiveStream.writeByte(checksum.toSignifier());
+    }
+
+    /**
+     * Returns the members in the order they are in the archive.
+     *
+     * @return the entry for each member
+     */
+    public List<ArchiveDirectory.Member> getMembers()
+    {
+        return directory.getMembers();
+    }
+
+    /**
+     * Returns the member with a name.
+     *
+     * @param name the name of the member
+     * @return the member
+     * @throws IOException if the archive has no member with the name
+     */
+    public ArchiveDirectory.Member getMember(String name) throws IOException
+    {
+        ArchiveDirectory.Member member = directory.findMember(name);
+        if (member == null)
+        {
+            throw new IOException("Archive has no member named " + name);
+        }
+        return member;
+    }
+
+    /**
+     * Unpack one member, reading only its own bytes and, if it shares a
+     * code, the shared code. The checksum stored for the member is checked.
+     *
+     * @param member the member to unpack
+     * @param os the stream to write the original content to, flushed but not closed
+     * @return the checksum of the original content
+     * @throws IOException in case of read or write error
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public byte[] unpackMember(ArchiveDirectory.Member member, OutputStream os)
+        throws IOException, NoSuchAlgorithmException
+    {
+        System.out.println("Unpacking member: " + member.getName());
+
+        // the streams are not closed because that would close the channel
+        if (member.getCodeIndex() == ArchiveDirectory.OWN_CODE)
+        {
+            return FileUnpacker.unpackInputStream(openStreamAt(member.getPackedOffset()), os);
+        }
+
+        // the shared code is read first, it is somewhere else in the archive
+        FileUnpacker<?> unpacker = getSharedUnpacker(member.getCodeIndex());
+        BitInputStream packedStream = openStreamAt(member.getPackedOffset());
+        MessageDigest digest = checksumType.createDigest();
+        DigestOutputStream digestOs = new DigestOutputStream(os, digest);
+        unpacker.readPackedContent(packedStream, member.getObjectCount(), digestOs);
+        digestOs.flush();
+
+        byte[] checksum = digest.digest();
+        byte[] storedChecksum = new byte[checksum.length];
+        packedStream.readFully(storedChecksum);
+        FileUnpacker.verifyChecksum(storedChecksum, checksum, "Archive member " + member.getName());
+        return checksum;
+    }
+
+    /**
+     * Unpack one member to a file under a directory, creating the
+     * directories of its name.
+     *
+     * @param member the member to unpack
+     * @param destDirectory the directory that member names are relative to
+     * @return the file the member was unpacked to
+     * @throws IOException in case of read or write error, or a name outside the directory
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public File extractMember(ArchiveDirectory.Member member, File destDirectory)
+        throws IOException, NoSuchAlgorithmException
+    {
+        // a name must not climb out of the directory it is extracted to
+        Path destPath = destDirectory.toPath().toAbsolutePath().normalize();
+        Path memberPath = destPath.resolve(member.getName()).normalize();
+        if (!memberPath.startsWith(destPath) || memberPath.equals(destPath))
+        {
+            throw new IOException("Archive member is outside of the directory: " + member.getName());
+        }
+
+        File destFile = memberPath.toFile();
+        File parent = destFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+        {
+            throw new IOException("Could not create directory: " + parent);
+        }
+
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(destFile)))
+        {
+            unpackMember(member, os);
+        }
+        return destFile;
+    }
+
+    /**
+     * Returns the unpacker for a shared code, reading the code the first
+     * time it is needed.
+     *
+     * @param codeIndex the index of the shared code
+     * @return the unpacker that decodes with the code
+     * @throws IOException in case of read error
+     */
+    private FileUnpacker<?> getSharedUnpacker(int codeIndex) throws IOException
+    {
+        FileUnpacker<?> unpacker = sharedUnpackers.get(codeIndex);
+        if (unpacker == null)
+        {
+            ArchiveDirectory.SharedCode sharedCode = directory.getSharedCodes().get(codeIndex);
+            unpacker = new PackerFactory().getFileUnpacker(sharedCode.getConverterType(),
+                sharedCode.getCharset());
+            unpacker.readCanonicalCode(openStreamAt(sharedCode.getPackedOffset()));
+            sharedUnpackers.put(codeIndex, unpacker);
+        }
+        return unpacker;
+    }
+
+    /**
+     * Returns a stream that reads the archive from a position.
+     *
+     * @param position the byte offset in the archive
+     * @return the stream, which should not be closed
+     * @throws IOException in case of seek error
+     */
+    private BitInputStream openStreamAt(long position) throws IOException
+    {
+        archiveChannel.position(position);
+        return new BitInputStream(Channels.newInputStream(archiveChannel));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        archiveIs.close();
+    }
+}
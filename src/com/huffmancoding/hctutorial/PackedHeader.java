@@ -0,0 +1,321 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * This is the information at the front of a packed file that tells the
+ * unpacker how the rest of the file was written.
+ *
+ * The first packed files started with just the signifier of the
+ * ConverterType followed by the serialized Huffman tree. Newer files start
+ * with a {@link #MAGIC} byte, which is not the signifier of any
+ * ConverterType, followed by a format version and then the signifier.
+ * Since {@link #FLAGS_VERSION} a byte of flags follows the signifier to tell
+ * how the content after the header was packed. Since {@link #CHECKSUM_VERSION}
+ * a byte for the {@link ChecksumType} follows the flags, and the checksum of
+ * the original content is stored after the packed content. With the
+ * {@link #CHARSET_FLAG} the name of the charset of the original characters
+ * follows the checksum type. With the {@link #DICTIONARY_FLAG} the ID of the
+ * {@link CodeDictionary} that the content was packed with follows that.
+ */
+public class PackedHeader
+{
+    /** the byte at the front of packed files that have a format version. */
+    public static final byte MAGIC = (byte)'H';
+
+    /** files with just a signifier followed by a serialized Huffman tree. */
+    public static final int TREE_VERSION = 1;
+
+    /** files with the code length of each object (a canonical Huffman code). */
+    public static final int CANONICAL_VERSION = 2;
+
+    /** files with a byte of flags after the signifier. */
+    public static final int FLAGS_VERSION = 3;
+
+    /** files with a checksum type in the header and a checksum after the content. */
+    public static final int CHECKSUM_VERSION = 4;
+
+    /** the version written for new packed files. */
+    public static final int CURRENT_VERSION = CHECKSUM_VERSION;
+
+    /** the checksum that unpacking computes for files without a stored one. */
+    private static final ChecksumType UNSTORED_CHECKSUM_TYPE = ChecksumType.MD5;
+
+    /** the flag for original content encoded in blocks with a {@link BlockIndex}. */
+    public static final int BLOCKS_FLAG = 0x01;
+
+    /**
+     * the flag for original content packed as a stream of blocks that each
+     * start with their own Huffman code, ending with an empty block.
+     */
+    public static final int STREAM_FLAG = 0x02;
+
+    /**
+     * the flag for a {@link SyncIndex} after the checksum, with the position
+     * of every so many objects in the packed bits.
+     */
+    public static final int SYNC_FLAG = 0x04;
+
+    /** the flag for the name of the charset of the characters after the checksum type. */
+    public static final int CHARSET_FLAG = 0x08;
+
+    /**
+     * the flag for original content packed with the code of a {@link CodeDictionary},
+     * whose ID follows any charset, instead of a code of its own.
+     */
+    public static final int DICTIONARY_FLAG = 0x10;
+
+    /**
+     * the flag for a code estimated from a sample of the original content,
+     * followed by the content in blocks that each start with their number
+     * of objects, as with the {@link #DICTIONARY_FLAG}.
+     */
+    public static final int ESTIMATED_FLAG = 0x20;
+
+    /** all the flags that this version of the code knows how to unpack. */
+    private static final int KNOWN_FLAGS = BLOCKS_FLAG | STREAM_FLAG | SYNC_FLAG | CHARSET_FLAG |
+        DICTIONARY_FLAG | ESTIMATED_FLAG;
+
+    /** the format version of the packed file. */
+    private final int version;
+
+    /** the type of StreamConverter used for the original file. */
+    private final ConverterType converterType;
+
+    /** the flags for how the content was packed. */
+    private final int flags;
+
+    /** the type of checksum of the original content. */
+    private final ChecksumType checksumType;
+
+    /** the charset of the original characters, null if not recorded. */
+    private final Charset charset;
+
+    /** the ID of the dictionary the content was packed with, 0 if none. */
+    private final long dictionaryId;
+
+    /**
+     * Constructor for the header of a new packed file.
+     *
+     * @param type the type of StreamConverter used for the original file
+     * @param packFlags the flags for how the content is packed
+     * @param checksum the type of checksum stored for the original content
+     */
+    public PackedHeader(ConverterType type, int packFlags, ChecksumType checksum)
+    {
+        this(CURRENT_VERSION, type, packFlags, checksum, null, 0);
+    }
+
+    /**
+     * Constructor for the header of a new packed file of characters.
+     *
+     * @param type the type of StreamConverter used for the original file
+     * @param packFlags the flags for how the content is packed
+     * @param checksum the type of checksum stored for the original content
+     * @param characterCharset the charset of the original characters, null for none
+     */
+    public PackedHeader(ConverterType type, int packFlags, ChecksumType checksum,
+        Charset characterCharset)
+    {
+        this(type, packFlags, checksum, characterCharset, 0);
+    }
+
+    /**
+     * Constructor for the header of a new packed file, which may be packed
+     * with a dictionary.
+     *
+     * @param type the type of StreamConverter used for the original file
+     * @param packFlags the flags for how the content is packed
+     * @param checksum the type of checksum stored for the original content
+     * @param characterCharset the charset of the original characters, null for none
+     * @param dictionary the ID of the dictionary, used with the {@link #DICTIONARY_FLAG}
+     */
+    public PackedHeader(ConverterType type, int packFlags, ChecksumType checksum,
+        Charset characterCharset, long dictionary)
+    {
+        this(CURRENT_VERSION, type,
+            characterCharset == null ? packFlags : packFlags | CHARSET_FLAG,
+            checksum, characterCharset, dictionary);
+    }
+
+    /**
+     * Private constructor.
+     *
+     * @param formatVersion the format version of the packed file
+     * @param type the type of StreamConverter used for the original file
+     * @param packFlags the flags for how the content was packed
+     * @param checksum the type of checksum of the original content
+     * @param characterCharset the charset of the original characters, null if not recorded
+     * @param dictionary the ID of the dictionary, 0 if none
+     */
+    private PackedHeader(int formatVersion, ConverterType type, int packFlags, ChecksumType checksum,
+        Charset characterCharset, long dictionary)
+    {
+        version = formatVersion;
+        converterType = type;
+        flags = packFlags;
+        checksumType = checksum;
+        charset = characterCharset;
+        dictionaryId = dictionary;
+    }
+
+    /**
+     * Returns the format version of the packed file.
+     *
+     * @return one of the version constants
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the type of StreamConverter used for the original file.
+     *
+     * @return the ConverterType
+     */
+    public ConverterType getConverterType()
+    {
+        return converterType;
+    }
+
+    /**
+     * Returns whether a flag is set for how the content was packed.
+     *
+     * @param flag one of the flag constants
+     * @return true if the flag is set
+     */
+    public boolean hasFlag(int flag)
+    {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * Returns the type of checksum of the original content. Files without a
+     * stored checksum return the type that unpacking computes anyway.
+     *
+     * @return the ChecksumType
+     */
+    public ChecksumType getChecksumType()
+    {
+        return checksumType;
+    }
+
+    /**
+     * Returns the charset of the original characters.
+     *
+     * @return the charset, null if the packed file does not record one
+     */
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * Returns the ID of the dictionary that the content was packed with.
+     *
+     * @return the ID, only meaningful with the {@link #DICTIONARY_FLAG}
+     */
+    public long getDictionaryId()
+    {
+        return dictionaryId;
+    }
+
+    /**
+     * Returns whether the checksum of the original content is stored in the
+     * packed file, to be checked when it is unpacked.
+     *
+     * @return true if the packed file has a checksum
+     */
+    public boolean isChecksumStored()
+    {
+        return version >= CHECKSUM_VERSION;
+    }
+
+    /**
+     * Write the header at the front of a packed file.
+     *
+     * @param packedStream the output stream for the packed content
+     * @throws IOException in case of write error
+     */
+    public void write(DataOutputStream packedStream) throws IOException
+    {
+        packedStream.writeByte(MAGIC);
+        packedStream.writeByte(version);
+        packedStream.writeByte(converterType.toSignifier());
+        packedStream.writeByte(flags);
+        packedStream.writeByte(checksumType.toSignifier());
+        if (charset != null)
+        {
+            packedStream.writeUTF(charset.name());
+        }
+        if (hasFlag(DICTIONARY_FLAG))
+        {
+            packedStream.writeLong(dictionaryId);
+        }
+    }
+
+    /**
+     * Read the header at the front of a packed file.
+     *
+     * @param packedStream the beginning of the stream of the packed file
+     * @return the header that was read
+     * @throws IOException in case of read error or unknown version
+     */
+    public static PackedHeader read(DataInputStream packedStream) throws IOException
+    {
+        byte firstByte = packedStream.readByte();
+        if (firstByte != MAGIC)
+        {
+            // the first byte of the oldest files is just the signifier
+            return new PackedHeader(TREE_VERSION, ConverterType.fromSignifier(firstByte), 0,
+                UNSTORED_CHECKSUM_TYPE, null, 0);
+        }
+
+        int version = packedStream.readUnsignedByte();
+        if (version < TREE_VERSION || version > CURRENT_VERSION)
+        {
+            throw new IOException("Unknown packed file version: " + version);
+        }
+
+        ConverterType type = ConverterType.fromSignifier(packedStream.readByte());
+        int flags = version >= FLAGS_VERSION ? packedStream.readUnsignedByte() : 0;
+        if ((flags & ~KNOWN_FLAGS) != 0)
+        {
+            throw new IOException("Unknown packed file flags: " + flags);
+        }
+
+        ChecksumType checksum = version >= CHECKSUM_VERSION ?
+            ChecksumType.fromSignifier(packedStream.readByte()) : UNSTORED_CHECKSUM_TYPE;
+
+        Charset charset = (flags & CHARSET_FLAG) != 0 ? Charset.forName(packedStream.readUTF()) : null;
+
+        long dictionaryId = (flags & DICTIONARY_FLAG) != 0 ? packedStream.readLong() : 0;
+
+        return new PackedHeader(version, type, flags, checksum, charset, dictionaryId);
+    }
+}
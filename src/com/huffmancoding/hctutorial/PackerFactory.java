@@ -22,8 +22,11 @@ package com.huffmancoding.hctutorial;
 
 ******************************************************************************/
 
+import java.io.CharConversionException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -37,18 +40,21 @@ public class PackerFactory
 {
     /**
      * Returns a PackerType that should be used by examining the contents of a
-     * file.
+     * file. A text file is only packed as characters if all of it is valid
+     * in the charset, since other bytes would not unpack the same.
      *
      * @param unpackedPath the path to the file to probe
+     * @param charset the charset that text files are decoded with
      * @return The packer that should be used for the type of file
      * @throws IOException if the path could not be probed
      */
-    public ConverterType probeConverterType(Path unpackedPath) throws IOException
+    public ConverterType probeConverterType(Path unpackedPath, Charset charset) throws IOException
     {
         String contentType = Files.probeContentType(unpackedPath);
         System.out.println("ContentType: " + contentType);
 
-        if (contentType.startsWith("text"))
+        // files without a known extension may have no content type at all
+        if (contentType != null && contentType.startsWith("text") && isValidText(unpackedPath, charset))
         {
             return ConverterType.CHARACTER;
         }
@@ -58,19 +64,52 @@ public class PackerFactory
         }
     }
 
+    /**
+     * Returns whether a file decodes in a charset without any bytes that are
+     * not valid in it.
+     *
+     * @param unpackedPath the path to the file to decode
+     * @param charset the charset to decode the file with
+     * @return true if the whole file is valid in the charset
+     * @throws IOException if the file could not be read
+     */
+    private static boolean isValidText(Path unpackedPath, Charset charset) throws IOException
+    {
+        try (InputStream is = Files.newInputStream(unpackedPath))
+        {
+            CharacterStreamConverter.ChunkDecoder decoder = new CharacterStreamConverter.ChunkDecoder(is, charset);
+            while (decoder.readChunk().hasRemaining())
+            {
+                // only whether the decoding fails matters
+            }
+            return true;
+        }
+        catch (CharConversionException ex)
+        {
+            System.out.println(ex.getMessage() + ", packing as bytes");
+            return false;
+        }
+    }
+
     /**
      * Create a {@link FilePacker} that should be used with a particular type of file.
      *
      * @param type the type of Packer determined examining the unpacked file.
      * @param inputFile the unpacked file to pack
+     * @param options the choices of how to pack the file
      * @return the FilePacker to use to write the compressed data
      */
-    public FilePacker<?> createFilePacker(ConverterType type, File inputFile)
+    public FilePacker<?> createFilePacker(ConverterType type, File inputFile,
+        PackOptions options)
     {
         return switch (type)
         {
-            case CHARACTER -> new FilePacker<Character>(inputFile, new CharacterStreamConverter());
-            case BYTE -> new FilePacker<Byte>(inputFile, new ByteStreamConverter());
+            case CHARACTER -> new CharacterFilePacker(inputFile, options);
+            case BYTE -> new ByteFilePacker(inputFile, options);
+            case ADAPTIVE_BYTE -> new AdaptiveFilePacker(inputFile, options);
+            case CODE_POINT -> new CodePointFilePacker(inputFile, options);
+            case WORD -> new WordFilePacker(inputFile, options);
+            case CONTEXT_BYTE -> new ContextFilePacker(inputFile, options);
         };
     }
 
@@ -79,14 +118,21 @@ public class PackerFactory
      *
      * @param type the type of Packer determine by examing the first byte of the
      * packed file
+     * @param charset the charset recorded in the packed file, null for files
+     *   packed before it was recorded, which used the default charset
      * @return the FileUnpacker to use to read the compressed data
      */
-    public FileUnpacker<?> getFileUnpacker(ConverterType type)
+    public FileUnpacker<?> getFileUnpacker(ConverterType type, Charset charset)
     {
+        Charset characterCharset = charset != null ? charset : Charset.defaultCharset();
         return switch (type)
         {
-            case CHARACTER -> new FileUnpacker<Character>(new CharacterStreamConverter());
+            case CHARACTER -> new FileUnpacker<Character>(new CharacterStreamConverter(characterCharset));
             case BYTE -> new FileUnpacker<Byte>(new ByteStreamConverter());
+            case ADAPTIVE_BYTE -> new AdaptiveFileUnpacker();
+            case CODE_POINT -> new FileUnpacker<Integer>(new CodePointStreamConverter(characterCharset));
+            case WORD -> new FileUnpacker<String>(new WordStreamConverter(characterCharset));
+            case CONTEXT_BYTE -> new ContextFileUnpacker();
         };
     }
 }
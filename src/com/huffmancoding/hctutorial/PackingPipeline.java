@@ -0,0 +1,537 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Packing a file on one thread reads a buffer, encodes it, writes the packed
+ * bits and updates the digest, one after the other, so the CPU sits idle
+ * while the disk is read and the disk sits idle while the CPU encodes. This
+ * pipeline splits the work into three stages on their own threads: a reader
+ * thread reads the original file ahead in large chunks, the packing thread
+ * encodes the chunks into chunks of packed bytes, and a writer thread
+ * writes the packed chunks and updates the digest from the original chunks
+ * once they are encoded.
+ *
+ * The stages hand chunks to each other through bounded queues. Each kind of
+ * chunk goes around its own ring: a few chunks are created at the start and
+ * an empty chunk goes back to the stage that fills it, so the byte arrays
+ * are reused and nothing is allocated once the pipeline is running. A stage
+ * that gets ahead waits for an empty chunk.
+ */
+public class PackingPipeline implements Closeable
+{
+    /** the number of original bytes read ahead in each chunk. */
+    private static final int ORIGINAL_CHUNK_SIZE = 1024 * 1024;
+
+    /** the number of packed bytes in each chunk handed to the writer. */
+    private static final int PACKED_CHUNK_SIZE = 256 * 1024;
+
+    /** the number of chunks in the ring of original chunks, and in the ring of packed chunks. */
+    private static final int RING_CHUNKS = 4;
+
+    /**
+     * A reusable array of bytes, and how many of them are filled.
+     */
+    private static class Chunk
+    {
+        /** the bytes of the chunk. */
+        private final byte[] bytes;
+
+        /** whether the bytes are original content, rather than packed bytes. */
+        private final boolean original;
+
+        /** the number of bytes filled. */
+        private int length = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param size the number of bytes the chunk holds
+         * @param isOriginal true for a chunk of original content
+         */
+        public Chunk(int size, boolean isOriginal)
+        {
+            bytes = new byte[size];
+            original = isOriginal;
+        }
+    }
+
+    /** the chunk that marks the end of the chunks handed to a stage. */
+    private static final Chunk END_OF_CHUNKS = new Chunk(0, false);
+
+    /**
+     * The InputStream of the original content that the packing thread
+     * encodes, reading the chunks from the reader thread. Each chunk is
+     * handed to the writer thread, for the digest, once it is used up.
+     */
+    private class OriginalInputStream extends InputStream
+    {
+        /** the chunk being read, null before the first one. */
+        private Chunk chunk = null;
+
+        /** the position of the next byte in the chunk. */
+        private int position = 0;
+
+        /**
+         * Wait for the next chunk once the current one is used up.
+         *
+         * @return false at the end of the original content
+         * @throws IOException if interrupted while waiting
+         */
+        private boolean nextChunk() throws IOException
+        {
+            while (chunk == null || position == chunk.length)
+            {
+                if (chunk == END_OF_CHUNKS)
+                {
+                    return false;
+                }
+                if (chunk != null)
+                {
+                    put(writerChunks, chunk);
+                }
+
+                chunk = take(readChunks);
+                position = 0;
+            }
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            return nextChunk() ? chunk.bytes[position++] & 0xFF : -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (!nextChunk())
+            {
+                return -1;
+            }
+
+            int bytesRead = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk.bytes, position, bytes, offset, bytesRead);
+            position += bytesRead;
+            return bytesRead;
+        }
+    }
+
+    /**
+     * The OutputStream that the packing thread writes the packed bytes to,
+     * handing each chunk to the writer thread once it is full.
+     */
+    private class EncodedOutputStream extends OutputStream
+    {
+        /** the chunk being filled, null until there is a byte for it. */
+        private Chunk chunk = null;
+
+        /**
+         * Wait for an empty chunk if there is no chunk being filled.
+         *
+         * @throws IOException if interrupted while waiting
+         */
+        private void emptyChunk() throws IOException
+        {
+            if (chunk == null)
+            {
+                chunk = take(emptyPackedChunks);
+                chunk.length = 0;
+            }
+        }
+
+        /**
+         * Hand the chunk being filled to the writer thread, if it has any bytes.
+         *
+         * @throws IOException if interrupted while waiting
+         */
+        private void handOverChunk() throws IOException
+        {
+            if (chunk != null && chunk.length > 0)
+            {
+                put(writerChunks, chunk);
+                chunk = null;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(int b) throws IOException
+        {
+            emptyChunk();
+            chunk.bytes[chunk.length++] = (byte)b;
+            if (chunk.length == chunk.bytes.length)
+            {
+                handOverChunk();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                emptyChunk();
+                int count = Math.min(length, chunk.bytes.length - chunk.length);
+                System.arraycopy(bytes, offset, chunk.bytes, chunk.length, count);
+                chunk.length += count;
+                offset += count;
+                length -= count;
+                if (chunk.length == chunk.bytes.length)
+                {
+                    handOverChunk();
+                }
+            }
+        }
+    }
+
+    /** the stream of the original content, read by the reader thread. */
+    private final InputStream in;
+
+    /** the stream to write the packed bytes to, written by the writer thread. */
+    private final OutputStream out;
+
+    /** the digest of the original content, updated by the writer thread. */
+    private final MessageDigest digest;
+
+    /** the original chunks waiting for the reader to fill them. */
+    private final BlockingQueue<Chunk> emptyOriginalChunks = new ArrayBlockingQueue<>(RING_CHUNKS);
+
+    /** the original chunks read but not yet encoded, then the end of them. */
+    private final BlockingQueue<Chunk> readChunks = new ArrayBlockingQueue<>(RING_CHUNKS + 1);
+
+    /** the packed chunks waiting for the packing thread to fill them. */
+    private final BlockingQueue<Chunk> emptyPackedChunks = new ArrayBlockingQueue<>(RING_CHUNKS);
+
+    /**
+     * The original chunks to digest and the packed chunks to write, in the
+     * order they were handed over, then the end of them. There is room for
+     * every chunk, so handing one over never waits.
+     */
+    private final BlockingQueue<Chunk> writerChunks = new ArrayBlockingQueue<>(2 * RING_CHUNKS + 1);
+
+    /** the stream that the packing thread reads the original content from. */
+    private final OriginalInputStream originalStream = new OriginalInputStream();
+
+    /** the stream that the packing thread writes the packed bytes to. */
+    private final EncodedOutputStream encodedStream = new EncodedOutputStream();
+
+    /** the reading of the original chunks. */
+    private final FutureTask<Void> readerTask = new FutureTask<>(this::readChunks);
+
+    /** the writing of the packed chunks, and digesting of the original ones. */
+    private final FutureTask<Void> writerTask = new FutureTask<>(this::writeChunks);
+
+    /** the thread that reads the original content. */
+    private final Thread readerThread = new Thread(readerTask, "Pipeline reader");
+
+    /** the thread that writes the packed bytes and updates the digest. */
+    private final Thread writerThread = new Thread(writerTask, "Pipeline writer");
+
+    /** whether the pipeline finished without an error. */
+    private boolean finished = false;
+
+    /**
+     * Constructor, which creates the chunks and starts the reader and writer
+     * threads.
+     *
+     * @param originalIs the stream of the original content, read to its end but not closed
+     * @param packedOs the stream to write the packed bytes to, not closed
+     * @param originalDigest the digest to update from the original content
+     */
+    public PackingPipeline(InputStream originalIs, OutputStream packedOs, MessageDigest originalDigest)
+    {
+        in = originalIs;
+        out = packedOs;
+        digest = originalDigest;
+
+        for (int i = 0; i < RING_CHUNKS; ++i)
+        {
+            emptyOriginalChunks.add(new Chunk(ORIGINAL_CHUNK_SIZE, true));
+            emptyPackedChunks.add(new Chunk(PACKED_CHUNK_SIZE, false));
+        }
+
+        readerThread.setDaemon(true);
+        readerThread.start();
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the stream of the original content, for the packing thread to
+     * encode.
+     *
+     * @return the stream of the original content
+     */
+    public InputStream getOriginalStream()
+    {
+        return originalStream;
+    }
+
+    /**
+     * Returns the stream to write the packed bytes to, on the packing thread.
+     *
+     * @return the stream to the writer thread
+     */
+    public OutputStream getEncodedStream()
+    {
+        return encodedStream;
+    }
+
+    /**
+     * Read the original content into chunks, on the reader thread, until the
+     * end of the content.
+     *
+     * @return nothing
+     * @throws IOException in case of read error
+     */
+    private Void readChunks() throws IOException
+    {
+        try
+        {
+            while (true)
+            {
+                Chunk chunk = take(emptyOriginalChunks);
+                chunk.length = in.readNBytes(chunk.bytes, 0, chunk.bytes.length);
+                if (chunk.length > 0)
+                {
+                    put(readChunks, chunk);
+                }
+                if (chunk.length < chunk.bytes.length)
+                {
+                    return null;
+                }
+            }
+        }
+        finally
+        {
+            // whether or not the reading worked, don't leave the packing
+            // thread waiting for more chunks
+            put(readChunks, END_OF_CHUNKS);
+        }
+    }
+
+    /**
+     * Write the packed chunks and update the digest from the original chunks,
+     * on the writer thread, returning each chunk to its ring. After a write
+     * error the packed chunks are still returned, so that the packing thread
+     * is not left waiting for them, and the error is thrown at the end.
+     *
+     * @return nothing
+     * @throws IOException in case of write error
+     */
+    private Void writeChunks() throws IOException
+    {
+        IOException writeFailure = null;
+        Chunk chunk;
+        while ((chunk = take(writerChunks)) != END_OF_CHUNKS)
+        {
+            if (chunk.original)
+            {
+                digest.update(chunk.bytes, 0, chunk.length);
+                put(emptyOriginalChunks, chunk);
+            }
+            else
+            {
+                if (writeFailure == null)
+                {
+                    try
+                    {
+                        out.write(chunk.bytes, 0, chunk.length);
+                    }
+                    catch (IOException ex)
+                    {
+                        writeFailure = ex;
+                    }
+                }
+                put(emptyPackedChunks, chunk);
+            }
+        }
+
+        if (writeFailure != null)
+        {
+            throw writeFailure;
+        }
+        return null;
+    }
+
+    /**
+     * Finish the pipeline once the packing thread has written all the packed
+     * bytes: hand over the last packed chunk and wait for the reader and
+     * writer threads. The original content is read to its end first, so the
+     * reader is not left waiting and the digest covers all of it.
+     *
+     * @throws IOException in case of read or write error on another thread
+     */
+    public void finish() throws IOException
+    {
+        while (originalStream.nextChunk())
+        {
+            originalStream.position = originalStream.chunk.length;
+        }
+        encodedStream.handOverChunk();
+        put(writerChunks, END_OF_CHUNKS);
+
+        waitFor(readerTask, "read");
+        waitFor(writerTask, "write");
+        finished = true;
+    }
+
+    /**
+     * Stop the reader and writer threads if the pipeline did not finish,
+     * such as after an encoding error, and wait for them to stop so that
+     * neither uses its stream after this.
+     */
+    @Override
+    public void close()
+    {
+        if (!finished)
+        {
+            readerThread.interrupt();
+            writerThread.interrupt();
+            joinUninterruptibly(readerThread);
+            joinUninterruptibly(writerThread);
+        }
+    }
+
+    /**
+     * Wait for a thread to end, even if this thread is interrupted.
+     *
+     * @param thread the thread to wait for
+     */
+    private static void joinUninterruptibly(Thread thread)
+    {
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException ex)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for the task of another thread, and throw any error it had.
+     *
+     * @param task the task of the reader or writer thread
+     * @param stage what the thread does, for the exception message
+     * @throws IOException in case of an error on the thread
+     */
+    private static void waitFor(FutureTask<Void> task, String stage) throws IOException
+    {
+        try
+        {
+            task.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the pipeline to " + stage);
+        }
+        catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException ioEx)
+            {
+                throw ioEx;
+            }
+            throw new IOException("Pipeline failed to " + stage, cause);
+        }
+    }
+
+    /**
+     * Wait for the next chunk of a queue.
+     *
+     * @param queue the queue of chunks
+     * @return the chunk
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private static Chunk take(BlockingQueue<Chunk> queue) throws InterruptedIOException
+    {
+        try
+        {
+            return queue.take();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a chunk");
+        }
+    }
+
+    /**
+     * Hand a chunk to a queue, waiting for room.
+     *
+     * @param queue the queue of chunks
+     * @param chunk the chunk
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private static void put(BlockingQueue<Chunk> queue, Chunk chunk) throws InterruptedIOException
+    {
+        try
+        {
+            queue.put(chunk);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for room for a chunk");
+        }
+    }
+}
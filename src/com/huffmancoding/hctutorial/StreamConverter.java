@@ -27,8 +27,11 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * The Huffman Algorithm can compress different types of data. It has been used
@@ -57,6 +60,75 @@ public interface StreamConverter<T>
      */
     public Iterator<T> inputStreamIterator(InputStream is);
 
+    /**
+     * When a file is packed in blocks, each block is read on its own, so an
+     * object cannot be split between two blocks. This returns how many of the
+     * bytes read so far can be made into a block without splitting an
+     * object. The remaining bytes are put at the front of the next block.
+     *
+     * @param bytes the bytes read from the uncompressed input file
+     * @param length the number of bytes read
+     * @return the number of bytes for the block, from 1 to length
+     */
+    public default int findBlockBoundary(byte[] bytes, int length)
+    {
+        return length;
+    }
+
+    /**
+     * When a block is read from partway through the uncompressed input file,
+     * such as to sample it, its first bytes can be the end of an object that
+     * started before it. This returns how many bytes to skip to the start
+     * of the first whole object.
+     *
+     * @param bytes the bytes read from the uncompressed input file
+     * @param position the position in the file of the first byte
+     * @param length the number of bytes read
+     * @return the number of bytes before the first object, from 0 to length
+     */
+    public default int findBlockStart(byte[] bytes, long position, int length)
+    {
+        return 0;
+    }
+
+    /**
+     * Returns whether {@link #findBlockBoundary(byte[], int)} and
+     * {@link #findBlockStart(byte[], long, int)} can find where an object
+     * starts, which for characters depends on the charset. This is
+     * checked before packing anything that is read in blocks.
+     *
+     * @return true if the bytes of the objects can be split into blocks
+     */
+    public default boolean canSplitBlocks()
+    {
+        return true;
+    }
+
+    /**
+     * Returns the charset that the objects are read and written with, which
+     * is recorded in the packed file.
+     *
+     * @return the charset, null if the objects are not characters
+     */
+    public default Charset getCharset()
+    {
+        return null;
+    }
+
+    /**
+     * Returns the object whose code stands in for every object that a code
+     * from a sample, for a dictionary or an estimate, did not count. Its
+     * code is followed by the object itself, as written by
+     * {@link #writeHuffmanTreeObject(DataOutputStream, Object)}. The escape
+     * object itself is always written this way, in case it was counted.
+     *
+     * @return the escape object, null if a code is reserved for every object instead
+     */
+    public default T getEscapeObject()
+    {
+        return null;
+    }
+
     /**
      * Writes an original object as part of the serialized Huffman Tree
      * preceeds the compressed data.
@@ -77,12 +149,48 @@ public interface StreamConverter<T>
      */
     public T readHuffmanTreeObject(DataInputStream is) throws IOException;
 
+    /**
+     * Writes all the objects of a canonical code, in order, as part of the
+     * serialized code. By default each object is written on its own, but a
+     * converter can take advantage of the objects being sorted.
+     *
+     * @param os the stream to write to
+     * @param objects the objects of the code in canonical order
+     * @throws IOException if the write fails
+     */
+    public default void writeHuffmanTreeObjects(BitOutputStream os, List<T> objects) throws IOException
+    {
+        for (T object : objects)
+        {
+            writeHuffmanTreeObject(os, object);
+        }
+    }
+
+    /**
+     * Reads all the objects of a canonical code written with
+     * {@link #writeHuffmanTreeObjects(BitOutputStream, List)}.
+     *
+     * @param is the stream to read from
+     * @param count the number of objects in the code
+     * @return the objects in canonical order
+     * @throws IOException if the read fails
+     */
+    public default List<T> readHuffmanTreeObjects(BitInputStream is, int count) throws IOException
+    {
+        List<T> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+        {
+            objects.add(readHuffmanTreeObject(is));
+        }
+        return objects;
+    }
+
     /**
      * Write objects to an uncompressed file from an iterator that is walking
      * the compressed bits.
      *
      * @param iterator for the objects to write (NOT as compressed bits)
-     * @param os the stream to write to
+     * @param os the stream to write to, flushed but not closed
      * @throws IOException if the write fails
      */
     public void writeAllToOutput(Iterator<T> iterator, OutputStream os)
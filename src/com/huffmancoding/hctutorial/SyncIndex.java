@@ -0,0 +1,232 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The packed bits of a file can only be decoded from the start, because
+ * codes have different lengths and are not aligned to bytes. This index,
+ * written after the checksum of a file packed with sync points, records
+ * the bit position of every so many objects, so a range of objects can be
+ * decoded by seeking to the nearest sync point before it instead of
+ * decoding every object from the start.
+ *
+ * The last 8 bytes of a packed file with sync points are the position of
+ * the index, so that a reader can find it without decoding the content.
+ */
+public class SyncIndex
+{
+    /** the number of sync points the index has room for at first. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** the position in the packed file of the byte where the packed bits start. */
+    private final long contentOffset;
+
+    /** the number of objects from one sync point to the next. */
+    private final int interval;
+
+    /** the bit position of each sync point, from the start of the packed bits. */
+    private long[] bitOffsets = new long[INITIAL_CAPACITY];
+
+    /** the number of sync points in {@link #bitOffsets}. */
+    private int syncPointCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param contentPosition the position of the first byte of the packed bits
+     * @param syncInterval the number of objects from one sync point to the next
+     */
+    public SyncIndex(long contentPosition, int syncInterval)
+    {
+        if (syncInterval < 1)
+        {
+            throw new IllegalArgumentException("Sync interval must be at least 1: " + syncInterval);
+        }
+
+        contentOffset = contentPosition;
+        interval = syncInterval;
+    }
+
+    /**
+     * Returns the position in the packed file of the first byte of the
+     * packed bits.
+     *
+     * @return the byte offset
+     */
+    public long getContentOffset()
+    {
+        return contentOffset;
+    }
+
+    /**
+     * Returns the number of objects from one sync point to the next.
+     *
+     * @return the sync interval
+     */
+    public int getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * Returns the number of sync points.
+     *
+     * @return the sync point count
+     */
+    public int getSyncPointCount()
+    {
+        return syncPointCount;
+    }
+
+    /**
+     * Returns the index of the object at which the next sync point is to be
+     * added.
+     *
+     * @return the object index
+     */
+    public long getNextSyncObject()
+    {
+        return (long)syncPointCount * interval;
+    }
+
+    /**
+     * Add the next sync point, at the object returned by {@link #getNextSyncObject()}.
+     *
+     * @param bitOffset the position of the object's code, in bits from the
+     *   start of the packed bits
+     */
+    public void addSyncPoint(long bitOffset)
+    {
+        if (syncPointCount == bitOffsets.length)
+        {
+            bitOffsets = Arrays.copyOf(bitOffsets, 2 * syncPointCount);
+        }
+        bitOffsets[syncPointCount++] = bitOffset;
+    }
+
+    /**
+     * Returns the last sync point at or before an object.
+     *
+     * @param objectIndex the index of the object
+     * @return the index of the sync point
+     * @throws IllegalStateException if the index has no sync points
+     */
+    public int findSyncPoint(long objectIndex)
+    {
+        if (syncPointCount == 0)
+        {
+            throw new IllegalStateException("Sync index has no sync points");
+        }
+        return (int)Math.min(objectIndex / interval, syncPointCount - 1);
+    }
+
+    /**
+     * Returns the index of the object that a sync point is at.
+     *
+     * @param syncPoint the index of the sync point
+     * @return the object index
+     */
+    public long getObjectIndex(int syncPoint)
+    {
+        return (long)syncPoint * interval;
+    }
+
+    /**
+     * Returns the position of a sync point's object.
+     *
+     * @param syncPoint the index of the sync point
+     * @return the position in bits from the start of the packed bits
+     */
+    public long getBitOffset(int syncPoint)
+    {
+        return bitOffsets[syncPoint];
+    }
+
+    /**
+     * Write the index after the checksum, followed by its position. The
+     * bit positions are written as the difference from the one before.
+     *
+     * @param packedStream the stream to write the index to
+     * @throws IOException in case of write error
+     */
+    public void write(BitOutputStream packedStream) throws IOException
+    {
+        long indexPosition = packedStream.getBytesWritten();
+
+        packedStream.writeVarLong(contentOffset);
+        packedStream.writeVarLong(interval);
+        packedStream.writeVarLong(syncPointCount);
+        long previousOffset = 0;
+        for (int i = 0; i < syncPointCount; ++i)
+        {
+            packedStream.writeVarLong(bitOffsets[i] - previousOffset);
+            previousOffset = bitOffsets[i];
+        }
+
+        packedStream.writeLong(indexPosition);
+    }
+
+    /**
+     * Read the index from the end of a packed file.
+     *
+     * @param packedChannel the channel of the packed file
+     * @return the index of the sync points
+     * @throws IOException in case of read error or a corrupt index
+     */
+    public static SyncIndex read(FileChannel packedChannel) throws IOException
+    {
+        long indexEnd = packedChannel.size() - Long.BYTES;
+        long indexPosition = ByteBuffer.wrap(BlockIndex.readBytes(packedChannel, indexEnd, Long.BYTES)).getLong();
+        if (indexPosition < 0 || indexPosition > indexEnd)
+        {
+            throw new IOException("Corrupt sync index position: " + indexPosition);
+        }
+
+        byte[] indexBytes = BlockIndex.readBytes(packedChannel, indexPosition, (int)(indexEnd - indexPosition));
+        try (BitInputStream is = new BitInputStream(new ByteArrayInputStream(indexBytes)))
+        {
+            long contentPosition = is.readVarLong();
+            int syncInterval = (int)is.readVarLong();
+            if (syncInterval < 1)
+            {
+                throw new IOException("Corrupt sync interval: " + syncInterval);
+            }
+
+            SyncIndex index = new SyncIndex(contentPosition, syncInterval);
+            long count = is.readVarLong();
+            long bitOffset = 0;
+            for (long i = 0; i < count; ++i)
+            {
+                bitOffset += is.readVarLong();
+                index.addSyncPoint(bitOffset);
+            }
+            return index;
+        }
+    }
+}
@@ -32,14 +32,14 @@ package com.huffmancoding.hctutorial;
 public abstract class TreeNode<T>
 {
     /** the number of times the objects in this are in the input. */
-    protected int frequency;
+    protected long frequency;
 
     /**
      * Constructor.
      *
      * @param f the count of these items are in the source.
      */
-    public TreeNode(int f)
+    public TreeNode(long f)
     {
         frequency = f;
     }
@@ -50,7 +50,7 @@ public abstract class TreeNode<T>
      *
      * @return the frequency.
      */
-    public int getFrequency()
+    public long getFrequency()
     {
         return frequency;
     }
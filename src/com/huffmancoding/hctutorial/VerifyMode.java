@@ -0,0 +1,48 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+/**
+ * This enum corresponds to the ways a packed file can be checked, after or
+ * while it is packed, to make sure it unpacks to the original content.
+ */
+public enum VerifyMode
+{
+    /** the packed file is not checked. */
+    NONE,
+
+    /** the whole packed file is unpacked again after it is written. */
+    FULL,
+
+    /**
+     * the packed bytes are unpacked on another thread as they are written,
+     * or for blocks, each block is decoded right after it is encoded.
+     */
+    FUSED,
+
+    /**
+     * after a file is packed in blocks, a sample of the blocks is decoded
+     * and checked against their checksums. Files without blocks are
+     * checked as FUSED instead.
+     */
+    SAMPLED
+}
@@ -0,0 +1,298 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This OutputStream writes the packed file and hands a copy of every packed
+ * byte to a thread that unpacks them, so the packed file is verified while
+ * it is still being written instead of being read and unpacked again
+ * afterwards.
+ *
+ * The bytes are handed over in the chunks they are written in. Only a few
+ * chunks wait for the verifier at a time, so a packer that gets ahead waits
+ * for the verifier to catch up.
+ */
+public class VerifyingOutputStream extends OutputStream
+{
+    /** the most chunks of packed bytes waiting to be unpacked. */
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    /** the chunk that marks the end of the packed bytes. */
+    private static final byte[] END_OF_CHUNKS = new byte[0];
+
+    /**
+     * The InputStream that the verifier thread unpacks, reading the chunks
+     * as they are handed over.
+     */
+    private class ChunkInputStream extends InputStream
+    {
+        /** the chunk being read. */
+        private byte[] chunk = new byte[0];
+
+        /** the position of the next byte in the chunk. */
+        private int position = 0;
+
+        /**
+         * Wait for the next chunk once the current one is used up.
+         *
+         * @return false at the end of the packed bytes
+         * @throws IOException if interrupted while waiting
+         */
+        private boolean nextChunk() throws IOException
+        {
+            while (position == chunk.length)
+            {
+                if (chunk == END_OF_CHUNKS)
+                {
+                    return false;
+                }
+
+                chunk = takeChunk();
+                position = 0;
+            }
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            return nextChunk() ? chunk[position++] & 0xFF : -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (!nextChunk())
+            {
+                return -1;
+            }
+
+            int bytesRead = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, bytes, offset, bytesRead);
+            position += bytesRead;
+            return bytesRead;
+        }
+    }
+
+    /** the stream to the packed file. */
+    private final OutputStream out;
+
+    /** the chunks written but not yet unpacked. */
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+
+    /** the unpacking of the chunks, which results in their checksum. */
+    private final FutureTask<byte[]> verifierTask;
+
+    /** whether the verifier has taken the end of the chunks. */
+    private volatile boolean endTaken = false;
+
+    /** whether the stream has been closed. */
+    private boolean closed = false;
+
+    /**
+     * Constructor, which starts the verifier thread.
+     *
+     * @param packedOs the stream to the packed file
+     */
+    public VerifyingOutputStream(OutputStream packedOs)
+    {
+        out = packedOs;
+        verifierTask = new FutureTask<>(this::unpackChunks);
+
+        Thread verifierThread = new Thread(verifierTask, "Packed file verifier");
+        verifierThread.setDaemon(true);
+        verifierThread.start();
+    }
+
+    /**
+     * Unpack the chunks, on the verifier thread. The unpacker checks the
+     * checksum stored after the packed content.
+     *
+     * @return the checksum of the unpacked content
+     * @throws IOException in case of a read error or a packed file that does not unpack
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    private byte[] unpackChunks() throws IOException, NoSuchAlgorithmException
+    {
+        try
+        {
+            return FileUnpacker.unpackInputStream(new ChunkInputStream(), new NullOutputStream());
+        }
+        finally
+        {
+            // whether or not the unpacking worked, don't leave the packer
+            // waiting for room for its chunks
+            while (!endTaken)
+            {
+                takeChunk();
+            }
+        }
+    }
+
+    /**
+     * Wait for the next chunk that was written.
+     *
+     * @return the chunk
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private byte[] takeChunk() throws InterruptedIOException
+    {
+        try
+        {
+            byte[] chunk = chunks.take();
+            endTaken = (chunk == END_OF_CHUNKS);
+            return chunk;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for packed bytes");
+        }
+    }
+
+    /**
+     * Hand a chunk to the verifier, waiting for room if it is behind.
+     *
+     * @param chunk the chunk
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private void putChunk(byte[] chunk) throws InterruptedIOException
+    {
+        try
+        {
+            chunks.put(chunk);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the verifier");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        out.write(bytes, offset, length);
+        if (length > 0)
+        {
+            putChunk(Arrays.copyOfRange(bytes, offset, offset + length));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Close the packed file, and tell the verifier there are no more bytes.
+     *
+     * @throws IOException in case of write error
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (!closed)
+        {
+            closed = true;
+            try
+            {
+                out.close();
+            }
+            finally
+            {
+                putChunk(END_OF_CHUNKS);
+            }
+        }
+    }
+
+    /**
+     * Wait for the verifier to unpack everything written, once this stream
+     * is closed.
+     *
+     * @return the checksum of the unpacked content
+     * @throws IOException if the packed bytes did not unpack
+     * @throws NoSuchAlgorithmException if the checksum is not available
+     */
+    public byte[] getUnpackedChecksum() throws IOException, NoSuchAlgorithmException
+    {
+        try
+        {
+            return verifierTask.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the verifier");
+        }
+        catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException ioEx)
+            {
+                throw ioEx;
+            }
+            else if (cause instanceof NoSuchAlgorithmException algEx)
+            {
+                throw algEx;
+            }
+            throw new IOException("Packed file could not be unpacked", cause);
+        }
+    }
+}
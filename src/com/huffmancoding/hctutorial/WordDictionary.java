@@ -0,0 +1,261 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.util.Arrays;
+
+/**
+ * A dictionary that gives each distinct word a dense index, in the order the
+ * words were added. It is used to count and to encode the words of a text
+ * file without making a String for every word that is read.
+ *
+ * The chars of every word are kept end to end in one pool, so a word costs
+ * little more than its chars. A word is found by open addressing: its hash
+ * picks a slot, and the slots after it are probed until the word or an empty
+ * slot is found. The slots are doubled whenever they become half full.
+ */
+public class WordDictionary
+{
+    /** the index in a slot that is empty. */
+    private static final int EMPTY_SLOT = -1;
+
+    /** the smallest number of slots. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** the multiplier that spreads the bits of a hash, from the golden ratio. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /** the chars of every word, end to end. */
+    private char[] pool;
+
+    /** the number of chars used in the pool. */
+    private int poolLength = 0;
+
+    /** the start of each word in the pool, followed by the end of the last word. */
+    private int[] wordStarts;
+
+    /** the hash of each word. */
+    private int[] wordHashes;
+
+    /** the number of words. */
+    private int size = 0;
+
+    /** the index of the word in each slot, {@link #EMPTY_SLOT} if none. */
+    private int[] slots;
+
+    /** the number of slots minus one, the slots being a power of two. */
+    private int mask;
+
+    /** the shift of a spread hash that leaves the bits of its first slot. */
+    private int shift;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedWords the number of words expected, so the arrays need not grow
+     */
+    public WordDictionary(int expectedWords)
+    {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expectedWords)
+        {
+            capacity <<= 1;
+        }
+        allocateSlots(capacity);
+
+        wordStarts = new int[capacity / 2 + 1];
+        wordHashes = new int[capacity / 2];
+        pool = new char[capacity * Byte.SIZE];
+    }
+
+    /**
+     * Allocate empty slots.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocateSlots(int capacity)
+    {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY_SLOT);
+        mask = capacity - 1;
+        shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Returns the number of words in the dictionary.
+     *
+     * @return the count of words
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the index of a word.
+     *
+     * @param chars the chars of the word, from the start of the array
+     * @param length the number of chars in the word
+     * @return the index of the word, -1 if it is not in the dictionary
+     */
+    public int find(char[] chars, int length)
+    {
+        return slots[findSlot(chars, length, hash(chars, length))];
+    }
+
+    /**
+     * Returns the index of a word, adding it to the dictionary if it is not
+     * there already.
+     *
+     * @param chars the chars of the word, from the start of the array
+     * @param length the number of chars in the word
+     * @return the index of the word
+     */
+    public int add(char[] chars, int length)
+    {
+        int hash = hash(chars, length);
+        int slot = findSlot(chars, length, hash);
+        if (slots[slot] != EMPTY_SLOT)
+        {
+            return slots[slot];
+        }
+
+        if (2 * (size + 1) > slots.length)
+        {
+            growSlots();
+            slot = findSlot(chars, length, hash);
+        }
+
+        if (size == wordHashes.length)
+        {
+            wordHashes = Arrays.copyOf(wordHashes, size * 2);
+            wordStarts = Arrays.copyOf(wordStarts, size * 2 + 1);
+        }
+        if (poolLength + length > pool.length)
+        {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolLength + length));
+        }
+
+        System.arraycopy(chars, 0, pool, poolLength, length);
+        poolLength += length;
+        wordHashes[size] = hash;
+        wordStarts[size + 1] = poolLength;
+        slots[slot] = size;
+        return size++;
+    }
+
+    /**
+     * Returns the index of a word, adding it to the dictionary if it is not
+     * there already.
+     *
+     * @param word the word
+     * @return the index of the word
+     */
+    public int add(String word)
+    {
+        return add(word.toCharArray(), word.length());
+    }
+
+    /**
+     * Returns a word of the dictionary.
+     *
+     * @param index the index of the word
+     * @return a new String of the word
+     */
+    public String getWord(int index)
+    {
+        return new String(pool, wordStarts[index], wordStarts[index + 1] - wordStarts[index]);
+    }
+
+    /**
+     * Copy the chars of a word of the dictionary into an array.
+     *
+     * @param index the index of the word
+     * @param chars the array to copy the chars to, from its start
+     * @return the number of chars in the word
+     */
+    public int getWord(int index, char[] chars)
+    {
+        int length = wordStarts[index + 1] - wordStarts[index];
+        System.arraycopy(pool, wordStarts[index], chars, 0, length);
+        return length;
+    }
+
+    /**
+     * Returns the hash of the chars of a word.
+     *
+     * @param chars the chars of the word, from the start of the array
+     * @param length the number of chars in the word
+     * @return the hash
+     */
+    static int hash(char[] chars, int length)
+    {
+        int hash = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the slot of a word, or the empty slot where it would be added.
+     *
+     * @param chars the chars of the word, from the start of the array
+     * @param length the number of chars in the word
+     * @param hash the hash of the word
+     * @return the index of the slot
+     */
+    private int findSlot(char[] chars, int length, int hash)
+    {
+        // the high bits of the product depend on all the bits of the hash
+        int slot = (hash * HASH_MULTIPLIER) >>> shift;
+        int index;
+        while ((index = slots[slot]) != EMPTY_SLOT)
+        {
+            if (wordHashes[index] == hash &&
+                Arrays.equals(pool, wordStarts[index], wordStarts[index + 1], chars, 0, length))
+            {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the number of slots, adding every word again.
+     */
+    private void growSlots()
+    {
+        allocateSlots(slots.length * 2);
+        for (int index = 0; index < size; ++index)
+        {
+            int slot = (wordHashes[index] * HASH_MULTIPLIER) >>> shift;
+            while (slots[slot] != EMPTY_SLOT)
+            {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This is a FilePacker for text files of word and separator tokens. A log
+ * can have hundreds of thousands of different tokens, so they are counted
+ * in a {@link WordDictionary}, straight from the chars that were read,
+ * instead of making a String and looking it up in the map of LeafNodes for
+ * every token. A String is only made for each distinct token. The tokens
+ * are encoded by finding their index in the canonical code in another
+ * WordDictionary.
+ *
+ * The dictionary holds at most {@link PackOptions#getMaxWords()} tokens, so
+ * memory is bounded however many distinct tokens a file has. When it is
+ * full, the rarer half of its tokens are pruned: they, and every later
+ * occurrence of them, are spelled out as tokens of single chars. The
+ * unpacker does not know the difference, it just writes the tokens.
+ */
+public class WordFilePacker extends FilePacker<String>
+{
+    /** the number of distinct tokens expected in a text file. */
+    private static final int EXPECTED_TOKENS = 4096;
+
+    /** the number of bits that remember the hashes of pruned tokens. */
+    private static final int PRUNED_TOKEN_BITS = 1 << 24;
+
+    /** the index of a token or char that has no code. */
+    private static final int NO_INDEX = -1;
+
+    /** the index in the canonical code of each token. */
+    private WordDictionary indexByToken;
+
+    /** the index in the canonical code of the token of each single char. */
+    private int[] indexByChar;
+
+    /** the code at each index of the canonical code. */
+    private long[] codes;
+
+    /** the number of bits of the code at each index of the canonical code. */
+    private int[] lengths;
+
+    /**
+     * Initialize WordFilePacker with input file.
+     *
+     * @param inputFile the file to pack.
+     * @param packOptions the choices of how to pack the file
+     */
+    protected WordFilePacker(File inputFile, PackOptions packOptions)
+    {
+        super(inputFile, new WordStreamConverter(packOptions.getCharset()), packOptions);
+    }
+
+    /**
+     * Counts the tokens in a stream and adds a LeafNode for each unique
+     * token in the dictionary, and for each char of the tokens spelled out.
+     *
+     * @param is the stream of original content to count
+     * @throws IOException when the input is not readable
+     */
+    @Override
+    protected void countObjects(InputStream is) throws IOException
+    {
+        int maxWords = getOptions().getMaxWords();
+        WordDictionary dictionary = new WordDictionary(Math.min(EXPECTED_TOKENS, maxWords));
+        long[] tokenCounts = new long[Math.min(EXPECTED_TOKENS, maxWords)];
+        long[] spelledCounts = new long[CharacterFilePacker.CHAR_VALUES];
+        BitSet pruned = new BitSet(PRUNED_TOKEN_BITS);
+
+        WordStreamConverter.TokenReader reader = new WordStreamConverter.TokenReader(is, getCharset());
+        char[] token = reader.getToken();
+        int length;
+        while ((length = reader.readToken()) > 0)
+        {
+            int index = dictionary.find(token, length);
+            if (index == NO_INDEX)
+            {
+                if (pruned.get(prunedBit(token, length)))
+                {
+                    spell(token, length, 1, spelledCounts);
+                    continue;
+                }
+
+                if (dictionary.size() == maxWords)
+                {
+                    dictionary = prune(dictionary, tokenCounts, spelledCounts, pruned);
+                }
+                index = dictionary.add(token, length);
+                if (index == tokenCounts.length)
+                {
+                    tokenCounts = Arrays.copyOf(tokenCounts, Math.min(tokenCounts.length * 2, maxWords));
+                }
+            }
+            ++tokenCounts[index];
+        }
+
+        for (int i = 0; i < dictionary.size(); ++i)
+        {
+            addCountedLeafNode(dictionary.getWord(i), tokenCounts[i]);
+        }
+        for (int ch = 0; ch < spelledCounts.length; ++ch)
+        {
+            if (spelledCounts[ch] != 0)
+            {
+                addCountedLeafNode(String.valueOf((char)ch), spelledCounts[ch]);
+            }
+        }
+    }
+
+    /**
+     * Remove the rarer half of the tokens from a full dictionary. Their
+     * counts are moved to the chars that spell them, and they are remembered
+     * as pruned, so that they are spelled out from now on too.
+     *
+     * @param dictionary the full dictionary
+     * @param tokenCounts the count of each token in the dictionary, moved to
+     *   the index of the tokens kept
+     * @param spelledCounts the count of each char spelled out
+     * @param pruned the bits of the hashes of pruned tokens
+     * @return the dictionary of the tokens that are kept
+     */
+    private static WordDictionary prune(WordDictionary dictionary, long[] tokenCounts,
+        long[] spelledCounts, BitSet pruned)
+    {
+        long[] sortedCounts = Arrays.copyOf(tokenCounts, dictionary.size());
+        Arrays.sort(sortedCounts);
+        long maxPrunedCount = sortedCounts[sortedCounts.length / 2];
+
+        WordDictionary kept = new WordDictionary(dictionary.size());
+        char[] token = new char[WordStreamConverter.MAX_TOKEN_LENGTH + 1];
+        for (int i = 0; i < dictionary.size(); ++i)
+        {
+            int length = dictionary.getWord(i, token);
+            long count = tokenCounts[i];
+            tokenCounts[i] = 0;
+            if (count > maxPrunedCount)
+            {
+                tokenCounts[kept.add(token, length)] = count;
+            }
+            else
+            {
+                spell(token, length, count, spelledCounts);
+                pruned.set(prunedBit(token, length));
+            }
+        }
+        System.out.println("Pruned " + (dictionary.size() - kept.size()) + " tokens seen up to " +
+            maxPrunedCount + " times");
+        return kept;
+    }
+
+    /**
+     * Count the chars of a token that is spelled out.
+     *
+     * @param token the chars of the token
+     * @param length the number of chars in the token
+     * @param count the number of times the token is spelled out
+     * @param spelledCounts the count of each char spelled out
+     */
+    private static void spell(char[] token, int length, long count, long[] spelledCounts)
+    {
+        for (int i = 0; i < length; ++i)
+        {
+            spelledCounts[token[i]] += count;
+        }
+    }
+
+    /**
+     * Returns the bit that remembers that a token was pruned. Tokens with
+     * the same bit are spelled out too, which costs some bits but is never
+     * wrong.
+     *
+     * @param token the chars of the token
+     * @param length the number of chars in the token
+     * @return the index of the bit
+     */
+    private static int prunedBit(char[] token, int length)
+    {
+        return WordDictionary.hash(token, length) & (PRUNED_TOKEN_BITS - 1);
+    }
+
+    /**
+     * Fill the tables for encoding the tokens, with the index of each token
+     * and of each single char in the canonical code.
+     */
+    @Override
+    void fillCodeTables()
+    {
+        super.fillCodeTables();
+
+        CanonicalCode<String> canonicalCode = getCanonicalCode();
+        indexByToken = new WordDictionary(canonicalCode.size());
+        indexByChar = new int[CharacterFilePacker.CHAR_VALUES];
+        Arrays.fill(indexByChar, NO_INDEX);
+        codes = new long[canonicalCode.size()];
+        lengths = new int[canonicalCode.size()];
+        for (int i = 0; i < canonicalCode.size(); ++i)
+        {
+            // the tokens are distinct, so each is added at the index of its code
+            String token = canonicalCode.getObject(i);
+            indexByToken.add(token);
+            if (token.length() == 1)
+            {
+                indexByChar[token.charAt(0)] = i;
+            }
+            codes[i] = canonicalCode.getCode(i);
+            lengths[i] = canonicalCode.getLength(i);
+        }
+    }
+
+    /**
+     * Read the tokens of an input stream, and write each token's code found
+     * through its index in the canonical code. A token without a code was
+     * pruned from the dictionary, so it is spelled out with the codes of its
+     * chars, and a char without a code is escaped.
+     *
+     * @param is the stream with the original content
+     * @param packedStream the stream to the compress bits for the tokens.
+     * @return the number of tokens written, counting each char spelled out
+     * @throws IOException in case of read or write error
+     */
+    @Override
+    protected long writeObjects(InputStream is, BitOutputStream packedStream)
+        throws IOException
+    {
+        long objectCount = 0;
+        long nextSyncObject = getNextSyncObject();
+        WordStreamConverter.TokenReader reader = new WordStreamConverter.TokenReader(is, getCharset());
+        char[] token = reader.getToken();
+        int length;
+        while ((length = reader.readToken()) > 0)
+        {
+            int index = indexByToken.find(token, length);
+            int spelledLength = index == NO_INDEX ? length : 1;
+            for (int i = 0; i < spelledLength; ++i)
+            {
+                if (objectCount == nextSyncObject)
+                {
+                    addSyncPoint(packedStream);
+                    nextSyncObject = getNextSyncObject();
+                }
+
+                if (index == NO_INDEX)
+                {
+                    int charIndex = indexByChar[token[i]];
+                    if (charIndex == NO_INDEX)
+                    {
+                        writeEscapedObject(String.valueOf(token[i]), packedStream);
+                    }
+                    else
+                    {
+                        packedStream.writeBits(codes[charIndex], lengths[charIndex]);
+                    }
+                }
+                else
+                {
+                    packedStream.writeBits(codes[index], lengths[index]);
+                }
+                ++objectCount;
+            }
+        }
+        return objectCount;
+    }
+}
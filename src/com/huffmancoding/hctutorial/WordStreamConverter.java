@@ -0,0 +1,494 @@
+package com.huffmancoding.hctutorial;
+
+/******************************************************************************
+
+    HuffmanTutorial: The Huffman Coding sample code.
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General Public License (www.gnu.org/copyleft/gpl.html) for more details.
+
+    The author can be reached at huffmancoding.com.
+
+    Although this is meant to explain Huffman coding, do not pass this code off
+    as your own if given a homework assignment.
+
+******************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This reads/writes an unpacked text file as tokens: runs of letters and
+ * digits, and runs of the separators between them. Logs repeat the same
+ * tokens over and over, so a code for each whole token packs them far
+ * smaller than a code for each character.
+ *
+ * A token is at most {@link #MAX_TOKEN_LENGTH} chars, a longer run is split
+ * into several tokens, which bounds the size of each token in the
+ * dictionary. The tokens of a canonical code are written front coded: the
+ * tokens of each code length are sorted, so each token is written as the
+ * number of chars it shares with the token before it and the chars after
+ * those.
+ */
+public class WordStreamConverter implements StreamConverter<String>
+{
+    /** the most chars in one token. */
+    public static final int MAX_TOKEN_LENGTH = 64;
+
+    /** the token whose code escapes a token without a code, empty so it is never read. */
+    static final String ESCAPE_TOKEN = "";
+
+    /** the number of ASCII chars. */
+    private static final int ASCII_CHARS = 128;
+
+    /** whether each ASCII char is part of a word, instead of a separator. */
+    private static final boolean[] ASCII_WORD_CHARS = new boolean[ASCII_CHARS];
+
+    static
+    {
+        for (char ch = 0; ch < ASCII_CHARS; ++ch)
+        {
+            ASCII_WORD_CHARS[ch] = Character.isLetterOrDigit(ch) || ch == '_';
+        }
+    }
+
+    /** the charset of the original file. */
+    private final Charset charset;
+
+    /**
+     * This splits the characters of a stream into tokens, copying each one
+     * into an array that is reused for every token.
+     */
+    static class TokenReader
+    {
+        /** the decoder of the chars of the stream. */
+        private final CharacterStreamConverter.ChunkDecoder decoder;
+
+        /** the chars of the current token, with room for a low surrogate past the limit. */
+        private final char[] token = new char[MAX_TOKEN_LENGTH + 1];
+
+        /** the array of the last buffer of decoded chars. */
+        private char[] chars = new char[0];
+
+        /** the index of the next char to read in the buffer. */
+        private int position = 0;
+
+        /** the number of chars in the buffer. */
+        private int limit = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param is the stream of bytes to decode
+         * @param charset the charset of the bytes
+         */
+        public TokenReader(InputStream is, Charset charset)
+        {
+            decoder = new CharacterStreamConverter.ChunkDecoder(is, charset);
+        }
+
+        /**
+         * Returns the array the tokens are read into.
+         *
+         * @return the array, reused by each call of {@link #readToken()}
+         */
+        public char[] getToken()
+        {
+            return token;
+        }
+
+        /**
+         * Read the next token into the array.
+         *
+         * @return the number of chars in the token, 0 at the end of the stream
+         * @throws IOException in case of read error
+         */
+        public int readToken() throws IOException
+        {
+            int length = 0;
+            boolean isWord = false;
+            while (true)
+            {
+                if (position == limit)
+                {
+                    CharBuffer chunk = decoder.readChunk();
+                    chars = chunk.array();
+                    position = 0;
+                    limit = chunk.limit();
+                    if (limit == 0)
+                    {
+                        return length;
+                    }
+                }
+
+                char ch = chars[position];
+                boolean isWordChar = isWordChar(ch);
+                if (length > 0 && (isWordChar != isWord ||
+                    (length >= MAX_TOKEN_LENGTH && !Character.isHighSurrogate(token[length - 1]))))
+                {
+                    return length;
+                }
+
+                isWord = isWordChar;
+                token[length++] = ch;
+                ++position;
+            }
+        }
+    }
+
+    /**
+     * This is an iterator for all the tokens in an original file.
+     */
+    private static class TokenIterator implements Iterator<String>
+    {
+        /** the reader of the tokens of the file. */
+        private final TokenReader reader;
+
+        /** the next token to return, null at the end of the file. */
+        private String nextToken;
+
+        /**
+         * Constructor.
+         *
+         * @param is the input stream to read tokens from
+         * @param charset the charset of the stream
+         */
+        public TokenIterator(InputStream is, Charset charset)
+        {
+            reader = new TokenReader(is, charset);
+            nextToken = readNextToken();
+        }
+
+        /**
+         * {@inheritDoc}}
+         */
+        @Override
+        public boolean hasNext()
+        {
+            return nextToken != null;
+        }
+
+        /**
+         * {@inheritDoc}}
+         */
+        @Override
+        public String next()
+        {
+            if (nextToken == null)
+            {
+                throw new NoSuchElementException();
+            }
+            String value = nextToken;
+            nextToken = readNextToken();
+            return value;
+        }
+
+        /**
+         * Read the token to be returned next time.
+         *
+         * @return the token, null at the end of the file
+         */
+        private String readNextToken()
+        {
+            try
+            {
+                int length = reader.readToken();
+                return length == 0 ? null : new String(reader.getToken(), 0, length);
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException("Could not read tokens", ex);
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fileCharset the charset of the original file
+     */
+    public WordStreamConverter(Charset fileCharset)
+    {
+        charset = fileCharset;
+    }
+
+    /**
+     * Returns whether a char is part of a word, instead of a separator. The
+     * halves of a surrogate pair are word chars, so a pair stays in one token.
+     *
+     * @param ch the char
+     * @return true for a letter, digit, underscore or surrogate
+     */
+    static boolean isWordChar(char ch)
+    {
+        return ch < ASCII_CHARS ? ASCII_WORD_CHARS[ch] :
+            Character.isLetterOrDigit(ch) || Character.isSurrogate(ch);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A token without a code is spelled out in single chars, so only a char
+     * that has no token of its own is escaped.
+     */
+    @Override
+    public String getEscapeObject()
+    {
+        return ESCAPE_TOKEN;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<String> getObjectComparator()
+    {
+        return String::compareTo;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<String> inputStreamIterator(InputStream is)
+    {
+        return new TokenIterator(is, charset);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The blocks of a file are encoded with the tokens counted in the whole
+     * file, so a block must start where a token does. The block is split
+     * between the last two ASCII bytes where a word meets a separator, which
+     * are both whole chars in UTF-8 and in a charset of one byte per char.
+     * A block without such a split, such as one long run of letters, is
+     * split before its last token instead.
+     *
+     * @throws UnsupportedOperationException if the charset may have ASCII bytes inside a char
+     */
+    @Override
+    public int findBlockBoundary(byte[] bytes, int length)
+    {
+        if (charset.newEncoder().maxBytesPerChar() != 1.0f && !charset.equals(StandardCharsets.UTF_8))
+        {
+            throw new UnsupportedOperationException(
+                "Blocks of words cannot be split for charset: " + charset.name());
+        }
+
+        for (int i = length - 1; i > 0; --i)
+        {
+            // bytes of non-ASCII chars are negative
+            if (bytes[i] >= 0 && bytes[i - 1] >= 0 &&
+                isWordChar((char)bytes[i]) != isWordChar((char)bytes[i - 1]))
+            {
+                return i;
+            }
+        }
+        return findLastTokenStart(bytes, length);
+    }
+
+    /**
+     * Find where the last token of a block starts, by reading its tokens as
+     * the {@link TokenReader} does. The block starts where a token does, so
+     * a run of word or separator chars is split into tokens of at most
+     * {@link #MAX_TOKEN_LENGTH} chars the same way as in the whole file.
+     *
+     * @param bytes the bytes read from the uncompressed input file
+     * @param length the number of bytes read
+     * @return the number of bytes before the last token, or length if there is only one token
+     */
+    private int findLastTokenStart(byte[] bytes, int length)
+    {
+        // leave out a char that the bytes end partway through
+        int wholeLength = new CharacterStreamConverter(charset).findBlockBoundary(bytes, length);
+
+        int lastStart = 0;
+        try
+        {
+            TokenReader reader = new TokenReader(new ByteArrayInputStream(bytes, 0, wholeLength), charset);
+            int charCount = 0;
+            int tokenLength;
+            while ((tokenLength = reader.readToken()) > 0)
+            {
+                lastStart = charCount;
+                charCount += tokenLength;
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Could not read tokens", ex);
+        }
+        if (lastStart == 0)
+        {
+            return length;
+        }
+
+        // decoding exactly the chars before the last token consumes their bytes
+        CharsetDecoder decoder = CharacterStreamConverter.newDecoder(charset);
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, wholeLength);
+        decoder.decode(in, CharBuffer.allocate(lastStart), false);
+        return in.position();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findBlockStart(byte[] bytes, long position, int length)
+    {
+        return new CharacterStreamConverter(charset).findBlockStart(bytes, position, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only UTF-8 and charsets of one byte per char have their ASCII bytes
+     * outside other chars.
+     */
+    @Override
+    public boolean canSplitBlocks()
+    {
+        return charset.newEncoder().maxBytesPerChar() == 1.0f || charset.equals(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeHuffmanTreeObject(DataOutputStream os, String token) throws IOException
+    {
+        os.writeUTF(token);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String readHuffmanTreeObject(DataInputStream is) throws IOException
+    {
+        return is.readUTF();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Each token is written as the number of leading chars it shares with
+     * the token before it, the number of chars after those, and then each
+     * of those chars as a variable length number, so ASCII takes one byte.
+     */
+    @Override
+    public void writeHuffmanTreeObjects(BitOutputStream os, List<String> tokens) throws IOException
+    {
+        String previous = "";
+        for (String token : tokens)
+        {
+            int sharedLength = 0;
+            int maxSharedLength = Math.min(previous.length(), token.length());
+            while (sharedLength < maxSharedLength &&
+                previous.charAt(sharedLength) == token.charAt(sharedLength))
+            {
+                ++sharedLength;
+            }
+
+            os.writeVarLong(sharedLength);
+            os.writeVarLong(token.length() - sharedLength);
+            for (int i = sharedLength; i < token.length(); ++i)
+            {
+                os.writeVarLong(token.charAt(i));
+            }
+            previous = token;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> readHuffmanTreeObjects(BitInputStream is, int count) throws IOException
+    {
+        List<String> tokens = new ArrayList<>(count);
+        char[] chars = new char[MAX_TOKEN_LENGTH + 1];
+        int previousLength = 0;
+        for (int i = 0; i < count; ++i)
+        {
+            long sharedLength = is.readVarLong();
+            long suffixLength = is.readVarLong();
+            if (sharedLength > previousLength || sharedLength + suffixLength > chars.length)
+            {
+                throw new IOException("Corrupt token in Huffman tree");
+            }
+
+            int length = (int)sharedLength;
+            for (long j = 0; j < suffixLength; ++j)
+            {
+                chars[length++] = (char)is.readVarLong();
+            }
+            tokens.add(new String(chars, 0, length));
+            previousLength = length;
+        }
+        return tokens;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The chars of the tokens are collected in a buffer that is encoded
+     * whenever it fills.
+     */
+    @Override
+    public void writeAllToOutput(Iterator<String> iterator, OutputStream os)
+        throws IOException
+    {
+        CharsetEncoder encoder = CharacterStreamConverter.newEncoder(charset);
+        CharBuffer chars = CharBuffer.allocate(CharacterStreamConverter.BUFFER_SIZE);
+        ByteBuffer bytes = ByteBuffer.allocate(
+            (int)Math.ceil(CharacterStreamConverter.BUFFER_SIZE * encoder.maxBytesPerChar()));
+        while (iterator.hasNext())
+        {
+            String token = iterator.next();
+            if (chars.remaining() < token.length())
+            {
+                CharacterStreamConverter.encodeChunk(encoder, chars, bytes, false, os);
+            }
+            chars.put(token);
+        }
+        CharacterStreamConverter.encodeChunk(encoder, chars, bytes, true, os);
+
+        encoder.flush(bytes);
+        os.write(bytes.array(), 0, bytes.position());
+        os.flush();
+    }
+}